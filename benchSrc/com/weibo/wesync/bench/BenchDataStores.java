@@ -0,0 +1,36 @@
+package com.weibo.wesync.bench;
+
+import com.weibo.wesync.data.DataStore;
+import com.weibo.wesync.data.FakeDataStore;
+import com.weibo.wesync.data.MemoryDataStore;
+import com.weibo.wesync.data.RedisDataStore;
+
+/**
+ * Data stores under benchmark, chosen by the "store" parameter, e.g. -p store=memory,redis
+ *
+ * The redis store connects to the server given by -Dwesync.bench.redis=host:port, which
+ * should be an empty instance since the benchmarks write to it.
+ */
+public final class BenchDataStores {
+	public static final String MEMORY = "memory";
+	public static final String FAKE = "fake";
+	public static final String REDIS = "redis";
+
+	private BenchDataStores() {
+	}
+
+	public static DataStore create(String name) {
+		if (MEMORY.equals(name)) return new MemoryDataStore();
+		if (FAKE.equals(name)) return new FakeDataStore();
+		if (REDIS.equals(name)) {
+			String address = System.getProperty("wesync.bench.redis", "127.0.0.1:6379");
+			int idx = address.lastIndexOf(':');
+			return new RedisDataStore(address.substring(0, idx), Integer.parseInt(address.substring(idx + 1)), 32, 2000);
+		}
+		throw new IllegalArgumentException("Unknown data store: " + name);
+	}
+
+	public static void close(DataStore store) {
+		if (store instanceof RedisDataStore) ((RedisDataStore) store).close();
+	}
+}
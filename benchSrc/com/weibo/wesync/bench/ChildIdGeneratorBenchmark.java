@@ -0,0 +1,61 @@
+package com.weibo.wesync.bench;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.weibo.wesync.data.ChildIdGenerator;
+import com.weibo.wesync.data.MemoryDataStore;
+
+/**
+ * Child id reservation, the Calendar per id as before against the cached stamp and id blocks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ChildIdGeneratorBenchmark {
+	@Param({"1", "64"})
+	public int blockSize;
+
+	private MemoryDataStore store;
+	private ChildIdGenerator generator;
+	private final String folderId = "juliet-conv-romeo";
+
+	@Setup
+	public void setup() {
+		store = new MemoryDataStore();
+		generator = new ChildIdGenerator(store, blockSize);
+	}
+
+	@Benchmark
+	public long calendarPerId() {
+		long newId = store.reserveChildId(folderId);
+		Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+		int stamp = cal.get(Calendar.YEAR) % 100 * 10000
+				+ (cal.get(Calendar.MONTH) + 1) * 100
+				+ cal.get(Calendar.DAY_OF_MONTH);
+		return newId * 1000000 + stamp;
+	}
+
+	@Benchmark
+	public long generator() {
+		return generator.nextStamped(folderId);
+	}
+}
@@ -0,0 +1,102 @@
+package com.weibo.wesync.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.weibo.wesync.data.FolderChange;
+import com.weibo.wesync.data.FolderID;
+
+/**
+ * Sorting the changes of a folder, parsing the child ids on each comparison as before
+ * against the scores parsed once on construction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FolderChangeBenchmark {
+	//The former FolderChange.compareTo()
+	static final class LegacyFolderChange implements Comparable<LegacyFolderChange> {
+		final String childId;
+		final boolean isAdd;
+
+		LegacyFolderChange(String childId, boolean isAdd) {
+			this.childId = childId;
+			this.isAdd = isAdd;
+		}
+
+		@Override
+		public int compareTo(LegacyFolderChange other) {
+			try {
+				long myScore = Long.parseLong(this.childId);
+				long otherScore = Long.parseLong(other.childId);
+				if (myScore != otherScore) {
+					return myScore > otherScore ? 1 : -1;
+				}
+			} catch (NumberFormatException nf) {
+				if (!this.childId.equals(other.childId)) {
+					return this.childId.compareTo(other.childId);
+				}
+			}
+			if (this.isAdd == other.isAdd) return 0;
+			return this.isAdd ? 1 : -1;
+		}
+	}
+
+	@Param({"1000"})
+	public int changes;
+
+	//Message ids in a conversation, or folder ids in the root folder
+	@Param({"true", "false"})
+	public boolean numeric;
+
+	private List<String> ids;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(17);
+		ids = new ArrayList<String>(changes);
+		for (int i = 0; i < changes; i++) {
+			if (numeric) {
+				ids.add(String.valueOf(1000000L * random.nextInt(100000) + 121018));
+			} else {
+				ids.add(FolderID.onConversation("juliet", "user" + random.nextInt(changes)));
+			}
+		}
+	}
+
+	@Benchmark
+	public int legacy() {
+		TreeSet<LegacyFolderChange> set = new TreeSet<LegacyFolderChange>();
+		for (String id : ids) {
+			set.add(new LegacyFolderChange(id, true));
+		}
+		return set.size();
+	}
+
+	@Benchmark
+	public int primitive() {
+		TreeSet<FolderChange> set = new TreeSet<FolderChange>();
+		for (String id : ids) {
+			set.add(new FolderChange(id, true));
+		}
+		return set.size();
+	}
+}
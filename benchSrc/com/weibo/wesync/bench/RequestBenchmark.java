@@ -0,0 +1,271 @@
+package com.weibo.wesync.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.protobuf.ByteString;
+import com.weibo.wesync.Command;
+import com.weibo.wesync.DataService;
+import com.weibo.wesync.DataServiceImpl;
+import com.weibo.wesync.FakeGroupMessageService;
+import com.weibo.wesync.FakePrivacyService;
+import com.weibo.wesync.NoticeService;
+import com.weibo.wesync.WeSyncService;
+import com.weibo.wesync.WeSyncServiceImpl;
+import com.weibo.wesync.WeSyncURI;
+import com.weibo.wesync.data.DataStore;
+import com.weibo.wesync.data.FileID;
+import com.weibo.wesync.data.FolderID;
+import com.weibo.wesync.data.MetaMessageType;
+import com.weibo.wesync.data.WeSyncMessage.DataSlice;
+import com.weibo.wesync.data.WeSyncMessage.FileData;
+import com.weibo.wesync.data.WeSyncMessage.FolderSyncReq;
+import com.weibo.wesync.data.WeSyncMessage.GetItemUnreadReq;
+import com.weibo.wesync.data.WeSyncMessage.Meta;
+import com.weibo.wesync.data.WeSyncMessage.Notice;
+import com.weibo.wesync.data.WeSyncMessage.SyncReq;
+
+/**
+ * End to end benchmarks of WeSyncService.request for the commands on the sync hot path.
+ *
+ * Throughput and sampled latency(with percentiles) are reported for each command, run with
+ * "-prof gc" for the allocation rate, which is the default of "ant bench".
+ * The folders are trimmed by the folder limits, so the data set stays steady while sending.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-bench.xml")
+public class RequestBenchmark {
+	private static final String juliet = "juliet";
+	private static final String romeo = "romeo";
+	private static final String TAG_SYNC_KEY = "0";
+	private static final int FILE_SLICE_SIZE = 1200;
+
+	@Param({BenchDataStores.MEMORY})
+	public String store;
+
+	//Messages in the conversation before benchmarking
+	@Param({"100"})
+	public int messages;
+
+	private DataStore dataStore;
+	private WeSyncService weSync;
+
+	private byte[] syncUri;
+	private byte[] folderSyncUri;
+	private byte[] getItemUnreadUri;
+	private byte[] sendFileUri;
+	private byte[] getFileUri;
+
+	private byte[] syncWithClientChangesReq;
+	private byte[] incrementalSyncReq;
+	private byte[] fullSyncForwardReq;
+	private byte[] fullSyncBackwardReq;
+	private byte[] folderSyncReq;
+	private byte[] getItemUnreadReq;
+	private byte[] sendFileReq;
+	private byte[] getFileReq;
+
+	//Buffer copies of the requests above for the buffer based API, as read from the network
+	private ByteBuffer syncUriBuffer;
+	private ByteBuffer getFileUriBuffer;
+	private ByteBuffer fullSyncForwardReqBuffer;
+	private ByteBuffer getFileReqBuffer;
+	private final CountingOutputStream out = new CountingOutputStream();
+
+	//Notices are dropped, which are not the concern here
+	private static class DiscardNoticeService implements NoticeService {
+		@Override
+		public void send(String username, Notice notice) {
+		}
+	}
+
+	//The response is dropped as written to the network
+	private static class CountingOutputStream extends OutputStream {
+		long count = 0;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+
+	@Setup
+	public void setup() throws IOException {
+		dataStore = BenchDataStores.create(store);
+		DataService dataService = new DataServiceImpl(dataStore);
+		dataService.setFolderLimit(messages, messages);
+		weSync = new WeSyncServiceImpl(dataService, new DiscardNoticeService(),
+				new FakeGroupMessageService(dataService), new FakePrivacyService());
+
+		dataService.prepareForNewUser(juliet);
+		dataService.prepareForNewUser(romeo);
+		dataService.newConversation(romeo, juliet);
+		dataService.newConversation(juliet, romeo);
+
+		Meta.Builder builder = textMessage(romeo, juliet);
+		for (int i = 0; i < messages; i++) {
+			builder.setId("client-" + i).setContent(ByteString.copyFromUtf8("Miss U " + i));
+			dataService.store(builder.build());
+		}
+
+		syncUri = uri(Command.Sync);
+		folderSyncUri = uri(Command.FolderSync);
+		getItemUnreadUri = uri(Command.GetItemUnread);
+		sendFileUri = uri(Command.SendFile);
+		getFileUri = uri(Command.GetFile);
+
+		String romeoConv = FolderID.onConversation(romeo, juliet);
+		String julietConv = FolderID.onConversation(juliet, romeo);
+		syncWithClientChangesReq = SyncReq.newBuilder()
+				.setFolderId(romeoConv)
+				.setIsFullSync(false)
+				.setKey(TAG_SYNC_KEY)
+				.addClientChanges(textMessage(romeo, juliet).setId("client-bench")
+						.setContent(ByteString.copyFromUtf8("What are you doing")))
+				.build().toByteArray();
+		incrementalSyncReq = syncReq(julietConv, false, false);
+		fullSyncForwardReq = syncReq(julietConv, true, true);
+		fullSyncBackwardReq = syncReq(julietConv, true, false);
+
+		String julietRoot = FolderID.onRoot(juliet);
+		folderSyncReq = FolderSyncReq.newBuilder()
+				.setId(julietRoot)
+				.setKey(TAG_SYNC_KEY)
+				.build().toByteArray();
+
+		List<String> folderIds = new ArrayList<String>();
+		folderIds.add(julietRoot);
+		folderIds.add(julietConv);
+		getItemUnreadReq = GetItemUnreadReq.newBuilder().addAllFolderId(folderIds).build().toByteArray();
+
+		String fileId = FileID.generateId(romeo, juliet, "file-bench");
+		FileData.Builder file = FileData.newBuilder().setId(fileId);
+		byte[] sliceData = new byte[FILE_SLICE_SIZE];
+		int limit = 8;
+		for (int i = 1; i <= limit; i++) {
+			file.addSlice(DataSlice.newBuilder().setIndex(i).setLimit(limit)
+					.setData(ByteString.copyFrom(sliceData)));
+		}
+		sendFileReq = file.build().toByteArray();
+		weSync.request(romeo, sendFileUri, sendFileReq);
+		getFileReq = FileData.newBuilder().setId(fileId).build().toByteArray();
+
+		syncUriBuffer = directBuffer(syncUri);
+		getFileUriBuffer = directBuffer(getFileUri);
+		fullSyncForwardReqBuffer = directBuffer(fullSyncForwardReq);
+		getFileReqBuffer = directBuffer(getFileReq);
+	}
+
+	private static ByteBuffer directBuffer(byte[] data) {
+		ByteBuffer buf = ByteBuffer.allocateDirect(data.length);
+		buf.put(data).flip();
+		return buf;
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		weSync.shutdown(5, TimeUnit.SECONDS);
+		BenchDataStores.close(dataStore);
+	}
+
+	private static Meta.Builder textMessage(String from, String to) {
+		return Meta.newBuilder()
+				.setFrom(from)
+				.setTo(to)
+				.setType(ByteString.copyFrom(new byte[] { MetaMessageType.text.toByte() }));
+	}
+
+	private static byte[] syncReq(String folderId, boolean isFullSync, boolean isForward) {
+		return SyncReq.newBuilder()
+				.setFolderId(folderId)
+				.setIsFullSync(isFullSync)
+				.setIsForward(isForward)
+				.setKey(TAG_SYNC_KEY)
+				.build().toByteArray();
+	}
+
+	private static byte[] uri(Command command) throws IOException {
+		WeSyncURI uri = new WeSyncURI();
+		uri.protocolVersion = 20;
+		uri.guid = "1234567890abcdefg";
+		uri.deviceType = "iphone";
+		uri.command = command.toByte();
+		return WeSyncURI.toBytes(uri);
+	}
+
+	@Benchmark
+	public byte[] syncWithClientChanges() {
+		return weSync.request(romeo, syncUri, syncWithClientChangesReq);
+	}
+
+	@Benchmark
+	public byte[] incrementalSync() {
+		return weSync.request(juliet, syncUri, incrementalSyncReq);
+	}
+
+	@Benchmark
+	public byte[] fullSyncForward() {
+		return weSync.request(juliet, syncUri, fullSyncForwardReq);
+	}
+
+	@Benchmark
+	public byte[] fullSyncBackward() {
+		return weSync.request(juliet, syncUri, fullSyncBackwardReq);
+	}
+
+	@Benchmark
+	public byte[] folderSync() {
+		return weSync.request(juliet, folderSyncUri, folderSyncReq);
+	}
+
+	@Benchmark
+	public byte[] getItemUnread() {
+		return weSync.request(juliet, getItemUnreadUri, getItemUnreadReq);
+	}
+
+	@Benchmark
+	public byte[] sendFile() {
+		return weSync.request(romeo, sendFileUri, sendFileReq);
+	}
+
+	@Benchmark
+	public byte[] getFile() {
+		return weSync.request(juliet, getFileUri, getFileReq);
+	}
+
+	@Benchmark
+	public int fullSyncForwardOnBuffer() throws IOException {
+		return weSync.request(juliet, syncUriBuffer, fullSyncForwardReqBuffer, out);
+	}
+
+	@Benchmark
+	public int getFileOnBuffer() throws IOException {
+		return weSync.request(juliet, getFileUriBuffer, getFileReqBuffer, out);
+	}
+}
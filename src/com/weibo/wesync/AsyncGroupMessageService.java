@@ -0,0 +1,201 @@
+package com.weibo.wesync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.weibo.wesync.data.FolderChild;
+import com.weibo.wesync.data.GroupOperationType;
+
+/**
+ * Group broadcast out of the sender's request thread.
+ *
+ * Each group is hashed to one lane, which is a single thread with a bounded queue, so the
+ * broadcasts in the same group keep their order. Members of a large group are split into
+ * batches, and each batch is written in one batch operation.
+ * Callers are blocked when the lane is full, which pushes back instead of dropping the unread changes.
+ */
+@Singleton
+public class AsyncGroupMessageService implements GroupMessageService {
+	private final Logger log = LoggerFactory.getLogger(AsyncGroupMessageService.class);
+
+	public static final int DEFAULT_LANES = 8;
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+	public static final int DEFAULT_MEMBER_BATCH = 200;
+
+	private final DataService dataService;
+	private final ThreadPoolExecutor[] lanes;
+	private final int memberBatch;
+
+	/**
+	 * Metrics, lag is the time from broadcast() to the finish of the task
+	 */
+	private final AtomicLong submitted = new AtomicLong(0);
+	private final AtomicLong completed = new AtomicLong(0);
+	private final AtomicLong failed = new AtomicLong(0);
+	private final AtomicLong totalLagMillis = new AtomicLong(0);
+	private final AtomicLong maxLagMillis = new AtomicLong(0);
+
+	@Inject
+	public AsyncGroupMessageService(DataService dataService) {
+		this(dataService, DEFAULT_LANES, DEFAULT_QUEUE_CAPACITY, DEFAULT_MEMBER_BATCH);
+	}
+
+	public AsyncGroupMessageService(DataService dataService, int laneNum, int queueCapacity, int memberBatch) {
+		this.dataService = dataService;
+		this.memberBatch = memberBatch;
+		this.lanes = new ThreadPoolExecutor[laneNum];
+		for (int i = 0; i < laneNum; i++) {
+			lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(queueCapacity),
+					new LaneThreadFactory(i), new BlockingPolicy());
+		}
+	}
+
+	private static class LaneThreadFactory implements ThreadFactory {
+		private final int lane;
+
+		LaneThreadFactory(int lane) {
+			this.lane = lane;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "group-fanout-" + lane);
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	//Wait for the room in the lane, which keeps the order of the group
+	private static class BlockingPolicy implements RejectedExecutionHandler {
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				throw new RejectedExecutionException("Group fan-out is shut down");
+			}
+			try {
+				executor.getQueue().put(r);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("Interrupted when waiting for group fan-out", e);
+			}
+		}
+	}
+
+	private abstract class FanoutTask implements Runnable {
+		private final long enqueueTime = System.currentTimeMillis();
+
+		abstract void fanout();
+
+		@Override
+		public void run() {
+			try {
+				fanout();
+				completed.incrementAndGet();
+			} catch (RuntimeException e) {
+				failed.incrementAndGet();
+				log.error("Group fan-out failed: " + e.getMessage(), e);
+			}
+
+			long lag = System.currentTimeMillis() - enqueueTime;
+			totalLagMillis.addAndGet(lag);
+			long max;
+			while (lag > (max = maxLagMillis.get())) {
+				if (maxLagMillis.compareAndSet(max, lag)) break;
+			}
+		}
+	}
+
+	private void submit(String groupId, FanoutTask task) {
+		int lane = (groupId.hashCode() & Integer.MAX_VALUE) % lanes.length;
+		submitted.incrementAndGet();
+		lanes[lane].execute(task);
+	}
+
+	@Override
+	public void broadcast(final String groupId, final String from, final String msgId) {
+		submit(groupId, new FanoutTask() {
+			@Override
+			void fanout() {
+				SortedSet<FolderChild> members = dataService.members(groupId);
+				List<FolderChild> batch = new ArrayList<FolderChild>(Math.min(memberBatch, members.size()));
+				for (FolderChild fc : members) {
+					batch.add(fc);
+					if (batch.size() >= memberBatch) {
+						dataService.broadcastNewMessage(groupId, from, msgId, batch);
+						batch.clear();
+					}
+				}
+				if (!batch.isEmpty()) dataService.broadcastNewMessage(groupId, from, msgId, batch);
+			}
+		});
+	}
+
+	@Override
+	public void broadcast(final String groupId, final GroupOperationType type, final String extend) {
+		submit(groupId, new FanoutTask() {
+			@Override
+			void fanout() {
+				dataService.broadcastMemberChange(groupId, type, extend);
+			}
+		});
+	}
+
+	/**
+	 * Stop accepting broadcasts and wait for the queued ones, return false on timeout
+	 */
+	@Override
+	public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+		for (ThreadPoolExecutor lane : lanes) {
+			lane.shutdown();
+		}
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (ThreadPoolExecutor lane : lanes) {
+			long left = deadline - System.nanoTime();
+			if (!lane.awaitTermination(left, TimeUnit.NANOSECONDS)) return false;
+		}
+		return true;
+	}
+
+	public long getSubmittedCount() {
+		return submitted.get();
+	}
+
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	public int getPendingCount() {
+		int pending = 0;
+		for (ThreadPoolExecutor lane : lanes) {
+			pending += lane.getQueue().size();
+		}
+		return pending;
+	}
+
+	public long getMaxLagMillis() {
+		return maxLagMillis.get();
+	}
+
+	public double getAverageLagMillis() {
+		long finished = completed.get() + failed.get();
+		return finished == 0 ? 0 : (double) totalLagMillis.get() / finished;
+	}
+}
@@ -0,0 +1,59 @@
+package com.weibo.wesync;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import com.google.protobuf.CodedInputStream;
+
+/**
+ * Protobuf input on ByteBuffer, the position of the buffer is not changed.
+ * 
+ * The heap buffer is parsed on its backing array in place, the large direct one is streamed
+ * through the buffer of CodedInputStream, so none of the large ones is copied as a whole.
+ */
+public final class BufferInput {
+	//Same as the buffer of CodedInputStream on streams, smaller ones are cheaper to copy
+	private static final int STREAM_THRESHOLD = 4096;
+
+	private BufferInput() {
+	}
+
+	public static CodedInputStream newCodedInput(ByteBuffer buf) {
+		if (buf.hasArray()) {
+			return CodedInputStream.newInstance(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+		}
+		if (buf.remaining() <= STREAM_THRESHOLD) {
+			byte[] data = new byte[buf.remaining()];
+			buf.duplicate().get(data);
+			return CodedInputStream.newInstance(data);
+		}
+		return CodedInputStream.newInstance(new ByteBufferInputStream(buf.duplicate()));
+	}
+
+	private static final class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buf;
+
+		ByteBufferInputStream(ByteBuffer buf) {
+			this.buf = buf;
+		}
+
+		@Override
+		public int read() {
+			return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) return 0;
+			if (!buf.hasRemaining()) return -1;
+			len = Math.min(len, buf.remaining());
+			buf.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public int available() {
+			return buf.remaining();
+		}
+	}
+}
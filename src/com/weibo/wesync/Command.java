@@ -14,6 +14,7 @@ public enum Command {
 	Provision ((byte)0x7),
 	Settings ((byte)0x8),
 	GetFile((byte)0x9),
+	MultiSync ((byte)0xA),
 	Unknown ((byte)0xFF);
 	
 	private final byte code;
@@ -1,9 +1,19 @@
 package com.weibo.wesync;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.MessageLite;
+
 /**
  * @author Eric Liang
  *
  */
 public interface CommandHandler {
 	public byte[] handle(String username, WeSyncURI uri, byte[] data, boolean fromListener);
+	
+	/**
+	 * The request is parsed from the stream as it is, and the response is returned as the message,
+	 * so the caller can write it to where it goes without the byte[] copy, e.g. by writeTo(OutputStream).
+	 * @Return null for no response
+	 */
+	public MessageLite handleMessage(String username, WeSyncURI uri, CodedInputStream data, boolean fromListener);
 }
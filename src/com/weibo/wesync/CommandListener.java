@@ -1,7 +1,8 @@
 package com.weibo.wesync;
 
-import com.google.protobuf.ByteString;
+import com.google.protobuf.MessageLite;
 
 public interface CommandListener {
-	public boolean handle(Command comm, ByteString data);
+	//The request is passed as it is, no serializing and parsing again
+	public boolean handle(Command comm, MessageLite req);
 }
@@ -1,18 +1,24 @@
 package com.weibo.wesync;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.MessageLite;
 import com.weibo.wesync.command.FolderCreateHandler;
 import com.weibo.wesync.command.FolderDeleteHandler;
 import com.weibo.wesync.command.FolderSyncHandler;
 import com.weibo.wesync.command.GetFileHandler;
 import com.weibo.wesync.command.GetItemUnreadHandler;
 import com.weibo.wesync.command.ItemOperationsHandler;
+import com.weibo.wesync.command.MultiSyncHandler;
 import com.weibo.wesync.command.NullHandler;
 import com.weibo.wesync.command.SendFileHandler;
 import com.weibo.wesync.command.Sync10Handler;
 import com.weibo.wesync.command.SyncHandler;
+import com.weibo.wesync.metrics.CommandMetrics;
 
 /**
  * @author Eric Liang
@@ -20,20 +26,49 @@ import com.weibo.wesync.command.SyncHandler;
 public class CommandProcessor implements CommandHandler{
 	private WeSyncService weSync;
 	private Map<Command, CommandHandler> handlers = new ConcurrentHashMap<Command, CommandHandler>();
+	private final CommandMetrics metrics;
+	private final SyncHandler.Options syncOptions;
 
 	public CommandProcessor(WeSyncService weSync) {
+		this(weSync, new CommandMetrics());
+	}
+
+	public CommandProcessor(WeSyncService weSync, CommandMetrics metrics) {
+		this(weSync, metrics, new SyncHandler.Options());
+	}
+
+	public CommandProcessor(WeSyncService weSync, CommandMetrics metrics, SyncHandler.Options syncOptions) {
 		this.weSync = weSync;
+		this.metrics = metrics;
+		this.syncOptions = syncOptions;
 		setupHandlers();
 	}
 
 	public CommandProcessor(WeSyncService weSync, byte protocolVersion) {
+		this(weSync, protocolVersion, new CommandMetrics());
+	}
+
+	public CommandProcessor(WeSyncService weSync, byte protocolVersion, CommandMetrics metrics) {
+		this(weSync, protocolVersion, metrics, new SyncHandler.Options());
+	}
+
+	public CommandProcessor(WeSyncService weSync, byte protocolVersion, CommandMetrics metrics, SyncHandler.Options syncOptions) {
 		this.weSync = weSync;
+		this.metrics = metrics;
+		this.syncOptions = syncOptions;
 		setupHandlers(protocolVersion);
 	}
 	
 	private void setupHandlers() {
+		setupCommonHandlers();
+		SyncHandler syncHandler = new SyncHandler(weSync, syncOptions);
+		handlers.put(Command.Sync, syncHandler);
+		handlers.put(Command.MultiSync, new MultiSyncHandler(weSync, syncHandler));
+	}
+
+	//The handlers of the commands not varying by the protocol version
+	private void setupCommonHandlers() {
 		handlers.put(Command.Unknown, new NullHandler(weSync));
-		handlers.put(Command.Sync, new SyncHandler(weSync));
 		handlers.put(Command.FolderSync, new FolderSyncHandler(weSync));
 		handlers.put(Command.FolderCreate, new FolderCreateHandler(weSync));
 		handlers.put(Command.FolderDelete, new FolderDeleteHandler(weSync));
@@ -47,11 +82,12 @@ public class CommandProcessor implements CommandHandler{
 	 * setup the protocol version various handlers 
 	 */
 	private void setupHandlers(byte version){
-		setupHandlers();
-		
 		if( 10 == version ){
-			//just override the latest one
+			//No MultiSync in version 10
+			setupCommonHandlers();
 			handlers.put(Command.Sync, new Sync10Handler(weSync));
+		}else{
+			setupHandlers();
 		}
 	}
 	
@@ -65,7 +101,59 @@ public class CommandProcessor implements CommandHandler{
 	@Override
 	public byte[] handle(String username, WeSyncURI uri, byte[] data,
 			boolean fromListener) {
-		CommandHandler handler = getHandler( Command.valueOf(uri.command) ); 
-		return handler.handle(username, uri, data, fromListener);
+		MessageLite resp = handleMessage(username, uri, null == data ? null : CodedInputStream.newInstance(data), fromListener);
+		return null == resp ? null : resp.toByteArray();
+	}
+
+	@Override
+	public MessageLite handleMessage(String username, WeSyncURI uri, CodedInputStream data,
+			boolean fromListener) {
+		Command command = Command.valueOf(uri.command);
+		CommandHandler handler = getHandler( command ); 
+
+		long start = metrics.begin(command, 0);
+		MessageLite resp = null;
+		boolean failed = true;
+		try{
+			resp = handler.handleMessage(username, uri, data, fromListener);
+			failed = false;
+			return resp;
+		}finally{
+			//The request size is known after parsing
+			metrics.end(command, start, null == data ? 0 : data.getTotalBytesRead(),
+					null == resp ? 0 : resp.getSerializedSize(), failed);
+		}
+	}
+
+	/**
+	 * Write the response to the output, piece by piece if the handler is a StreamingHandler
+	 * @Return the bytes of the response written
+	 */
+	public int handleStream(String username, WeSyncURI uri, CodedInputStream data, OutputStream out) throws IOException {
+		Command command = Command.valueOf(uri.command);
+		CommandHandler handler = getHandler( command ); 
+
+		long start = metrics.begin(command, 0);
+		int written = 0;
+		boolean failed = true;
+		try{
+			if( handler instanceof StreamingHandler ){
+				written = ((StreamingHandler) handler).handleStream(username, uri, data, out);
+			}else{
+				MessageLite resp = handler.handleMessage(username, uri, data, false);
+				if( null != resp ){
+					resp.writeTo(out);
+					written = resp.getSerializedSize();
+				}
+			}
+			failed = false;
+			return written;
+		}finally{
+			metrics.end(command, start, null == data ? 0 : data.getTotalBytesRead(), written, failed);
+		}
+	}
+
+	public CommandMetrics getMetrics() {
+		return metrics;
 	}
 }
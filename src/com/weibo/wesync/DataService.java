@@ -1,5 +1,6 @@
 package com.weibo.wesync;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.SortedSet;
 
@@ -20,6 +21,10 @@ public interface DataService {
 	 */
 	public boolean setFolderLimit(int childLimit, int changeLimit);
 	
+	//Told of the folders which get new changes through this service, e.g. to resume the waiting syncs
+	public void addFolderChangeListener(FolderChangeListener listener);
+	public void removeFolderChangeListener(FolderChangeListener listener);
+	
 	/**
 	 * Utility operations
 	 */
@@ -42,6 +47,8 @@ public interface DataService {
 	//Create group with members (creator excluded) by creator and return the group id
 	public String createGroup(String creator, List<String> members);
 	public boolean broadcastNewMessage(String groupId, String fromUser, String msgId);
+	//Broadcast to the given members only, which allows the caller to split a large group into batches
+	public boolean broadcastNewMessage(String groupId, String fromUser, String msgId, Collection<FolderChild> members);
 	public boolean broadcastMemberChange(String groupId, GroupOperationType type, String affectedUser);
 	
 	/**
@@ -59,6 +66,10 @@ public interface DataService {
 	public Meta getMetaMessageInGroup(String groupId, long id);
 	public Meta getMetaMessage(String folderId, long id);
 	public Meta getMetaMessage(String id);
+	//Retrieve the messages at one time, in the order of the ids and null for the missing ones
+	public List<Meta> getMetaMessages(List<String> ids);
+	//Remove the message, which should not be removed from the store directly if cached
+	public boolean removeMetaMessage(Meta msg);
 	
 	/**
 	 * Folder operations
@@ -87,8 +98,14 @@ public interface DataService {
 	/**
 	 * File operations
 	 */
-	//@Return empty or missing slices when finishing the send operation
+	//@Return empty or missing slices when finishing the send operation,
+	//or the slices of md5 without data whose content is not stored, to be sent with data
 	public FileData store(FileData file);
 	public FileData getFileByIndex(FileData index);
 	public FileData getFileById(String fileId);
+	//Remove the file and release the slice contents it refers to
+	public boolean removeFile(String fileId);
+	
+	//Stop the workers, e.g. the pool of the slice verifier
+	public void shutdown();
 }
@@ -1,21 +1,33 @@
 package com.weibo.wesync;
 
-import java.util.Calendar;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
-import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.protobuf.ByteString;
+import com.weibo.wesync.data.ChildIdGenerator;
 import com.weibo.wesync.data.DataStore;
+import com.weibo.wesync.data.DataStorePipeline;
+import com.weibo.wesync.data.FileDataHelper;
 import com.weibo.wesync.data.FolderChange;
 import com.weibo.wesync.data.FolderChild;
 import com.weibo.wesync.data.FolderID;
 import com.weibo.wesync.data.Group;
 import com.weibo.wesync.data.GroupOperationType;
+import com.weibo.wesync.data.MetaCache;
 import com.weibo.wesync.data.MetaMessageType;
+import com.weibo.wesync.data.SliceVerifier;
 import com.weibo.wesync.data.SyncKey;
+import com.weibo.wesync.data.WeSyncMessage.DataSlice;
 import com.weibo.wesync.data.WeSyncMessage.FileData;
 import com.weibo.wesync.data.WeSyncMessage.Meta;
 import com.weibo.wesync.data.WeSyncMessage.Unread;
@@ -29,10 +41,73 @@ public class DataServiceImpl implements DataService {
 	private int childLimit = 100;
 	private int changeLimit = 100;
 	
+	public static final long DEFAULT_META_CACHE_BYTES = 32 * 1024 * 1024;
+	
 	public DataStore dataStore;
+	private final ChildIdGenerator idGenerator;
+	//Null if disabled, messages should be removed by removeMetaMessage() to keep it valid
+	private final MetaCache metaCache;
+	//Checks the md5 of the slices sent
+	private final SliceVerifier verifier;
+	private final List<FolderChangeListener> changeListeners = new CopyOnWriteArrayList<FolderChangeListener>();
 
 	public DataServiceImpl(DataStore dataStore) {
+		this(dataStore, 1);
+	}
+
+	//Child ids are reserved from the store by blocks of @Param:idBlockSize, see ChildIdGenerator
+	public DataServiceImpl(DataStore dataStore, int idBlockSize) {
+		this(dataStore, idBlockSize, DEFAULT_META_CACHE_BYTES);
+	}
+
+	//@Param:metaCacheBytes the memory for the hot messages, 0 to disable the cache
+	public DataServiceImpl(DataStore dataStore, int idBlockSize, long metaCacheBytes) {
+		this(dataStore, idBlockSize, metaCacheBytes, SliceVerifier.getDefault());
+	}
+
+	public DataServiceImpl(DataStore dataStore, int idBlockSize, long metaCacheBytes, SliceVerifier verifier) {
 		this.dataStore = dataStore;
+		this.idGenerator = new ChildIdGenerator(dataStore, idBlockSize);
+		this.metaCache = metaCacheBytes > 0 ? new MetaCache(metaCacheBytes) : null;
+		this.verifier = verifier;
+	}
+	
+	//Hit and miss metrics are there, null if disabled
+	public MetaCache getMetaCache() {
+		return metaCache;
+	}
+
+	//Throughput and mismatch metrics are there
+	public SliceVerifier getSliceVerifier() {
+		return verifier;
+	}
+
+	@Override
+	public void shutdown() {
+		verifier.shutdown();
+	}
+
+	@Override
+	public void addFolderChangeListener(FolderChangeListener listener) {
+		changeListeners.add(listener);
+	}
+
+	@Override
+	public void removeFolderChangeListener(FolderChangeListener listener) {
+		changeListeners.remove(listener);
+	}
+
+	private void folderChanged(String folderId) {
+		for (FolderChangeListener l : changeListeners) {
+			l.onFolderChanged(folderId);
+		}
+	}
+
+	private void foldersChanged(Collection<String> folderIds) {
+		if (changeListeners.isEmpty()) return;
+		for (String folderId : folderIds) {
+			folderChanged(folderId);
+		}
 	}
 
 	@Override
@@ -54,16 +129,9 @@ public class DataServiceImpl implements DataService {
 		return true;
 	}
 
+	// Add DateStamp for shard in DB, the YYMMDD.
 	private long reserveChildId(String folderId) {
-		long newId = dataStore.reserveChildId(folderId);
-
-		// Add DateStamp for shard in DB, the MMDD.
-		Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
-		int stamp = cal.get(Calendar.YEAR) % 100 * 10000
-				+ (cal.get(Calendar.MONTH) + 1) * 100
-				+ cal.get(Calendar.DAY_OF_MONTH);
-
-		return newId * 1000000 + stamp;
+		return idGenerator.nextStamped(folderId);
 	}
 
 	@Override
@@ -85,7 +153,7 @@ public class DataServiceImpl implements DataService {
 	}
 	
 	public String store(String folderId, Meta meta, boolean changeUnread){
-		String user = new FolderID(folderId).prefix;
+		String user = FolderID.of(folderId).prefix;
 		
 		String dataFolderId = null;
 		if (meta.hasSpanId() ) {
@@ -101,32 +169,32 @@ public class DataServiceImpl implements DataService {
 		String msgId = FolderChild.generateId(folderId, childId);
 		Meta newMeta = Meta.newBuilder(meta).setId(msgId).build();
 
-		dataStore.addMetaMessage(newMeta);
-		
-		if (dataFolderId != null) {
-			addChildToFolder(dataFolderId, childIdStr, childId);
-		} else {
-			addChildToFolder(folderId, childIdStr, childId);
-		}
+		// Writes of the message are pipelined, which takes one round trip on remote stores
+		DataStorePipeline pipeline = dataStore.pipelined();
+		pipeline.addMetaMessage(newMeta);
+		pipeline.addChild(dataFolderId != null ? dataFolderId : folderId, childIdStr, childId, childLimit);
 
+		String rootId = FolderID.onRoot(user);
+		DataStorePipeline.Response<Boolean> isInRoot = null;
 		if (changeUnread) {
-			int changeNum = dataStore.numberOfFolderChanges(folderId);
-			if( changeNum >= changeLimit ){
-				dataStore.removeFolderChanges(folderId, changeNum+1-changeLimit);
-			}
-			dataStore.addFolderChange(folderId, new FolderChange(childIdStr, true));
-			fixRootFolder(folderId, user, true);
+			pipeline.addFolderChange(folderId, new FolderChange(childIdStr, true), changeLimit);
+			pipeline.addFolderChange(rootId, new FolderChange(folderId, true), 0);
+			isInRoot = pipeline.isChild(folderId, rootId);
+		}
+		pipeline.sync();
+		//The receiver is about to read it
+		if( null != metaCache ) metaCache.put(newMeta);
+		if (changeUnread) {
+			folderChanged(folderId);
+			folderChanged(rootId);
 		}
 
-		return msgId;
-	}
-	
-	private void addChildToFolder(String folderId, String childIdStr, long childId){
-		int childNum = dataStore.numberOfChildren(folderId);
-		if( childNum >= childLimit ){
-			dataStore.removeChildren(folderId, childNum+1-childLimit);
+		// Same as fixRootFolder, but the folder is seldom new to the root
+		if (null != isInRoot && !isInRoot.get()) {
+			dataStore.addChild(rootId, folderId, reserveChildId(rootId));
 		}
-		dataStore.addChild(folderId, childIdStr, childId);
+
+		return msgId;
 	}
 		
 	@Override
@@ -171,12 +239,12 @@ public class DataServiceImpl implements DataService {
 		String msgId = FolderChild.generateId(chatHistoryFolderId, childId);
 		Meta newMeta = Meta.newBuilder(meta).setId(msgId).build();
 
-		dataStore.addMetaMessage(newMeta);
-		if (dataFolderId != null) {
-			addChildToFolder(dataFolderId, childIdStr, childId);
-		} else {
-			addChildToFolder(chatHistoryFolderId, childIdStr, childId);
-		}
+		DataStorePipeline pipeline = dataStore.pipelined();
+		pipeline.addMetaMessage(newMeta);
+		pipeline.addChild(dataFolderId != null ? dataFolderId : chatHistoryFolderId, childIdStr, childId, childLimit);
+		pipeline.sync();
+		//The members are about to read it
+		if( null != metaCache ) metaCache.put(newMeta);
 
 		return childIdStr;
 	}
@@ -196,22 +264,164 @@ public class DataServiceImpl implements DataService {
 	
 	@Override
 	public Meta getMetaMessage(String id) {
-		return dataStore.getMetaMessage(id);
+		if( null == metaCache ) return dataStore.getMetaMessage(id);
+		
+		Meta msg = metaCache.get(id);
+		if( null == msg ){
+			//Not cached again if removed meanwhile
+			long stamp = metaCache.stamp(id);
+			msg = dataStore.getMetaMessage(id);
+			if( null != msg ) metaCache.fill(msg, stamp);
+		}
+		return msg;
+	}
+	
+	@Override
+	public List<Meta> getMetaMessages(List<String> ids) {
+		if( null == metaCache ) return dataStore.getMetaMessages(ids);
+		
+		List<Meta> msgs = new ArrayList<Meta>(ids.size());
+		List<String> missedIds = null;
+		for( String id : ids ){
+			Meta msg = metaCache.get(id);
+			if( null == msg ){
+				if( null == missedIds ) missedIds = new ArrayList<String>();
+				missedIds.add(id);
+			}
+			msgs.add(msg);
+		}
+		if( null == missedIds ) return msgs;
+		
+		//Fill the missed ones by one batch, not cached again if removed meanwhile
+		long[] stamps = new long[missedIds.size()];
+		for( int k = 0; k < stamps.length; k++ ){
+			stamps[k] = metaCache.stamp(missedIds.get(k));
+		}
+		List<Meta> missed = dataStore.getMetaMessages(missedIds);
+		int j = 0;
+		for( int i = 0; i < msgs.size(); i++ ){
+			if( null != msgs.get(i) ) continue;
+			Meta msg = missed.get(j);
+			if( null != msg ){
+				metaCache.fill(msg, stamps[j]);
+				msgs.set(i, msg);
+			}
+			j++;
+		}
+		return msgs;
+	}
+	
+	@Override
+	public boolean removeMetaMessage(Meta msg) {
+		boolean ret = dataStore.removeMetaMessage(msg);
+		if( null != metaCache ) metaCache.invalidate(msg.getId());
+		return ret;
 	}
 
+	/*
+	 * The slices with md5 are stored by content, shared by the files, and the file keeps the md5 only.
+	 * A slice of md5 without data refers to the stored content, so a forwarded file is not sent again:
+	 * the ones not stored are responded for the client to send with data.
+	 * The md5 of the slices are checked in parallel, the mismatched ones are responded to send again.
+	 * A file refers to a content once however many times its slices are sent, until removeFile().
+	 * The content the store can not take, e.g. too large, is kept in the file as the slice without md5 is.
+	 */
 	@Override
 	public FileData store(FileData file) {
-		return dataStore.storeFile(file);
+		FileData.Builder stored = FileData.newBuilder().setId(file.getId());
+		Map<Integer, DataSlice> wanted = null;
+		List<DataSlice> slices = file.getSliceList();
+		BitSet mismatched = verifier.verify(slices);
+		for( int i = mismatched.nextSetBit(0); i >= 0; i = mismatched.nextSetBit(i+1) ){
+			DataSlice bad = slices.get(i);
+			log.warn("Mismatched md5 of slice "+bad.getIndex()+" in file "+file.getId());
+			if( null == wanted ) wanted = new TreeMap<Integer, DataSlice>();
+			wanted.put(bad.getIndex(), bad.toBuilder().clearData().build());
+		}
+		
+		for( int i = 0; i < slices.size(); i++ ){
+			DataSlice slice = slices.get(i);
+			if( !slice.hasMd5() ){
+				stored.addSlice(slice);
+			}else if( FileDataHelper.isReference(slice) ){
+				if( dataStore.retainSliceContent(slice.getMd5(), file.getId(), null) ){
+					stored.addSlice(slice);
+				}else{
+					if( null == wanted ) wanted = new TreeMap<Integer, DataSlice>();
+					wanted.put(slice.getIndex(), slice);
+				}
+			}else if( !mismatched.get(i) ){
+				if( dataStore.retainSliceContent(slice.getMd5(), file.getId(), slice.getData()) ){
+					stored.addSlice( slice.toBuilder().clearData() );
+				}else{
+					stored.addSlice(slice);
+				}
+			}
+		}
+		
+		FileData.Builder resp = FileData.newBuilder().setId(file.getId());
+		//Nothing taken, which is not an empty file
+		if( stored.getSliceCount() == 0 && file.getSliceCount() > 0 ){
+			return null == wanted ? resp.build() : resp.addAllSlice(wanted.values()).build();
+		}
+		
+		FileData missing = dataStore.storeFile(stored.build());
+		if( null == wanted ) return missing;
+		for( DataSlice s : missing.getSliceList() ){
+			if( !wanted.containsKey(s.getIndex()) ) wanted.put(s.getIndex(), s);
+		}
+		return resp.addAllSlice(wanted.values()).build();
+	}
+
+	@Override
+	public boolean removeFile(String fileId) {
+		FileData file = dataStore.getFileById(fileId);
+		if( null == file ) return false;
+		for( DataSlice slice : file.getSliceList() ){
+			if( FileDataHelper.isReference(slice) ) dataStore.releaseSliceContent(slice.getMd5(), fileId);
+		}
+		return dataStore.removeFile(fileId);
 	}
 
 	@Override
 	public FileData getFileByIndex(FileData index) {
-		return dataStore.getFileByIndex(index);
+		return resolveContents( dataStore.getFileByIndex(index) );
 	}
 
 	@Override
 	public FileData getFileById(String fileId) {
-		return dataStore.getFileById(fileId);
+		return resolveContents( dataStore.getFileById(fileId) );
+	}
+	
+	//Fill in the data of the slices stored by content
+	private FileData resolveContents(FileData file) {
+		if( null == file ) return null;
+		
+		List<String> md5s = null;
+		for( DataSlice slice : file.getSliceList() ){
+			if( !FileDataHelper.isReference(slice) ) continue;
+			if( null == md5s ) md5s = new ArrayList<String>();
+			md5s.add(slice.getMd5());
+		}
+		if( null == md5s ) return file;
+		
+		List<ByteString> contents = dataStore.getSliceContents(md5s);
+		FileData.Builder builder = FileData.newBuilder().setId(file.getId());
+		int i = 0;
+		for( DataSlice slice : file.getSliceList() ){
+			if( !FileDataHelper.isReference(slice) ){
+				builder.addSlice(slice);
+				continue;
+			}
+			
+			ByteString content = contents.get(i++);
+			if( null == content ){
+				log.warn("Missing content of slice "+slice.getIndex()+" in file "+file.getId());
+				continue;
+			}
+			builder.addSlice( slice.toBuilder().setData(content) );
+		}
+		return builder.build();
 	}
 
 	@Override
@@ -233,8 +443,7 @@ public class DataServiceImpl implements DataService {
 	@Override
 	public boolean cleanupSynchronizedChanges(String folderId, String syncKey) {
 		if (!SyncKey.isEmpty(syncKey)) {
-			String changeStr = SyncKey.getChangeString(syncKey);
-			FolderChange change = FolderChange.fromString(changeStr);
+			FolderChange change = SyncKey.getChange(syncKey);
 			dataStore.removePrecedingFolderChange(folderId, change);
 		}
 		return true;
@@ -285,6 +494,7 @@ public class DataServiceImpl implements DataService {
 	@Override
 	public boolean removeFolder(String username, String folderId) {
 		dataStore.destroyFolder(folderId);
+		idGenerator.forget(folderId);
 		return dataStore.removeChild(FolderID.onRoot(username), folderId);
 	}
 
@@ -311,17 +521,20 @@ public class DataServiceImpl implements DataService {
 
 		dataStore.createFolder(memberPropId);
 		// TODO change the score?
-		dataStore.addChild(memberPropId, creator, 0);
-		// FIXME batch operations
+		List<FolderChild> children = new ArrayList<FolderChild>(members.size() + 1);
+		children.add(new FolderChild(creator, 0));
 		for (String m : members) {
-			dataStore.addChild(memberPropId, m, 1);
+			children.add(new FolderChild(m, 1));
 		}
+		dataStore.addChildren(memberPropId, children);
 
-		fixRootFolder(memberPropId, creator, false);
 		// also broadcast to members
+		Map<String, String> folderByUser = new HashMap<String, String>();
+		folderByUser.put(creator, memberPropId);
 		for (String m : members) {
-			fixRootFolder(memberPropId, m, false);
+			folderByUser.put(m, memberPropId);
 		}
+		fixRootFolders(folderByUser, false);
 
 		return groupId;
 	}
@@ -348,15 +561,6 @@ public class DataServiceImpl implements DataService {
 		return dataStore.isChild(username, Group.memberFolderId(groupId));
 	}
 
-	private void sendNoticeToGroupMember(String groupId, String fromUser, String msgId, String toUser){
-		String convId = FolderID.onGroup(toUser, groupId);
-		if (!toUser.equals(fromUser)) {
-			// Change unread if not sender
-			dataStore.addFolderChange(convId, new FolderChange(msgId, true));
-			fixRootFolder(convId, toUser, true);
-		}
-	}
-	
 	private void fixRootFolder(String folderId, String username, boolean checkExistence){
 		String rootId = FolderID.onRoot(username);
 		if( !checkExistence || !dataStore.isChild(folderId, rootId) ){
@@ -364,15 +568,69 @@ public class DataServiceImpl implements DataService {
 			dataStore.addChild(rootId, folderId, childFolderId);
 		}
 		dataStore.addFolderChange(rootId, new FolderChange(folderId, true));
+		folderChanged(rootId);
 	}
+
+	/*
+	 * Batch version of fixRootFolder, @Param:folderByUser is the folder to fix keyed by username
+	 */
+	private void fixRootFolders(Map<String, String> folderByUser, boolean checkExistence){
+		if( folderByUser.isEmpty() ) return;
+
+		Map<String, String> folderByRoot = new HashMap<String, String>();
+		for (Map.Entry<String, String> e : folderByUser.entrySet()) {
+			folderByRoot.put(FolderID.onRoot(e.getKey()), e.getValue());
+		}
+
+		List<String> missingRoots;
+		if( checkExistence ){
+			missingRoots = new ArrayList<String>();
+			for (Map.Entry<String, Boolean> e : dataStore.isChildMulti(folderByRoot).entrySet()) {
+				if( !e.getValue() ) missingRoots.add(e.getKey());
+			}
+		}else{
+			missingRoots = new ArrayList<String>(folderByRoot.keySet());
+		}
+
+		if( !missingRoots.isEmpty() ){
+			Map<String, FolderChild> children = new HashMap<String, FolderChild>();
+			for (Map.Entry<String, Long> e : dataStore.reserveChildIds(missingRoots).entrySet()) {
+				String rootId = e.getKey();
+				children.put(rootId, new FolderChild(folderByRoot.get(rootId), ChildIdGenerator.stamp(e.getValue())));
+			}
+			dataStore.addChildren(children);
+		}
+
+		Map<String, FolderChange> changes = new HashMap<String, FolderChange>();
+		for (Map.Entry<String, String> e : folderByRoot.entrySet()) {
+			changes.put(e.getKey(), new FolderChange(e.getValue(), true));
+		}
+		dataStore.addFolderChanges(changes);
+		foldersChanged(changes.keySet());
+	}
+
 	@Override
 	public boolean broadcastNewMessage(String groupId, String fromUser,
 			String msgId) {
-		// broadcast to members
-		SortedSet<FolderChild> members = members(groupId);
+		return broadcastNewMessage(groupId, fromUser, msgId, members(groupId));
+	}
+
+	@Override
+	public boolean broadcastNewMessage(String groupId, String fromUser,
+			String msgId, Collection<FolderChild> members) {
+		// broadcast to members, change unread if not sender
+		Map<String, FolderChange> changes = new HashMap<String, FolderChange>();
+		Map<String, String> convByUser = new HashMap<String, String>();
 		for (FolderChild fc : members) {
-			sendNoticeToGroupMember(groupId, fromUser, msgId, fc.id);
+			if (fc.id.equals(fromUser)) continue;
+
+			String convId = FolderID.onGroup(fc.id, groupId);
+			changes.put(convId, new FolderChange(msgId, true));
+			convByUser.put(fc.id, convId);
 		}
+		dataStore.addFolderChanges(changes);
+		foldersChanged(changes.keySet());
+		fixRootFolders(convByUser, true);
 		return true;
 	}
 
@@ -380,13 +638,19 @@ public class DataServiceImpl implements DataService {
 	public boolean broadcastMemberChange(String groupId, GroupOperationType type, String affectedUser) {
 		String memberPropId = Group.memberFolderId(groupId);
 		SortedSet<FolderChild> members = members(groupId);
-		for (FolderChild fc : members) {
-			if( type.equals(GroupOperationType.addMember) ){
-				fixRootFolder( memberPropId, fc.id, false);
-			}else{
-				String rootId = FolderID.onRoot(fc.id);
-				dataStore.addFolderChange(rootId,new FolderChange(memberPropId, true));
+		if( type.equals(GroupOperationType.addMember) ){
+			Map<String, String> folderByUser = new HashMap<String, String>();
+			for (FolderChild fc : members) {
+				folderByUser.put(fc.id, memberPropId);
+			}
+			fixRootFolders(folderByUser, false);
+		}else{
+			Map<String, FolderChange> changes = new HashMap<String, FolderChange>();
+			for (FolderChild fc : members) {
+				changes.put(FolderID.onRoot(fc.id), new FolderChange(memberPropId, true));
 			}
+			dataStore.addFolderChanges(changes);
+			foldersChanged(changes.keySet());
 		}
 		
 		if( type.equals(GroupOperationType.removeMember)
@@ -431,7 +695,7 @@ public class DataServiceImpl implements DataService {
 	 * Return the folder ID which stores the meta message
 	 */
 	private String getStoreFolderId(String folderId){
-		FolderID fid = new FolderID(folderId);
+		FolderID fid = FolderID.of(folderId);
 		if( fid.type.equals( FolderID.Type.Group ) ){
 			return Group.historyFolderId( FolderID.getGroup(fid) );
 		}
@@ -0,0 +1,6 @@
+package com.weibo.wesync;
+
+public interface FolderChangeListener {
+	//Called after the change is written, in the writer's thread, so it should return soon
+	public void onFolderChanged(String folderId);
+}
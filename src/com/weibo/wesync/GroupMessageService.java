@@ -1,5 +1,7 @@
 package com.weibo.wesync;
 
+import java.util.concurrent.TimeUnit;
+
 import com.weibo.wesync.data.GroupOperationType;
 
 
@@ -13,4 +15,7 @@ public interface GroupMessageService {
 	//broadcast successful operations on group, the extend is additional message for notice to client,
 	//e.g. extend is the affected username when group member changes 
 	public void broadcast(String groupId, GroupOperationType type, String extend);
+	
+	//Stop accepting broadcasts and wait for the queued ones, @Return false on timeout
+	public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException;
 }
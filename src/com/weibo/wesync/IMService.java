@@ -4,8 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.inject.Inject;
-import com.google.protobuf.ByteString;
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
 import com.weibo.wesync.data.FolderID;
 import com.weibo.wesync.data.WeSyncMessage.SyncReq;
 
@@ -20,22 +19,17 @@ public class IMService implements CommandListener {
 	}
 
 	@Override
-	public boolean handle(Command comm, ByteString data) {
+	public boolean handle(Command comm, MessageLite req) {
 		log.debug("Heard about command: "+comm);
-		if( comm.equals(Command.Sync) ){
-			try {
-				return handleSync(SyncReq.parseFrom(data));
-			} catch (InvalidProtocolBufferException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+		if( comm.equals(Command.Sync) && req instanceof SyncReq ){
+			return handleSync((SyncReq) req);
 		}
 		
 		return false;
 	}
 
 	private boolean handleSync(SyncReq req) {
-		FolderID folderId = new FolderID( req.getFolderId() );
+		FolderID folderId = FolderID.of( req.getFolderId() );
 		
 		//TODO group support
 		
@@ -0,0 +1,385 @@
+package com.weibo.wesync;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.weibo.wesync.data.WeSyncMessage.Meta;
+import com.weibo.wesync.data.WeSyncMessage.Notice;
+import com.weibo.wesync.data.WeSyncMessage.Unread;
+import com.weibo.wesync.metrics.LatencyHistogram;
+
+/**
+ * Sends the notices by NoticeService out of the request thread.
+ *
+ * Users are hashed to lanes, each lane has one thread and a bounded queue, so the notices
+ * to the same user keep their order. What to do with a full lane is decided by the RejectPolicy.
+ * Without lanes, the notices are sent in the caller's thread, which is for tests.
+ *
+ * With coalescing, a notice to the user who has one waiting in the queue is merged into the
+ * waiting one instead of taking another place. The window holds the notice in the queue for
+ * a while to merge the following ones of a chat burst, until the window ends or the notice
+ * has merged enough ones. So a burst of messages results in one push to the user.
+ */
+@Singleton
+public class NoticeDispatcher {
+	private final Logger log = LoggerFactory.getLogger(NoticeDispatcher.class);
+
+	public enum RejectPolicy {
+		//Wait for the room in the lane
+		BLOCK,
+		//Drop the notice, the client will get the unread on next sync anyway
+		DROP,
+		//Send in the caller's thread, the order to the user is not kept
+		CALLER_RUNS
+	}
+
+	public static class Options {
+		public int lanes = 32;
+		public int queueCapacity = 4096;
+		public RejectPolicy rejectPolicy = RejectPolicy.DROP;
+		public boolean coalesce = true;
+		//How long a notice waits for the following ones to merge, 0 for no waiting
+		public long coalesceWindowMillis = 0;
+		//Send the notice once it has merged so many ones, 0 for no limit
+		public int coalesceMaxNotices = 0;
+		//null for daemon platform threads, see virtualThreadFactory()
+		public ThreadFactory threadFactory = null;
+	}
+
+	/*
+	 * Notice to send, which accumulates the merged ones and is built only once on sending:
+	 * the later unread number of the same folder wins, the messages and expected acks are accumulated.
+	 */
+	private static final class Entry {
+		final String username;
+		final long enqueueNanos = System.nanoTime();
+		private Notice notice;
+		private Map<String, Unread> unreads;
+		private Map<String, Meta> messages;
+		private Set<String> acks;
+		int notices = 1;
+		//Full or the window ends, no more merging
+		boolean closed = false;
+
+		Entry(String username, Notice notice) {
+			this.username = username;
+			this.notice = notice;
+		}
+
+		private void add(Notice n) {
+			for (Unread u : n.getUnreadList()) {
+				unreads.remove(u.getFolderId());
+				unreads.put(u.getFolderId(), u);
+			}
+			for (Meta m : n.getMessageList()) {
+				messages.put(m.getId(), m);
+			}
+			acks.addAll(n.getExpectAckList());
+		}
+
+		void merge(Notice n) {
+			if (null != notice) {
+				unreads = new LinkedHashMap<String, Unread>();
+				messages = new LinkedHashMap<String, Meta>();
+				acks = new LinkedHashSet<String>();
+				add(notice);
+				notice = null;
+			}
+			add(n);
+			notices++;
+		}
+
+		Notice build() {
+			if (null == notice) {
+				notice = Notice.newBuilder()
+						.addAllUnread(unreads.values())
+						.addAllMessage(messages.values())
+						.addAllExpectAck(acks)
+						.build();
+				unreads = null;
+				messages = null;
+				acks = null;
+			}
+			return notice;
+		}
+	}
+
+	private final NoticeService noticeService;
+	private final RejectPolicy rejectPolicy;
+	private final boolean coalesce;
+	private final long windowNanos;
+	private final int maxNotices;
+	private final int queueCapacity;
+	private final Lane[] lanes;
+
+	/**
+	 * Metrics, the latency is from dispatch() to the finish of send()
+	 */
+	private final AtomicLong dispatched = new AtomicLong(0);
+	private final AtomicLong sent = new AtomicLong(0);
+	private final AtomicLong failed = new AtomicLong(0);
+	private final AtomicLong rejected = new AtomicLong(0);
+	private final AtomicLong coalesced = new AtomicLong(0);
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	@Inject
+	public NoticeDispatcher(NoticeService noticeService) {
+		this(noticeService, new Options());
+	}
+
+	public NoticeDispatcher(NoticeService noticeService, Options options) {
+		this.noticeService = noticeService;
+		this.rejectPolicy = options.rejectPolicy;
+		this.coalesce = options.coalesce;
+		this.windowNanos = coalesce ? TimeUnit.MILLISECONDS.toNanos(options.coalesceWindowMillis) : 0;
+		this.maxNotices = options.coalesceMaxNotices;
+		this.queueCapacity = options.queueCapacity;
+		this.lanes = new Lane[options.lanes];
+		for (int i = 0; i < lanes.length; i++) {
+			lanes[i] = new Lane();
+			Thread t;
+			if (null == options.threadFactory) {
+				t = new Thread(lanes[i], "notice-dispatch-" + i);
+				t.setDaemon(true);
+			} else {
+				t = options.threadFactory.newThread(lanes[i]);
+			}
+			lanes[i].thread = t;
+			t.start();
+		}
+	}
+
+	/**
+	 * Factory of virtual threads on Java 21 or later, on which the lanes are cheap
+	 * enough to be one per hundreds of users
+	 */
+	public static ThreadFactory virtualThreadFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method name = Class.forName("java.lang.Thread$Builder").getMethod("name", String.class, long.class);
+			builder = name.invoke(builder, "notice-dispatch-", 0L);
+			return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+		} catch (Exception e) {
+			throw new UnsupportedOperationException("Virtual threads are not supported by this JVM", e);
+		}
+	}
+
+	//Merge the notices to the same user, see Entry
+	public static Notice merge(Notice older, Notice newer) {
+		Entry e = new Entry(null, older);
+		e.merge(newer);
+		return e.build();
+	}
+
+	private final class Lane implements Runnable {
+		private final ArrayDeque<Entry> queue = new ArrayDeque<Entry>();
+		//Entries open to merge by username, for coalescing
+		private final Map<String, Entry> waiting = new HashMap<String, Entry>();
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition notEmpty = lock.newCondition();
+		private final Condition notFull = lock.newCondition();
+		private boolean stopped = false;
+		Thread thread;
+
+		//@Return false if the caller should send it by itself
+		boolean offer(String username, Notice notice) throws InterruptedException {
+			lock.lock();
+			try {
+				if (coalesce) {
+					Entry e = waiting.get(username);
+					if (null != e) {
+						e.merge(notice);
+						coalesced.incrementAndGet();
+						if (maxNotices > 0 && e.notices >= maxNotices) {
+							close(e);
+							if (queue.peek() == e) notEmpty.signal();
+						}
+						return true;
+					}
+				}
+
+				while (queue.size() >= queueCapacity && !stopped) {
+					switch (rejectPolicy) {
+					case BLOCK:
+						notFull.await();
+						break;
+					case DROP:
+						rejected.incrementAndGet();
+						return true;
+					default:
+						rejected.incrementAndGet();
+						return false;
+					}
+				}
+				if (stopped) {
+					rejected.incrementAndGet();
+					return true;
+				}
+
+				Entry e = new Entry(username, notice);
+				queue.add(e);
+				if (coalesce) waiting.put(username, e);
+				notEmpty.signal();
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void close(Entry e) {
+			if (!e.closed) {
+				e.closed = true;
+				waiting.remove(e.username);
+			}
+		}
+
+		int size() {
+			lock.lock();
+			try {
+				return queue.size();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void stop() {
+			lock.lock();
+			try {
+				stopped = true;
+				notEmpty.signalAll();
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				Entry e;
+				lock.lock();
+				try {
+					while (true) {
+						e = queue.peek();
+						if (null == e) {
+							//Drain the queue before stopping
+							if (stopped) return;
+							notEmpty.awaitUninterruptibly();
+							continue;
+						}
+
+						//The head is the oldest, the ones behind it wait for it
+						long wait = e.enqueueNanos + windowNanos - System.nanoTime();
+						if (e.closed || wait <= 0 || stopped) break;
+						try {
+							notEmpty.awaitNanos(wait);
+						} catch (InterruptedException ie) {
+							// Go on with the loop
+						}
+					}
+
+					queue.poll();
+					close(e);
+					notFull.signal();
+				} finally {
+					lock.unlock();
+				}
+				send(e);
+			}
+		}
+	}
+
+	private void send(Entry e) {
+		try {
+			noticeService.send(e.username, e.build());
+			sent.incrementAndGet();
+		} catch (RuntimeException ex) {
+			failed.incrementAndGet();
+			log.error("Failed to send notice to " + e.username + " : " + ex.getMessage(), ex);
+		}
+		latency.record((System.nanoTime() - e.enqueueNanos) / 1000);
+	}
+
+	public void dispatch(String username, Notice notice) {
+		dispatched.incrementAndGet();
+		if (lanes.length == 0) {
+			send(new Entry(username, notice));
+			return;
+		}
+
+		Lane lane = lanes[(username.hashCode() & Integer.MAX_VALUE) % lanes.length];
+		try {
+			if (lane.offer(username, notice)) return;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			rejected.incrementAndGet();
+			return;
+		}
+		send(new Entry(username, notice));
+	}
+
+	/**
+	 * Stop accepting notices and wait for the queued ones to be sent, return false on timeout
+	 */
+	public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+		for (Lane lane : lanes) {
+			lane.stop();
+		}
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (Lane lane : lanes) {
+			long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (left <= 0) return false;
+			lane.thread.join(left);
+			if (lane.thread.isAlive()) return false;
+		}
+		return true;
+	}
+
+	public int getQueueDepth() {
+		int depth = 0;
+		for (Lane lane : lanes) {
+			depth += lane.size();
+		}
+		return depth;
+	}
+
+	public long getDispatchedCount() {
+		return dispatched.get();
+	}
+
+	public long getSentCount() {
+		return sent.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	//In microseconds
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+}
@@ -0,0 +1,6 @@
+package com.weibo.wesync;
+
+public interface ResponseCallback {
+	//The response as request() returns it, null if failed
+	public void onResponse(byte[] response);
+}
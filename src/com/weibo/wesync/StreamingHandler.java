@@ -0,0 +1,20 @@
+package com.weibo.wesync;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.google.protobuf.CodedInputStream;
+
+/**
+ * Handler which writes the response piece by piece to the output, instead of building it as a whole,
+ * so the memory taken by a large response is bounded by the piece.
+ */
+public interface StreamingHandler {
+	/**
+	 * The response written is the same as the message returned by handleMessage() in bytes,
+	 * it might be partial if failed in the middle.
+	 * @Return the bytes of the response written
+	 * @throws IOException only by writing the output
+	 */
+	public int handleStream(String username, WeSyncURI uri, CodedInputStream data, OutputStream out) throws IOException;
+}
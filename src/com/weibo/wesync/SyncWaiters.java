@@ -0,0 +1,249 @@
+package com.weibo.wesync;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Registry of the sync requests parked on their folders, until a change comes to the folder
+ * or the timeout, so the clients long-poll instead of polling with empty syncs.
+ *
+ * A parked request holds no thread, it is an entry of the folder here with its timeout on
+ * the timer thread. It is resumed once, by the first of the change and the timeout, on the
+ * executor. Only the changes made through the DataService of this process are seen, the ones
+ * by the other servers on the same store are picked up on the timeout.
+ *
+ * It listens to the DataService from construction until shutdown(), which also stops its threads
+ * and expires the parked ones, so every task is run once.
+ */
+@Singleton
+public class SyncWaiters implements FolderChangeListener {
+	private final Logger log = LoggerFactory.getLogger(SyncWaiters.class);
+
+	public final class Waiter {
+		private final String folderId;
+		private final Runnable task;
+		private final AtomicBoolean done = new AtomicBoolean(false);
+		private volatile ScheduledFuture<?> timeout;
+
+		Waiter(String folderId, Runnable task) {
+			this.folderId = folderId;
+			this.task = task;
+		}
+
+		/**
+		 * Run the task on the executor now, if not yet
+		 * @Return false if it has been resumed or cancelled
+		 */
+		public boolean resume() {
+			if (!finish()) return false;
+			resumed.incrementAndGet();
+			execute(task);
+			return true;
+		}
+
+		//@Return false if it has been resumed or cancelled
+		public boolean cancel() {
+			return finish();
+		}
+
+		public boolean isDone() {
+			return done.get();
+		}
+
+		private boolean finish() {
+			if (!done.compareAndSet(false, true)) return false;
+			ScheduledFuture<?> t = timeout;
+			if (null != t) t.cancel(false);
+			unpark(this);
+			parked.decrementAndGet();
+			return true;
+		}
+
+		private void expire() {
+			if (!finish()) return;
+			timeouts.incrementAndGet();
+			execute(task);
+		}
+	}
+
+	//Closed once taken out of the registry, then the waiters go to a new one
+	private static final class Folder {
+		final List<Waiter> waiters = new ArrayList<Waiter>(2);
+		boolean closed = false;
+	}
+
+	private final ConcurrentMap<String, Folder> folders = new ConcurrentHashMap<String, Folder>();
+	private final DataService dataService;
+	private final ScheduledThreadPoolExecutor timer;
+	private final Executor executor;
+	//Null if the executor is given by the caller
+	private final ExecutorService ownExecutor;
+
+	/**
+	 * Metrics
+	 */
+	private final AtomicInteger parked = new AtomicInteger(0);
+	private final AtomicLong resumed = new AtomicLong(0);
+	private final AtomicLong timeouts = new AtomicLong(0);
+
+	@Inject
+	public SyncWaiters(DataService dataService) {
+		this(dataService, null);
+	}
+
+	//@Param:executor where the resumed requests run, null for a pool of the cores
+	public SyncWaiters(DataService dataService, Executor executor) {
+		this.dataService = dataService;
+		this.timer = new ScheduledThreadPoolExecutor(1, daemonThreads("sync-wait-timer-"));
+		this.timer.setRemoveOnCancelPolicy(true);
+		if (null == executor) {
+			this.ownExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), daemonThreads("sync-resume-"));
+			this.executor = ownExecutor;
+		} else {
+			this.ownExecutor = null;
+			this.executor = executor;
+		}
+		dataService.addFolderChangeListener(this);
+	}
+
+	private static ThreadFactory daemonThreads(final String prefix) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger(0);
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, prefix + count.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	private void execute(Runnable task) {
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			//Parked while shutting down, run here or the client gets no response
+			log.warn("Resume the sync on the caller: " + e.getMessage());
+			task.run();
+		}
+	}
+
+	/**
+	 * Park the task on the folder until a change comes or @Param:timeoutMillis passes.
+	 * The caller should check the folder after parking and resume() it if there are changes already,
+	 * otherwise the change between the check and the parking is missed until the timeout.
+	 */
+	public Waiter park(String folderId, long timeoutMillis, Runnable task) {
+		Waiter w = new Waiter(folderId, task);
+		parked.incrementAndGet();
+		while (true) {
+			Folder f = folders.get(folderId);
+			if (null == f) {
+				Folder newFolder = new Folder();
+				f = folders.putIfAbsent(folderId, newFolder);
+				if (null == f) f = newFolder;
+			}
+			synchronized (f) {
+				if (f.closed) continue;
+				f.waiters.add(w);
+				break;
+			}
+		}
+
+		final Waiter waiter = w;
+		try {
+			w.timeout = timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					waiter.expire();
+				}
+			}, timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			//Shut down, missed by the draining of shutdown()
+			w.expire();
+			return w;
+		}
+		//Resumed before the timeout is set
+		if (w.isDone()) w.timeout.cancel(false);
+		return w;
+	}
+
+	private void unpark(Waiter w) {
+		Folder f = folders.get(w.folderId);
+		if (null == f) return;
+		synchronized (f) {
+			if (f.closed) return;
+			f.waiters.remove(w);
+			if (f.waiters.isEmpty()) {
+				f.closed = true;
+				folders.remove(w.folderId, f);
+			}
+		}
+	}
+
+	//Take the waiters out of the registry, the ones parked later go to a new folder
+	private List<Waiter> take(String folderId) {
+		Folder f = folders.remove(folderId);
+		if (null == f) return Collections.<Waiter>emptyList();
+		synchronized (f) {
+			f.closed = true;
+			return new ArrayList<Waiter>(f.waiters);
+		}
+	}
+
+	@Override
+	public void onFolderChanged(String folderId) {
+		for (Waiter w : take(folderId)) {
+			w.resume();
+		}
+	}
+
+	/**
+	 * Stop listening to the changes and stop the threads, the parked ones are expired and run once.
+	 * The timer is stopped first, so a waiter parked meanwhile is either drained here or expired by park().
+	 */
+	public void shutdown() {
+		dataService.removeFolderChangeListener(this);
+		timer.shutdownNow();
+		for (String folderId : folders.keySet()) {
+			for (Waiter w : take(folderId)) {
+				w.expire();
+			}
+		}
+		if (null != ownExecutor) ownExecutor.shutdown();
+	}
+
+	public int getParkedCount() {
+		return parked.get();
+	}
+
+	//By the changes, or by the caller finding changes after parking
+	public long getResumedCount() {
+		return resumed.get();
+	}
+
+	public long getTimeoutCount() {
+		return timeouts.get();
+	}
+}
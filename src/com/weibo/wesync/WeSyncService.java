@@ -1,5 +1,12 @@
 package com.weibo.wesync;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import com.weibo.wesync.metrics.CommandMetrics;
+
 /**
  * @author Eric Liang
  *
@@ -7,6 +14,21 @@ package com.weibo.wesync;
 public interface WeSyncService extends CommandHandler{
 	public byte version();
 	public byte[] request(String username, byte[] uriData, byte[] bodyData);
+	/**
+	 * Request on buffers without byte[] copies, the response is written to the output,
+	 * piece by piece by the StreamingHandler, e.g. GetFile. The response might be partial if failed
+	 * in the middle of the streaming. The positions of the buffers are not changed.
+	 * @Return the bytes of the response written, -1 if failed to process the request
+	 * @throws IOException only by writing the output
+	 */
+	public int request(String username, ByteBuffer uriData, ByteBuffer bodyData, OutputStream out) throws IOException;
+	/**
+	 * Long-polling request: a Sync which would get no changes is parked on the folder until a change
+	 * comes or @Param:waitMillis passes, without holding a thread, see SyncWaiters. The others are
+	 * handled at once in the caller's thread, as request() does.
+	 * The callback is called once with the response, in the caller's thread or the one resuming the sync.
+	 */
+	public void requestAsync(String username, byte[] uriData, byte[] bodyData, long waitMillis, ResponseCallback callback);
 	
 	public boolean registerCommandListener(CommandListener listener);
 	public CommandListener getCommandListener(); 
@@ -20,6 +42,19 @@ public interface WeSyncService extends CommandHandler{
 	
 	public DataService getDataService();
 	public NoticeService getNoticeService();
+	//Send notices asynchronously by the NoticeService
+	public NoticeDispatcher getNoticeDispatcher();
+	//The parked syncs of requestAsync()
+	public SyncWaiters getSyncWaiters();
+	/**
+	 * Stop the threads of the group broadcasts, the notice dispatcher and the sync waiters, waiting for
+	 * the queued broadcasts and notices,
+	 * @Return false on timeout
+	 */
+	public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException;
 	public GroupMessageService getGroupMessageService();
 	public PrivacyService getPrivacyService();
+	
+	//Latency, sizes and errors of the handled commands, exporters can be added on it
+	public CommandMetrics getCommandMetrics();
 }
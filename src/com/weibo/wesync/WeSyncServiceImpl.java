@@ -1,15 +1,26 @@
 package com.weibo.wesync;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.weibo.wesync.command.SyncHandler;
+import com.weibo.wesync.data.FolderID;
+import com.weibo.wesync.data.WeSyncMessage.SyncReq;
+import com.weibo.wesync.metrics.CommandMetrics;
 
 /**
  * @author Eric Liang
@@ -24,27 +35,42 @@ public class WeSyncServiceImpl implements WeSyncService {
 	private CommandListener commandListener;
 	private CommandProcessor commandProcessor10;
 	private CommandProcessor commandProcessor;
+	//Shared by processors of all protocol versions
+	private final CommandMetrics commandMetrics = new CommandMetrics();
 	private PluginManager pluginManager;
 	private final DataService dataService;
 	private final NoticeService noticeService;
+	private final NoticeDispatcher noticeDispatcher;
+	private final SyncWaiters syncWaiters;
 	private final GroupMessageService groupMessageService;
 	private final PrivacyService privacyService;
 	
-	@Inject
+	//The dispatcher and the waiters are made here, to be stopped by shutdown()
 	public WeSyncServiceImpl(DataService dataService, NoticeService noticeService, 
 			GroupMessageService groupMessageService, PrivacyService privacyService){
+		this(dataService, noticeService, new NoticeDispatcher(noticeService), new SyncWaiters(dataService),
+				groupMessageService, privacyService, new SyncHandler.Options());
+	}
+
+	//@Param:syncOptions the paging of the sync responses, the defaults unless bound
+	@Inject
+	public WeSyncServiceImpl(DataService dataService, NoticeService noticeService, NoticeDispatcher noticeDispatcher,
+			SyncWaiters syncWaiters, GroupMessageService groupMessageService, PrivacyService privacyService,
+			SyncHandler.Options syncOptions){
 		this.dataService = dataService;
 		this.noticeService = noticeService;
+		this.noticeDispatcher = noticeDispatcher;
+		this.syncWaiters = syncWaiters;
 		this.groupMessageService = groupMessageService;
 		this.privacyService = privacyService;
-		setupCommandProcessor();
+		setupCommandProcessor(syncOptions);
 		pluginManager = new PluginManager();
 		propertySet = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
 	}
 	
-	private void setupCommandProcessor(){
-		commandProcessor10 = new CommandProcessor(this, version10);
-		commandProcessor = new CommandProcessor(this);
+	private void setupCommandProcessor(SyncHandler.Options syncOptions){
+		commandProcessor10 = new CommandProcessor(this, version10, commandMetrics);
+		commandProcessor = new CommandProcessor(this, commandMetrics, syncOptions);
 	}
 	
 	@Override
@@ -59,6 +85,76 @@ public class WeSyncServiceImpl implements WeSyncService {
 		return null;
 	}
 
+	@Override
+	public int request(String username, ByteBuffer uriData, ByteBuffer bodyData, OutputStream out) throws IOException {
+		try{
+			WeSyncURI uri = WeSyncURI.fromBytes(uriData);
+			log.debug("Got request:" + uri);
+			switch (uri.protocolVersion) {
+			case version10:
+				return commandProcessor10.handleStream(username, uri, BufferInput.newCodedInput(bodyData), out);
+			case version:
+				return commandProcessor.handleStream(username, uri, BufferInput.newCodedInput(bodyData), out);
+			default:
+				log.error("Version not supported:" + uri.protocolVersion);
+			}
+		}catch(RuntimeException e){
+			//FIXME
+			log.error("Exception when processing request: "+ e.getCause()+ " : "+ e.getMessage() +" : "+ Arrays.toString( e.getStackTrace()));
+			return -1;
+		}
+		return -1;
+	}
+
+	@Override
+	public void requestAsync(final String username, final byte[] uriData, final byte[] bodyData, 
+			long waitMillis, final ResponseCallback callback) {
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				callback.onResponse( request(username, uriData, bodyData) );
+			}
+		};
+		
+		SyncReq req = null;
+		try{
+			WeSyncURI uri = WeSyncURI.fromBytes(uriData);
+			if( waitMillis > 0 && uri.protocolVersion == version && Command.Sync.equals(Command.valueOf(uri.command)) ){
+				req = SyncReq.parseFrom(bodyData);
+				//Not parked on the folders of the others, the handler fails it at once
+				if( !SyncHandler.isAccessPermitted(this, username, FolderID.of(req.getFolderId())) ) req = null;
+			}
+		}catch(InvalidProtocolBufferException e){
+			//Failed again in the handler
+		}catch(RuntimeException e){
+			log.warn("Invalid request for waiting: " + e.getMessage());
+		}
+		if( null == req || !SyncHandler.isNothingToSync(dataService, req) ){
+			task.run();
+			return;
+		}
+		
+		SyncWaiters.Waiter waiter = syncWaiters.park(req.getFolderId(), waitMillis, task);
+		//The change might come before parking
+		if( !SyncHandler.isNothingToSync(dataService, req) ) waiter.resume();
+	}
+
+	@Override
+	public SyncWaiters getSyncWaiters() {
+		return syncWaiters;
+	}
+
+	@Override
+	public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+		syncWaiters.shutdown();
+		//The queued broadcasts write to the data service and dispatch notices, so they go first
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		boolean done = groupMessageService.shutdown(timeout, unit);
+		dataService.shutdown();
+		long left = Math.max(0, deadline - System.nanoTime());
+		return noticeDispatcher.shutdown(left, TimeUnit.NANOSECONDS) && done;
+	}
+
 	@Override
 	public byte version() {
 		return version;
@@ -74,6 +170,11 @@ public class WeSyncServiceImpl implements WeSyncService {
 		return noticeService;
 	}
 
+	@Override
+	public NoticeDispatcher getNoticeDispatcher() {
+		return noticeDispatcher;
+	}
+
 	@Override
 	public boolean registerPlugin(PluginHandler handler) {
 		return pluginManager.registerHandler(handler);
@@ -123,6 +224,20 @@ public class WeSyncServiceImpl implements WeSyncService {
 		return null;
 	}
 
+	@Override
+	public MessageLite handleMessage(String username, WeSyncURI uri, CodedInputStream data, boolean fromListener) {
+		log.debug("Got request:" + uri);
+		switch (uri.protocolVersion) {
+		case version10:
+			return commandProcessor10.handleMessage(username, uri, data, fromListener);
+		case version:
+			return commandProcessor.handleMessage(username, uri, data, fromListener);
+		default:
+			log.error("Version not supported:" + uri.protocolVersion);
+		}
+		return null;
+	}
+
 	@Override
 	public boolean registerCommandListener(CommandListener listener) {
 		this.commandListener = listener;
@@ -134,4 +249,9 @@ public class WeSyncServiceImpl implements WeSyncService {
 		return commandListener;
 	}
 
+	@Override
+	public CommandMetrics getCommandMetrics() {
+		return commandMetrics;
+	}
+
 }
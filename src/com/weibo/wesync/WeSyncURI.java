@@ -2,6 +2,7 @@ package com.weibo.wesync;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -40,8 +41,24 @@ public final class WeSyncURI {
 	}
 	
 	public static WeSyncURI fromBytes(byte[] uriData){
+		return fromBytes(uriData, 0, uriData.length);
+	}
+	
+	//The position of the buffer is not changed
+	public static WeSyncURI fromBytes(ByteBuffer uriData){
+		if( uriData.hasArray() ){
+			return fromBytes(uriData.array(), uriData.arrayOffset() + uriData.position(), uriData.remaining());
+		}
+		//Small enough to copy
+		byte[] data = new byte[uriData.remaining()];
+		uriData.duplicate().get(data);
+		return fromBytes(data);
+	}
+	
+	public static WeSyncURI fromBytes(byte[] uriData, int offset, int length){
 		WeSyncURI uri = new WeSyncURI();
-		int i = 0;
+		int i = offset;
+		int end = offset + length;
 		
 		uri.protocolVersion = uriData[i++];
 		uri.command = uriData[i++];
@@ -56,10 +73,10 @@ public final class WeSyncURI {
 		uri.deviceType = new String(uriData, i, dtLen);
 		i+=dtLen;
 		
-		while(i<uriData.length){
+		while(i<end){
 			byte tag = uriData[i++];
 			byte len = uriData[i++];
-			if( i+len > uriData.length ) break;
+			if( i+len > end ) break;
 			
 			String value = new String(uriData, i, len);
 			i+=len;
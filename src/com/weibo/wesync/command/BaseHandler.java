@@ -3,11 +3,13 @@ package com.weibo.wesync.command;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.MessageLite;
 import com.weibo.wesync.Command;
 import com.weibo.wesync.CommandHandler;
 import com.weibo.wesync.CommandListener;
 import com.weibo.wesync.WeSyncService;
+import com.weibo.wesync.WeSyncURI;
 
 /**
  * 
@@ -24,10 +26,16 @@ public abstract class BaseHandler implements CommandHandler{
 		this.weSync = weSync;
 	}
 	
-	protected boolean noticeListener(Command comm, ByteString data){
+	@Override
+	public byte[] handle(String username, WeSyncURI uri, byte[] data, boolean fromListener){
+		MessageLite resp = handleMessage(username, uri, null == data ? null : CodedInputStream.newInstance(data), fromListener);
+		return null == resp ? null : resp.toByteArray();
+	}
+	
+	protected boolean noticeListener(Command comm, MessageLite req){
 		CommandListener listener = weSync.getCommandListener();
 		if( null != listener ){
-			return listener.handle(comm, data);
+			return listener.handle(comm, req);
 		}
 		return false;
 	}
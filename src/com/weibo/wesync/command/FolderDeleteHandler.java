@@ -1,6 +1,9 @@
 package com.weibo.wesync.command;
 
-import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.IOException;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.MessageLite;
 import com.weibo.wesync.WeSyncService;
 import com.weibo.wesync.WeSyncURI;
 import com.weibo.wesync.data.FolderID;
@@ -18,13 +21,13 @@ public class FolderDeleteHandler extends BaseHandler {
 	}
 
 	@Override
-	public byte[] handle(String username, WeSyncURI uri, byte[] data, boolean _fromListener) {
+	public MessageLite handleMessage(String username, WeSyncURI uri, CodedInputStream data, boolean _fromListener) {
 		log.debug("Protocol "+weSync.version()+" request by "+username+" uri: "+uri);
 		
 		FolderDeleteReq req;
 		try {
 			req = FolderDeleteReq.parseFrom(data);
-		} catch (InvalidProtocolBufferException e) {
+		} catch (IOException e) {
 			log.warn("Invalid request from user "+username+" : "+uri);
 			//TODO error code should be returned to client
 			throw new RuntimeException();
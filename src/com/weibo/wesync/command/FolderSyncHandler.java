@@ -1,8 +1,10 @@
 package com.weibo.wesync.command;
 
+import java.io.IOException;
 import java.util.SortedSet;
 
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.MessageLite;
 import com.weibo.wesync.WeSyncService;
 import com.weibo.wesync.WeSyncURI;
 import com.weibo.wesync.data.FolderChange;
@@ -22,13 +24,13 @@ public class FolderSyncHandler extends BaseHandler {
 	}
 
 	@Override
-	public byte[] handle(String username, WeSyncURI uri, byte[] data, boolean _fromListener) {
+	public MessageLite handleMessage(String username, WeSyncURI uri, CodedInputStream data, boolean _fromListener) {
 		log.debug("Protocol "+weSync.version()+" request by "+username+" uri: "+uri);
 		
 		FolderSyncReq req;
 		try {
 			req = FolderSyncReq.parseFrom(data);
-		} catch (InvalidProtocolBufferException e) {
+		} catch (IOException e) {
 			log.warn("Invalid request from user "+username+" : "+uri);
 			//TODO error code should be returned to client
 			throw new RuntimeException();
@@ -71,6 +73,6 @@ public class FolderSyncHandler extends BaseHandler {
 		}
 		
 		respBuilder.setNextKey( nextKey );
-		return respBuilder.build().toByteArray();
+		return respBuilder.build();
 	}
 }
@@ -1,29 +1,96 @@
 package com.weibo.wesync.command;
 
-import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import com.weibo.wesync.StreamingHandler;
 import com.weibo.wesync.WeSyncService;
 import com.weibo.wesync.WeSyncURI;
 import com.weibo.wesync.data.FileID;
 import com.weibo.wesync.data.Group;
+import com.weibo.wesync.data.WeSyncMessage.DataSlice;
 import com.weibo.wesync.data.WeSyncMessage.FileData;
 
 /**
+ * The slices are read from the store a few at a time. The response to the slices asked by index is
+ * paged by the max size: the slices beyond it are left out, the client knows them by the limit and
+ * asks for them again. A request of no slices, as by the legacy clients, is answered with the whole
+ * file, which has no way to tell a page from the whole.
+ * By handleStream() the slices are written out as read, without building the response.
+ * 
  * @author Eric Liang
  */
-public class GetFileHandler extends BaseHandler {
+public class GetFileHandler extends BaseHandler implements StreamingHandler {
+	public static final int DEFAULT_MAX_RESPONSE_BYTES = 1024 * 1024;
+	//Bytes of the slices read from the store at a time
+	private static final int FETCH_BYTES = 256 * 1024;
+	
+	private final int maxResponseBytes;
 
 	public GetFileHandler(WeSyncService weSync) {
+		this(weSync, DEFAULT_MAX_RESPONSE_BYTES);
+	}
+
+	//@Param:maxResponseBytes at least one slice is responded even if larger
+	public GetFileHandler(WeSyncService weSync, int maxResponseBytes) {
 		super(weSync);
+		this.maxResponseBytes = maxResponseBytes;
+	}
+
+	//Where the slices of the page go
+	private interface SliceSink {
+		void add(DataSlice slice) throws IOException;
+	}
+
+	@Override
+	public MessageLite handleMessage(String username, WeSyncURI uri, CodedInputStream data, boolean _fromListener) {
+		FileData req = parseRequest(username, uri, data);
+		
+		final FileData.Builder resp = FileData.newBuilder().setId(req.getId());
+		try {
+			page(req, new SliceSink() {
+				@Override
+				public void add(DataSlice slice) {
+					resp.addSlice(slice);
+				}
+			});
+		} catch (IOException e) {
+			//Never thrown by the builder
+			throw new RuntimeException(e);
+		}
+		return resp.build();
 	}
 
 	@Override
-	public byte[] handle(String username, WeSyncURI uri, byte[] data, boolean _fromListener) {
+	public int handleStream(String username, WeSyncURI uri, CodedInputStream data, OutputStream out) throws IOException {
+		FileData req = parseRequest(username, uri, data);
+		
+		//A FileData of the id followed by the slices, as repeated fields are concatenated
+		final CodedOutputStream output = CodedOutputStream.newInstance(out);
+		output.writeString(FileData.ID_FIELD_NUMBER, req.getId());
+		final int[] written = { CodedOutputStream.computeStringSize(FileData.ID_FIELD_NUMBER, req.getId()) };
+		page(req, new SliceSink() {
+			@Override
+			public void add(DataSlice slice) throws IOException {
+				output.writeMessage(FileData.SLICE_FIELD_NUMBER, slice);
+				written[0] += CodedOutputStream.computeMessageSize(FileData.SLICE_FIELD_NUMBER, slice);
+			}
+		});
+		output.flush();
+		return written[0];
+	}
+	
+	private FileData parseRequest(String username, WeSyncURI uri, CodedInputStream data) {
 		log.debug("Protocol "+weSync.version()+" request by "+username+" uri: "+uri);
 		
 		FileData req;
 		try {
 			req = FileData.parseFrom(data);
-		} catch (InvalidProtocolBufferException e) {
+		} catch (IOException e) {
 			log.warn("Invalid request from user "+username+" : "+uri);
 			//TODO error code should be returned to client
 			throw new RuntimeException();
@@ -49,19 +116,80 @@ public class GetFileHandler extends BaseHandler {
 			throw new RuntimeException();
 		}while(false);
 		
-		FileData resp = null;		
-		if( req.getSliceCount() > 0 ){
-			resp = weSync.getDataService().getFileByIndex(req);
-		}else{
-			resp = weSync.getDataService().getFileById(fileId);
+		return req;
+	}
+	
+	//The indexes asked for, sorted without the duplicate ones, sized by the request but not by the indexes.
+	//The slices are indexed from 1, so the ones below are left out
+	private static int[] wantedOf(FileData req) {
+		int[] wanted = new int[req.getSliceCount()];
+		int n = 0;
+		for( DataSlice s : req.getSliceList() ){
+			if( s.getIndex() >= 1 ) wanted[n++] = s.getIndex();
 		}
+		Arrays.sort(wanted, 0, n);
 		
-		if( null == resp ){
-			log.warn("Missing file on id: "+fileId);
-			resp = FileData.newBuilder().setId(fileId).build();
+		int m = 0;
+		for( int i = 0; i < n; i++ ){
+			if( m == 0 || wanted[i] != wanted[m-1] ) wanted[m++] = wanted[i];
 		}
+		return m == wanted.length ? wanted : Arrays.copyOf(wanted, m);
+	}
+	
+	/*
+	 * Read the wanted slices in the order of index until the page is full, all the slices from
+	 * index 1 are wanted if none is given, unpaged. The limit is known by the first slice read.
+	 * The missing ones are skipped, e.g. of an upload not finished, so a hole does not end the page.
+	 * With none given and the first slice missing, there is no limit to go on by, so the whole file
+	 * is read at once instead.
+	 */
+	private void page(FileData req, SliceSink sink) throws IOException {
+		String fileId = req.getId();
+		int[] wanted = req.getSliceCount() > 0 ? wantedOf(req) : null;
 		
-		return resp.toByteArray();
+		int limit = -1;
+		int bytes = 0;
+		//Only the first slice is read until the slice size is known
+		int batch = 1;
+		//Position of next in wanted
+		int pos = 0;
+		int next = null == wanted ? 1 : (wanted.length > 0 ? wanted[0] : -1);
+		DataSlice.Builder index = DataSlice.newBuilder();
+		while( next >= 0 && (limit < 0 || next <= limit) ){
+			FileData.Builder fetch = FileData.newBuilder().setId(fileId);
+			while( next >= 0 && (limit < 0 || next <= limit) && fetch.getSliceCount() < batch ){
+				fetch.addSlice( index.setIndex(next).setLimit(Math.max(limit, 0)) );
+				next = null == wanted ? next + 1 : (++pos < wanted.length ? wanted[pos] : -1);
+			}
+			
+			FileData got = weSync.getDataService().getFileByIndex(fetch.build());
+			if( null == got || got.getSliceCount() == 0 ){
+				if( null == wanted && limit < 0 ){
+					FileData file = weSync.getDataService().getFileById(fileId);
+					//No such file
+					if( null == file ) break;
+					for( DataSlice slice : file.getSliceList() ){
+						sink.add(slice);
+					}
+					return;
+				}
+				continue;
+			}
+			
+			for( DataSlice slice : got.getSliceList() ){
+				int size = CodedOutputStream.computeMessageSize(FileData.SLICE_FIELD_NUMBER, slice);
+				if( null != wanted && bytes > 0 && bytes + size > maxResponseBytes ) return;
+				
+				sink.add(slice);
+				bytes += size;
+				if( slice.getLimit() > limit ) limit = slice.getLimit();
+				batch = Math.max(1, FETCH_BYTES / Math.max(1, slice.getData().size()));
+			}
+		}
+		
+		if( limit < 0 ){
+			log.warn("Missing file on id: "+fileId);
+		}
 	}
 
 }
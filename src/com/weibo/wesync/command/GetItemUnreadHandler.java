@@ -1,10 +1,12 @@
 package com.weibo.wesync.command;
 
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.SortedSet;
 
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.MessageLite;
 import com.weibo.wesync.WeSyncService;
 import com.weibo.wesync.WeSyncURI;
 import com.weibo.wesync.data.FolderChange;
@@ -25,7 +27,7 @@ public class GetItemUnreadHandler extends BaseHandler {
 	}
 
 	@Override
-	public byte[] handle(String username, WeSyncURI uri, byte[] data, boolean _fromListener) {
+	public MessageLite handleMessage(String username, WeSyncURI uri, CodedInputStream data, boolean _fromListener) {
 		log.debug("Protocol "+weSync.version()+" request by "+username+" uri: "+uri);
 
 		GetItemUnreadResp.Builder respBuilder = GetItemUnreadResp.newBuilder();
@@ -37,14 +39,14 @@ public class GetItemUnreadHandler extends BaseHandler {
 				log.debug("GetItemUnread request by "+username+", "+req);
 
 				for( String fid : req.getFolderIdList() ){
-					if( !isAccessPermitted(username, new FolderID(fid) ) ){
+					if( !isAccessPermitted(username, FolderID.of(fid) ) ){
 						log.warn("Unpermited access: "+ username + " on folder " + fid);
 						//TODO error code should be returned to client
 						throw new RuntimeException();
 					}
 					if( !folderIds.contains(fid) ) folderIds.add(fid);
 				}
-			} catch (InvalidProtocolBufferException e) {
+			} catch (IOException e) {
 				log.warn("Invalid request from user "+username+" : "+uri);
 				//TODO error code should be returned to client
 				throw new RuntimeException();
@@ -63,7 +65,7 @@ public class GetItemUnreadHandler extends BaseHandler {
 		List<Unread> unreadList = weSync.getDataService().getUnreadNumber( folderIds );
 		respBuilder.addAllUnread(unreadList);
 		
-		return respBuilder.build().toByteArray();
+		return respBuilder.build();
 	}
 
 	private boolean isAccessPermitted(String username, FolderID folderId) {
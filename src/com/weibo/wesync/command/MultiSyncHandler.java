@@ -0,0 +1,136 @@
+package com.weibo.wesync.command;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.MessageLite;
+import com.weibo.wesync.WeSyncService;
+import com.weibo.wesync.WeSyncURI;
+import com.weibo.wesync.data.WeSyncMessage.MultiSyncReq;
+import com.weibo.wesync.data.WeSyncMessage.MultiSyncResp;
+import com.weibo.wesync.data.WeSyncMessage.SyncReq;
+import com.weibo.wesync.data.WeSyncMessage.SyncResp;
+
+/**
+ * Sync on many folders in one request, e.g. the ones listed by GetItemUnread on reconnecting.
+ *
+ * The folders are synchronized by the SyncHandler in parallel on an executor of its own, apart from
+ * the resumed syncs of the SyncWaiters. It is bounded, so the caller runs them when it is full, and
+ * its threads exit when idle, so it needs no shutdown. The responses share a byte budget: once the
+ * done ones exceed it, the folders not started are answered with the key they came with and hasNext,
+ * so the client syncs them again. So are the folders beyond MAX_FOLDERS. The ones started go on, so
+ * the response might exceed the budget by the ones in flight. The folders with client changes are
+ * always synchronized. A folder failed, e.g. not permitted, is left out of the response.
+ */
+public class MultiSyncHandler extends BaseHandler {
+	public static final int DEFAULT_MAX_RESPONSE_BYTES = 1024 * 1024;
+	//The folders beyond it in a request are deferred
+	public static final int MAX_FOLDERS = 64;
+	public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+	public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+	private final SyncHandler syncHandler;
+	private final int maxResponseBytes;
+	private final ThreadPoolExecutor executor;
+
+	public MultiSyncHandler(WeSyncService weSync, SyncHandler syncHandler) {
+		this(weSync, syncHandler, DEFAULT_MAX_RESPONSE_BYTES);
+	}
+
+	public MultiSyncHandler(WeSyncService weSync, SyncHandler syncHandler, int maxResponseBytes) {
+		super(weSync);
+		this.syncHandler = syncHandler;
+		this.maxResponseBytes = maxResponseBytes;
+		this.executor = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(DEFAULT_QUEUE_CAPACITY), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger(0);
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "multi-sync-" + count.getAndIncrement());
+						t.setDaemon(true);
+						return t;
+					}
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	@Override
+	public MessageLite handleMessage(final String username, WeSyncURI uri, CodedInputStream data, boolean fromListener) {
+		MultiSyncReq req;
+		try {
+			req = MultiSyncReq.parseFrom(data);
+		} catch (IOException e) {
+			log.warn("Invalid request from user "+username+" : "+uri);
+			//TODO error code should be returned to client
+			throw new RuntimeException();
+		}
+
+		List<SyncReq> reqs = req.getReqList();
+		if( reqs.size() > MAX_FOLDERS ){
+			log.warn("Too many folders to sync by " + username + ": " + reqs.size());
+		}
+
+		if( fromListener ){
+			for( SyncReq r : reqs.subList(0, Math.min(reqs.size(), MAX_FOLDERS)) ){
+				syncHandler.handleSync(username, r, true);
+			}
+			return null;
+		}
+
+		final AtomicLong remaining = new AtomicLong(maxResponseBytes);
+		List<FutureTask<SyncResp>> tasks = new ArrayList<FutureTask<SyncResp>>(reqs.size());
+		for( int i = 0; i < reqs.size(); i++ ){
+			final SyncReq r = reqs.get(i);
+			final boolean beyond = i >= MAX_FOLDERS;
+			FutureTask<SyncResp> task = new FutureTask<SyncResp>(new Callable<SyncResp>() {
+				@Override
+				public SyncResp call() {
+					if( beyond || (remaining.get() <= 0 && 0 == r.getClientChangesCount()) ) return deferred(r);
+					SyncResp resp = syncHandler.handleSync(username, r, false);
+					remaining.addAndGet(-resp.getSerializedSize());
+					return resp;
+				}
+			});
+			tasks.add(task);
+			if( !beyond ) executor.execute(task);
+		}
+
+		MultiSyncResp.Builder resp = MultiSyncResp.newBuilder();
+		for( int i = 0; i < tasks.size(); i++ ){
+			FutureTask<SyncResp> task = tasks.get(i);
+			//The ones not yet started by the executor are run by the caller, no waiting on a busy pool
+			task.run();
+			try {
+				resp.addResp(task.get());
+			} catch (ExecutionException e) {
+				log.warn("Failed to sync folder " + reqs.get(i).getFolderId() + " by " + username + ": " + e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+		return resp.build();
+	}
+
+	//Nothing synchronized, to be requested again with the same key
+	private static SyncResp deferred(SyncReq req) {
+		return SyncResp.newBuilder()
+				.setFolderId(req.getFolderId())
+				.setNextKey(req.getKey())
+				.setIsFullSync(req.getIsFullSync())
+				.setHasNext(true)
+				.build();
+	}
+}
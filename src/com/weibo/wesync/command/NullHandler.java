@@ -1,5 +1,7 @@
 package com.weibo.wesync.command;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.MessageLite;
 import com.weibo.wesync.WeSyncService;
 import com.weibo.wesync.WeSyncURI;
 
@@ -16,7 +18,7 @@ public class NullHandler extends BaseHandler {
 	}
 
 	@Override
-	public byte[] handle(String username, WeSyncURI uri, byte[] data, boolean _fromListener) {
+	public MessageLite handleMessage(String username, WeSyncURI uri, CodedInputStream data, boolean _fromListener) {
 		log.warn("Suspicious attack from "+username+" : "+uri);
 		return null;
 	}
@@ -1,12 +1,18 @@
 package com.weibo.wesync.command;
 
-import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.IOException;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.MessageLite;
 import com.weibo.wesync.WeSyncService;
 import com.weibo.wesync.WeSyncURI;
 import com.weibo.wesync.data.FileID;
 import com.weibo.wesync.data.WeSyncMessage.FileData;
 
 /**
+ * The client might ask which slices need to be sent by the slices of md5 without data first,
+ * the ones of content already stored are taken, and the rest are responded, see DataService.store().
+ * 
  * @author Eric Liang
  */
 public class SendFileHandler extends BaseHandler {
@@ -16,13 +22,13 @@ public class SendFileHandler extends BaseHandler {
 	}
 
 	@Override
-	public byte[] handle(String username, WeSyncURI uri, byte[] data, boolean _fromListener) {
+	public MessageLite handleMessage(String username, WeSyncURI uri, CodedInputStream data, boolean _fromListener) {
 		log.debug("Protocol "+weSync.version()+" request by "+username+" uri: "+uri);
 		
 		FileData req;
 		try {
 			req = FileData.parseFrom(data);
-		} catch (InvalidProtocolBufferException e) {
+		} catch (IOException e) {
 			log.warn("Invalid request from user "+username+" : "+uri);
 			//TODO error code should be returned to client
 			throw new RuntimeException();
@@ -39,7 +45,7 @@ public class SendFileHandler extends BaseHandler {
 		}
 		
 		FileData resp = weSync.getDataService().store(req);
-		return resp.toByteArray();
+		return resp;
 	}
 
 }
@@ -1,11 +1,15 @@
 package com.weibo.wesync.command;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TimeZone;
 
 import com.google.protobuf.ByteString;
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.MessageLite;
 import com.weibo.wesync.WeSyncService;
 import com.weibo.wesync.WeSyncURI;
 import com.weibo.wesync.data.FolderChange;
@@ -72,13 +76,13 @@ public class Sync10Handler extends BaseHandler {
 	}
 	
 	@Override
-	public byte[] handle(String username, WeSyncURI uri, byte[] data, boolean _fromListener) {
+	public MessageLite handleMessage(String username, WeSyncURI uri, CodedInputStream data, boolean _fromListener) {
 		log.debug("Protocol "+weSync.version()+" request by "+username+" uri: "+uri);
 		
 		SyncReq req;
 		try {
 			req = SyncReq.parseFrom(data);
-		} catch (InvalidProtocolBufferException e) {
+		} catch (IOException e) {
 			log.warn("Invalid request from user "+username+" : "+uri);
 			//TODO error code should be returned to client
 			throw new RuntimeException();
@@ -87,7 +91,7 @@ public class Sync10Handler extends BaseHandler {
 		log.debug("Sync request by "+username+", "+req);
 		
 		String folderIdStr = req.getFolderId();	
-		FolderID folderId = new FolderID(folderIdStr);
+		FolderID folderId = FolderID.of(folderIdStr);
 		
 		if( !isAccessPermitted(username, folderId) ){
 			log.warn("Unpermited access: "+ username + " on folder " + folderIdStr);
@@ -115,6 +119,9 @@ public class Sync10Handler extends BaseHandler {
 				weSync.getDataService().removeAllFolderChanges(folderIdStr);
 			}
 		}else{			
+			if( !SyncKey.isOfFolder(syncKey, folderIdStr) ){
+				log.warn("Sync key " + syncKey + " is not of folder " + folderIdStr);
+			}
 			// If conflict with the request.getIsFullSync, use this one first.
 			// TODO maybe fix this in protocol
 			isFullSync = SyncKey.isFullSyncKey(syncKey);
@@ -169,9 +176,11 @@ public class Sync10Handler extends BaseHandler {
 						}
 					}else{
 						String metaFolderId = folderId.type.equals(FolderID.Type.Group) ? groupHistoryFolderId : folderIdStr;
+						List<String> msgIds = new ArrayList<String>(following.size());
 						for (FolderChild c : following) {
-							String msgId = FolderChild.generateId(metaFolderId,Long.valueOf(c.id));
-							Meta msg = weSync.getDataService().getMetaMessage(msgId);
+							msgIds.add( FolderChild.generateId(metaFolderId,Long.valueOf(c.id)) );
+						}
+						for (Meta msg : weSync.getDataService().getMetaMessages(msgIds)) {
 							if (null != msg) {
 								respBuilder.addServerChanges(msg);
 							}
@@ -191,18 +200,22 @@ public class Sync10Handler extends BaseHandler {
 					nextKey = SyncKey.syncKeyOnChange(folderIdStr, lastChange);
 					
 					String metaFolderId = folderId.type.equals(FolderID.Type.Group) ? groupHistoryFolderId : folderIdStr;
+					List<String> msgIds = new ArrayList<String>(following.size());
+					List<String> addedIds = new ArrayList<String>(following.size());
 					for (FolderChange fc : following) {
-						String msgId;
-						try{
-							msgId = FolderChild.generateId(metaFolderId,Long.valueOf(fc.childId));
-						}catch(java.lang.NumberFormatException e){
-							//Maybe some meta from other folder, e.g. group chat 
-							msgId = fc.childId;
-						}
-						
+						//Not a number, maybe some meta from other folder, e.g. group chat
+						String msgId = fc.hasScore() ? FolderChild.generateId(metaFolderId, fc.score) : fc.childId;
+						msgIds.add(msgId);
+						if (fc.isAdd) addedIds.add(msgId);
+					}
+					List<Meta> added = weSync.getDataService().getMetaMessages(addedIds);
+					
+					int i = 0, j = 0;
+					for (FolderChange fc : following) {
+						String msgId = msgIds.get(i++);
 						Meta msg;
 						if (fc.isAdd) {
-							msg = weSync.getDataService().getMetaMessage(msgId);
+							msg = added.get(j++);
 						} else {
 							// TODO empty meta means delete?
 							msg = Meta.newBuilder().setId(msgId).build();
@@ -219,7 +232,7 @@ public class Sync10Handler extends BaseHandler {
 		applyClientChanges( folderId, req, respBuilder );
 		
 		respBuilder.setNextKey(nextKey);
-		return respBuilder.build().toByteArray();
+		return respBuilder.build();
 	}
 
 	private SortedSet<FolderChild> getChildrenBySyncKey(String syncKey, SyncReq req, String folderIdStr, int batchSize) {
@@ -372,7 +385,7 @@ public class Sync10Handler extends BaseHandler {
 		Notice notice = Notice.newBuilder()
 				.addUnread(unreadBuilder.build())
 				.build();
-		weSync.getNoticeService().send(username, notice);
+		weSync.getNoticeDispatcher().dispatch(username, notice);
 	}
 
 	private boolean isClientChangeValid(FolderID folderId, Meta clientChange) {
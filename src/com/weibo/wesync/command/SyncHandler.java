@@ -1,17 +1,22 @@
 package com.weibo.wesync.command;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TimeZone;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
 import com.weibo.wesync.Command;
+import com.weibo.wesync.DataService;
 import com.weibo.wesync.WeSyncService;
 import com.weibo.wesync.WeSyncURI;
 import com.weibo.wesync.data.FolderChange;
@@ -72,37 +77,96 @@ public class SyncHandler extends BaseHandler {
 	
 	public final static int DEFAULT_BATCH_SIZE = 20;
 	public final static int PROPERTY_BATCH_SIZE = 200;
+	public static final int DEFAULT_MAX_RESPONSE_BYTES = 256 * 1024;
 	private static final int MAX_BODY_LENGTH = 1 * 1024 * 1024;
-	private static ExecutorService executor = Executors.newFixedThreadPool(32);
+	
+	public static class Options {
+		//The changes or children read from the store at a time, read on until the response is full
+		public int batchSize = DEFAULT_BATCH_SIZE;
+		//Of the server changes, the ones beyond it are left to the next sync with hasNext,
+		//while at least one is responded even if larger
+		public int maxResponseBytes = DEFAULT_MAX_RESPONSE_BYTES;
+		//The changes or children per response at most, 0 for no limit but the bytes,
+		//for the clients paging by the count
+		public int maxChanges = 0;
+	}
+	
+	private final int batchSize;
+	private final int maxResponseBytes;
+	private final int maxChanges;
 	
 	public SyncHandler(WeSyncService weSync) {
+		this(weSync, new Options());
+	}
+	
+	public SyncHandler(WeSyncService weSync, Options options) {
+		this(weSync, options.batchSize, options.maxResponseBytes, options.maxChanges);
+	}
+	
+	//@Param:batchSize @Param:maxResponseBytes see Options
+	public SyncHandler(WeSyncService weSync, int batchSize, int maxResponseBytes) {
+		this(weSync, batchSize, maxResponseBytes, 0);
+	}
+	
+	private SyncHandler(WeSyncService weSync, int batchSize, int maxResponseBytes, int maxChanges) {
 		super(weSync);
+		this.batchSize = batchSize;
+		this.maxResponseBytes = maxResponseBytes;
+		this.maxChanges = maxChanges;
+	}
+	
+	/**
+	 * Return true if the incremental sync would get no changes and do nothing else,
+	 * so it can wait for the changes, see WeSyncService.requestAsync()
+	 */
+	public static boolean isNothingToSync(DataService dataService, SyncReq req){
+		if( req.getClientChangesCount() > 0 || req.getSelectiveAckCount() > 0 
+				|| req.getIsSendOnly() || req.getIsSiblingInHarmony() ) return false;
+		
+		String syncKey = req.getKey();
+		boolean isInitial = syncKey.equals(TAG_SYNC_KEY);
+		boolean isFullSync = isInitial ? req.getIsFullSync() : SyncKey.isFullSyncKey(syncKey);
+		if( isFullSync || FolderID.getType(req.getFolderId()).equals(FolderID.Type.Property) ) return false;
+		
+		SortedSet<FolderChange> last = dataService.getFolderChanges(req.getFolderId(), -1, -1);
+		if( null == last || last.isEmpty() ) return true;
+		//The ones up to the key are synchronized
+		FolderChange synced = isInitial ? null : SyncKey.getChange(syncKey);
+		return null != synced && last.first().compareTo(synced) <= 0;
 	}
 	
 	@Override
-	public byte[] handle(String username, WeSyncURI uri, byte[] data, boolean fromListener) {
+	public MessageLite handleMessage(String username, WeSyncURI uri, CodedInputStream data, boolean fromListener) {
 		log.debug("Protocol "+weSync.version()+" request by "+username+" uri: "+uri);
 		
 		SyncReq req;
 		try {
 			req = SyncReq.parseFrom(data);
-		} catch (InvalidProtocolBufferException e) {
+		} catch (IOException e) {
 			log.warn("Invalid request from user "+username+" : "+uri);
 			//TODO error code should be returned to client
 			throw new RuntimeException();
 		}
 		
+		return handleSync(username, req, fromListener);
+	}
+	
+	/**
+	 * Sync on the parsed request, for the batches of MultiSync as well
+	 * @Return null if from the listener
+	 */
+	public SyncResp handleSync(String username, SyncReq req, boolean fromListener) {
 		log.debug("Sync request by "+username+", "+ getDebugInfo(req));
 		
 		String folderIdStr = req.getFolderId();	
-		FolderID folderId = new FolderID(folderIdStr);
+		FolderID folderId = FolderID.of(folderIdStr);
 		
 		if (fromListener) {
 			applyClientChanges(folderId, req, null, true);
 			return null;
 		}
 		
-		if( !isAccessPermitted(username, folderId) ){
+		if( !isAccessPermitted(weSync, username, folderId) ){
 			log.warn("Unpermited access: "+ username + " on folder " + folderIdStr);
 			//TODO error code should be returned to client
 			throw new RuntimeException();
@@ -126,6 +190,9 @@ public class SyncHandler extends BaseHandler {
 				weSync.getDataService().removeAllFolderChanges(folderIdStr);
 			}
 		}else{			
+			if( !SyncKey.isOfFolder(syncKey, folderIdStr) ){
+				log.warn("Sync key " + syncKey + " is not of folder " + folderIdStr);
+			}
 			// If conflict with the request.getIsFullSync, use this one first.
 			// TODO maybe fix this in protocol
 			isFullSync = SyncKey.isFullSyncKey(syncKey);
@@ -134,7 +201,7 @@ public class SyncHandler extends BaseHandler {
 		
 		//Folder type specific process
 		String groupId = null;
-		int batchSize = DEFAULT_BATCH_SIZE;
+		int batchSize = this.batchSize;
 		switch( folderId.type ){
 		case Property:
 			//Property folder only support full sync
@@ -149,6 +216,9 @@ public class SyncHandler extends BaseHandler {
 			; //do nothing
 		}
 		
+		//Where the messages are stored
+		String metaFolderId = null == groupId ? folderIdStr : Group.historyFolderId(groupId);
+		
 		//TODO: initialize the nextKey, might be changed later
 		String nextKey = SyncKey.emptySyncKey(folderIdStr, isFullSync);
 		respBuilder.setHasNext(false);
@@ -158,56 +228,51 @@ public class SyncHandler extends BaseHandler {
 				SortedSet<FolderChild> following = getChildrenForFullSync(syncKey, req, folderIdStr, batchSize);
 				
 				if (null != following && !following.isEmpty() ) {
-					if( following.size() >= batchSize ){
-						respBuilder.setHasNext(true);
-					}
-					
-					String childIdForSyncKey;
-					if( req.hasIsForward() && req.getIsForward() ){
-						childIdForSyncKey = following.last().id;
-					}else{
-						childIdForSyncKey = following.first().id;
-					}
-					nextKey = SyncKey.syncKeyOnChild(folderIdStr, childIdForSyncKey);
+					boolean isProperty = folderId.type.equals(FolderID.Type.Property);
+					boolean isForward = req.hasIsForward() && req.getIsForward();
 					
-					if( folderId.type.equals(FolderID.Type.Property) ){
-						Meta.Builder metaBuilder = Meta.newBuilder();
-						for (FolderChild c : following) {
-							metaBuilder.setId(c.id).setType(ByteString.copyFrom(new byte[] { MetaMessageType.property.toByte() }));
-							respBuilder.addServerChanges( metaBuilder.build() );
-						}
-					}else{
-						for (FolderChild c : following) {
-							//TODO tidy the group choices
-							Meta msg = folderId.type.equals(FolderID.Type.Group) ?
-									weSync.getDataService().getMetaMessageInGroup(groupId, Long.valueOf(c.id))
-									: weSync.getDataService().getMetaMessage(folderIdStr, Long.valueOf(c.id));
-
-							FolderChange change = new FolderChange( String.valueOf( c.score ), true);
-							msg = checkMetaSize(folderIdStr, msg, change);
-									
-							if (null != msg) {
-								respBuilder.addServerChanges(msg);
-								
-								if( MetaMessageType.valueOf( msg.getType().byteAt(0) ).equals( MetaMessageType.subfolder) ){
-									SortedSet<FolderChild> grandsons = weSync.getDataService().getChildren( msg.getContent().toStringUtf8() );
-									for(FolderChild gs: grandsons){
-										Meta gsMsg = folderId.type.equals(FolderID.Type.Group) ?
-												weSync.getDataService().getMetaMessageInGroup(groupId, Long.valueOf(gs.id))
-												: weSync.getDataService().getMetaMessage(folderIdStr, Long.valueOf(gs.id));
-										if( null != gsMsg ){
-											respBuilder.addServerChanges(gsMsg);
-										}
-									}
-								}
+					//Filled from the sync key on, so the latest ones are kept when paged backward
+					List<Meta> page = new ArrayList<Meta>();
+					int bytes = 0;
+					String childIdForSyncKey = null;
+					int count = 0;
+					boolean isFull = false;
+					//Batch by batch until the page is full or no more children
+					while (null != following && !following.isEmpty()) {
+						List<FolderChild> children = new ArrayList<FolderChild>(following);
+						List<Meta> msgs = isProperty ? null : getMetaMessages(metaFolderId, following);
+						for (int n = 0; n < children.size(); n++) {
+							int i = isForward ? n : children.size() - 1 - n;
+							FolderChild c = children.get(i);
+							List<Meta> items = isProperty ? propertyItem(c) 
+									: getFullSyncMessages(folderIdStr, metaFolderId, c, msgs.get(i));
+							
+							int size = serverChangesSize(items);
+							if( (bytes > 0 && bytes + size > maxResponseBytes) || (maxChanges > 0 && count >= maxChanges) ){
+								respBuilder.setHasNext(true);
+								isFull = true;
+								break;
 							}
+							bytes += size;
+							count++;
+							page.addAll(isForward ? page.size() : 0, items);
+							childIdForSyncKey = c.id;
 						}
+						
+						if( isFull || following.size() < batchSize ) break;
+						following = isForward 
+								? weSync.getDataService().getFollowingChildren(folderIdStr, childIdForSyncKey, batchSize)
+								: weSync.getDataService().getPrecedingChildren(folderIdStr, childIdForSyncKey, batchSize);
 					}
+					nextKey = SyncKey.syncKeyOnChild(folderIdStr, childIdForSyncKey);
+					respBuilder.addAllServerChanges(page);
 				}
 			} else {
 				weSync.getDataService().cleanupSynchronizedChanges(folderIdStr, syncKey);
 				
 				SortedSet<FolderChange> following = null;
+				//The ones after the acknowledged are not wanted, so no more batches
+				boolean isCut = false;
 				if( !req.hasIsSiblingInHarmony() ){
 					following = weSync.getDataService().getFolderChanges(folderIdStr, 0, batchSize-1);
 				}else{
@@ -216,7 +281,7 @@ public class SyncHandler extends BaseHandler {
 						//then just process the selective ACKs
 						if( req.getSelectiveAckCount() >= 0 ){
 							for(String ack : req.getSelectiveAckList()){
-								FolderChange change = new FolderChange( String.valueOf( new FolderChild(ack).score ), true);
+								FolderChange change = new FolderChange( FolderChild.getScore(ack), true );
 								weSync.getDataService().removeFolderChange(folderIdStr, change);
 							}
 						}
@@ -228,44 +293,71 @@ public class SyncHandler extends BaseHandler {
 						//then process the selective ACK
 						if( req.getSelectiveAckCount() == 1 ){
 							String ack = req.getSelectiveAck(0);
-							FolderChange change = new FolderChange( String.valueOf( new FolderChild(ack).score ), true);
+							FolderChange change = new FolderChange( FolderChild.getScore(ack), true );
 							if( null != following ) {
+								int n = following.size();
 								following = following.headSet(change);
+								isCut = following.size() < n;
 							}
 						}
 					}
 				}
 					
-				if (null != following && !following.isEmpty()) {
-					if (following.size() >= batchSize) {
-						respBuilder.setHasNext(true);
+				//Up to the last change responded, the ones after it are left to the next sync
+				FolderChange lastChange = null;
+				int bytes = 0;
+				//Where the next batch begins in the store, the ones removed as too large not counted
+				int offset = 0;
+				int count = 0;
+				boolean isFull = false;
+				//Batch by batch until the page is full or no more changes
+				while (null != following && !following.isEmpty()) {
+					List<String> msgIds = new ArrayList<String>(following.size());
+					for (FolderChange fc : following) {
+						if (fc.isAdd) {
+							msgIds.add( fc.hasScore() ? FolderChild.generateId(metaFolderId, fc.score) : fc.childId );
+						}
 					}
-
-					FolderChange lastChange = following.last();
-					nextKey = SyncKey.syncKeyOnChange(folderIdStr, lastChange);
-
+					List<Meta> msgs = weSync.getDataService().getMetaMessages(msgIds);
+					
+					int i = 0;
 					for (FolderChange fc : following) {
 						Meta msg = null;
 						
 						if (fc.isAdd) {
-							Long childId = Long.valueOf(fc.childId);
-							if( folderId.type.equals( FolderID.Type.Group ) ){
-								msg = weSync.getDataService().getMetaMessageInGroup(groupId, childId);
+							msg = msgs.get(i++);
+							if( null != msg && folderId.type.equals( FolderID.Type.Group ) ){
 								//fix msg id to folderchild id
-								msg = Meta.newBuilder(msg).setId(FolderChild.generateId(folderIdStr, childId)).build();
-							}else{
-								msg = weSync.getDataService().getMetaMessage(folderIdStr, childId);
+								msg = Meta.newBuilder(msg).setId(fc.hasScore() ? FolderChild.generateId(folderIdStr, fc.score) : fc.childId).build();
 							}
 						} else {
 							// TODO empty meta means delete?
 						}
 						
-						msg = checkMetaSize(folderIdStr, msg, fc);
+						Meta checked = checkMetaSize(folderIdStr, msg, fc);
+						if (null != msg && null == checked) offset--;
+						msg = checked;
 						
 						if (null != msg) {
+							int size = CodedOutputStream.computeMessageSize(SyncResp.SERVERCHANGES_FIELD_NUMBER, msg);
+							if ((bytes > 0 && bytes + size > maxResponseBytes) || (maxChanges > 0 && count >= maxChanges)) {
+								respBuilder.setHasNext(true);
+								isFull = true;
+								break;
+							}
+							bytes += size;
+							count++;
 							respBuilder.addServerChanges(msg);
 						}
+						lastChange = fc;
+						offset++;
 					}
+					
+					if (isFull || isCut || following.size() < batchSize) break;
+					following = weSync.getDataService().getFolderChanges(folderIdStr, offset, offset+batchSize-1);
+				}
+				if (null != lastChange) {
+					nextKey = SyncKey.syncKeyOnChange(folderIdStr, lastChange);
 				}
 			}
 		}
@@ -274,14 +366,59 @@ public class SyncHandler extends BaseHandler {
 		applyClientChanges( folderId, req, respBuilder, fromListener );
 		
 		respBuilder.setNextKey(nextKey);
-		return respBuilder.build().toByteArray();
+		return respBuilder.build();
+	}
+
+	//Retrieve the messages of the children at one time, in the order of the children
+	private List<Meta> getMetaMessages(String metaFolderId, SortedSet<FolderChild> children) {
+		List<String> msgIds = new ArrayList<String>(children.size());
+		for (FolderChild c : children) {
+			msgIds.add( FolderChild.generateId(metaFolderId, Long.valueOf(c.id)) );
+		}
+		return weSync.getDataService().getMetaMessages(msgIds);
+	}
+
+	//The property child in full sync, by its id only
+	private static List<Meta> propertyItem(FolderChild c) {
+		return Collections.singletonList( Meta.newBuilder().setId(c.id)
+				.setType(ByteString.copyFrom(new byte[] { MetaMessageType.property.toByte() })).build() );
+	}
+	
+	//The message of the child in full sync, followed by the ones of its sub folder
+	private List<Meta> getFullSyncMessages(String folderIdStr, String metaFolderId, FolderChild c, Meta msg) {
+		msg = checkMetaSize(folderIdStr, msg, new FolderChange( c.score, true ));
+		if (null == msg) return Collections.emptyList();
+		if( !MetaMessageType.valueOf( msg.getType().byteAt(0) ).equals( MetaMessageType.subfolder) ){
+			return Collections.singletonList(msg);
+		}
+		
+		List<Meta> ret = new ArrayList<Meta>();
+		ret.add(msg);
+		SortedSet<FolderChild> grandsons = weSync.getDataService().getChildren( msg.getContent().toStringUtf8() );
+		for(Meta gsMsg : getMetaMessages(metaFolderId, grandsons)){
+			if( null != gsMsg ){
+				ret.add(gsMsg);
+			}
+		}
+		return ret;
+	}
+	
+	//Bytes of the messages in the server changes of the response
+	private static int serverChangesSize(List<Meta> msgs) {
+		int size = 0;
+		for (Meta m : msgs) {
+			size += CodedOutputStream.computeMessageSize(SyncResp.SERVERCHANGES_FIELD_NUMBER, m);
+		}
+		return size;
 	}
 
 	// @by jichao, 考虑到无线设备内存有限，实际上超过1M通常会导致内存溢出，所以5M max Content length
 	private Meta checkMetaSize(String folderIdStr, Meta msg, FolderChange fc) {
-		if(msg.toByteArray().length > MAX_BODY_LENGTH) {
+		if (null == msg) return null;
+		int length = msg.getSerializedSize();
+		if(length > MAX_BODY_LENGTH) {
 			log.warn("applyClientChanges->" + msg.getFrom() + "|" + msg.getTo() + "|" + msg.getType() + 
-				", length=" + msg.toByteArray().length + 
+				", length=" + length + 
 				", is discarded because it's length is too large");
 			
 			weSync.getDataService().removeFolderChange(folderIdStr, fc);
@@ -359,7 +496,8 @@ public class SyncHandler extends BaseHandler {
 		return req.toString();
 	}
 	
-	private boolean isAccessPermitted(String username, FolderID folderId) {
+	//Checked before parking a sync as well, see WeSyncServiceImpl.requestAsync()
+	public static boolean isAccessPermitted(WeSyncService weSync, String username, FolderID folderId) {
 		switch( folderId.type ){
 		case Property:
 			String propName = FolderID.getProperty(folderId);
@@ -388,9 +526,10 @@ public class SyncHandler extends BaseHandler {
 		for(Meta metaMsg : req.getClientChangesList() ) {
 			
 			// @by jichao, 考虑到无线设备内存有限，实际上超过1M通常会导致内存溢出，所以1M max Content length
-			if(metaMsg.toByteArray().length > MAX_BODY_LENGTH) {
+			int length = metaMsg.getSerializedSize();
+			if(length > MAX_BODY_LENGTH) {
 				log.warn("applyClientChanges->" + metaMsg.getFrom() + "|" + metaMsg.getTo() + "|" + metaMsg.getType() + 
-					", length=" + metaMsg.toByteArray().length + 
+					", length=" + length + 
 					", is discarded because it's length is too large");
 				
 				// TO DO 返回错误
@@ -425,8 +564,8 @@ public class SyncHandler extends BaseHandler {
 		
 		if (metaMsg.hasSpanId()) {
 			FolderID subFolderId = folderId.type.equals(FolderID.Type.Group) 
-					? new FolderID(FolderID.onData(FolderID.getGroup(folderId), metaMsg.getSpanId())) 
-					: new FolderID(FolderID.onData(FolderID.getUsername(folderId), metaMsg.getSpanId()));
+					? FolderID.of(FolderID.onData(FolderID.getGroup(folderId), metaMsg.getSpanId())) 
+					: FolderID.of(FolderID.onData(FolderID.getUsername(folderId), metaMsg.getSpanId()));
 
 			if (metaMsg.hasSpanSequenceNo() && metaMsg.getSpanSequenceNo() == 1) {
 				Meta subFolderMsg = Meta
@@ -467,7 +606,7 @@ public class SyncHandler extends BaseHandler {
 						.addClientChanges(msgWithIDFixed).build();
 				
 				
-				noticeListener(Command.Sync, syncReqForListener.toByteString());
+				noticeListener(Command.Sync, syncReqForListener);
 			}
 		}
 	}
@@ -572,7 +711,7 @@ public class SyncHandler extends BaseHandler {
 //		return ret.build();
 //	}
 
-	private void noticeReceiver(final String username, String folderId, Meta orig) {
+	private void noticeReceiver(String username, String folderId, Meta orig) {
 		
 		int unreadNum = weSync.getDataService().getUnreadNumber(folderId);
 		
@@ -587,7 +726,7 @@ public class SyncHandler extends BaseHandler {
 //		}
 		
 		//concern the siblings 
-		FolderChange change = new FolderChange( String.valueOf( new FolderChild(orig.getId()).score ), true);
+		FolderChange change = new FolderChange( FolderChild.getScore(orig.getId()), true );
 		orig = checkMetaSize(folderId, orig, change);
 		
 		if(orig != null) {
@@ -597,16 +736,12 @@ public class SyncHandler extends BaseHandler {
 			SortedSet<FolderChange> precedings = weSync.getDataService().getPrecedingChanges(folderId, change, 1);
 			if( null != precedings ){
 				for(FolderChange c : precedings ){
-					String expectAck = FolderChild.generateId(folderId, Long.valueOf(c.childId));
+					String expectAck = c.hasScore() ? FolderChild.generateId(folderId, c.score) : c.childId;
 					noticeBuilder.addExpectAck( expectAck );
 				}
 			}
 
-			final Notice notice = noticeBuilder.build();
-			
-			executor.execute(new Runnable() {public void run() {
-				weSync.getNoticeService().send(username, notice);
-			}});
+			weSync.getNoticeDispatcher().dispatch(username, noticeBuilder.build());
 		}
 	}
 
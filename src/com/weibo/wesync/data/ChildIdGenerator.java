@@ -0,0 +1,122 @@
+package com.weibo.wesync.data;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Child id reservation for the data service, the id is the counter in the folder
+ * followed by the YYMMDD stamp in GMT for shard in DB.
+ *
+ * With block size 1 each id is reserved from the store. Otherwise a block of ids is
+ * reserved per folder at one time and handed out locally by CAS, which saves round trips
+ * to the store but the ids from different servers are no longer in the order of arrival.
+ */
+public final class ChildIdGenerator {
+	private static final long DAY_MILLIS = 24L * 3600 * 1000;
+	private static final long STAMP_SCALE = 1000000;
+
+	//Stamp of the day, computed once a day and swapped as a whole
+	private static final class Stamp {
+		final int value;
+		final long beginMillis;
+		final long endMillis;
+
+		Stamp(long now) {
+			beginMillis = now - now % DAY_MILLIS;
+			endMillis = beginMillis + DAY_MILLIS;
+
+			Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+			cal.setTimeInMillis(beginMillis);
+			value = cal.get(Calendar.YEAR) % 100 * 10000
+					+ (cal.get(Calendar.MONTH) + 1) * 100
+					+ cal.get(Calendar.DAY_OF_MONTH);
+		}
+	}
+	private static volatile Stamp stamp = new Stamp(System.currentTimeMillis());
+
+	//Reserved ids in [next, end] of the folder
+	private static final class IdBlock {
+		final AtomicLong next = new AtomicLong(1);
+		volatile long end = 0;
+	}
+
+	private final DataStore dataStore;
+	private final int blockSize;
+	private final ConcurrentMap<String, IdBlock> blocks = new ConcurrentHashMap<String, IdBlock>();
+
+	public ChildIdGenerator(DataStore dataStore) {
+		this(dataStore, 1);
+	}
+
+	public ChildIdGenerator(DataStore dataStore, int blockSize) {
+		if (blockSize < 1) throw new IllegalArgumentException("Block size should be positive: " + blockSize);
+		this.dataStore = dataStore;
+		this.blockSize = blockSize;
+	}
+
+	public static int dateStamp() {
+		return dateStamp(System.currentTimeMillis());
+	}
+
+	static int dateStamp(long now) {
+		Stamp s = stamp;
+		if (now >= s.endMillis || now < s.beginMillis) {
+			s = new Stamp(now);
+			stamp = s;
+		}
+		return s.value;
+	}
+
+	//Append the date stamp to the counter
+	public static long stamp(long id) {
+		return id * STAMP_SCALE + dateStamp();
+	}
+
+	//Counter part of the id
+	public static long counterOf(long stampedId) {
+		return stampedId / STAMP_SCALE;
+	}
+
+	public long next(String folderId) {
+		if (blockSize == 1) return dataStore.reserveChildId(folderId);
+
+		IdBlock block = blocks.get(folderId);
+		if (null == block) {
+			IdBlock created = new IdBlock();
+			block = blocks.putIfAbsent(folderId, created);
+			if (null == block) block = created;
+		}
+
+		while (true) {
+			long id = block.next.get();
+			if (id <= block.end) {
+				if (block.next.compareAndSet(id, id + 1)) return id;
+			} else {
+				refill(folderId, block);
+			}
+		}
+	}
+
+	public long nextStamped(String folderId) {
+		return stamp(next(folderId));
+	}
+
+	private void refill(String folderId, IdBlock block) {
+		synchronized (block) {
+			if (block.next.get() <= block.end) return;
+
+			long last = dataStore.reserveChildIdBlock(folderId, blockSize);
+			//next goes first, so that a stale next never passes the new end
+			block.next.set(last - blockSize + 1);
+			block.end = last;
+		}
+	}
+
+	//Drop the local block of the folder, the rest ids in it are wasted
+	public void forget(String folderId) {
+		blocks.remove(folderId);
+	}
+}
@@ -1,8 +1,11 @@
 package com.weibo.wesync.data;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 
+import com.google.protobuf.ByteString;
 import com.weibo.wesync.data.WeSyncMessage.FileData;
 import com.weibo.wesync.data.WeSyncMessage.Meta;
 import com.weibo.wesync.data.WeSyncMessage.Unread;
@@ -21,6 +24,8 @@ public interface DataStore {
 	public int getMaxChildId( String folderId );
 	//Usually, the store will increase the folderId's maxChildId and return the new value;
 	public long reserveChildId( String folderId );
+	//Increase the maxChildId by num at one time and return the new value, the ids in (new-num, new] are reserved
+	public long reserveChildIdBlock( String folderId, int num );
 	public boolean isChild(String childId, String folderId);
 	
 	/**
@@ -83,4 +88,40 @@ public interface DataStore {
 	 */
 	public FileData getFileByIndex(FileData fileIndex);
 	public FileData getFileById(String fileId);
+	//Remove the file, partial or complete, the slice contents it refers to are released by the caller
+	public boolean removeFile(String fileId);
+	
+	/**
+	 * Slice contents keyed by md5, shared by the files which keep the md5 only.
+	 * A content is kept as long as it is referred by any file, each file is one reference
+	 * however many times it retains the content.
+	 */
+	//Retrieve the contents in the order of the md5s, null for the missing ones
+	public List<ByteString> getSliceContents(List<String> md5s);
+	//Add the reference of the file to the content, which is stored if new, @Param:data null to refer to a stored one only
+	//@Return false if the content is missing, or can not be stored
+	public boolean retainSliceContent(String md5, String fileId, ByteString data);
+	//Remove the reference of the file, the content is removed with the last one
+	//@Return false if the file does not refer to it
+	public boolean releaseSliceContent(String md5, String fileId);
+
+	/**
+	 * Batch operations, which might be finished in one round trip
+	 */
+	//Add the change to each folder, keyed by folder id
+	public boolean addFolderChanges(Map<String, FolderChange> changes);
+	public boolean addChildren(String folderId, Collection<FolderChild> children);
+	//Add the child to each folder, keyed by folder id
+	public boolean addChildren(Map<String, FolderChild> children);
+	//Reserve one child id in each folder, return the ids keyed by folder id
+	public Map<String, Long> reserveChildIds(List<String> folderIds);
+	//Check whether the child is in its folder, @Param:childIds is keyed by folder id and so is the result
+	public Map<String, Boolean> isChildMulti(Map<String, String> childIds);
+	//Retrieve the messages in the order of the ids, null for the missing ones
+	public List<Meta> getMetaMessages(List<String> metaMsgIds);
+
+	/**
+	 * Pipelined operations, see DataStorePipeline
+	 */
+	public DataStorePipeline pipelined();
 }
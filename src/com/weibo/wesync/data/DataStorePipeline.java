@@ -0,0 +1,36 @@
+package com.weibo.wesync.data;
+
+import com.weibo.wesync.data.WeSyncMessage.Meta;
+
+/**
+ * Operations queued on the store and flushed together by sync(), remote stores should
+ * finish them in one round trip.
+ */
+public interface DataStorePipeline {
+	/**
+	 * Result of a queued operation, available after sync()
+	 */
+	public static final class Response<T> {
+		private T value;
+		private boolean ready = false;
+
+		public void set(T value){
+			this.value = value;
+			this.ready = true;
+		}
+
+		public T get(){
+			if( !ready ) throw new IllegalStateException("Pipeline has not been synchronized");
+			return value;
+		}
+	}
+
+	public void addMetaMessage(Meta msg);
+	//Add the child and keep the latest @Param:limit children, no trimming if limit is not positive
+	public void addChild(String folderId, String childId, long score, int limit);
+	//Add the change and keep the latest @Param:limit changes, no trimming if limit is not positive
+	public void addFolderChange(String folderId, FolderChange change, int limit);
+	public Response<Boolean> isChild(String childId, String folderId);
+
+	public void sync();
+}
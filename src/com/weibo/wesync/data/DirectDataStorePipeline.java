@@ -0,0 +1,53 @@
+package com.weibo.wesync.data;
+
+import com.weibo.wesync.data.WeSyncMessage.Meta;
+
+/**
+ * Pipeline for local stores, which just executes the operations immediately.
+ */
+public class DirectDataStorePipeline implements DataStorePipeline {
+	private final DataStore dataStore;
+
+	public DirectDataStorePipeline(DataStore dataStore){
+		this.dataStore = dataStore;
+	}
+
+	@Override
+	public void addMetaMessage(Meta msg) {
+		dataStore.addMetaMessage(msg);
+	}
+
+	@Override
+	public void addChild(String folderId, String childId, long score, int limit) {
+		if( limit > 0 ){
+			int childNum = dataStore.numberOfChildren(folderId);
+			if( childNum >= limit ){
+				dataStore.removeChildren(folderId, childNum+1-limit);
+			}
+		}
+		dataStore.addChild(folderId, childId, score);
+	}
+
+	@Override
+	public void addFolderChange(String folderId, FolderChange change, int limit) {
+		if( limit > 0 ){
+			int changeNum = dataStore.numberOfFolderChanges(folderId);
+			if( changeNum >= limit ){
+				dataStore.removeFolderChanges(folderId, changeNum+1-limit);
+			}
+		}
+		dataStore.addFolderChange(folderId, change);
+	}
+
+	@Override
+	public Response<Boolean> isChild(String childId, String folderId) {
+		Response<Boolean> resp = new Response<Boolean>();
+		resp.set( dataStore.isChild(childId, folderId) );
+		return resp;
+	}
+
+	@Override
+	public void sync() {
+		//Already done
+	}
+}
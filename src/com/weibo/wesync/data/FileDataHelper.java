@@ -2,12 +2,17 @@ package com.weibo.wesync.data;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import com.google.protobuf.ByteString;
 import com.weibo.wesync.data.WeSyncMessage.DataSlice;
 import com.weibo.wesync.data.WeSyncMessage.FileData;
 
@@ -65,15 +70,18 @@ public final class FileDataHelper {
 		List<DataSlice> slices = file.getSliceList();
 
 		int limit = getMaxLimit( slices );
-		BitSet set = createBitSet( slices, limit );
-
+		return findMissing( createBitSet( slices, limit ), limit );
+	}
+	
+	//@Param:set the indexes received
+	public static List<DataSlice> findMissing( BitSet set, int limit ){
 		List<DataSlice> missing = new LinkedList<DataSlice>();
 		DataSlice.Builder builder = DataSlice.newBuilder();
 		builder.setLimit(limit);
 		
 		for(int i=1,j=1; i<=limit; i=++j){
 			j = set.nextClearBit(i);
-			if(j < 0) break;
+			if(j < 0 || j > limit) break;
 			
 			builder.setIndex(j);
 			missing.add( builder.build() );
@@ -116,11 +124,15 @@ public final class FileDataHelper {
 
 	//Return true if the file is near complete, that is, the server have received the last data slice (index==limit)
 	public static boolean nearComplete(FileData file) {
+		List<DataSlice> slices = file.getSliceList();
+		return nearComplete( file.getSliceCount(), getMaxLimit( slices ) );
+	}
+	
+	//@Param:received the number of slices received, including the duplicate ones
+	public static boolean nearComplete(int received, int limit) {
 		final double threshold = 0.9;
 		
-		List<DataSlice> slices = file.getSliceList();
-		int limit = getMaxLimit( slices );
-		if( file.getSliceCount() / limit >= threshold ) return true;
+		if( received / limit >= threshold ) return true;
 		
 		return false;
 	}
@@ -140,4 +152,62 @@ public final class FileDataHelper {
 				.build();
 		return newFile;
 	}
+	
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	
+	//Lower case hex of the md5 digest
+	public static String md5( ByteString data ){
+		return md5( Collections.singletonList(data) );
+	}
+	//Of the data one after another, e.g. the slices of a file
+	public static String md5( List<ByteString> data ){
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		for( ByteString b : data ){
+			md.update( b.asReadOnlyByteBuffer() );
+		}
+		byte[] digest = md.digest();
+		
+		char[] hex = new char[digest.length * 2];
+		for(int i=0; i<digest.length; i++){
+			hex[2*i] = HEX[(digest[i] >> 4) & 0xF];
+			hex[2*i+1] = HEX[digest[i] & 0xF];
+		}
+		return new String(hex);
+	}
+	//Return true if the md5 of the slice is of its data
+	public static boolean isDigestOf( DataSlice slice ){
+		return slice.getMd5().equalsIgnoreCase( md5(slice.getData()) );
+	}
+	
+	//Return true if the slice refers to the content stored by md5, without data
+	public static boolean isReference( DataSlice slice ){
+		return slice.hasMd5() && slice.getData().isEmpty();
+	}
+	
+	//The data of the slices, the contents of the references filled in from the store, null if any is missing
+	public static List<ByteString> dataOf( List<DataSlice> slices, DataStore store ){
+		List<String> md5s = new ArrayList<String>();
+		for( DataSlice slice : slices ){
+			if( isReference(slice) ) md5s.add(slice.getMd5());
+		}
+		List<ByteString> contents = md5s.isEmpty() ? null : store.getSliceContents(md5s);
+		
+		List<ByteString> data = new ArrayList<ByteString>(slices.size());
+		int i = 0;
+		for( DataSlice slice : slices ){
+			if( !isReference(slice) ){
+				data.add( slice.getData() );
+				continue;
+			}
+			ByteString content = contents.get(i++);
+			if( null == content ) return null;
+			data.add(content);
+		}
+		return data;
+	}
 }
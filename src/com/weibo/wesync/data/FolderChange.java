@@ -1,15 +1,63 @@
 package com.weibo.wesync.data;
 
 /**
+ * Change of a child in the folder, ordered by the score of the child.
+ * 
+ * The child id is parsed into the score once on construction, so the sorted sets compare on
+ * primitives. Children of root folder are folder ids without score, which are interned since
+ * they recur in every change of the folder, and ordered by the id.
+ * 
  * @author Eric Liang
  */
 public class FolderChange implements Comparable<FolderChange>{
 	public final String childId; 
 	public final boolean isAdd;
+	//0 if the child id is not a number, see hasScore()
+	public final long score;
+	private final boolean hasScore;
 	
 	public FolderChange(String childId, boolean isAdd){
-		this.childId = childId;
 		this.isAdd = isAdd;
+		this.hasScore = isNumber(childId);
+		if( hasScore ){
+			this.childId = childId;
+			this.score = Long.parseLong(childId);
+		}else{
+			this.childId = null == childId ? null : childId.intern();
+			this.score = 0;
+		}
+	}
+	
+	public FolderChange(long score, boolean isAdd){
+		this.childId = String.valueOf(score);
+		this.isAdd = isAdd;
+		this.score = score;
+		this.hasScore = true;
+	}
+	
+	//Return true if the string is a long, without the cost of NumberFormatException
+	static boolean isNumber(String s){
+		if( null == s ) return false;
+		int len = s.length();
+		int i = len > 0 && s.charAt(0) == '-' ? 1 : 0;
+		if( i == len || len - i > 19 ) return false;
+		for( ; i<len; i++ ){
+			char c = s.charAt(i);
+			if( c < '0' || c > '9' ) return false;
+		}
+		if( len - (s.charAt(0) == '-' ? 1 : 0) < 19 ) return true;
+		
+		//Might overflow
+		try{
+			Long.parseLong(s);
+			return true;
+		} catch (NumberFormatException nf) {
+			return false;
+		}
+	}
+	
+	public boolean hasScore(){
+		return hasScore;
 	}
 	
 	public static FolderChange fromString(String changeStr){
@@ -49,18 +97,13 @@ public class FolderChange implements Comparable<FolderChange>{
 
 	@Override
 	public int compareTo(FolderChange other) {
-		try{
-			long myScore = Long.parseLong(this.childId);
-			long otherScore = Long.parseLong(other.childId);
-			if( myScore != otherScore ){
-				int ret = myScore > otherScore ? 1 : -1;
-				return ret;
+		if( this.hasScore && other.hasScore ){
+			if( this.score != other.score ){
+				return this.score > other.score ? 1 : -1;
 			}
-		} catch (NumberFormatException nf) {
+		}else if( this.childId != other.childId && !this.childId.equals(other.childId) ){
 			//for root folder
-			if( !this.childId.equals(other.childId) ){
-				return this.childId.compareTo(other.childId);
-			}
+			return this.childId.compareTo(other.childId);
 		}
 		
 		if( this.isAdd == other.isAdd ) return 0;
@@ -30,8 +30,22 @@ public class FolderChild implements Comparable<FolderChild>{
 		return folderId+SPLIT+score;
 	}
 	
+	//Parsed in place, without the substring and the cost of NumberFormatException
 	public static long getScore(String childId){
 		int idx = childId.lastIndexOf(SPLIT);
+		int len = childId.length();
+		if( idx <= 0 || idx+1 >= len || len-idx-1 > 18 ) return slowScore(childId, idx);
+		
+		long score = 0;
+		for( int i=idx+1; i<len; i++ ){
+			char c = childId.charAt(i);
+			if( c < '0' || c > '9' ) return slowScore(childId, idx);
+			score = score * 10 + (c - '0');
+		}
+		return score;
+	}
+	//Signed or long ones, which are rare
+	private static long slowScore(String childId, int idx){
 		if( idx > 0 && idx+1 < childId.length() ){
 			try {
 				return Long.parseLong(childId.substring(idx+1));
@@ -45,15 +59,10 @@ public class FolderChild implements Comparable<FolderChild>{
 	//Order by score in SortedSet
 	@Override
 	public int compareTo(FolderChild other) {
-		long delta = this.score - other.score;
-		
-		if( 0 == delta ){
+		if( this.score == other.score ){
 			return this.id.compareTo(other.id); 
-		}else if(delta > 0){
-			return 1;
-		}else{
-			return -1;
 		}
+		return this.score > other.score ? 1 : -1;
 	}
 	
 	//Only id matters since we will retrieve children by id
@@ -1,7 +1,13 @@
 package com.weibo.wesync.data;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
  * Folder id rules
+ * 
+ * The id is parsed on the char offsets without taking out the tag, and the parsed ones are
+ * immutable and shared through a bounded cache, see of(), so a request parses its folder once.
+ * 
  * @author Eric Liang
  */
 public final class FolderID {
@@ -24,51 +30,91 @@ public final class FolderID {
 	private static String GROU_TAG = "grou";
 	private static String DATA_TAG = "data";
 	
-	public String prefix="";
-	public Type type;
-	public String suffix="";
+	//Slots of the cache, a power of 2
+	private static final int CACHE_SIZE = 4096;
+	private static final AtomicReferenceArray<FolderID> cache = new AtomicReferenceArray<FolderID>(CACHE_SIZE);
+	
+	public final String prefix;
+	public final Type type;
+	public final String suffix;
+	private final String id;
 	
 	public FolderID(String folderId){
-		type = Type.Unknown;
-		int idx1 = folderId.indexOf(FOLDER_SPLIT);
-		if( idx1 >= 0 ){
-			prefix = folderId.substring(0, idx1);
-
-			int idx2 = folderId.indexOf(FOLDER_SPLIT, idx1+1);
-			if (idx2 < 0) {
-				if (folderId.substring(idx1 + 1).equals(ROOT_TAG)) {
-					type = Type.Root;
-				}
-			} else {
-				suffix = folderId.substring(idx2+1);
-				String tag = folderId.substring(idx1+1, idx2);
-				if (tag.equals(CONV_TAG)) type = Type.Conversation;
-				else if (tag.equals(CON2_TAG)) type = Type.Conversation2;
-				else if (tag.equals(PROP_TAG)) type = Type.Property;
-				else if (tag.equals(GROU_TAG)) type = Type.Group;
-				else if (tag.equals(DATA_TAG)) type = Type.Data;
-				else ;
-			}
+		this.id = folderId;
+		int idx1 = indexOfSplit(folderId, 0);
+		int idx2 = idx1 < 0 ? -1 : indexOfSplit(folderId, idx1+1);
+		this.type = parseType(folderId, idx1, idx2);
+		this.prefix = idx1 < 0 ? "" : folderId.substring(0, idx1);
+		this.suffix = idx2 < 0 ? "" : folderId.substring(idx2+1);
+	}
+	
+	/**
+	 * The parsed folder id, shared with the others of the same id.
+	 * The cache is direct mapped by the hash of id, a collision replaces the former one.
+	 */
+	public static FolderID of(String folderId){
+		int slot = spread(folderId.hashCode()) & (CACHE_SIZE-1);
+		FolderID fid = cache.get(slot);
+		if( null != fid && fid.id.equals(folderId) ) return fid;
+		
+		fid = new FolderID(folderId);
+		cache.lazySet(slot, fid);
+		return fid;
+	}
+	
+	private static int spread(int h){
+		return h ^ (h >>> 16);
+	}
+	
+	private static int indexOfSplit(CharSequence s, int from){
+		for(int i=from; i<s.length(); i++){
+			if( s.charAt(i) == FOLDER_SPLIT ) return i;
 		}
+		return -1;
 	}
 	
-	public String toString(){
-		switch( type ){
-		case Root:
-			return onRoot(prefix);
-		case Property:
-			return onProperty(prefix, suffix);
-		case Conversation:
-			return onConversation(prefix, suffix);
-		case Conversation2:
-			return onConversation2(prefix, suffix);
-		case Group:
-			return onGroup(prefix, suffix);
-		case Data:
-			return onData(prefix, suffix);
-		default:
-			return prefix+FOLDER_SPLIT+"unknown";
+	//Return true if s[from, to) is the tag
+	private static boolean isTag(CharSequence s, int from, int to, String tag){
+		if( to - from != tag.length() ) return false;
+		for(int i=0; i<tag.length(); i++){
+			if( s.charAt(from+i) != tag.charAt(i) ) return false;
 		}
+		return true;
+	}
+	
+	//@Param:idx1, idx2 the offsets of the first and second split, -1 for none
+	private static Type parseType(CharSequence folderId, int idx1, int idx2){
+		if( idx1 < 0 ) return Type.Unknown;
+		
+		if( idx2 < 0 ) {
+			if( isTag(folderId, idx1+1, folderId.length(), ROOT_TAG) ) return Type.Root;
+		}else{
+			if( isTag(folderId, idx1+1, idx2, CONV_TAG) ) return Type.Conversation;
+			if( isTag(folderId, idx1+1, idx2, CON2_TAG) ) return Type.Conversation2;
+			if( isTag(folderId, idx1+1, idx2, PROP_TAG) ) return Type.Property;
+			if( isTag(folderId, idx1+1, idx2, GROU_TAG) ) return Type.Group;
+			if( isTag(folderId, idx1+1, idx2, DATA_TAG) ) return Type.Data;
+		}
+		
+		return Type.Unknown;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if( this == obj ) return true;
+		if( !(obj instanceof FolderID) ) return false;
+		return id.equals( ((FolderID) obj).id );
+	}
+	
+	@Override
+	public int hashCode() {
+		return id.hashCode();
+	}
+	
+	public String toString(){
+		if( type.equals(Type.Unknown) ) return prefix+FOLDER_SPLIT+"unknown";
+		//The one it is parsed from, same as the one built by the type
+		return id;
 	}
 	
 	public static String onData(String username, String dataId) {
@@ -111,39 +157,21 @@ public final class FolderID {
 		return false;
 	}
 	
-	public static Type getType(String folderId){
-		int idx1 = folderId.indexOf(FOLDER_SPLIT);
+	public static Type getType(CharSequence folderId){
+		int idx1 = indexOfSplit(folderId, 0);
 		if( idx1 < 0 ) return Type.Unknown;
-		
-		int idx2 = folderId.indexOf(FOLDER_SPLIT, idx1+1);
-		if( idx2 < 0 ) {
-			if( folderId.substring(idx1+1).equals(ROOT_TAG) ) return Type.Root;
-		}else{
-			String tag = folderId.substring(idx1+1, idx2);
-			if( tag.equals(CONV_TAG) ) return Type.Conversation;
-			if( tag.equals(CON2_TAG) ) return Type.Conversation2;
-			if( tag.equals(PROP_TAG) ) return Type.Property;
-			if( tag.equals(GROU_TAG) ) return Type.Group;
-			if( tag.equals(DATA_TAG) ) return Type.Data;
-		}
-		
-		return Type.Unknown;
+		return parseType(folderId, idx1, indexOfSplit(folderId, idx1+1));
 	}
 	
 	public static String getUserChatWith(String folderId){
-		FolderID fid = new FolderID(folderId);
-		if( fid.type.equals(Type.Conversation) ){
-			return getSuffix( fid, Type.Conversation );
-		}else{
-			return getSuffix( fid, Type.Conversation2 );
-		}
+		return getUserChatWith( of(folderId) );
 	}
 	public static String getProperty(String folderId){
-		return getSuffix( new FolderID(folderId), Type.Property );
+		return getSuffix( of(folderId), Type.Property );
 	}
 	
 	public static String getGroup(String folderId){
-		return getSuffix( new FolderID(folderId), Type.Group );
+		return getSuffix( of(folderId), Type.Group );
 	}
 	
 	//Usually the FolderID instance will be more efficient than the static way.
@@ -0,0 +1,269 @@
+package com.weibo.wesync.data;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Skip list with spans on each forward link, like the zset of Redis, so that the rank of
+ * an element and the element at a rank are both found in O(log n).
+ *
+ * Not thread safe, the owner should guard it.
+ */
+public final class IndexedSkipList<E> implements Iterable<E> {
+	private static final int MAX_LEVEL = 32;
+
+	private static final class Node<E> {
+		final E value;
+		final Node<E>[] next;
+		//Number of nodes traversed by next[i], the span of the last node equals to the distance to the tail
+		final int[] span;
+
+		Node(E value, int level){
+			this.value = value;
+			this.next = newNodes(level);
+			this.span = new int[level];
+		}
+	}
+
+	//Generic arrays can't be created, the only unchecked cast of the nodes
+	@SuppressWarnings("unchecked")
+	private static <E> Node<E>[] newNodes(int n){
+		return (Node<E>[]) new Node<?>[n];
+	}
+
+	private final Comparator<? super E> comparator;
+	private final Node<E> head = new Node<E>(null, MAX_LEVEL);
+	private int level = 1;
+	private int size = 0;
+	private int seed = 0x2545F491;
+
+	public IndexedSkipList(Comparator<? super E> comparator){
+		this.comparator = comparator;
+	}
+
+	@SuppressWarnings("unchecked")
+	private int compare(E a, E b){
+		if( null != comparator ) return comparator.compare(a, b);
+		return ((Comparable<? super E>) a).compareTo(b);
+	}
+
+	private int randomLevel(){
+		//xorshift, P = 1/4 as Redis does
+		int x = seed;
+		x ^= x << 13;
+		x ^= x >>> 17;
+		x ^= x << 5;
+		seed = x;
+
+		int lvl = 1;
+		while( (x & 0x3) == 0 && lvl < MAX_LEVEL ){
+			lvl++;
+			x >>>= 2;
+		}
+		return lvl;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public boolean isEmpty(){
+		return 0 == size;
+	}
+
+	//Return false if an equal element exists
+	public boolean add(E e){
+		Node<E>[] update = newNodes(MAX_LEVEL);
+		int[] rank = new int[MAX_LEVEL];
+
+		Node<E> x = head;
+		for(int i=level-1; i>=0; i--){
+			rank[i] = (i == level-1) ? 0 : rank[i+1];
+			while( null != x.next[i] && compare(x.next[i].value, e) < 0 ){
+				rank[i] += x.span[i];
+				x = x.next[i];
+			}
+			update[i] = x;
+		}
+		if( null != x.next[0] && compare(x.next[0].value, e) == 0 ) return false;
+
+		int lvl = randomLevel();
+		if( lvl > level ){
+			for(int i=level; i<lvl; i++){
+				rank[i] = 0;
+				update[i] = head;
+				update[i].span[i] = size;
+			}
+			level = lvl;
+		}
+
+		x = new Node<E>(e, lvl);
+		for(int i=0; i<lvl; i++){
+			x.next[i] = update[i].next[i];
+			update[i].next[i] = x;
+
+			x.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+			update[i].span[i] = (rank[0] - rank[i]) + 1;
+		}
+		for(int i=lvl; i<level; i++){
+			update[i].span[i]++;
+		}
+
+		size++;
+		return true;
+	}
+
+	public boolean remove(E e){
+		Node<E>[] update = newNodes(MAX_LEVEL);
+
+		Node<E> x = head;
+		for(int i=level-1; i>=0; i--){
+			while( null != x.next[i] && compare(x.next[i].value, e) < 0 ){
+				x = x.next[i];
+			}
+			update[i] = x;
+		}
+		x = x.next[0];
+		if( null == x || compare(x.value, e) != 0 ) return false;
+
+		unlink(x, update);
+		return true;
+	}
+
+	private void unlink(Node<E> x, Node<E>[] update){
+		for(int i=0; i<level; i++){
+			if( update[i].next[i] == x ){
+				update[i].span[i] += x.span[i] - 1;
+				update[i].next[i] = x.next[i];
+			}else{
+				update[i].span[i] -= 1;
+			}
+		}
+		while( level > 1 && null == head.next[level-1] ){
+			level--;
+		}
+		size--;
+	}
+
+	public boolean contains(E e){
+		return rank(e) >= 0;
+	}
+
+	//Zero based rank of the element, -1 if not found. Redis command: ZRANK
+	public int rank(E e){
+		Node<E> x = head;
+		int rank = 0;
+		for(int i=level-1; i>=0; i--){
+			while( null != x.next[i] && compare(x.next[i].value, e) <= 0 ){
+				rank += x.span[i];
+				x = x.next[i];
+			}
+			if( x != head && compare(x.value, e) == 0 ){
+				return rank-1;
+			}
+		}
+		return -1;
+	}
+
+	//Number of elements less than @Param:e, or not greater than it if inclusive
+	public int headCount(E e, boolean inclusive){
+		Node<E> x = head;
+		int count = 0;
+		for(int i=level-1; i>=0; i--){
+			while( null != x.next[i] ){
+				int c = compare(x.next[i].value, e);
+				if( c > 0 || (c == 0 && !inclusive) ) break;
+				count += x.span[i];
+				x = x.next[i];
+			}
+		}
+		return count;
+	}
+
+	private Node<E> nodeAt(int index){
+		if( index < 0 || index >= size ) return null;
+
+		int target = index+1;
+		int traversed = 0;
+		Node<E> x = head;
+		for(int i=level-1; i>=0; i--){
+			while( null != x.next[i] && traversed + x.span[i] <= target ){
+				traversed += x.span[i];
+				x = x.next[i];
+			}
+			if( traversed == target ) return x;
+		}
+		return null;
+	}
+
+	public E get(int index){
+		Node<E> x = nodeAt(index);
+		return null == x ? null : x.value;
+	}
+
+	public E first(){
+		Node<E> x = head.next[0];
+		return null == x ? null : x.value;
+	}
+
+	public E last(){
+		return get(size-1);
+	}
+
+	/*
+	 * Iterate elements from beginIndex to endIndex, both are inclusive and should be valid indexes.
+	 * Redis command: ZRANGE
+	 */
+	public Iterator<E> range(final int beginIndex, final int endIndex){
+		return new Iterator<E>(){
+			Node<E> x = nodeAt(beginIndex);
+			int remaining = endIndex - beginIndex + 1;
+
+			@Override
+			public boolean hasNext() {
+				return null != x && remaining > 0;
+			}
+
+			@Override
+			public E next() {
+				if( !hasNext() ) throw new NoSuchElementException();
+				E value = x.value;
+				x = x.next[0];
+				remaining--;
+				return value;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return range(0, size-1);
+	}
+
+	//Remove the first @Param:num elements, return the number removed. Redis command: ZREMRANGEBYRANK
+	public int removeFirst(int num){
+		int removed = 0;
+		Node<E>[] update = newNodes(MAX_LEVEL);
+		while( removed < num && size > 0 ){
+			for(int i=0; i<level; i++) update[i] = head;
+			unlink(head.next[0], update);
+			removed++;
+		}
+		return removed;
+	}
+
+	public void clear(){
+		for(int i=0; i<MAX_LEVEL; i++){
+			head.next[i] = null;
+			head.span[i] = 0;
+		}
+		level = 1;
+		size = 0;
+	}
+}
@@ -0,0 +1,172 @@
+package com.weibo.wesync.data;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of long keys with a byte flag each, ordered by the key then the flag, and an
+ * entry is the pair of them. Kept in a sorted long[] and a side byte[] of the flags, 9 bytes
+ * an entry against the node, links and boxed element of a skip list, and scanned in order of
+ * memory.
+ *
+ * Thread safe by copy on write: the writers are serialized on the set and publish the entries
+ * as a whole, the readers take them without locking. The ones appended in order, as the changes
+ * of a folder mostly are, are written in the spare capacity without copying, since no published
+ * entries cover it; the others copy the arrays, an insertion costs O(n). Reading more than once
+ * sees the writes in between, so take a range() for a consistent view.
+ */
+public final class LongSortedSet {
+	private static final int INITIAL_CAPACITY = 8;
+
+	//Never changed below the size once published, the arrays beyond it are free for appending
+	private static final class Entries {
+		final long[] keys;
+		final byte[] flags;
+		final int size;
+
+		Entries(long[] keys, byte[] flags, int size) {
+			this.keys = keys;
+			this.flags = flags;
+			this.size = size;
+		}
+	}
+
+	private static final Entries EMPTY = new Entries(new long[0], new byte[0], 0);
+
+	private volatile Entries entries = EMPTY;
+
+	public LongSortedSet() {
+	}
+
+	private LongSortedSet(Entries entries) {
+		this.entries = entries;
+	}
+
+	public int size() {
+		return entries.size;
+	}
+
+	public boolean isEmpty() {
+		return 0 == entries.size;
+	}
+
+	public long key(int index) {
+		Entries e = entries;
+		if (index >= e.size) throw new IndexOutOfBoundsException(String.valueOf(index));
+		return e.keys[index];
+	}
+
+	public byte flag(int index) {
+		Entries e = entries;
+		if (index >= e.size) throw new IndexOutOfBoundsException(String.valueOf(index));
+		return e.flags[index];
+	}
+
+	//Copy of the entries in [@Param:from, @Param:to), taken at once
+	public LongSortedSet range(int from, int to) {
+		Entries e = entries;
+		if (from < 0 || to > e.size || from > to) throw new IndexOutOfBoundsException(from + ", " + to);
+		return new LongSortedSet(new Entries(Arrays.copyOfRange(e.keys, from, to),
+				Arrays.copyOfRange(e.flags, from, to), to - from));
+	}
+
+	//Index of the entry, or -(insertion point)-1 as Arrays.binarySearch() does
+	static int search(long[] keys, byte[] flags, int size, long key, byte flag) {
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		if (i < 0) return i;
+		//Entries of the same key are adjacent, at most 256 of them
+		while (i > 0 && keys[i - 1] == key) i--;
+		for (; i < size && keys[i] == key; i++) {
+			if (flags[i] == flag) return i;
+			if (flags[i] > flag) break;
+		}
+		return -i - 1;
+	}
+
+	private static int search(Entries e, long key, byte flag) {
+		return search(e.keys, e.flags, e.size, key, flag);
+	}
+
+	public boolean contains(long key, byte flag) {
+		return search(entries, key, flag) >= 0;
+	}
+
+	//Zero based rank of the entry, -1 if not found
+	public int rank(long key, byte flag) {
+		int i = search(entries, key, flag);
+		return i < 0 ? -1 : i;
+	}
+
+	//Number of entries less than the given one, or not greater than it if inclusive
+	public int headCount(long key, byte flag, boolean inclusive) {
+		int i = search(entries, key, flag);
+		if (i < 0) return -i - 1;
+		return inclusive ? i + 1 : i;
+	}
+
+	//Return false if the entry exists
+	public synchronized boolean add(long key, byte flag) {
+		Entries e = entries;
+		int i = search(e, key, flag);
+		if (i >= 0) return false;
+		i = -i - 1;
+
+		int size = e.size;
+		if (i == size && size < e.keys.length) {
+			e.keys[size] = key;
+			e.flags[size] = flag;
+			entries = new Entries(e.keys, e.flags, size + 1);
+			return true;
+		}
+
+		int capacity = size < e.keys.length ? e.keys.length : Math.max(INITIAL_CAPACITY, size + (size >> 1) + 1);
+		long[] keys = new long[capacity];
+		byte[] flags = new byte[capacity];
+		System.arraycopy(e.keys, 0, keys, 0, i);
+		System.arraycopy(e.flags, 0, flags, 0, i);
+		keys[i] = key;
+		flags[i] = flag;
+		System.arraycopy(e.keys, i, keys, i + 1, size - i);
+		System.arraycopy(e.flags, i, flags, i + 1, size - i);
+		entries = new Entries(keys, flags, size + 1);
+		return true;
+	}
+
+	public synchronized boolean remove(long key, byte flag) {
+		Entries e = entries;
+		int i = search(e, key, flag);
+		if (i < 0) return false;
+
+		//Copied even for the last one, or appending over it would change what the readers hold
+		int size = e.size - 1;
+		long[] keys = new long[e.keys.length];
+		byte[] flags = new byte[e.keys.length];
+		System.arraycopy(e.keys, 0, keys, 0, i);
+		System.arraycopy(e.flags, 0, flags, 0, i);
+		System.arraycopy(e.keys, i + 1, keys, i, size - i);
+		System.arraycopy(e.flags, i + 1, flags, i, size - i);
+		entries = new Entries(keys, flags, size);
+		return true;
+	}
+
+	//Remove the first @Param:num entries, return the number removed. Redis command: ZREMRANGEBYRANK
+	public synchronized int removeFirst(int num) {
+		Entries e = entries;
+		if (num <= 0 || 0 == e.size) return 0;
+		if (num >= e.size) {
+			entries = EMPTY;
+			return e.size;
+		}
+		int size = e.size - num;
+		int capacity = Math.max(INITIAL_CAPACITY, size + (size >> 1) + 1);
+		long[] keys = new long[capacity];
+		byte[] flags = new byte[capacity];
+		System.arraycopy(e.keys, num, keys, 0, size);
+		System.arraycopy(e.flags, num, flags, 0, size);
+		entries = new Entries(keys, flags, size);
+		return num;
+	}
+
+	public synchronized void clear() {
+		entries = EMPTY;
+	}
+}
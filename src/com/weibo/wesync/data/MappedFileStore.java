@@ -0,0 +1,386 @@
+package com.weibo.wesync.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.protobuf.ByteString;
+import com.weibo.wesync.data.WeSyncMessage.DataSlice;
+import com.weibo.wesync.data.WeSyncMessage.FileData;
+
+/**
+ * Completed files kept in append-only segment files on local disk, which are memory mapped.
+ *
+ * A file is appended to the current segment as one record, and indexed by its id to the
+ * segment and the offset of each slice, so a slice is read straight from the mapped region
+ * and the whole file is never parsed. A file larger than the segment size takes a segment of
+ * its own. The index is rebuilt by scanning the segments on opening.
+ *
+ * The slice contents shared by the files, see SliceContents, are stored once as records of their
+ * own keyed by md5, and the slices referring to them are stored with the md5 only.
+ *
+ * Record: int length of the rest, 0 for the end of the segment
+ *         short id length, id in UTF-8, int limit, int slice count, -1 for the removal
+ *         (int index, int length, short md5 length, md5 in UTF-8) of each slice, followed by the data of the slices
+ *         or, for a content, the md5 in place of the id, int 0, int -2 followed by the data, -3 for the removal
+ * The length is written last, so a record torn by a crash is not seen on opening.
+ *
+ * The space of the removed and stored again files and contents is not taken back.
+ */
+public final class MappedFileStore {
+	private final Logger log = LoggerFactory.getLogger(MappedFileStore.class);
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".dat";
+	private static final int REMOVED = -1;
+	private static final int CONTENT = -2;
+	private static final int CONTENT_REMOVED = -3;
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private static final class Segment {
+		final File path;
+		final RandomAccessFile raf;
+		final MappedByteBuffer buffer;
+		//Where the next record goes
+		int end = 0;
+
+		Segment(File path, int size) throws IOException {
+			this.path = path;
+			this.raf = new RandomAccessFile(path, "rw");
+			this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, raf.length()));
+		}
+	}
+
+	private static final class Located {
+		final Segment segment;
+		final int limit;
+		//Sorted
+		final int[] indexes;
+		//Of the slice data in the segment
+		final int[] offsets;
+		final int[] lengths;
+		//null for the ones without
+		final String[] md5s;
+
+		Located(Segment segment, int limit, int count) {
+			this.segment = segment;
+			this.limit = limit;
+			this.indexes = new int[count];
+			this.offsets = new int[count];
+			this.lengths = new int[count];
+			this.md5s = new String[count];
+		}
+
+		ByteString data(int i) {
+			ByteBuffer view = segment.buffer.duplicate();
+			view.limit(offsets[i] + lengths[i]);
+			view.position(offsets[i]);
+			return ByteString.copyFrom(view);
+		}
+
+		DataSlice slice(int i, DataSlice.Builder builder) {
+			builder.setIndex(indexes[i]).setData(data(i));
+			if (null != md5s[i]) {
+				builder.setMd5(md5s[i]);
+			} else {
+				builder.clearMd5();
+			}
+			return builder.build();
+		}
+	}
+
+	private final File dir;
+	private final int segmentSize;
+	private final Map<String, Located> index = new ConcurrentHashMap<String, Located>();
+	//Of one slice each, keyed by md5
+	private final Map<String, Located> contents = new ConcurrentHashMap<String, Located>();
+	private final List<Segment> segments = new ArrayList<Segment>();
+	private long bytesWritten = 0;
+
+	public MappedFileStore(File dir) throws IOException {
+		this(dir, DEFAULT_SEGMENT_SIZE);
+	}
+
+	public MappedFileStore(File dir, int segmentSize) throws IOException {
+		if (segmentSize <= 0) throw new IllegalArgumentException();
+		if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Failed to create " + dir);
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+
+		File[] files = dir.listFiles();
+		Arrays.sort(files);
+		for (File f : files) {
+			String name = f.getName();
+			if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) continue;
+			Segment segment = new Segment(f, 0);
+			scan(segment);
+			segments.add(segment);
+		}
+	}
+
+	//Rebuild the index from the records of the segment
+	private void scan(Segment segment) {
+		ByteBuffer buf = segment.buffer.duplicate();
+		int pos = 0;
+		while (pos + 4 <= buf.capacity()) {
+			int length = buf.getInt(pos);
+			if (length <= 0 || pos + 4 + length > buf.capacity()) break;
+
+			buf.position(pos + 4);
+			byte[] id = new byte[buf.getShort()];
+			buf.get(id);
+			String fileId = new String(id, UTF8);
+			int limit = buf.getInt();
+			int count = buf.getInt();
+			if (count == REMOVED) {
+				index.remove(fileId);
+			} else if (count == CONTENT) {
+				Located loc = new Located(segment, 0, 1);
+				loc.offsets[0] = buf.position();
+				loc.lengths[0] = pos + 4 + length - buf.position();
+				contents.put(fileId, loc);
+			} else if (count == CONTENT_REMOVED) {
+				contents.remove(fileId);
+			} else {
+				Located loc = new Located(segment, limit, count);
+				for (int i = 0; i < count; i++) {
+					loc.indexes[i] = buf.getInt();
+					loc.lengths[i] = buf.getInt();
+					loc.md5s[i] = readString(buf);
+				}
+				int offset = buf.position();
+				for (int i = 0; i < count; i++) {
+					loc.offsets[i] = offset;
+					offset += loc.lengths[i];
+				}
+				index.put(fileId, loc);
+			}
+			pos += 4 + length;
+		}
+		segment.end = pos;
+	}
+
+	//@Return null for the empty one
+	private static String readString(ByteBuffer buf) {
+		byte[] b = new byte[buf.getShort()];
+		if (b.length == 0) return null;
+		buf.get(b);
+		return new String(b, UTF8);
+	}
+
+	/**
+	 * Store the complete file, the one of the same id is replaced.
+	 * The slices of the same index are stored once, the last one wins.
+	 */
+	public synchronized void put(FileData file) throws IOException {
+		TreeMap<Integer, DataSlice> slices = new TreeMap<Integer, DataSlice>();
+		int limit = 0;
+		for (DataSlice s : file.getSliceList()) {
+			slices.put(Integer.valueOf(s.getIndex()), s);
+			if (s.getLimit() > limit) limit = s.getLimit();
+		}
+
+		byte[] id = file.getId().getBytes(UTF8);
+		int count = slices.size();
+		byte[][] md5s = new byte[count][];
+		int length = 2 + id.length + 8;
+		int i = 0;
+		for (DataSlice s : slices.values()) {
+			md5s[i] = s.hasMd5() ? s.getMd5().getBytes(UTF8) : new byte[0];
+			length += 10 + md5s[i].length + s.getData().size();
+			i++;
+		}
+		Segment segment = segmentFor(4 + length);
+		ByteBuffer buf = segment.buffer.duplicate();
+		int pos = segment.end;
+
+		buf.position(pos + 4);
+		buf.putShort((short) id.length).put(id).putInt(limit).putInt(count);
+		Located loc = new Located(segment, limit, count);
+		i = 0;
+		for (DataSlice s : slices.values()) {
+			buf.putInt(s.getIndex()).putInt(s.getData().size());
+			buf.putShort((short) md5s[i].length).put(md5s[i]);
+			loc.indexes[i] = s.getIndex();
+			loc.lengths[i] = s.getData().size();
+			loc.md5s[i] = s.hasMd5() ? s.getMd5() : null;
+			i++;
+		}
+		int offset = buf.position();
+		for (i = 0; i < count; i++) {
+			loc.offsets[i] = offset;
+			offset += loc.lengths[i];
+		}
+		for (DataSlice s : slices.values()) {
+			s.getData().copyTo(buf);
+		}
+		buf.putInt(pos, length);
+
+		segment.end = pos + 4 + length;
+		bytesWritten += 4 + length;
+		index.put(file.getId(), loc);
+	}
+
+	public synchronized boolean remove(String fileId) throws IOException {
+		if (null == index.remove(fileId)) return false;
+		append(fileId, REMOVED, ByteString.EMPTY);
+		return true;
+	}
+
+	//Store the content keyed by md5, nothing is done if stored already
+	public synchronized void putContent(String md5, ByteString data) throws IOException {
+		if (contents.containsKey(md5)) return;
+		contents.put(md5, append(md5, CONTENT, data));
+	}
+
+	public synchronized boolean removeContent(String md5) throws IOException {
+		if (null == contents.remove(md5)) return false;
+		append(md5, CONTENT_REMOVED, ByteString.EMPTY);
+		return true;
+	}
+
+	//Append the record of no slices, @Return where the data is
+	private Located append(String key, int count, ByteString data) throws IOException {
+		byte[] id = key.getBytes(UTF8);
+		int length = 2 + id.length + 8 + data.size();
+		Segment segment = segmentFor(4 + length);
+		ByteBuffer buf = segment.buffer.duplicate();
+		int pos = segment.end;
+		buf.position(pos + 4);
+		buf.putShort((short) id.length).put(id).putInt(0).putInt(count);
+		Located loc = new Located(segment, 0, 1);
+		loc.offsets[0] = buf.position();
+		loc.lengths[0] = data.size();
+		data.copyTo(buf);
+		buf.putInt(pos, length);
+		segment.end = pos + 4 + length;
+		bytesWritten += 4 + length;
+		return loc;
+	}
+
+	//The segment with room for the record, a new one if the current is full
+	private Segment segmentFor(int recordSize) throws IOException {
+		//Room for the end mark after the record
+		int needed = recordSize + 4;
+		Segment current = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+		if (null != current && current.buffer.capacity() - current.end >= needed) return current;
+
+		File path = new File(dir, String.format("%s%08d%s", SEGMENT_PREFIX, segments.size(), SEGMENT_SUFFIX));
+		Segment segment = new Segment(path, Math.max(segmentSize, needed));
+		segments.add(segment);
+		log.info("New file segment: " + path);
+		return segment;
+	}
+
+	public boolean contains(String fileId) {
+		return index.containsKey(fileId);
+	}
+
+	//@Return null if the content is not stored
+	public ByteString getContent(String md5) {
+		Located loc = contents.get(md5);
+		return null == loc ? null : loc.data(0);
+	}
+
+	//@Return -1 if the content is not stored
+	public int getContentLength(String md5) {
+		Located loc = contents.get(md5);
+		return null == loc ? -1 : loc.lengths[0];
+	}
+
+	public Set<String> getFileIds() {
+		return Collections.unmodifiableSet(index.keySet());
+	}
+
+	//Md5 of the slices of the file stored without data, which refer to the contents
+	public List<String> getReferences(String fileId) {
+		Located loc = index.get(fileId);
+		if (null == loc) return Collections.emptyList();
+
+		List<String> ret = new ArrayList<String>();
+		for (int i = 0; i < loc.indexes.length; i++) {
+			if (null != loc.md5s[i] && 0 == loc.lengths[i]) ret.add(loc.md5s[i]);
+		}
+		return ret;
+	}
+
+	/**
+	 * Read the slices in the order of index, with the limit of the file
+	 * @Param:indexes the wanted ones, null for all
+	 * @Return null if the file is not stored
+	 */
+	public List<DataSlice> getSlices(String fileId, BitSet indexes) {
+		Located loc = index.get(fileId);
+		if (null == loc) return null;
+
+		List<DataSlice> ret = new ArrayList<DataSlice>();
+		DataSlice.Builder builder = DataSlice.newBuilder().setLimit(loc.limit);
+		if (null == indexes) {
+			for (int i = 0; i < loc.indexes.length; i++) {
+				ret.add(loc.slice(i, builder));
+			}
+			return ret;
+		}
+
+		for (int index = indexes.nextSetBit(0); index >= 0; index = indexes.nextSetBit(index + 1)) {
+			int i = Arrays.binarySearch(loc.indexes, index);
+			if (i < 0) continue;
+			ret.add(loc.slice(i, builder));
+		}
+		return ret;
+	}
+
+	//Write the mapped segments to the disk
+	public synchronized void flush() {
+		for (Segment segment : segments) {
+			segment.buffer.force();
+		}
+	}
+
+	public synchronized void close() throws IOException {
+		flush();
+		for (Segment segment : segments) {
+			segment.raf.close();
+		}
+		segments.clear();
+		index.clear();
+		contents.clear();
+	}
+
+	/**
+	 * Metrics
+	 */
+	public int getFileCount() {
+		return index.size();
+	}
+
+	public int getContentCount() {
+		return contents.size();
+	}
+
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	//Since opened
+	public synchronized long getBytesWritten() {
+		return bytesWritten;
+	}
+}
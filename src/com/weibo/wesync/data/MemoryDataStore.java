@@ -0,0 +1,820 @@
+package com.weibo.wesync.data;
+
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.protobuf.ByteString;
+import com.weibo.wesync.data.WeSyncMessage.DataSlice;
+import com.weibo.wesync.data.WeSyncMessage.FileData;
+import com.weibo.wesync.data.WeSyncMessage.Meta;
+import com.weibo.wesync.data.WeSyncMessage.Unread;
+
+/**
+ * In-memory store which keeps the children of every folder as primitive scores with the ids in a
+ * ScoredIdSet, so rank costs O(log n), and looks up the children by id in O(1) by its index. The changes with
+ * scores, the ones of all but root folders, are kept as primitives in a LongSortedSet, until one
+ * without score comes to the folder, then in an indexed skip list.
+ *
+ * The returned sets are snapshots, modifications on them won't affect the store, and the ranges of
+ * the scored changes are read only.
+ */
+public class MemoryDataStore implements DataStore {
+	private final Logger log = LoggerFactory.getLogger(MemoryDataStore.class);
+
+	private static final class Slot {
+		//-1 means the folder is not created
+		int maxChildId = -1;
+		//Changes as (score, isAdd) while all of them have scores
+		final LongSortedSet scoredChanges = new LongSortedSet();
+		//All the changes since one without score, null before that
+		IndexedSkipList<FolderChange> changes = null;
+		//Looked up by id as well, so read under the lock of the slot as written
+		final ScoredIdSet children = new ScoredIdSet();
+	}
+
+	private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+	private final Map<String, Meta> msgStore = new ConcurrentHashMap<String, Meta>();
+	//Slices of the partial files, and the complete ones without the fileStore, out of the heap
+	private final OffHeapSliceStore sliceStore;
+	//Complete files on local disk, null to keep them in the sliceStore
+	private final MappedFileStore fileStore;
+	//Kept in the sliceStore, and in the fileStore along with the files moved there
+	private final SliceContents sliceContents;
+	//Checks the md5 of the files completed
+	private final SliceVerifier verifier;
+
+	public static final long DEFAULT_FILE_BYTES = 256L * 1024 * 1024;
+
+	public MemoryDataStore() {
+		this(DEFAULT_FILE_BYTES);
+	}
+
+	//@Param:fileBytes the budget of the file slices, the oldest files are evicted beyond it
+	public MemoryDataStore(long fileBytes) {
+		this(fileBytes, null);
+	}
+
+	//@Param:fileStore where the complete files are moved to, null to keep them with the partial ones
+	public MemoryDataStore(long fileBytes, MappedFileStore fileStore) {
+		this(fileBytes, fileStore, SliceVerifier.getDefault());
+	}
+
+	//@Param:verifier shared with the DataService, see DataServiceImpl
+	public MemoryDataStore(long fileBytes, MappedFileStore fileStore, SliceVerifier verifier) {
+		this.sliceStore = new OffHeapSliceStore(fileBytes);
+		this.fileStore = fileStore;
+		this.sliceContents = new SliceContents(sliceStore, fileStore);
+		this.verifier = verifier;
+		this.sliceStore.setEvictionListener(new OffHeapSliceStore.EvictionListener() {
+			//The evicted files no longer refer to the contents
+			@Override
+			public void onEvicted(String fileId, List<String> md5s) {
+				for( String md5 : md5s ){
+					sliceContents.release(md5, fileId);
+				}
+			}
+
+			//Nor are the files referring to the evicted contents kept
+			@Override
+			public void onContentEvicted(String md5) {
+				for( String fileId : sliceContents.evicted(md5) ){
+					sliceStore.evict(fileId);
+				}
+			}
+		});
+		if( null != fileStore ){
+			for( String fileId : fileStore.getFileIds() ){
+				for( String md5 : fileStore.getReferences(fileId) ){
+					sliceContents.restore(md5, fileId);
+				}
+			}
+		}
+	}
+
+	private Slot getSlot(String folderId, boolean create){
+		Slot slot = slots.get(folderId);
+		if( null == slot && create ){
+			Slot newSlot = new Slot();
+			slot = slots.putIfAbsent(folderId, newSlot);
+			if( null == slot ) slot = newSlot;
+		}
+		return slot;
+	}
+
+	private static boolean isRoot(String folderId){
+		return FolderID.getType(folderId).equals(FolderID.Type.Root);
+	}
+
+	/*
+	 * Emulate Redis ZRANGE, where the minus index means traverse the set reversely
+	 */
+	private static <T> SortedSet<T> range(IndexedSkipList<T> list, int beginIndex, int endIndex){
+		SortedSet<T> ret = new TreeSet<T>();
+		int size = list.size();
+		if( beginIndex < 0 ) beginIndex += size;
+		if( endIndex < 0 ) endIndex += size;
+		if( beginIndex < 0 ) beginIndex = 0;
+		if( endIndex >= size ) endIndex = size-1;
+		if( beginIndex > endIndex ) return ret;
+
+		Iterator<T> iter = list.range(beginIndex, endIndex);
+		while( iter.hasNext() ){
+			ret.add(iter.next());
+		}
+		return ret;
+	}
+
+	private static SortedSet<FolderChild> range(ScoredIdSet children, int beginIndex, int endIndex){
+		SortedSet<FolderChild> ret = new TreeSet<FolderChild>();
+		int size = children.size();
+		if( beginIndex < 0 ) beginIndex += size;
+		if( endIndex < 0 ) endIndex += size;
+		if( beginIndex < 0 ) beginIndex = 0;
+		if( endIndex >= size ) endIndex = size-1;
+		if( beginIndex > endIndex ) return ret;
+
+		ScoredIdSet range = children.range(beginIndex, endIndex+1);
+		for(int i=0; i<range.size(); i++){
+			ret.add( new FolderChild(range.id(i), range.score(i)) );
+		}
+		return ret;
+	}
+
+	private static final byte DELETE = 0;
+	private static final byte ADD = 1;
+
+	//Same order as FolderChange.compareTo(), delete in front of add
+	private static byte flagOf(FolderChange change){
+		return change.isAdd ? ADD : DELETE;
+	}
+
+	/*
+	 * Read only range of the scored changes, copied as primitives at once, and the changes are
+	 * created on reading, so the ones not read, e.g. by first(), cost nothing
+	 */
+	private static final class ScoredChanges extends AbstractSet<FolderChange> implements SortedSet<FolderChange> {
+		private final LongSortedSet entries;
+
+		ScoredChanges(LongSortedSet entries){
+			this.entries = entries;
+		}
+
+		private FolderChange get(int index){
+			return new FolderChange(entries.key(index), entries.flag(index) == ADD);
+		}
+
+		//Number of changes less than @Param:change
+		private int headCount(FolderChange change){
+			if( change.hasScore() ) return entries.headCount(change.score, flagOf(change), false);
+			int count = 0;
+			while( count < entries.size() && get(count).compareTo(change) < 0 ) count++;
+			return count;
+		}
+
+		private SortedSet<FolderChange> range(int from, int to){
+			if( to < from ) to = from;
+			return new ScoredChanges(entries.range(from, to));
+		}
+
+		@Override
+		public int size(){
+			return entries.size();
+		}
+
+		@Override
+		public boolean contains(Object o){
+			if( !(o instanceof FolderChange) ) return false;
+			FolderChange change = (FolderChange) o;
+			if( !change.hasScore() ) return super.contains(o);
+			return entries.contains(change.score, flagOf(change));
+		}
+
+		@Override
+		public Iterator<FolderChange> iterator(){
+			return new Iterator<FolderChange>(){
+				private int next = 0;
+
+				@Override
+				public boolean hasNext(){
+					return next < entries.size();
+				}
+
+				@Override
+				public FolderChange next(){
+					if( next >= entries.size() ) throw new NoSuchElementException();
+					return get(next++);
+				}
+
+				@Override
+				public void remove(){
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public Comparator<? super FolderChange> comparator(){
+			return null;
+		}
+
+		@Override
+		public FolderChange first(){
+			if( entries.isEmpty() ) throw new NoSuchElementException();
+			return get(0);
+		}
+
+		@Override
+		public FolderChange last(){
+			if( entries.isEmpty() ) throw new NoSuchElementException();
+			return get(entries.size()-1);
+		}
+
+		@Override
+		public SortedSet<FolderChange> subSet(FolderChange fromElement, FolderChange toElement){
+			return range(headCount(fromElement), headCount(toElement));
+		}
+
+		@Override
+		public SortedSet<FolderChange> headSet(FolderChange toElement){
+			return range(0, headCount(toElement));
+		}
+
+		@Override
+		public SortedSet<FolderChange> tailSet(FolderChange fromElement){
+			return range(headCount(fromElement), entries.size());
+		}
+	}
+
+	private static SortedSet<FolderChange> range(LongSortedSet changes, int beginIndex, int endIndex){
+		//Sized once, the writers are under the lock of the slot
+		int size = changes.size();
+		if( beginIndex < 0 ) beginIndex += size;
+		if( endIndex < 0 ) endIndex += size;
+		if( beginIndex < 0 ) beginIndex = 0;
+		if( endIndex >= size ) endIndex = size-1;
+		if( beginIndex > endIndex ) return new TreeSet<FolderChange>();
+
+		return new ScoredChanges(changes.range(beginIndex, endIndex+1));
+	}
+
+	private static SortedSet<FolderChange> rangeOfChanges(Slot slot, int beginIndex, int endIndex){
+		if( null != slot.changes ) return range(slot.changes, beginIndex, endIndex);
+		return range(slot.scoredChanges, beginIndex, endIndex);
+	}
+
+	private static int numberOfChanges(Slot slot){
+		return null != slot.changes ? slot.changes.size() : slot.scoredChanges.size();
+	}
+
+	//Move the scored changes to the skip list for the one without score
+	private static IndexedSkipList<FolderChange> namedChanges(Slot slot){
+		if( null == slot.changes ){
+			IndexedSkipList<FolderChange> list = new IndexedSkipList<FolderChange>(null);
+			LongSortedSet scored = slot.scoredChanges;
+			for(int i=0; i<scored.size(); i++){
+				list.add( new FolderChange(scored.key(i), scored.flag(i) == ADD) );
+			}
+			slot.scoredChanges.clear();
+			slot.changes = list;
+		}
+		return slot.changes;
+	}
+
+	//Number of changes less than @Param:change, or not greater than it if inclusive
+	private static int headCountOfChanges(Slot slot, FolderChange change, boolean inclusive){
+		if( null != slot.changes ) return slot.changes.headCount(change, inclusive);
+		LongSortedSet scored = slot.scoredChanges;
+		if( change.hasScore() ) return scored.headCount(change.score, flagOf(change), inclusive);
+
+		//Compared by the id, rarely
+		int count = 0;
+		for(int i=0; i<scored.size(); i++){
+			int c = new FolderChange(scored.key(i), scored.flag(i) == ADD).compareTo(change);
+			if( c > 0 || (c == 0 && !inclusive) ) break;
+			count++;
+		}
+		return count;
+	}
+
+	//Not found means the tail, as the linear traversal does
+	private static int indexOfChange(Slot slot, FolderChange change){
+		int index;
+		if( null != slot.changes ){
+			index = slot.changes.rank(change);
+		}else{
+			index = change.hasScore() ? slot.scoredChanges.rank(change.score, flagOf(change)) : -1;
+		}
+		return index < 0 ? numberOfChanges(slot) : index;
+	}
+
+	private static SortedSet<FolderChild> preceding(ScoredIdSet children, int flag, int n){
+		int end = flag-1;
+		if( end < 0 ) return new TreeSet<FolderChild>();
+
+		int begin = flag-n;
+		if( begin < 0 ) begin = 0;
+		return range(children, begin, end);
+	}
+
+	@Override
+	public boolean createFolder(String folderId) {
+		Slot slot = getSlot(folderId, true);
+		synchronized( slot ){
+			if( slot.maxChildId < 0 ) slot.maxChildId = 0;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean destroyFolder(String folderId) {
+		slots.remove(folderId);
+		return true;
+	}
+
+	@Override
+	public int getMaxChildId(String folderId) {
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return -1;
+		synchronized( slot ){
+			return slot.maxChildId;
+		}
+	}
+
+	@Override
+	public long reserveChildId(String folderId) {
+		Slot slot = getSlot(folderId, true);
+		synchronized( slot ){
+			if( slot.maxChildId < 0 ) slot.maxChildId = 0;
+			return ++slot.maxChildId;
+		}
+	}
+
+	@Override
+	public long reserveChildIdBlock(String folderId, int num) {
+		Slot slot = getSlot(folderId, true);
+		synchronized( slot ){
+			if( slot.maxChildId < 0 ) slot.maxChildId = 0;
+			slot.maxChildId += num;
+			return slot.maxChildId;
+		}
+	}
+
+	@Override
+	public boolean isChild(String childId, String folderId) {
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return false;
+		synchronized( slot ){
+			return slot.children.contains(childId);
+		}
+	}
+
+	@Override
+	public SortedSet<FolderChange> getFolderChanges(String folderId) {
+		return getFolderChanges(folderId, 0, -1);
+	}
+
+	@Override
+	public SortedSet<FolderChange> getFolderChanges(String folderId, int beginIndex, int endIndex) {
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return new TreeSet<FolderChange>();
+		synchronized( slot ){
+			return rangeOfChanges(slot, beginIndex, endIndex);
+		}
+	}
+
+	@Override
+	public int numberOfFolderChanges(String folderId) {
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return 0;
+		synchronized( slot ){
+			return numberOfChanges(slot);
+		}
+	}
+
+	@Override
+	public boolean addFolderChange(String folderId, FolderChange change) {
+		Slot slot = getSlot(folderId, true);
+		synchronized( slot ){
+			boolean added;
+			if( null == slot.changes && change.hasScore() ){
+				added = slot.scoredChanges.add(change.score, flagOf(change));
+			}else{
+				added = namedChanges(slot).add(change);
+			}
+			//Same changes on root folder will merge
+			return added || isRoot(folderId);
+		}
+	}
+
+	@Override
+	public boolean removeFolderChange(String folderId, FolderChange change) {
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return false;
+		synchronized( slot ){
+			if( null != slot.changes ) return slot.changes.remove(change);
+			return change.hasScore() && slot.scoredChanges.remove(change.score, flagOf(change));
+		}
+	}
+
+	@Override
+	public boolean removeFolderChanges(String folderId, int num) {
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return true;
+		synchronized( slot ){
+			if( null != slot.changes ){
+				slot.changes.removeFirst(num);
+			}else{
+				slot.scoredChanges.removeFirst(num);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean removePrecedingFolderChange(String folderId, FolderChange change) {
+		if( null == change ) return false;
+
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return true;
+		synchronized( slot ){
+			int num = headCountOfChanges(slot, change, true);
+			if( null != slot.changes ){
+				slot.changes.removeFirst(num);
+			}else{
+				slot.scoredChanges.removeFirst(num);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public SortedSet<FolderChange> removeAllFolderChanges(String folderId) {
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return new TreeSet<FolderChange>();
+		synchronized( slot ){
+			SortedSet<FolderChange> ret = rangeOfChanges(slot, 0, -1);
+			slot.changes = null;
+			slot.scoredChanges.clear();
+			return ret;
+		}
+	}
+
+	@Override
+	public SortedSet<FolderChange> getFollowingChanges(String folderId, FolderChange change, int n) {
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return new TreeSet<FolderChange>();
+		synchronized( slot ){
+			int begin = indexOfChange(slot, change);
+			return rangeOfChanges(slot, begin+1, begin+n);
+		}
+	}
+
+	@Override
+	public SortedSet<FolderChange> getPrecedingChanges(String folderId, FolderChange change, int n) {
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return new TreeSet<FolderChange>();
+		synchronized( slot ){
+			int end = indexOfChange(slot, change)-1;
+			if( end < 0 ) return new TreeSet<FolderChange>();
+			return rangeOfChanges(slot, Math.max(end-n+1, 0), end);
+		}
+	}
+
+	@Override
+	public List<Unread> numberOfFolderChanges(List<String> folderIds) {
+		List<Unread> unreadList = new LinkedList<Unread>();
+		Unread.Builder builder = Unread.newBuilder();
+		for( String fid: folderIds ){
+			builder.setFolderId(fid);
+			builder.setNum( numberOfFolderChanges(fid) );
+			unreadList.add( builder.build() );
+		}
+		return unreadList;
+	}
+
+	@Override
+	public SortedSet<FolderChild> getChildren(String folderId) {
+		return getChildren(folderId, 0, -1);
+	}
+
+	@Override
+	public SortedSet<FolderChild> getChildren(String folderId, int beginIndex, int endIndex) {
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return new TreeSet<FolderChild>();
+		synchronized( slot ){
+			return range(slot.children, beginIndex, endIndex);
+		}
+	}
+
+	@Override
+	public int numberOfChildren(String folderId) {
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return 0;
+		synchronized( slot ){
+			return slot.children.size();
+		}
+	}
+
+	@Override
+	public boolean addChild(String folderId, String childId, long score) {
+		Slot slot = getSlot(folderId, true);
+		synchronized( slot ){
+			//Redis command: ZADD, which updates the score of existing member
+			slot.children.add(score, childId);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean removeChild(String folderId, String child) {
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return false;
+		synchronized( slot ){
+			return slot.children.remove(child);
+		}
+	}
+
+	@Override
+	public boolean removeChildren(String folderId, int num) {
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return true;
+		synchronized( slot ){
+			slot.children.removeFirst(num);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean removePrecedingChildren(String folderId, FolderChild child) {
+		if( null == child ) return false;
+
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return true;
+		synchronized( slot ){
+			slot.children.removeFirst(slot.children.headCount(child.score, child.id, true));
+		}
+		return true;
+	}
+
+	@Override
+	public boolean removeAllChildren(String folderId) {
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return true;
+		synchronized( slot ){
+			slot.children.clear();
+		}
+		return true;
+	}
+
+	private static int indexOfChild(Slot slot, String childId){
+		//Not found means the tail, as the linear traversal does
+		int index = slot.children.indexOf(childId);
+		return index < 0 ? slot.children.size() : index;
+	}
+
+	@Override
+	public SortedSet<FolderChild> getFollowingChildren(String folderId, String childId, int n) {
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return new TreeSet<FolderChild>();
+		synchronized( slot ){
+			int begin = indexOfChild(slot, childId);
+			return range(slot.children, begin+1, begin+n);
+		}
+	}
+
+	@Override
+	public SortedSet<FolderChild> getPrecedingChildren(String folderId, String childId, int n) {
+		Slot slot = getSlot(folderId, false);
+		if( null == slot ) return new TreeSet<FolderChild>();
+		synchronized( slot ){
+			return preceding(slot.children, indexOfChild(slot, childId), n);
+		}
+	}
+
+	@Override
+	public Meta getMetaMessage(String metaMsgId) {
+		return msgStore.get(metaMsgId);
+	}
+
+	@Override
+	public boolean addMetaMessage(Meta msg) {
+		msgStore.put(msg.getId(), msg);
+		return true;
+	}
+
+	@Override
+	public boolean removeMetaMessage(Meta msg) {
+		msgStore.remove(msg.getId());
+		return true;
+	}
+
+	@Override
+	public FileData storeFile(FileData fileData) {
+		String fileId = fileData.getId();
+		//Slices resent after completion
+		if( null != fileStore && fileStore.contains(fileId) ){
+			return FileData.newBuilder().setId(fileId).build();
+		}
+
+		for( DataSlice slice : fileData.getSliceList() ){
+			if( !sliceStore.put(fileId, slice) ){
+				log.warn("Data slice too large, file id: " + fileId + " index: " + slice.getIndex());
+			}
+		}
+		if( fileData.hasMd5() ) sliceStore.setMd5(fileId, fileData.getMd5());
+
+		OffHeapSliceStore.FileState state = sliceStore.getState(fileId);
+		if( null != state && !state.missing.isEmpty() ){
+			return FileData.newBuilder().setId(fileId).addAllSlice(state.missing).build();
+		}
+		//Checked and moved once, by the one taking it of the last slices coming together
+		if( null != state && sliceStore.takeComplete(fileId) ){
+			List<DataSlice> slices = sliceStore.getSlices(fileId, null);
+			if( null == slices ) return FileData.newBuilder().setId(fileId).build();
+			if( null != state.md5 ){
+				List<ByteString> data = FileDataHelper.dataOf(slices, this);
+				if( null == data || !verifier.verifyFile(state.md5, data) ){
+					log.warn("Mismatched md5 of file " + fileId);
+					return resend(fileId, slices);
+				}
+			}
+			if( null != fileStore ) moveToFileStore(fileId, slices);
+		}
+
+		return FileData.newBuilder().setId(fileId).build();
+	}
+
+	//Which slice is wrong is not known, so all of them are taken as not received and asked for
+	private FileData resend(String fileId, List<DataSlice> slices){
+		FileData.Builder resend = FileData.newBuilder().setId(fileId);
+		for( DataSlice slice : slices ){
+			sliceStore.removeSlice(fileId, slice.getIndex());
+			if( FileDataHelper.isReference(slice) ) sliceContents.release(slice.getMd5(), fileId);
+			resend.addSlice( slice.toBuilder().clearData() );
+		}
+		return resend.build();
+	}
+
+	@Override
+	public FileData getFileByIndex(FileData fileIndex) {
+		FileData.Builder builder = FileData.newBuilder()
+				.setId( fileIndex.getId() );
+
+		BitSet indexes = new BitSet();
+		for( DataSlice s : fileIndex.getSliceList() ){
+			indexes.set(s.getIndex());
+		}
+		//Only the wanted slices are copied out
+		List<DataSlice> slices = null == fileStore ? null : fileStore.getSlices(fileIndex.getId(), indexes);
+		if( null == slices ){
+			slices = sliceStore.getSlices(fileIndex.getId(), indexes);
+		}
+		if( null != slices ) {
+			builder.addAllSlice( slices );
+		}
+
+		return builder.build();
+	}
+
+	@Override
+	public FileData getFileById(String fileId) {
+		List<DataSlice> slices = null == fileStore ? null : fileStore.getSlices(fileId, null);
+		if( null == slices ){
+			slices = sliceStore.getSlices(fileId, null);
+		}
+		if( null == slices ) return null;
+		return FileData.newBuilder().setId(fileId).addAllSlice(slices).build();
+	}
+
+	@Override
+	public List<ByteString> getSliceContents(List<String> md5s) {
+		return sliceContents.get(md5s);
+	}
+
+	@Override
+	public boolean removeFile(String fileId) {
+		boolean removed = sliceStore.remove(fileId);
+		if( null != fileStore ){
+			try {
+				removed = fileStore.remove(fileId) || removed;
+			} catch (IOException e) {
+				log.error("Failed to remove file " + fileId + " from disk: " + e.getMessage(), e);
+			}
+		}
+		return removed;
+	}
+
+	@Override
+	public boolean retainSliceContent(String md5, String fileId, ByteString data) {
+		return sliceContents.retain(md5, fileId, data);
+	}
+
+	@Override
+	public boolean releaseSliceContent(String md5, String fileId) {
+		return sliceContents.release(md5, fileId);
+	}
+
+	private void moveToFileStore(String fileId, List<DataSlice> slices){
+		List<String> md5s = new ArrayList<String>();
+		for( DataSlice slice : slices ){
+			if( FileDataHelper.isReference(slice) ) md5s.add(slice.getMd5());
+		}
+		try {
+			//The contents go first, for the file on disk never refers to the evictable ones
+			if( !sliceContents.persist(md5s) ){
+				log.warn("Missing slice contents of file " + fileId + ", not moved to disk");
+				return;
+			}
+			fileStore.put( FileData.newBuilder().setId(fileId).addAllSlice(slices).build() );
+			sliceStore.remove(fileId);
+		} catch (IOException e) {
+			//Still served from the sliceStore until evicted
+			log.error("Failed to write file " + fileId + " to disk: " + e.getMessage(), e);
+		}
+	}
+
+	public MappedFileStore getFileStore() {
+		return fileStore;
+	}
+
+	public OffHeapSliceStore getSliceStore() {
+		return sliceStore;
+	}
+
+	public SliceContents getSliceContents() {
+		return sliceContents;
+	}
+
+	@Override
+	public boolean addFolderChanges(Map<String, FolderChange> changes) {
+		for( Map.Entry<String, FolderChange> e : changes.entrySet() ){
+			addFolderChange(e.getKey(), e.getValue());
+		}
+		return true;
+	}
+
+	@Override
+	public boolean addChildren(String folderId, Collection<FolderChild> children) {
+		for( FolderChild fc : children ){
+			addChild(folderId, fc.id, fc.score);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean addChildren(Map<String, FolderChild> children) {
+		for( Map.Entry<String, FolderChild> e : children.entrySet() ){
+			addChild(e.getKey(), e.getValue().id, e.getValue().score);
+		}
+		return true;
+	}
+
+	@Override
+	public Map<String, Long> reserveChildIds(List<String> folderIds) {
+		Map<String, Long> ids = new HashMap<String, Long>();
+		for( String fid : folderIds ){
+			ids.put(fid, reserveChildId(fid));
+		}
+		return ids;
+	}
+
+	@Override
+	public Map<String, Boolean> isChildMulti(Map<String, String> childIds) {
+		Map<String, Boolean> ret = new HashMap<String, Boolean>();
+		for( Map.Entry<String, String> e : childIds.entrySet() ){
+			ret.put(e.getKey(), isChild(e.getValue(), e.getKey()));
+		}
+		return ret;
+	}
+
+	@Override
+	public List<Meta> getMetaMessages(List<String> metaMsgIds) {
+		List<Meta> ret = new ArrayList<Meta>(metaMsgIds.size());
+		for( String id : metaMsgIds ){
+			ret.add( getMetaMessage(id) );
+		}
+		return ret;
+	}
+
+	@Override
+	public DataStorePipeline pipelined() {
+		return new DirectDataStorePipeline(this);
+	}
+}
@@ -0,0 +1,303 @@
+package com.weibo.wesync.data;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.weibo.wesync.data.WeSyncMessage.Meta;
+
+/**
+ * Cache of Meta messages bounded by bytes, with segmented LRU admission.
+ *
+ * A message comes into the probation segment, and is promoted to the protected one on
+ * its second hit. The ones read once, e.g. by a sync of a long history, are evicted from
+ * probation without pushing out the hot ones, e.g. the latest messages of a busy group.
+ * A message is weighed by its serialized size, so the audio content and image thumbnails
+ * count by their bytes, and the ones larger than a shard are not cached at all.
+ *
+ * The cache is split into shards by id to keep the lock contention low.
+ *
+ * A message read from the store is cached by fill() with the stamp() taken before the read, and
+ * dropped if the shard is invalidated meanwhile, or a removed message read before its removal
+ * would be cached again after the invalidation.
+ */
+public final class MetaCache {
+	//Share of the protected segment in each shard
+	private static final int PROTECTED_PERCENT = 80;
+	//Object headers, the entry, the map node and the id string
+	private static final int ENTRY_OVERHEAD = 96;
+
+	private static final class Entry {
+		final Meta msg;
+		final int size;
+
+		Entry(Meta msg, int size){
+			this.msg = msg;
+			this.size = size;
+		}
+	}
+
+	private static final class Shard {
+		final ReentrantLock lock = new ReentrantLock();
+		//In access order, the eldest is the first to go
+		final LinkedHashMap<String, Entry> probation = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		final LinkedHashMap<String, Entry> protect = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		final long maxBytes;
+		final long protectedMaxBytes;
+		long probationBytes = 0;
+		long protectedBytes = 0;
+		long hits = 0;
+		long misses = 0;
+		long evictions = 0;
+		//Increased by every invalidation, see fill()
+		long generation = 0;
+
+		Shard(long maxBytes){
+			this.maxBytes = maxBytes;
+			this.protectedMaxBytes = maxBytes * PROTECTED_PERCENT / 100;
+		}
+
+		Meta get(String id){
+			Entry e = protect.get(id);
+			if( null != e ){
+				hits++;
+				return e.msg;
+			}
+
+			e = probation.remove(id);
+			if( null == e ){
+				misses++;
+				return null;
+			}
+			hits++;
+			probationBytes -= e.size;
+			protect.put(id, e);
+			protectedBytes += e.size;
+
+			//Demote the eldest protected ones to probation, where they get another chance
+			Iterator<Map.Entry<String, Entry>> it = protect.entrySet().iterator();
+			while( protectedBytes > protectedMaxBytes && it.hasNext() ){
+				Map.Entry<String, Entry> eldest = it.next();
+				it.remove();
+				protectedBytes -= eldest.getValue().size;
+				probation.put(eldest.getKey(), eldest.getValue());
+				probationBytes += eldest.getValue().size;
+			}
+			evict();
+			return e.msg;
+		}
+
+		void put(String id, Entry e){
+			remove(id);
+			if( e.size > maxBytes ) return;
+
+			probation.put(id, e);
+			probationBytes += e.size;
+			evict();
+		}
+
+		void remove(String id){
+			Entry e = probation.remove(id);
+			if( null != e ) probationBytes -= e.size;
+			e = protect.remove(id);
+			if( null != e ) protectedBytes -= e.size;
+		}
+
+		private void evict(){
+			evict(probation, true);
+			evict(protect, false);
+		}
+
+		private void evict(LinkedHashMap<String, Entry> segment, boolean isProbation){
+			Iterator<Entry> it = segment.values().iterator();
+			while( probationBytes + protectedBytes > maxBytes && it.hasNext() ){
+				Entry eldest = it.next();
+				it.remove();
+				if( isProbation ){
+					probationBytes -= eldest.size;
+				}else{
+					protectedBytes -= eldest.size;
+				}
+				evictions++;
+			}
+		}
+
+		void clear(){
+			generation++;
+			probation.clear();
+			protect.clear();
+			probationBytes = 0;
+			protectedBytes = 0;
+		}
+	}
+
+	private final Shard[] shards;
+	private final long maxBytes;
+
+	public MetaCache(long maxBytes){
+		this(maxBytes, 16);
+	}
+
+	public MetaCache(long maxBytes, int shardNum){
+		if( maxBytes <= 0 || shardNum <= 0 ) throw new IllegalArgumentException();
+		this.maxBytes = maxBytes;
+		this.shards = new Shard[shardNum];
+		for(int i=0; i<shardNum; i++){
+			shards[i] = new Shard(maxBytes / shardNum);
+		}
+	}
+
+	public static int sizeOf(Meta msg){
+		return msg.getSerializedSize() + 2 * msg.getId().length() + ENTRY_OVERHEAD;
+	}
+
+	private Shard shardOf(String id){
+		return shards[(id.hashCode() & Integer.MAX_VALUE) % shards.length];
+	}
+
+	//@Return null if not cached
+	public Meta get(String id){
+		Shard shard = shardOf(id);
+		shard.lock.lock();
+		try{
+			return shard.get(id);
+		}finally{
+			shard.lock.unlock();
+		}
+	}
+
+	//Cache the message by its id, the cached one of the same id is replaced
+	public void put(Meta msg){
+		String id = msg.getId();
+		Entry e = new Entry(msg, sizeOf(msg));
+		Shard shard = shardOf(id);
+		shard.lock.lock();
+		try{
+			shard.put(id, e);
+		}finally{
+			shard.lock.unlock();
+		}
+	}
+
+	//Taken before reading the message from the store, for fill()
+	public long stamp(String id){
+		Shard shard = shardOf(id);
+		shard.lock.lock();
+		try{
+			return shard.generation;
+		}finally{
+			shard.lock.unlock();
+		}
+	}
+
+	/**
+	 * Cache the message read from the store, unless its shard is invalidated since the @Param:stamp
+	 * or the message is cached meanwhile, which is as new as the read one
+	 * @Return false if not cached
+	 */
+	public boolean fill(Meta msg, long stamp){
+		String id = msg.getId();
+		Entry e = new Entry(msg, sizeOf(msg));
+		Shard shard = shardOf(id);
+		shard.lock.lock();
+		try{
+			if( stamp != shard.generation || shard.probation.containsKey(id) || shard.protect.containsKey(id) ) return false;
+			shard.put(id, e);
+			return true;
+		}finally{
+			shard.lock.unlock();
+		}
+	}
+
+	public void invalidate(String id){
+		Shard shard = shardOf(id);
+		shard.lock.lock();
+		try{
+			shard.generation++;
+			shard.remove(id);
+		}finally{
+			shard.lock.unlock();
+		}
+	}
+
+	public void clear(){
+		for( Shard shard : shards ){
+			shard.lock.lock();
+			try{
+				shard.clear();
+			}finally{
+				shard.lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Metrics
+	 */
+	public long getMaxBytes(){
+		return maxBytes;
+	}
+
+	private static final int SIZE = 0, BYTES = 1, HITS = 2, MISSES = 3, EVICTIONS = 4;
+
+	private long total(int which){
+		long n = 0;
+		for( Shard shard : shards ){
+			shard.lock.lock();
+			try{
+				switch( which ){
+				case SIZE:
+					n += shard.probation.size() + shard.protect.size();
+					break;
+				case BYTES:
+					n += shard.probationBytes + shard.protectedBytes;
+					break;
+				case HITS:
+					n += shard.hits;
+					break;
+				case MISSES:
+					n += shard.misses;
+					break;
+				default:
+					n += shard.evictions;
+				}
+			}finally{
+				shard.lock.unlock();
+			}
+		}
+		return n;
+	}
+
+	public int getSize(){
+		return (int) total(SIZE);
+	}
+
+	public long getBytes(){
+		return total(BYTES);
+	}
+
+	public long getHitCount(){
+		return total(HITS);
+	}
+
+	public long getMissCount(){
+		return total(MISSES);
+	}
+
+	public long getEvictionCount(){
+		return total(EVICTIONS);
+	}
+
+	public double getHitRate(){
+		long hits = getHitCount();
+		long total = hits + getMissCount();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	@Override
+	public String toString(){
+		return "MetaCache[size=" + getSize() + ", bytes=" + getBytes() + "/" + maxBytes
+				+ ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+	}
+}
@@ -0,0 +1,446 @@
+package com.weibo.wesync.data;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.google.protobuf.ByteString;
+import com.weibo.wesync.data.WeSyncMessage.DataSlice;
+
+/**
+ * File slices kept out of the heap, keyed by file id and slice index, and the slice contents
+ * shared by the files, keyed by md5, see SliceContents.
+ *
+ * Slices are appended to direct ByteBuffer arenas of the same size, which are allocated on
+ * demand up to the byte budget. Then the oldest arena is recycled for the new slices, and the
+ * files having any slice in it are evicted as a whole, since a file missing a slice is useless,
+ * so are the contents in it. The empty slices, e.g. the ones referring to the contents, take no
+ * arena. The space of the replaced slices and removed files is taken back when the arena is recycled.
+ *
+ * The arenas are reused, so the slices are copied out under the lock, once for each read.
+ * The evictions are told to the listener after the lock is released.
+ */
+public final class OffHeapSliceStore {
+	public static final int DEFAULT_ARENA_SIZE = 1024 * 1024;
+
+	private static final class Arena {
+		final ByteBuffer buffer;
+		//Files having slices in it, to be evicted with it
+		final Set<String> files = new HashSet<String>();
+		//Md5 of the contents in it
+		final Set<String> contents = new HashSet<String>();
+
+		Arena(int size) {
+			buffer = ByteBuffer.allocateDirect(size);
+		}
+	}
+
+	private static final class Slice {
+		//null for the empty one
+		final Arena arena;
+		final int offset;
+		final int length;
+		//null if not given
+		final String md5;
+
+		Slice(Arena arena, int offset, int length, String md5) {
+			this.arena = arena;
+			this.offset = offset;
+			this.length = length;
+			this.md5 = md5;
+		}
+	}
+
+	private static final class SliceFile {
+		//Sorted by index for reading in order
+		final TreeMap<Integer, Slice> slices = new TreeMap<Integer, Slice>();
+		//Received indexes and counters, kept along with each slice
+		final UploadSession session;
+		long bytes = 0;
+		//Taken for checking once completed, see takeComplete()
+		boolean taken = false;
+
+		SliceFile(String fileId) {
+			session = new UploadSession(fileId);
+		}
+
+		boolean isIn(Arena arena) {
+			for (Slice s : slices.values()) {
+				if (s.arena == arena) return true;
+			}
+			return false;
+		}
+
+		List<String> md5s() {
+			List<String> ret = new ArrayList<String>();
+			for (Slice s : slices.values()) {
+				if (null != s.md5) ret.add(s.md5);
+			}
+			return ret;
+		}
+	}
+
+	/**
+	 * Snapshot of what has been received of a file
+	 */
+	public static final class FileState {
+		//The max limit of the slices
+		public final int limit;
+		//Number of slices received, including the duplicate ones
+		public final int received;
+		public final boolean complete;
+		//Slices to ask for if the file is near complete, otherwise empty
+		public final List<DataSlice> missing;
+		//Of the whole file, null if not given
+		public final String md5;
+
+		FileState(UploadSession session) {
+			this.limit = session.getLimit();
+			this.received = session.getReceivedCount();
+			this.complete = session.isComplete();
+			this.md5 = session.getMd5();
+			if (!complete && session.isNearComplete()) {
+				this.missing = session.findMissing();
+			} else {
+				this.missing = Collections.emptyList();
+			}
+		}
+
+		public boolean isComplete() {
+			return complete;
+		}
+	}
+
+	private final long maxBytes;
+	private final int arenaSize;
+	private final Map<String, SliceFile> files = new HashMap<String, SliceFile>();
+	private final Map<String, Slice> contents = new HashMap<String, Slice>();
+	//Oldest first, the last one is being appended to
+	private final ArrayDeque<Arena> arenas = new ArrayDeque<Arena>();
+	private long liveBytes = 0;
+	private long evictedFiles = 0;
+	private long evictedContents = 0;
+	private long rejectedSlices = 0;
+	private EvictionListener evictionListener = null;
+
+	//Told of the files and contents evicted, out of the lock of the store
+	public interface EvictionListener {
+		//@Param:md5s of the slices of the file having one
+		void onEvicted(String fileId, List<String> md5s);
+		void onContentEvicted(String md5);
+	}
+
+	//Evicted under the lock, to be told after it
+	private static final class Eviction {
+		//null for a content
+		final String fileId;
+		final List<String> md5s;
+
+		Eviction(String fileId, List<String> md5s) {
+			this.fileId = fileId;
+			this.md5s = md5s;
+		}
+	}
+
+	public OffHeapSliceStore(long maxBytes) {
+		this(maxBytes, DEFAULT_ARENA_SIZE);
+	}
+
+	public OffHeapSliceStore(long maxBytes, int arenaSize) {
+		if (arenaSize <= 0 || maxBytes < arenaSize) throw new IllegalArgumentException();
+		this.maxBytes = maxBytes;
+		this.arenaSize = arenaSize;
+	}
+
+	/**
+	 * Store the slice, the one of the same index is replaced.
+	 * @Return false if the slice is larger than an arena and not stored
+	 */
+	public boolean put(String fileId, int index, int limit, ByteString data) {
+		return put(fileId, index, limit, data, null);
+	}
+
+	//The md5 of the slice is kept along
+	public boolean put(String fileId, DataSlice slice) {
+		return put(fileId, slice.getIndex(), slice.getLimit(), slice.getData(), slice.hasMd5() ? slice.getMd5() : null);
+	}
+
+	private boolean put(String fileId, int index, int limit, ByteString data, String md5) {
+		List<Eviction> evicted = new ArrayList<Eviction>(0);
+		boolean ret;
+		synchronized (this) {
+			ret = putSlice(fileId, index, limit, data, md5, evicted);
+		}
+		tell(evicted);
+		return ret;
+	}
+
+	private boolean putSlice(String fileId, int index, int limit, ByteString data, String md5, List<Eviction> evicted) {
+		int length = data.size();
+		if (length > arenaSize) {
+			rejectedSlices++;
+			return false;
+		}
+
+		Arena arena = null;
+		int offset = 0;
+		if (length > 0) {
+			arena = arenaFor(length, evicted);
+			offset = arena.buffer.position();
+			data.copyTo(arena.buffer);
+			arena.files.add(fileId);
+		}
+
+		SliceFile file = files.get(fileId);
+		if (null == file) {
+			file = new SliceFile(fileId);
+			files.put(fileId, file);
+		}
+		Slice prev = file.slices.put(Integer.valueOf(index), new Slice(arena, offset, length, md5));
+		if (null != prev) {
+			file.bytes -= prev.length;
+			liveBytes -= prev.length;
+		}
+		file.bytes += length;
+		liveBytes += length;
+		file.session.mark(index, limit);
+		return true;
+	}
+
+	//The arena with room for the length, allocate or recycle one if necessary
+	private Arena arenaFor(int length, List<Eviction> evicted) {
+		Arena current = arenas.peekLast();
+		if (null != current && current.buffer.remaining() >= length) return current;
+
+		Arena arena;
+		if ((long) (arenas.size() + 1) * arenaSize <= maxBytes) {
+			arena = new Arena(arenaSize);
+		} else {
+			arena = arenas.pollFirst();
+			for (String fileId : arena.files) {
+				//The file might have been removed, or stored again elsewhere since
+				SliceFile file = files.get(fileId);
+				if (null != file && file.isIn(arena)) {
+					remove(fileId);
+					evictedFiles++;
+					evicted.add(new Eviction(fileId, file.md5s()));
+				}
+			}
+			for (String md5 : arena.contents) {
+				//The content might have been removed, or stored again elsewhere since
+				Slice c = contents.get(md5);
+				if (null != c && c.arena == arena) {
+					contents.remove(md5);
+					liveBytes -= c.length;
+					evictedContents++;
+					evicted.add(new Eviction(null, Collections.singletonList(md5)));
+				}
+			}
+			arena.files.clear();
+			arena.contents.clear();
+			arena.buffer.clear();
+		}
+		arenas.addLast(arena);
+		return arena;
+	}
+
+	private void tell(List<Eviction> evicted) {
+		EvictionListener listener;
+		synchronized (this) {
+			listener = evictionListener;
+		}
+		if (null == listener) return;
+		for (Eviction e : evicted) {
+			if (null == e.fileId) {
+				listener.onContentEvicted(e.md5s.get(0));
+			} else {
+				listener.onEvicted(e.fileId, e.md5s);
+			}
+		}
+	}
+
+	public synchronized void setEvictionListener(EvictionListener listener) {
+		this.evictionListener = listener;
+	}
+
+	/**
+	 * Store the content shared by the files, nothing is done if stored already
+	 * @Return false if the content is larger than an arena and not stored
+	 */
+	public boolean putContent(String md5, ByteString data) {
+		List<Eviction> evicted = new ArrayList<Eviction>(0);
+		synchronized (this) {
+			if (contents.containsKey(md5)) return true;
+			int length = data.size();
+			if (length > arenaSize) {
+				rejectedSlices++;
+				return false;
+			}
+
+			Arena arena = null;
+			int offset = 0;
+			if (length > 0) {
+				arena = arenaFor(length, evicted);
+				offset = arena.buffer.position();
+				data.copyTo(arena.buffer);
+				arena.contents.add(md5);
+			}
+			contents.put(md5, new Slice(arena, offset, length, md5));
+			liveBytes += length;
+		}
+		tell(evicted);
+		return true;
+	}
+
+	//Copy out the content, @Return null if not stored
+	public synchronized ByteString getContent(String md5) {
+		Slice c = contents.get(md5);
+		return null == c ? null : copy(c);
+	}
+
+	//The space is taken back with the arena
+	public synchronized boolean removeContent(String md5) {
+		Slice c = contents.remove(md5);
+		if (null == c) return false;
+		liveBytes -= c.length;
+		return true;
+	}
+
+	private static ByteString copy(Slice s) {
+		if (null == s.arena) return ByteString.EMPTY;
+		ByteBuffer view = s.arena.buffer.duplicate();
+		view.limit(s.offset + s.length);
+		view.position(s.offset);
+		return ByteString.copyFrom(view);
+	}
+
+	//Keep the md5 of the whole file, @Return false if nothing of the file is stored
+	public synchronized boolean setMd5(String fileId, String md5) {
+		SliceFile file = files.get(fileId);
+		if (null == file) return false;
+		file.session.setMd5(md5);
+		return true;
+	}
+
+	/**
+	 * Take the complete file for checking, so it is checked once however many slices come together
+	 * @Return false if not complete, or taken already and no slice removed since
+	 */
+	public synchronized boolean takeComplete(String fileId) {
+		SliceFile file = files.get(fileId);
+		if (null == file || file.taken || !file.session.isComplete()) return false;
+		file.taken = true;
+		return true;
+	}
+
+	//@Return null if nothing of the file is stored
+	public synchronized FileState getState(String fileId) {
+		SliceFile file = files.get(fileId);
+		if (null == file) return null;
+		return new FileState(file.session);
+	}
+
+	/**
+	 * Copy out the slices in the order of index, with the max limit of the file
+	 * @Param:indexes the wanted ones, null for all
+	 * @Return null if nothing of the file is stored
+	 */
+	public synchronized List<DataSlice> getSlices(String fileId, BitSet indexes) {
+		SliceFile file = files.get(fileId);
+		if (null == file) return null;
+
+		List<DataSlice> ret = new ArrayList<DataSlice>();
+		DataSlice.Builder builder = DataSlice.newBuilder().setLimit(file.session.getLimit());
+		for (Map.Entry<Integer, Slice> e : file.slices.entrySet()) {
+			int index = e.getKey().intValue();
+			if (null != indexes && !indexes.get(index)) continue;
+
+			Slice s = e.getValue();
+			builder.setIndex(index).setData(copy(s));
+			if (null != s.md5) {
+				builder.setMd5(s.md5);
+			} else {
+				builder.clearMd5();
+			}
+			ret.add(builder.build());
+		}
+		return ret;
+	}
+
+	//Take the slice as not received, its space is taken back with the arena
+	public synchronized boolean removeSlice(String fileId, int index) {
+		SliceFile file = files.get(fileId);
+		if (null == file) return false;
+		Slice s = file.slices.remove(Integer.valueOf(index));
+		if (null == s) return false;
+		file.bytes -= s.length;
+		liveBytes -= s.length;
+		file.session.discard(index);
+		file.taken = false;
+		return true;
+	}
+
+	public synchronized boolean remove(String fileId) {
+		SliceFile file = files.remove(fileId);
+		if (null == file) return false;
+		liveBytes -= file.bytes;
+		return true;
+	}
+
+	//Remove the file as evicted, e.g. for a content it refers to is evicted
+	public boolean evict(String fileId) {
+		SliceFile file;
+		synchronized (this) {
+			file = files.get(fileId);
+			if (null == file) return false;
+			remove(fileId);
+			evictedFiles++;
+		}
+		tell(Collections.singletonList(new Eviction(fileId, file.md5s())));
+		return true;
+	}
+
+	/**
+	 * Metrics
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public synchronized long getAllocatedBytes() {
+		return (long) arenas.size() * arenaSize;
+	}
+
+	//Bytes of the stored slices and contents
+	public synchronized long getLiveBytes() {
+		return liveBytes;
+	}
+
+	public synchronized int getFileCount() {
+		return files.size();
+	}
+
+	public synchronized long getEvictedFileCount() {
+		return evictedFiles;
+	}
+
+	public synchronized int getContentCount() {
+		return contents.size();
+	}
+
+	public synchronized long getEvictedContentCount() {
+		return evictedContents;
+	}
+
+	public synchronized long getRejectedSliceCount() {
+		return rejectedSlices;
+	}
+}
@@ -0,0 +1,200 @@
+package com.weibo.wesync.data;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A connection speaks RESP(REdis Serialization Protocol) over a non-blocking channel.
+ * Commands are buffered by send() and written out by flush(), so pipelining is just
+ * sending several commands before reading the replies.
+ */
+final class RedisConnection {
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	//The error reply, which is returned instead of thrown to keep the pipeline readable
+	static final class ErrorReply {
+		final String message;
+
+		ErrorReply(String message){
+			this.message = message;
+		}
+
+		public String toString(){
+			return message;
+		}
+	}
+
+	private final SocketChannel channel;
+	private final Selector selector;
+	private final int timeoutMillis;
+	private ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+	private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+	private boolean broken = false;
+
+	RedisConnection(String host, int port, int timeoutMillis) throws IOException {
+		this.timeoutMillis = timeoutMillis;
+		channel = SocketChannel.open();
+		channel.socket().setTcpNoDelay(true);
+		channel.socket().connect(new InetSocketAddress(host, port), timeoutMillis);
+		channel.configureBlocking(false);
+		selector = Selector.open();
+		in.flip();
+	}
+
+	boolean isBroken(){
+		return broken;
+	}
+
+	void close(){
+		broken = true;
+		try {
+			selector.close();
+		} catch (IOException e) {
+			// Do nothing
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// Do nothing
+		}
+	}
+
+	private void ensureOut(int len){
+		if( out.remaining() >= len ) return;
+
+		int capacity = out.capacity();
+		while( capacity - out.position() < len ) capacity <<= 1;
+		ByteBuffer bigger = ByteBuffer.allocate(capacity);
+		out.flip();
+		bigger.put(out);
+		out = bigger;
+	}
+
+	private void writeLine(char type, long value){
+		byte[] digits = Long.toString(value).getBytes(UTF8);
+		ensureOut(digits.length + 3);
+		out.put((byte) type).put(digits).put((byte) '\r').put((byte) '\n');
+	}
+
+	void send(byte[]... args){
+		writeLine('*', args.length);
+		for(byte[] arg : args){
+			writeLine('$', arg.length);
+			ensureOut(arg.length + 2);
+			out.put(arg).put((byte) '\r').put((byte) '\n');
+		}
+	}
+
+	private void await(int op) throws IOException {
+		SelectionKey key = channel.register(selector, op);
+		try{
+			if( 0 == selector.select(timeoutMillis) ){
+				throw new SocketTimeoutException("Redis reply timeout");
+			}
+		}finally{
+			key.interestOps(0);
+			selector.selectedKeys().clear();
+		}
+	}
+
+	void flush() throws IOException {
+		out.flip();
+		try{
+			while( out.hasRemaining() ){
+				if( 0 == channel.write(out) ) await(SelectionKey.OP_WRITE);
+			}
+		} catch (IOException e) {
+			broken = true;
+			throw e;
+		} finally {
+			out.clear();
+		}
+	}
+
+	private void fill() throws IOException {
+		in.compact();
+		try{
+			int n;
+			while( 0 == (n = channel.read(in)) ){
+				await(SelectionKey.OP_READ);
+			}
+			if( n < 0 ) throw new IOException("Connection closed by Redis");
+		} catch (IOException e) {
+			broken = true;
+			throw e;
+		} finally {
+			in.flip();
+		}
+	}
+
+	private byte readByte() throws IOException {
+		if( !in.hasRemaining() ) fill();
+		return in.get();
+	}
+
+	private String readLine() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for(byte b = readByte(); b != '\r'; b = readByte()){
+			sb.append((char) b);
+		}
+		readByte(); // '\n'
+		return sb.toString();
+	}
+
+	private void readFully(byte[] dst) throws IOException {
+		int offset = 0;
+		while( offset < dst.length ){
+			if( !in.hasRemaining() ) fill();
+			int n = Math.min(in.remaining(), dst.length - offset);
+			in.get(dst, offset, n);
+			offset += n;
+		}
+	}
+
+	/*
+	 * Reply types: String for simple string, Long for integer, byte[] for bulk string,
+	 * List for array, ErrorReply for error and null for nil
+	 */
+	Object readReply() throws IOException {
+		byte type = readByte();
+		String line = readLine();
+		switch( type ){
+		case '+':
+			return line;
+		case '-':
+			return new ErrorReply(line);
+		case ':':
+			return Long.valueOf(line);
+		case '$': {
+			int len = Integer.parseInt(line);
+			if( len < 0 ) return null;
+			byte[] data = new byte[len];
+			readFully(data);
+			readByte();
+			readByte();
+			return data;
+		}
+		case '*': {
+			int num = Integer.parseInt(line);
+			if( num < 0 ) return null;
+			List<Object> list = new ArrayList<Object>(num);
+			for(int i=0; i<num; i++){
+				list.add( readReply() );
+			}
+			return list;
+		}
+		default:
+			broken = true;
+			throw new IOException("Unknown RESP type: " + (char) type);
+		}
+	}
+}
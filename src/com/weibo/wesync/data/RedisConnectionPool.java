@@ -0,0 +1,65 @@
+package com.weibo.wesync.data;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of Redis connections, connections are created lazily.
+ */
+final class RedisConnectionPool {
+	private final String host;
+	private final int port;
+	private final int maxSize;
+	private final int timeoutMillis;
+	private final BlockingQueue<RedisConnection> idle;
+	private final AtomicInteger created = new AtomicInteger(0);
+
+	RedisConnectionPool(String host, int port, int maxSize, int timeoutMillis){
+		this.host = host;
+		this.port = port;
+		this.maxSize = maxSize;
+		this.timeoutMillis = timeoutMillis;
+		this.idle = new ArrayBlockingQueue<RedisConnection>(maxSize);
+	}
+
+	RedisConnection borrow() throws IOException {
+		RedisConnection conn = idle.poll();
+		if( null != conn ) return conn;
+
+		if( created.incrementAndGet() <= maxSize ){
+			try{
+				return new RedisConnection(host, port, timeoutMillis);
+			}catch(IOException e){
+				created.decrementAndGet();
+				throw e;
+			}
+		}
+		created.decrementAndGet();
+
+		try {
+			conn = idle.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if( null == conn ) throw new IOException("No available Redis connection in " + timeoutMillis + "ms");
+		return conn;
+	}
+
+	void release(RedisConnection conn){
+		if( conn.isBroken() || !idle.offer(conn) ){
+			conn.close();
+			created.decrementAndGet();
+		}
+	}
+
+	void close(){
+		RedisConnection conn;
+		while( null != (conn = idle.poll()) ){
+			conn.close();
+			created.decrementAndGet();
+		}
+	}
+}
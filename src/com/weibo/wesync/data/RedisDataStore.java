@@ -0,0 +1,725 @@
+package com.weibo.wesync.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.weibo.wesync.data.WeSyncMessage.DataSlice;
+import com.weibo.wesync.data.WeSyncMessage.FileData;
+import com.weibo.wesync.data.WeSyncMessage.Meta;
+import com.weibo.wesync.data.WeSyncMessage.Unread;
+
+/**
+ * Store on Redis, the folder changes and children are sorted sets, the partial files are hashes,
+ * the others are strings.
+ *
+ * Keys:
+ *   f:{folderId}  max child id of the folder, which also indicates the existence
+ *   c:{folderId}  folder changes, member is "{childId} {1 for add, 0 for delete}"
+ *   h:{folderId}  folder children, member is the child id
+ *   m:{metaId}    meta message
+ *   d:{fileId}    complete file
+ *   p:{fileId}    slices of the partial file, field is the index
+ *   pm:{fileId}   limit, number received, md5 and if taken to complete of the partial file
+ *
+ * Scores are doubles in Redis, so child ids should be kept within 2^53, which is true for
+ * ids reserved by INCR.
+ */
+public class RedisDataStore implements DataStore {
+	private final Logger log = LoggerFactory.getLogger(RedisDataStore.class);
+
+	private static final String FOLDER_PREFIX = "f:";
+	private static final String CHANGES_PREFIX = "c:";
+	private static final String CHILDREN_PREFIX = "h:";
+	private static final String META_PREFIX = "m:";
+	private static final String FILE_PREFIX = "d:";
+	private static final String PARTIAL_FILE_PREFIX = "p:";
+	private static final String PARTIAL_META_PREFIX = "pm:";
+	private static final String SLICE_PREFIX = "s:";
+	//Set of the files referring to the content
+	private static final String SLICE_REFS_PREFIX = "sr:";
+	private static final char CHANGE_SPLIT = ' ';
+
+	//KEYS: content, references; ARGV: file id, data if to store
+	static final String RETAIN_SCRIPT =
+			"if ARGV[2] then redis.call('SETNX', KEYS[1], ARGV[2]) " +
+			"elseif redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+			"redis.call('SADD', KEYS[2], ARGV[1]) return 1";
+	//KEYS: content, references; ARGV: file id
+	static final String RELEASE_SCRIPT =
+			"local n = redis.call('SREM', KEYS[2], ARGV[1]) " +
+			"if redis.call('SCARD', KEYS[2]) == 0 then redis.call('DEL', KEYS[1], KEYS[2]) end return n";
+
+	//KEYS: partial slices, partial meta, complete file; ARGV: md5 of the file or empty, max limit, then index and slice of each
+	//Return: slices stored, limit, slices received including the duplicate ones, 1 if taken to complete
+	//The first of a slice is kept, and only one caller takes the file to complete
+	static final String STORE_SLICES_SCRIPT =
+			"if redis.call('EXISTS', KEYS[3]) == 1 then return {0, 0, 0, 0} end " +
+			"local limit = tonumber(ARGV[2]) " +
+			"local prev = tonumber(redis.call('HGET', KEYS[2], 'limit') or 0) " +
+			"if prev > limit then limit = prev end " +
+			"redis.call('HSET', KEYS[2], 'limit', limit) " +
+			"if ARGV[1] ~= '' then redis.call('HSET', KEYS[2], 'md5', ARGV[1]) end " +
+			"for i = 3, #ARGV, 2 do local index = tonumber(ARGV[i]) " +
+			"if index >= 1 and index <= limit then redis.call('HSETNX', KEYS[1], ARGV[i], ARGV[i+1]) end end " +
+			"local received = redis.call('HINCRBY', KEYS[2], 'received', (#ARGV - 2) / 2) " +
+			"local n = redis.call('HLEN', KEYS[1]) " +
+			"local taken = 0 " +
+			"if limit > 0 and n >= limit and redis.call('HSETNX', KEYS[2], 'done', 1) == 1 then taken = 1 end " +
+			"return {n, limit, received, taken}";
+
+	private final RedisConnectionPool pool;
+	//Checks the md5 of the files completed
+	private final SliceVerifier verifier;
+
+	public RedisDataStore(String host, int port, int poolSize, int timeoutMillis){
+		this(host, port, poolSize, timeoutMillis, SliceVerifier.getDefault());
+	}
+
+	//@Param:verifier shared with the DataService, see DataServiceImpl
+	public RedisDataStore(String host, int port, int poolSize, int timeoutMillis, SliceVerifier verifier){
+		this.pool = new RedisConnectionPool(host, port, poolSize, timeoutMillis);
+		this.verifier = verifier;
+	}
+
+	public void close(){
+		pool.close();
+	}
+
+	/**
+	 * Command utilities
+	 */
+	private static byte[] b(String s){
+		return s.getBytes(RedisConnection.UTF8);
+	}
+	private static byte[] b(long l){
+		return b(Long.toString(l));
+	}
+	private static String s(Object reply){
+		return null == reply ? null : new String((byte[]) reply, RedisConnection.UTF8);
+	}
+	private static byte[][] command(Object... args){
+		byte[][] cmd = new byte[args.length][];
+		for(int i=0; i<args.length; i++){
+			Object arg = args[i];
+			if( arg instanceof byte[] ) cmd[i] = (byte[]) arg;
+			else if( arg instanceof Number ) cmd[i] = b(((Number) arg).longValue());
+			else cmd[i] = b(arg.toString());
+		}
+		return cmd;
+	}
+
+	private List<Object> execute(List<byte[][]> commands){
+		if( commands.isEmpty() ) return Collections.emptyList();
+
+		RedisConnection conn = null;
+		try{
+			conn = pool.borrow();
+			for(byte[][] cmd : commands){
+				conn.send(cmd);
+			}
+			conn.flush();
+
+			List<Object> replies = new ArrayList<Object>(commands.size());
+			RedisConnection.ErrorReply error = null;
+			for(int i=0; i<commands.size(); i++){
+				Object reply = conn.readReply();
+				if( reply instanceof RedisConnection.ErrorReply && null == error ){
+					error = (RedisConnection.ErrorReply) reply;
+				}
+				replies.add(reply);
+			}
+			if( null != error ) throw new RuntimeException("Redis error: " + error);
+			return replies;
+		} catch (IOException e) {
+			throw new RuntimeException("Redis failure: " + e.getMessage(), e);
+		} finally {
+			if( null != conn ) pool.release(conn);
+		}
+	}
+
+	private List<Object> pipeline(byte[][]... commands){
+		List<byte[][]> list = new ArrayList<byte[][]>(commands.length);
+		Collections.addAll(list, commands);
+		return execute(list);
+	}
+
+	private Object call(Object... args){
+		return pipeline( command(args) ).get(0);
+	}
+
+	private static long toLong(Object reply){
+		return null == reply ? 0 : ((Long) reply).longValue();
+	}
+
+	/**
+	 * Folder changes and children encoding
+	 */
+	//Children of root folder are folder ids, their changes share score 0 and are ordered by member
+	static String encodeChange(FolderChange change){
+		return change.childId + CHANGE_SPLIT + (change.isAdd ? '1' : '0');
+	}
+	static FolderChange decodeChange(String member){
+		int idx = member.lastIndexOf(CHANGE_SPLIT);
+		return new FolderChange(member.substring(0, idx), member.charAt(idx+1) == '1');
+	}
+
+	@SuppressWarnings("unchecked")
+	private static SortedSet<FolderChange> toChanges(Object reply){
+		SortedSet<FolderChange> changes = new TreeSet<FolderChange>();
+		if( null == reply ) return changes;
+		for(Object member : (List<Object>) reply){
+			changes.add( decodeChange(s(member)) );
+		}
+		return changes;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static SortedSet<FolderChild> toChildren(Object reply){
+		SortedSet<FolderChild> children = new TreeSet<FolderChild>();
+		if( null == reply ) return children;
+		List<Object> list = (List<Object>) reply;
+		for(int i=0; i+1<list.size(); i+=2){
+			long score = (long) Double.parseDouble( s(list.get(i+1)) );
+			children.add( new FolderChild(s(list.get(i)), score) );
+		}
+		return children;
+	}
+
+	private static int indexOf(Object rankReply, Object cardReply){
+		//Not found means the tail
+		return (int) (null == rankReply ? toLong(cardReply) : toLong(rankReply));
+	}
+
+	@Override
+	public boolean createFolder(String folderId) {
+		call("SETNX", FOLDER_PREFIX+folderId, 0);
+		return true;
+	}
+
+	@Override
+	public boolean destroyFolder(String folderId) {
+		call("DEL", FOLDER_PREFIX+folderId, CHANGES_PREFIX+folderId, CHILDREN_PREFIX+folderId);
+		return true;
+	}
+
+	@Override
+	public int getMaxChildId(String folderId) {
+		String max = s( call("GET", FOLDER_PREFIX+folderId) );
+		return null == max ? -1 : Integer.parseInt(max);
+	}
+
+	@Override
+	public long reserveChildId(String folderId) {
+		return toLong( call("INCR", FOLDER_PREFIX+folderId) );
+	}
+
+	@Override
+	public long reserveChildIdBlock(String folderId, int num) {
+		return toLong( call("INCRBY", FOLDER_PREFIX+folderId, num) );
+	}
+
+	@Override
+	public boolean isChild(String childId, String folderId) {
+		return null != call("ZSCORE", CHILDREN_PREFIX+folderId, childId);
+	}
+
+	@Override
+	public SortedSet<FolderChange> getFolderChanges(String folderId) {
+		return getFolderChanges(folderId, 0, -1);
+	}
+
+	@Override
+	public SortedSet<FolderChange> getFolderChanges(String folderId, int beginIndex, int endIndex) {
+		return toChanges( call("ZRANGE", CHANGES_PREFIX+folderId, beginIndex, endIndex) );
+	}
+
+	@Override
+	public int numberOfFolderChanges(String folderId) {
+		return (int) toLong( call("ZCARD", CHANGES_PREFIX+folderId) );
+	}
+
+	@Override
+	public boolean addFolderChange(String folderId, FolderChange change) {
+		long added = toLong( call("ZADD", CHANGES_PREFIX+folderId, change.score, encodeChange(change)) );
+		//Same changes on root folder will merge
+		return added == 1 || FolderID.getType(folderId).equals(FolderID.Type.Root);
+	}
+
+	@Override
+	public boolean removeFolderChange(String folderId, FolderChange change) {
+		return toLong( call("ZREM", CHANGES_PREFIX+folderId, encodeChange(change)) ) == 1;
+	}
+
+	@Override
+	public boolean removeFolderChanges(String folderId, int num) {
+		if( num > 0 ) call("ZREMRANGEBYRANK", CHANGES_PREFIX+folderId, 0, num-1);
+		return true;
+	}
+
+	@Override
+	public boolean removePrecedingFolderChange(String folderId, FolderChange change) {
+		if( null == change ) return false;
+
+		String key = CHANGES_PREFIX+folderId;
+		if( change.hasScore() ){
+			//Delete is in front of add on the same child
+			long score = change.score;
+			FolderChange delete = new FolderChange(change.childId, false);
+			pipeline( command("ZREMRANGEBYSCORE", key, "-inf", "(" + score),
+					command("ZREM", key, encodeChange(delete), encodeChange(change)) );
+		}else{
+			call("ZREMRANGEBYLEX", key, "-", "[" + encodeChange(change));
+		}
+		return true;
+	}
+
+	@Override
+	public SortedSet<FolderChange> removeAllFolderChanges(String folderId) {
+		String key = CHANGES_PREFIX+folderId;
+		SortedSet<FolderChange> changes = toChanges( call("ZRANGE", key, 0, -1) );
+		//Only remove what we have read, the later ones are left for next time
+		if( !changes.isEmpty() ) call("ZREMRANGEBYRANK", key, 0, changes.size()-1);
+		return changes;
+	}
+
+	@Override
+	public SortedSet<FolderChange> getFollowingChanges(String folderId, FolderChange change, int n) {
+		String key = CHANGES_PREFIX+folderId;
+		List<Object> replies = pipeline( command("ZRANK", key, encodeChange(change)), command("ZCARD", key) );
+		int begin = indexOf(replies.get(0), replies.get(1));
+		return getFolderChanges(folderId, begin+1, begin+n);
+	}
+
+	@Override
+	public SortedSet<FolderChange> getPrecedingChanges(String folderId, FolderChange change, int n) {
+		String key = CHANGES_PREFIX+folderId;
+		List<Object> replies = pipeline( command("ZRANK", key, encodeChange(change)), command("ZCARD", key) );
+		int flag = indexOf(replies.get(0), replies.get(1));
+		if( flag <= 0 ) return new TreeSet<FolderChange>();
+		return getFolderChanges(folderId, Math.max(0, flag-n), flag-1);
+	}
+
+	@Override
+	public List<Unread> numberOfFolderChanges(List<String> folderIds) {
+		List<byte[][]> commands = new ArrayList<byte[][]>(folderIds.size());
+		for( String fid: folderIds ){
+			commands.add( command("ZCARD", CHANGES_PREFIX+fid) );
+		}
+		List<Object> replies = execute(commands);
+
+		List<Unread> unreadList = new LinkedList<Unread>();
+		Unread.Builder builder = Unread.newBuilder();
+		int i = 0;
+		for( String fid: folderIds ){
+			builder.setFolderId(fid);
+			builder.setNum( (int) toLong(replies.get(i++)) );
+			unreadList.add( builder.build() );
+		}
+		return unreadList;
+	}
+
+	@Override
+	public SortedSet<FolderChild> getChildren(String folderId) {
+		return getChildren(folderId, 0, -1);
+	}
+
+	@Override
+	public SortedSet<FolderChild> getChildren(String folderId, int beginIndex, int endIndex) {
+		return toChildren( call("ZRANGE", CHILDREN_PREFIX+folderId, beginIndex, endIndex, "WITHSCORES") );
+	}
+
+	@Override
+	public int numberOfChildren(String folderId) {
+		return (int) toLong( call("ZCARD", CHILDREN_PREFIX+folderId) );
+	}
+
+	@Override
+	public boolean addChild(String folderId, String childId, long score) {
+		call("ZADD", CHILDREN_PREFIX+folderId, score, childId);
+		return true;
+	}
+
+	@Override
+	public boolean removeChild(String folderId, String child) {
+		return toLong( call("ZREM", CHILDREN_PREFIX+folderId, child) ) == 1;
+	}
+
+	@Override
+	public boolean removeChildren(String folderId, int num) {
+		if( num > 0 ) call("ZREMRANGEBYRANK", CHILDREN_PREFIX+folderId, 0, num-1);
+		return true;
+	}
+
+	@Override
+	public boolean removePrecedingChildren(String folderId, FolderChild child) {
+		if( null == child ) return false;
+
+		Object rank = call("ZRANK", CHILDREN_PREFIX+folderId, child.id);
+		if( null != rank ) call("ZREMRANGEBYRANK", CHILDREN_PREFIX+folderId, 0, toLong(rank));
+		return true;
+	}
+
+	@Override
+	public boolean removeAllChildren(String folderId) {
+		call("DEL", CHILDREN_PREFIX+folderId);
+		return true;
+	}
+
+	@Override
+	public SortedSet<FolderChild> getFollowingChildren(String folderId, String childId, int n) {
+		String key = CHILDREN_PREFIX+folderId;
+		List<Object> replies = pipeline( command("ZRANK", key, childId), command("ZCARD", key) );
+		int begin = indexOf(replies.get(0), replies.get(1));
+		return getChildren(folderId, begin+1, begin+n);
+	}
+
+	@Override
+	public SortedSet<FolderChild> getPrecedingChildren(String folderId, String childId, int n) {
+		String key = CHILDREN_PREFIX+folderId;
+		List<Object> replies = pipeline( command("ZRANK", key, childId), command("ZCARD", key) );
+		int flag = indexOf(replies.get(0), replies.get(1));
+		if( flag <= 0 ) return new TreeSet<FolderChild>();
+		return getChildren(folderId, Math.max(0, flag-n), flag-1);
+	}
+
+	private Meta toMeta(String id, Object reply){
+		if( null == reply ) return null;
+		try {
+			return Meta.parseFrom( (byte[]) reply );
+		} catch (InvalidProtocolBufferException e) {
+			log.warn("Spoiled meta message, id: " + id );
+			return null;
+		}
+	}
+
+	@Override
+	public Meta getMetaMessage(String metaMsgId) {
+		return toMeta( metaMsgId, call("GET", META_PREFIX+metaMsgId) );
+	}
+
+	@Override
+	public boolean addMetaMessage(Meta msg) {
+		call("SET", META_PREFIX+msg.getId(), msg.toByteArray());
+		return true;
+	}
+
+	@Override
+	public boolean removeMetaMessage(Meta msg) {
+		call("DEL", META_PREFIX+msg.getId());
+		return true;
+	}
+
+	private FileData toFileData(String fileId, Object reply){
+		if( null == reply ) return null;
+		try {
+			return FileData.parseFrom( (byte[]) reply );
+		} catch (InvalidProtocolBufferException e) {
+			log.warn("Spoiled file data, id: " + fileId );
+			return null;
+		}
+	}
+
+	//The slices in the order of index
+	private List<DataSlice> toSlices(String fileId, Object reply){
+		TreeMap<Integer, DataSlice> sorted = new TreeMap<Integer, DataSlice>();
+		if( null != reply ){
+			for( Object value : (List<?>) reply ){
+				try {
+					DataSlice slice = DataSlice.parseFrom( (byte[]) value );
+					sorted.put(slice.getIndex(), slice);
+				} catch (InvalidProtocolBufferException e) {
+					log.warn("Spoiled data slice, file id: " + fileId );
+				}
+			}
+		}
+		return new ArrayList<DataSlice>(sorted.values());
+	}
+
+	@Override
+	public FileData storeFile(FileData fileData) {
+		String fileId = fileData.getId();
+
+		//Each slice is a field of the partial file, merged by the script without reading the others
+		List<Object> args = new ArrayList<Object>(8 + 2*fileData.getSliceCount());
+		Collections.addAll(args, "EVAL", STORE_SLICES_SCRIPT, 3, PARTIAL_FILE_PREFIX+fileId,
+				PARTIAL_META_PREFIX+fileId, FILE_PREFIX+fileId, fileData.hasMd5() ? fileData.getMd5() : "");
+		int maxLimit = 0;
+		for( DataSlice s : fileData.getSliceList() ){
+			if( maxLimit < s.getLimit() ) maxLimit = s.getLimit();
+		}
+		args.add(maxLimit);
+		for( DataSlice s : fileData.getSliceList() ){
+			args.add(s.getIndex());
+			args.add(s.toByteArray());
+		}
+		List<?> state = (List<?>) call( args.toArray() );
+		long stored = toLong(state.get(0));
+		int limit = (int) toLong(state.get(1));
+		int received = (int) toLong(state.get(2));
+
+		if( toLong(state.get(3)) == 1 ) return complete(fileId);
+
+		if( limit > 0 && stored < limit && FileDataHelper.nearComplete(received, limit) ){
+			BitSet set = new BitSet(limit+1);
+			for( Object index : (List<?>) call("HKEYS", PARTIAL_FILE_PREFIX+fileId) ){
+				set.set( Integer.parseInt(s(index)) );
+			}
+			return FileData.newBuilder().setId(fileId).addAllSlice( FileDataHelper.findMissing(set, limit) ).build();
+		}
+		return FileData.newBuilder().setId(fileId).build();
+	}
+
+	//Check the file taken to complete and move it, or ask for all of it again if mismatched
+	private FileData complete(String fileId){
+		List<Object> replies = pipeline( command("HVALS", PARTIAL_FILE_PREFIX+fileId),
+				command("HGET", PARTIAL_META_PREFIX+fileId, "md5") );
+		List<DataSlice> slices = toSlices(fileId, replies.get(0));
+		String md5 = s(replies.get(1));
+
+		if( null != md5 ){
+			List<ByteString> contents = FileDataHelper.dataOf(slices, this);
+			if( null == contents || !verifier.verifyFile(md5, contents) ){
+				//Which slice is wrong is not known, all of them are asked for
+				log.warn("Mismatched md5 of file " + fileId);
+				FileData.Builder resend = FileData.newBuilder().setId(fileId);
+				for( DataSlice s : slices ){
+					if( FileDataHelper.isReference(s) ) releaseSliceContent(s.getMd5(), fileId);
+					resend.addSlice( s.toBuilder().clearData() );
+				}
+				//The limit and md5 are kept for the slices resent
+				pipeline( command("DEL", PARTIAL_FILE_PREFIX+fileId),
+						command("HDEL", PARTIAL_META_PREFIX+fileId, "received", "done") );
+				return resend.build();
+			}
+		}
+
+		FileData.Builder file = FileData.newBuilder().setId(fileId).addAllSlice(slices);
+		if( null != md5 ) file.setMd5(md5);
+		pipeline( command("SET", FILE_PREFIX+fileId, file.build().toByteArray()),
+				command("DEL", PARTIAL_FILE_PREFIX+fileId, PARTIAL_META_PREFIX+fileId) );
+		return FileData.newBuilder().setId(fileId).build();
+	}
+
+	@Override
+	public FileData getFileByIndex(FileData fileIndex) {
+		FileData.Builder builder = FileData.newBuilder()
+				.setId( fileIndex.getId() );
+
+		FileData data = getFileById( fileIndex.getId() );
+		if( null != data ) {
+			builder.addAllSlice( FileDataHelper.extract(data, fileIndex) );
+		}
+
+		return builder.build();
+	}
+
+	@Override
+	public FileData getFileById(String fileId) {
+		List<Object> replies = pipeline( command("HVALS", PARTIAL_FILE_PREFIX+fileId),
+				command("GET", FILE_PREFIX+fileId) );
+		List<DataSlice> slices = toSlices(fileId, replies.get(0));
+		if( !slices.isEmpty() ){
+			return FileData.newBuilder().setId(fileId).addAllSlice(slices).build();
+		}
+		return toFileData(fileId, replies.get(1));
+	}
+
+	@Override
+	public boolean addFolderChanges(Map<String, FolderChange> changes) {
+		List<byte[][]> commands = new ArrayList<byte[][]>(changes.size());
+		for( Map.Entry<String, FolderChange> e : changes.entrySet() ){
+			FolderChange change = e.getValue();
+			commands.add( command("ZADD", CHANGES_PREFIX+e.getKey(), change.score, encodeChange(change)) );
+		}
+		execute(commands);
+		return true;
+	}
+
+	@Override
+	public boolean addChildren(String folderId, Collection<FolderChild> children) {
+		if( children.isEmpty() ) return true;
+
+		//ZADD key score member [score member ...]
+		Object[] args = new Object[2 + children.size()*2];
+		int i = 0;
+		args[i++] = "ZADD";
+		args[i++] = CHILDREN_PREFIX+folderId;
+		for( FolderChild fc : children ){
+			args[i++] = fc.score;
+			args[i++] = fc.id;
+		}
+		call(args);
+		return true;
+	}
+
+	@Override
+	public boolean addChildren(Map<String, FolderChild> children) {
+		List<byte[][]> commands = new ArrayList<byte[][]>(children.size());
+		for( Map.Entry<String, FolderChild> e : children.entrySet() ){
+			commands.add( command("ZADD", CHILDREN_PREFIX+e.getKey(), e.getValue().score, e.getValue().id) );
+		}
+		execute(commands);
+		return true;
+	}
+
+	@Override
+	public Map<String, Long> reserveChildIds(List<String> folderIds) {
+		List<byte[][]> commands = new ArrayList<byte[][]>(folderIds.size());
+		for( String fid : folderIds ){
+			commands.add( command("INCR", FOLDER_PREFIX+fid) );
+		}
+		List<Object> replies = execute(commands);
+
+		Map<String, Long> ids = new HashMap<String, Long>();
+		int i = 0;
+		for( String fid : folderIds ){
+			ids.put(fid, toLong(replies.get(i++)));
+		}
+		return ids;
+	}
+
+	@Override
+	public Map<String, Boolean> isChildMulti(Map<String, String> childIds) {
+		List<String> folderIds = new ArrayList<String>(childIds.keySet());
+		List<byte[][]> commands = new ArrayList<byte[][]>(folderIds.size());
+		for( String fid : folderIds ){
+			commands.add( command("ZSCORE", CHILDREN_PREFIX+fid, childIds.get(fid)) );
+		}
+		List<Object> replies = execute(commands);
+
+		Map<String, Boolean> ret = new HashMap<String, Boolean>();
+		int i = 0;
+		for( String fid : folderIds ){
+			ret.put(fid, null != replies.get(i++));
+		}
+		return ret;
+	}
+
+	@Override
+	public List<Meta> getMetaMessages(List<String> metaMsgIds) {
+		if( metaMsgIds.isEmpty() ) return new ArrayList<Meta>();
+
+		Object[] args = new Object[1 + metaMsgIds.size()];
+		args[0] = "MGET";
+		int i = 1;
+		for( String id : metaMsgIds ){
+			args[i++] = META_PREFIX+id;
+		}
+		@SuppressWarnings("unchecked")
+		List<Object> replies = (List<Object>) call(args);
+
+		List<Meta> ret = new ArrayList<Meta>(metaMsgIds.size());
+		i = 0;
+		for( String id : metaMsgIds ){
+			ret.add( toMeta(id, replies.get(i++)) );
+		}
+		return ret;
+	}
+
+	@Override
+	public boolean removeFile(String fileId) {
+		return toLong( call("DEL", PARTIAL_FILE_PREFIX+fileId, PARTIAL_META_PREFIX+fileId, FILE_PREFIX+fileId) ) > 0;
+	}
+
+	@Override
+	public List<ByteString> getSliceContents(List<String> md5s) {
+		if( md5s.isEmpty() ) return new ArrayList<ByteString>();
+
+		Object[] args = new Object[1 + md5s.size()];
+		args[0] = "MGET";
+		int i = 1;
+		for( String md5 : md5s ){
+			args[i++] = SLICE_PREFIX+md5;
+		}
+		@SuppressWarnings("unchecked")
+		List<Object> replies = (List<Object>) call(args);
+
+		List<ByteString> ret = new ArrayList<ByteString>(md5s.size());
+		for( Object reply : replies ){
+			ret.add( null == reply ? null : ByteString.copyFrom((byte[]) reply) );
+		}
+		return ret;
+	}
+
+	//By scripts, so a release never removes the content being retained at the same time
+	@Override
+	public boolean retainSliceContent(String md5, String fileId, ByteString data) {
+		Object reply = null == data
+				? call("EVAL", RETAIN_SCRIPT, 2, SLICE_PREFIX+md5, SLICE_REFS_PREFIX+md5, fileId)
+				: call("EVAL", RETAIN_SCRIPT, 2, SLICE_PREFIX+md5, SLICE_REFS_PREFIX+md5, fileId, data.toByteArray());
+		return toLong(reply) == 1;
+	}
+
+	@Override
+	public boolean releaseSliceContent(String md5, String fileId) {
+		return toLong( call("EVAL", RELEASE_SCRIPT, 2, SLICE_PREFIX+md5, SLICE_REFS_PREFIX+md5, fileId) ) == 1;
+	}
+
+	@Override
+	public DataStorePipeline pipelined() {
+		return new RedisPipeline();
+	}
+
+	private class RedisPipeline implements DataStorePipeline {
+		private final List<byte[][]> commands = new ArrayList<byte[][]>();
+		//Responses waiting for the reply of the command at the same position
+		private final List<Response<Boolean>> responses = new ArrayList<Response<Boolean>>();
+
+		private void queue(byte[][] cmd, Response<Boolean> resp){
+			commands.add(cmd);
+			responses.add(resp);
+		}
+
+		@Override
+		public void addMetaMessage(Meta msg) {
+			queue( command("SET", META_PREFIX+msg.getId(), msg.toByteArray()), null );
+		}
+
+		@Override
+		public void addChild(String folderId, String childId, long score, int limit) {
+			String key = CHILDREN_PREFIX+folderId;
+			queue( command("ZADD", key, score, childId), null );
+			if( limit > 0 ) queue( command("ZREMRANGEBYRANK", key, 0, -(limit+1)), null );
+		}
+
+		@Override
+		public void addFolderChange(String folderId, FolderChange change, int limit) {
+			String key = CHANGES_PREFIX+folderId;
+			queue( command("ZADD", key, change.score, encodeChange(change)), null );
+			if( limit > 0 ) queue( command("ZREMRANGEBYRANK", key, 0, -(limit+1)), null );
+		}
+
+		@Override
+		public Response<Boolean> isChild(String childId, String folderId) {
+			Response<Boolean> resp = new Response<Boolean>();
+			queue( command("ZSCORE", CHILDREN_PREFIX+folderId, childId), resp );
+			return resp;
+		}
+
+		@Override
+		public void sync() {
+			List<Object> replies = execute(commands);
+			for(int i=0; i<replies.size(); i++){
+				Response<Boolean> resp = responses.get(i);
+				if( null != resp ) resp.set( null != replies.get(i) );
+			}
+			commands.clear();
+			responses.clear();
+		}
+	}
+}
@@ -0,0 +1,267 @@
+package com.weibo.wesync.data;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of ids with a long score each, ordered by the score then the id as FolderChild does,
+ * and an id is in it once with its latest score, as a member of a Redis sorted set. Kept in a sorted
+ * long[] of the scores and a side String[] of the ids, with an open addressed int[] of the positions
+ * in them to look up the ids, about 20 bytes an entry besides the id, against the node, links and
+ * FolderChild of a skip list along with the node and boxed score of a map.
+ *
+ * The index is built by the first lookup of an id once the set is larger than INDEX_THRESHOLD, kept
+ * up by the writes, and dropped when it is to grow or most of the set is removed, to be built again
+ * by the next lookup. Appending in the order of the scores, as the children of a folder mostly are,
+ * costs O(1), the others shift the arrays and the positions after, O(n) without allocating.
+ *
+ * Not thread safe, even the lookups build the index, so it is guarded as the Slot of MemoryDataStore.
+ */
+public final class ScoredIdSet {
+	private static final int INITIAL_CAPACITY = 8;
+	//Looked up by a scan up to it, without the index
+	private static final int INDEX_THRESHOLD = 8;
+
+	private static final long[] NO_SCORES = new long[0];
+	private static final String[] NO_IDS = new String[0];
+
+	private long[] scores = NO_SCORES;
+	private String[] ids = NO_IDS;
+	private int size = 0;
+	//Position+1 of the id at its hash or after it by linear probing, 0 for free. Null until looked up
+	private int[] index = null;
+
+	public ScoredIdSet() {
+	}
+
+	private ScoredIdSet(long[] scores, String[] ids) {
+		this.scores = scores;
+		this.ids = ids;
+		this.size = scores.length;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return 0 == size;
+	}
+
+	public long score(int index) {
+		if (index >= size) throw new IndexOutOfBoundsException(String.valueOf(index));
+		return scores[index];
+	}
+
+	public String id(int index) {
+		if (index >= size) throw new IndexOutOfBoundsException(String.valueOf(index));
+		return ids[index];
+	}
+
+	//Copy of the entries in [@Param:from, @Param:to)
+	public ScoredIdSet range(int from, int to) {
+		if (from < 0 || to > size || from > to) throw new IndexOutOfBoundsException(from + ", " + to);
+		return new ScoredIdSet(Arrays.copyOfRange(scores, from, to), Arrays.copyOfRange(ids, from, to));
+	}
+
+	//Index of the entry, or -(insertion point)-1 as Arrays.binarySearch() does
+	private int search(long score, String id) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long s = scores[mid];
+			int c = s != score ? (s < score ? -1 : 1) : ids[mid].compareTo(id);
+			if (c < 0) {
+				low = mid + 1;
+			} else if (c > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -low - 1;
+	}
+
+	public boolean contains(long score, String id) {
+		return search(score, id) >= 0;
+	}
+
+	public boolean contains(String id) {
+		return indexOf(id) >= 0;
+	}
+
+	//Zero based rank of the entry, -1 if not found
+	public int rank(long score, String id) {
+		int i = search(score, id);
+		return i < 0 ? -1 : i;
+	}
+
+	//Zero based rank of the id whatever its score, -1 if not found. Redis command: ZRANK
+	public int indexOf(String id) {
+		if (size <= INDEX_THRESHOLD && null == index) {
+			for (int i = 0; i < size; i++) {
+				if (ids[i].equals(id)) return i;
+			}
+			return -1;
+		}
+		if (null == index) buildIndex();
+		int mask = index.length - 1;
+		for (int s = hash(id) & mask; ; s = (s + 1) & mask) {
+			int p = index[s];
+			if (0 == p) return -1;
+			if (ids[p - 1].equals(id)) return p - 1;
+		}
+	}
+
+	//Number of entries less than the given one, or not greater than it if inclusive
+	public int headCount(long score, String id, boolean inclusive) {
+		int i = search(score, id);
+		if (i < 0) return -i - 1;
+		return inclusive ? i + 1 : i;
+	}
+
+	/**
+	 * Add the id, or update its score if in the set. Redis command: ZADD
+	 * @Return false if the id is in the set
+	 */
+	public boolean add(long score, String id) {
+		int pos = indexOf(id);
+		if (pos >= 0) {
+			if (scores[pos] != score) {
+				removeAt(pos);
+				insertAt(-search(score, id) - 1, score, id);
+			}
+			return false;
+		}
+		insertAt(-search(score, id) - 1, score, id);
+		return true;
+	}
+
+	public boolean remove(String id) {
+		int pos = indexOf(id);
+		if (pos < 0) return false;
+		removeAt(pos);
+		return true;
+	}
+
+	//Remove the first @Param:num entries, return the number removed. Redis command: ZREMRANGEBYRANK
+	public int removeFirst(int num) {
+		if (num <= 0 || 0 == size) return 0;
+		if (num >= size) {
+			int n = size;
+			clear();
+			return n;
+		}
+		int left = size - num;
+		if (scores.length > INITIAL_CAPACITY && left < scores.length / 4) {
+			scores = Arrays.copyOfRange(scores, num, num + capacityOf(left));
+			ids = Arrays.copyOfRange(ids, num, num + capacityOf(left));
+			Arrays.fill(ids, left, ids.length, null);
+		} else {
+			System.arraycopy(scores, num, scores, 0, left);
+			System.arraycopy(ids, num, ids, 0, left);
+			Arrays.fill(ids, left, size, null);
+		}
+		size = left;
+		//Every position changed
+		index = null;
+		return num;
+	}
+
+	public void clear() {
+		scores = NO_SCORES;
+		ids = NO_IDS;
+		size = 0;
+		index = null;
+	}
+
+	private static int capacityOf(int size) {
+		return Math.max(INITIAL_CAPACITY, size + (size >> 1) + 1);
+	}
+
+	private void insertAt(int i, long score, String id) {
+		if (size == scores.length) {
+			int capacity = capacityOf(size);
+			scores = Arrays.copyOf(scores, capacity);
+			ids = Arrays.copyOf(ids, capacity);
+		}
+		System.arraycopy(scores, i, scores, i + 1, size - i);
+		System.arraycopy(ids, i, ids, i + 1, size - i);
+		scores[i] = score;
+		ids[i] = id;
+		size++;
+
+		if (null == index) return;
+		//Kept under 2/3 full, built again larger by the next lookup
+		if (size * 3 > index.length * 2) {
+			index = null;
+			return;
+		}
+		if (i < size - 1) shift(i, 1);
+		put(id, i);
+	}
+
+	private void removeAt(int i) {
+		if (null != index) {
+			//By the positions before the arrays are shifted
+			delete(slotOf(i));
+			shift(i + 1, -1);
+		}
+		System.arraycopy(scores, i + 1, scores, i, size - i - 1);
+		System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+		size--;
+		ids[size] = null;
+
+		if (scores.length > INITIAL_CAPACITY && size < scores.length / 4) {
+			scores = Arrays.copyOf(scores, capacityOf(size));
+			ids = Arrays.copyOf(ids, capacityOf(size));
+		}
+	}
+
+	private static int hash(String id) {
+		int h = id.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private void buildIndex() {
+		//At least twice the size, a power of two
+		index = new int[Integer.highestOneBit(Math.max(size * 2, 16) - 1) << 1];
+		for (int i = 0; i < size; i++) {
+			put(ids[i], i);
+		}
+	}
+
+	private void put(String id, int pos) {
+		int mask = index.length - 1;
+		int s = hash(id) & mask;
+		while (0 != index[s]) s = (s + 1) & mask;
+		index[s] = pos + 1;
+	}
+
+	//Add @Param:delta to the positions from @Param:from on
+	private void shift(int from, int delta) {
+		for (int s = 0; s < index.length; s++) {
+			if (index[s] > from) index[s] += delta;
+		}
+	}
+
+	private int slotOf(int pos) {
+		int mask = index.length - 1;
+		int s = hash(ids[pos]) & mask;
+		while (index[s] != pos + 1) s = (s + 1) & mask;
+		return s;
+	}
+
+	//Free the slot, moving back the ones after it which would not be found past the free one
+	private void delete(int hole) {
+		int mask = index.length - 1;
+		for (int s = (hole + 1) & mask; 0 != index[s]; s = (s + 1) & mask) {
+			int home = hash(ids[index[s] - 1]) & mask;
+			if (((s - home) & mask) >= ((s - hole) & mask)) {
+				index[hole] = index[s];
+				hole = s;
+			}
+		}
+		index[hole] = 0;
+	}
+}
@@ -0,0 +1,167 @@
+package com.weibo.wesync.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * Slice contents keyed by md5 with the files referring to them, for the in-memory stores.
+ * See DataStore.retainSliceContent().
+ *
+ * Only the md5 and the referring files are kept on the heap. The data is kept out of it in the
+ * OffHeapSliceStore, under its byte budget, until a file referring to it is moved to the
+ * MappedFileStore, see persist(). A content evicted from the OffHeapSliceStore is dropped along
+ * with its references, see evicted().
+ *
+ * The stores are called under the lock of this, so they should not call back while locked.
+ */
+public final class SliceContents {
+	private final Logger log = LoggerFactory.getLogger(SliceContents.class);
+
+	private static final class Content {
+		final int size;
+		final Set<String> files = new HashSet<String>(2);
+		//In the fileStore, otherwise in the sliceStore
+		boolean persisted = false;
+
+		Content(int size) {
+			this.size = size;
+		}
+	}
+
+	private final OffHeapSliceStore sliceStore;
+	//null if the files are never moved to disk
+	private final MappedFileStore fileStore;
+	private final Map<String, Content> contents = new HashMap<String, Content>();
+	private long bytes = 0;
+	//Bytes not stored again since shared
+	private long sharedBytes = 0;
+
+	public SliceContents(OffHeapSliceStore sliceStore) {
+		this(sliceStore, null);
+	}
+
+	public SliceContents(OffHeapSliceStore sliceStore, MappedFileStore fileStore) {
+		this.sliceStore = sliceStore;
+		this.fileStore = fileStore;
+	}
+
+	public synchronized List<ByteString> get(List<String> md5s) {
+		List<ByteString> ret = new ArrayList<ByteString>(md5s.size());
+		for (String md5 : md5s) {
+			Content c = contents.get(md5);
+			if (null == c) {
+				ret.add(null);
+			} else {
+				ret.add(c.persisted ? fileStore.getContent(md5) : sliceStore.getContent(md5));
+			}
+		}
+		return ret;
+	}
+
+	//Retained again by the same file, e.g. a slice resent, is taken once
+	//@Return false if the content is missing, or too large to store
+	public synchronized boolean retain(String md5, String fileId, ByteString data) {
+		Content c = contents.get(md5);
+		if (null == c) {
+			if (null == data || !sliceStore.putContent(md5, data)) return false;
+			c = new Content(data.size());
+			contents.put(md5, c);
+			bytes += c.size;
+		}
+		if (c.files.add(fileId) && c.files.size() > 1) {
+			sharedBytes += c.size;
+		}
+		return true;
+	}
+
+	public synchronized boolean release(String md5, String fileId) {
+		Content c = contents.get(md5);
+		if (null == c || !c.files.remove(fileId)) return false;
+		if (c.files.isEmpty()) {
+			contents.remove(md5);
+			bytes -= c.size;
+			if (!c.persisted) {
+				sliceStore.removeContent(md5);
+			} else {
+				try {
+					fileStore.removeContent(md5);
+				} catch (IOException e) {
+					log.error("Failed to remove slice content " + md5 + " from disk: " + e.getMessage(), e);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Move the contents to the fileStore, for a file referring to them is moved there
+	 * @Return false if any of them is missing, e.g. evicted
+	 */
+	public synchronized boolean persist(Collection<String> md5s) throws IOException {
+		for (String md5 : md5s) {
+			Content c = contents.get(md5);
+			if (null == c) return false;
+			if (c.persisted) continue;
+
+			ByteString data = sliceStore.getContent(md5);
+			if (null == data) return false;
+			fileStore.putContent(md5, data);
+			sliceStore.removeContent(md5);
+			c.persisted = true;
+		}
+		return true;
+	}
+
+	//Refer to the content in the fileStore, for the files found there on opening
+	public synchronized void restore(String md5, String fileId) {
+		Content c = contents.get(md5);
+		if (null == c) {
+			int size = fileStore.getContentLength(md5);
+			if (size < 0) return;
+			c = new Content(size);
+			c.persisted = true;
+			contents.put(md5, c);
+			bytes += size;
+		}
+		c.files.add(fileId);
+	}
+
+	/**
+	 * The content is evicted from the sliceStore and dropped
+	 * @Return the files referring to it, which are useless without it
+	 */
+	public synchronized Collection<String> evicted(String md5) {
+		Content c = contents.get(md5);
+		if (null == c || c.persisted) return Collections.emptyList();
+		contents.remove(md5);
+		bytes -= c.size;
+		return new ArrayList<String>(c.files);
+	}
+
+	/**
+	 * Metrics
+	 */
+	public synchronized int getCount() {
+		return contents.size();
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized long getSharedBytes() {
+		return sharedBytes;
+	}
+}
@@ -0,0 +1,218 @@
+package com.weibo.wesync.data;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.protobuf.ByteString;
+import com.weibo.wesync.data.WeSyncMessage.DataSlice;
+import com.weibo.wesync.metrics.LatencyHistogram;
+
+/**
+ * Checks the md5 of the slices against their data on a dedicated fork-join pool.
+ *
+ * The slices are split by bytes into tasks, so a large upload is verified across the cores,
+ * while the ones smaller than a task are verified in the caller's thread to save the handoff.
+ * The slices without md5, or without data as the references to the stored contents, are not checked.
+ * The md5 of a whole file is checked in the caller's thread, see verifyFile().
+ *
+ * The pool is started on the first upload to split, so a verifier never verifying in parallel, e.g.
+ * the one of a store, costs no threads, and shutdown() stops it. One verifier is shared by the
+ * service and the store, the default one unless given, see getDefault().
+ */
+public final class SliceVerifier {
+	public static final int DEFAULT_SPLIT_BYTES = 256 * 1024;
+
+	private static final SliceVerifier DEFAULT = new SliceVerifier();
+
+	private final int parallelism;
+	private final int splitBytes;
+	//null until needed, or after shutdown()
+	private ForkJoinPool pool = null;
+
+	/**
+	 * Metrics, the throughput is by the time spent in verify()
+	 */
+	private final AtomicLong verifiedSlices = new AtomicLong(0);
+	private final AtomicLong verifiedFiles = new AtomicLong(0);
+	private final AtomicLong verifiedBytes = new AtomicLong(0);
+	private final AtomicLong mismatches = new AtomicLong(0);
+	private final AtomicLong busyNanos = new AtomicLong(0);
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	public SliceVerifier() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_SPLIT_BYTES);
+	}
+
+	public SliceVerifier(int parallelism, int splitBytes) {
+		if (parallelism <= 0 || splitBytes <= 0) throw new IllegalArgumentException();
+		this.parallelism = parallelism;
+		this.splitBytes = splitBytes;
+	}
+
+	//Shared by the services and the stores not given one
+	public static SliceVerifier getDefault() {
+		return DEFAULT;
+	}
+
+	private synchronized ForkJoinPool pool() {
+		if (null == pool) {
+			pool = new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+				private final AtomicLong count = new AtomicLong(0);
+
+				@Override
+				public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+					ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+					t.setName("slice-verify-" + count.getAndIncrement());
+					t.setDaemon(true);
+					return t;
+				}
+			}, null, false);
+		}
+		return pool;
+	}
+
+	private final class VerifyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final DataSlice[] slices;
+		//Bytes before each slice, for splitting by bytes
+		final long[] offsets;
+		final boolean[] bad;
+		final int from;
+		final int to;
+
+		VerifyTask(DataSlice[] slices, long[] offsets, boolean[] bad, int from, int to) {
+			this.slices = slices;
+			this.offsets = offsets;
+			this.bad = bad;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= 1 || offsets[to] - offsets[from] <= splitBytes) {
+				for (int i = from; i < to; i++) {
+					bad[i] = !FileDataHelper.isDigestOf(slices[i]);
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new VerifyTask(slices, offsets, bad, from, mid), new VerifyTask(slices, offsets, bad, mid, to));
+		}
+	}
+
+	//@Return the positions in @Param:slices of the ones whose md5 is not of their data
+	public BitSet verify(List<DataSlice> slices) {
+		BitSet ret = new BitSet(slices.size());
+		DataSlice[] array = new DataSlice[slices.size()];
+		int[] positions = new int[slices.size()];
+		int count = 0;
+		int position = 0;
+		for (DataSlice s : slices) {
+			if (s.hasMd5() && !s.getData().isEmpty()) {
+				array[count] = s;
+				positions[count++] = position;
+			}
+			position++;
+		}
+		if (0 == count) return ret;
+
+		long start = System.nanoTime();
+		long[] offsets = new long[count + 1];
+		for (int i = 0; i < count; i++) {
+			offsets[i + 1] = offsets[i] + array[i].getData().size();
+		}
+		boolean[] bad = new boolean[count];
+		VerifyTask task = new VerifyTask(array, offsets, bad, 0, count);
+		if (offsets[count] <= splitBytes) {
+			task.compute();
+		} else {
+			pool().invoke(task);
+		}
+
+		for (int i = 0; i < count; i++) {
+			if (bad[i]) ret.set(positions[i]);
+		}
+
+		long nanos = System.nanoTime() - start;
+		busyNanos.addAndGet(nanos);
+		latency.record(nanos / 1000);
+		verifiedSlices.addAndGet(count);
+		verifiedBytes.addAndGet(offsets[count]);
+		mismatches.addAndGet(ret.cardinality());
+		return ret;
+	}
+
+	/**
+	 * Check the md5 of the whole file
+	 * @Param:data of the slices in the order of index
+	 */
+	public boolean verifyFile(String md5, List<ByteString> data) {
+		long start = System.nanoTime();
+		boolean ret = md5.equalsIgnoreCase(FileDataHelper.md5(data));
+
+		long nanos = System.nanoTime() - start;
+		long bytes = 0;
+		for (ByteString b : data) {
+			bytes += b.size();
+		}
+		busyNanos.addAndGet(nanos);
+		latency.record(nanos / 1000);
+		verifiedFiles.incrementAndGet();
+		verifiedBytes.addAndGet(bytes);
+		if (!ret) mismatches.incrementAndGet();
+		return ret;
+	}
+
+	//The pool is started again if verifying in parallel after
+	public void shutdown() {
+		ExecutorService stopped;
+		synchronized (this) {
+			stopped = pool;
+			pool = null;
+		}
+		if (null != stopped) stopped.shutdown();
+	}
+
+	public long getVerifiedSliceCount() {
+		return verifiedSlices.get();
+	}
+
+	public long getVerifiedFileCount() {
+		return verifiedFiles.get();
+	}
+
+	public long getVerifiedBytes() {
+		return verifiedBytes.get();
+	}
+
+	public long getMismatchCount() {
+		return mismatches.get();
+	}
+
+	//Bytes verified per second
+	public double getThroughput() {
+		long nanos = busyNanos.get();
+		return nanos == 0 ? 0 : verifiedBytes.get() * 1e9 / nanos;
+	}
+
+	//Of each verify() and verifyFile(), in microseconds
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	@Override
+	public String toString() {
+		return "SliceVerifier[slices=" + getVerifiedSliceCount() + ", files=" + getVerifiedFileCount() + ", bytes=" + getVerifiedBytes()
+				+ ", mismatches=" + getMismatchCount() + ", throughput=" + (long) getThroughput() + "B/s]";
+	}
+}
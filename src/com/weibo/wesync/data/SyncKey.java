@@ -2,58 +2,224 @@ package com.weibo.wesync.data;
 
 
 /**
+ * Sync keys are in two formats, both are accepted:
+ *
+ * Text: folderId + '.' + tag + childId, the tag is 'F' for full sync, '+' or '-' for the change.
+ * Compact: '~' + Base64URL of (byte version, byte flags, short hash of folder id, varint score of the child),
+ * for the keys with numeric child ids. The score is left out of the empty keys.
+ *
+ * The compact ones are made unless disabled by setCompact(), while the ones on non-numeric child
+ * ids, e.g. the folder ids of root folder, stay in text. The compact keys are read in place
+ * without decoding them into strings.
+ *
  * @author Eric Liang
  */
 public final class SyncKey {
 	public static char SYNC_KEY_SPLIT = '.';
 	public static char SYNC_KEY_TAG_FULL = 'F'; //differ with Change tag:+/-
-	
-	public static String syncKeyOnChange(String folderId, FolderChange change){	
+
+	public static final char COMPACT_TAG = '~';
+	private static final int COMPACT_VERSION = 1;
+	private static final int FLAG_FULL = 0x1;
+	private static final int FLAG_CHILD = 0x2;
+	private static final int FLAG_ADD = 0x4;
+	//Version, flags and hash
+	private static final int HEADER_BYTES = 4;
+
+	private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+	private static final byte[] BASE64_VALUES = new byte[128];
+	static{
+		for(int i=0; i<BASE64_VALUES.length; i++) BASE64_VALUES[i] = -1;
+		for(int i=0; i<BASE64.length; i++) BASE64_VALUES[BASE64[i]] = (byte) i;
+	}
+
+	private static volatile boolean compact = true;
+
+	public static void setCompact(boolean enabled){
+		compact = enabled;
+	}
+
+	public static String syncKeyOnChange(String folderId, FolderChange change){
 		if( null == change ) return emptySyncKey(folderId, false);
+		else if( compact && isCanonical(change.childId) ) {
+			return compactKey(folderId, FLAG_CHILD | (change.isAdd ? FLAG_ADD : 0), change.score);
+		}
 		else return folderId+SYNC_KEY_SPLIT+change.toString();
 	}
 	public static String syncKeyOnChild(String folderId, String childId){
 		if( null == childId ) return emptySyncKey(folderId, true);
+		else if( compact && isCanonical(childId) ) {
+			return compactKey(folderId, FLAG_FULL | FLAG_CHILD, Long.parseLong(childId));
+		}
 		else return folderId+SYNC_KEY_SPLIT+SYNC_KEY_TAG_FULL+childId;
-	} 
-	
+	}
+
 	public static String emptySyncKey(String folderId, boolean isFullSync ){
+		if( compact ){
+			return compactKey(folderId, isFullSync ? FLAG_FULL : 0, 0);
+		}
 		if( isFullSync ){
-			return folderId+SYNC_KEY_SPLIT+SYNC_KEY_TAG_FULL;	
+			return folderId+SYNC_KEY_SPLIT+SYNC_KEY_TAG_FULL;
 		}else{
-			return folderId+SYNC_KEY_SPLIT;	
+			return folderId+SYNC_KEY_SPLIT;
 		}
 	}
-	
+
 	public static boolean isFullSyncKey(String syncKey){
+		if( isCompact(syncKey) ) return (flags(syncKey) & FLAG_FULL) != 0;
+
 		int idx = syncKey.lastIndexOf(SYNC_KEY_SPLIT);
-		if (idx != syncKey.length() - 1
-				&& syncKey.substring(idx + 1, idx + 2).indexOf(SYNC_KEY_TAG_FULL) == 0) {
-			return true;
-		}
-		return false;
+		return idx+1 < syncKey.length() && syncKey.charAt(idx+1) == SYNC_KEY_TAG_FULL;
 	}
-	
+
 	public static String getChildBySyncKey( String syncKey ){
+		if( isCompact(syncKey) ){
+			if( (flags(syncKey) & FLAG_CHILD) == 0 ) return null;
+			return String.valueOf( score(syncKey) );
+		}
+
 		String changeStr = getChangeString( syncKey );
 		if( null == changeStr || changeStr.length() <= 1 ) return null;
 		else return changeStr.substring(1);
 	}
-	
+
 	public static String getChangeString( String syncKey ){
 		if( null == syncKey ) return null;
-		
+		if( isCompact(syncKey) ){
+			int flags = flags(syncKey);
+			char tag = (flags & FLAG_FULL) != 0 ? SYNC_KEY_TAG_FULL : ((flags & FLAG_ADD) != 0 ? '+' : '-');
+			if( (flags & FLAG_CHILD) == 0 ){
+				return (flags & FLAG_FULL) != 0 ? String.valueOf(tag) : "";
+			}
+			return tag + String.valueOf( score(syncKey) );
+		}
+
 		int idx = syncKey.lastIndexOf(SYNC_KEY_SPLIT);
 		if( idx < 0 ) return null;
-		
+
 		return syncKey.substring(idx + 1);
 	}
-	
+
+	/**
+	 * The change the key is on, null for the empty ones and the keys of full sync.
+	 * The compact ones are read without the change string.
+	 */
+	public static FolderChange getChange( String syncKey ){
+		if( null == syncKey ) return null;
+		if( isCompact(syncKey) ){
+			int flags = flags(syncKey);
+			if( (flags & FLAG_FULL) != 0 || (flags & FLAG_CHILD) == 0 ) return null;
+			return new FolderChange( score(syncKey), (flags & FLAG_ADD) != 0 );
+		}
+		if( isFullSyncKey(syncKey) ) return null;
+		return FolderChange.fromString( getChangeString(syncKey) );
+	}
+
 	public static boolean isEmpty( String syncKey ){
+		if( isCompact(syncKey) ) return (flags(syncKey) & FLAG_CHILD) == 0;
+
 		int idx = syncKey.lastIndexOf(SYNC_KEY_SPLIT);
 		if (idx >= syncKey.length() - 2) {
 			return true;
 		}
 		return false;
 	}
+
+	//Return false if the key is made on another folder, the compact ones by the hash of folder id
+	public static boolean isOfFolder( String syncKey, String folderId ){
+		if( isCompact(syncKey) ){
+			return ((byteAt(syncKey, 2) << 8) | byteAt(syncKey, 3)) == hash(folderId);
+		}
+		return syncKey.length() > folderId.length() && syncKey.startsWith(folderId)
+				&& syncKey.charAt(folderId.length()) == SYNC_KEY_SPLIT;
+	}
+
+	public static boolean isCompact( String syncKey ){
+		return syncKey.length() > 1 && syncKey.charAt(0) == COMPACT_TAG
+				&& (syncKey.length() - 1) * 6 / 8 >= HEADER_BYTES
+				&& byteAt(syncKey, 0) == COMPACT_VERSION;
+	}
+
+	//Compact utilities
+	private static int hash(String folderId){
+		int h = folderId.hashCode();
+		return (h ^ (h >>> 16)) & 0xFFFF;
+	}
+
+	//Digits of the long without sign or leading zeros, so it comes back the same from the score
+	private static boolean isCanonical(String childId){
+		int len = childId.length();
+		if( 0 == len || len > 19 || (len > 1 && childId.charAt(0) == '0') ) return false;
+		for(int i=0; i<len; i++){
+			char c = childId.charAt(i);
+			if( c < '0' || c > '9' ) return false;
+		}
+		return len < 19 || childId.compareTo(String.valueOf(Long.MAX_VALUE)) <= 0;
+	}
+
+	private static String compactKey(String folderId, int flags, long score){
+		byte[] b = new byte[HEADER_BYTES + 10];
+		int n = 0;
+		b[n++] = COMPACT_VERSION;
+		b[n++] = (byte) flags;
+		int h = hash(folderId);
+		b[n++] = (byte) (h >>> 8);
+		b[n++] = (byte) h;
+		if( (flags & FLAG_CHILD) != 0 ){
+			//Unsigned varint
+			while( (score & ~0x7FL) != 0 ){
+				b[n++] = (byte) ((score & 0x7F) | 0x80);
+				score >>>= 7;
+			}
+			b[n++] = (byte) score;
+		}
+
+		StringBuilder sb = new StringBuilder(1 + (n * 8 + 5) / 6);
+		sb.append(COMPACT_TAG);
+		int bits = 0;
+		int buffer = 0;
+		for(int i=0; i<n; i++){
+			buffer = (buffer << 8) | (b[i] & 0xFF);
+			bits += 8;
+			while( bits >= 6 ){
+				bits -= 6;
+				sb.append( BASE64[(buffer >>> bits) & 0x3F] );
+			}
+		}
+		if( bits > 0 ) sb.append( BASE64[(buffer << (6 - bits)) & 0x3F] );
+		return sb.toString();
+	}
+
+	private static int sextet(String syncKey, int pos){
+		if( pos >= syncKey.length() ) return 0;
+		char c = syncKey.charAt(pos);
+		int v = c < BASE64_VALUES.length ? BASE64_VALUES[c] : -1;
+		if( v < 0 ) throw new IllegalArgumentException("Invalid sync key: " + syncKey);
+		return v;
+	}
+
+	//The byte at @Param:index of the decoded key, read from the two chars it spans
+	private static int byteAt(String syncKey, int index){
+		int bit = index * 8;
+		int pos = 1 + bit / 6;
+		int offset = bit % 6;
+		int twelve = (sextet(syncKey, pos) << 6) | sextet(syncKey, pos + 1);
+		return (twelve >>> (4 - offset)) & 0xFF;
+	}
+
+	private static int flags(String syncKey){
+		return byteAt(syncKey, 1);
+	}
+
+	private static long score(String syncKey){
+		int bytes = (syncKey.length() - 1) * 6 / 8;
+		long score = 0;
+		int shift = 0;
+		for(int i=HEADER_BYTES; i<bytes && shift < 64; i++, shift += 7){
+			int b = byteAt(syncKey, i);
+			score |= (long) (b & 0x7F) << shift;
+			if( (b & 0x80) == 0 ) break;
+		}
+		return score;
+	}
 }
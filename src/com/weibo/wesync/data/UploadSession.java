@@ -0,0 +1,132 @@
+package com.weibo.wesync.data;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.weibo.wesync.data.WeSyncMessage.DataSlice;
+import com.weibo.wesync.data.WeSyncMessage.FileData;
+
+/**
+ * Upload of one file, slice by slice.
+ *
+ * The received slices are kept in a bitmap with the counters along, so a slice is accepted
+ * in O(1) and the completion is told by the counter, instead of rescanning the slices on every
+ * chunk as FileDataHelper does. The completion follows FileDataHelper.isSane: all the indexes
+ * in [0, limit] received are as many as the limit, where limit is the max one of the slices.
+ *
+ * The slices are kept in the session unless they are stored elsewhere and only marked here,
+ * see mark(). Not thread safe.
+ */
+public final class UploadSession {
+	private final String fileId;
+	private final BitSet received = new BitSet();
+	private final Map<Integer, DataSlice> slices = new HashMap<Integer, DataSlice>();
+	private int limit = 0;
+	//Indexes received in [0, limit]
+	private int distinct = 0;
+	//Slices received, including the duplicate ones
+	private int total = 0;
+	private long bytes = 0;
+	//Of the whole file, null if not given
+	private String md5 = null;
+
+	public UploadSession(String fileId) {
+		this.fileId = fileId;
+	}
+
+	public String getFileId() {
+		return fileId;
+	}
+
+	/**
+	 * Keep the slice, the one of the same index is replaced
+	 * @Return true if the index is new
+	 */
+	public boolean accept(DataSlice slice) {
+		Integer index = Integer.valueOf(slice.getIndex());
+		DataSlice prev = slices.put(index, slice);
+		if (null != prev) bytes -= prev.getData().size();
+		bytes += slice.getData().size();
+		return mark(slice.getIndex(), slice.getLimit());
+	}
+
+	/**
+	 * Only record the slice as received, for the slices stored elsewhere
+	 * @Return true if the index is new
+	 */
+	public boolean mark(int index, int sliceLimit) {
+		total++;
+		if (sliceLimit > limit) {
+			//Seldom, the ones beyond the old limit now count
+			int count = received.get(limit + 1, sliceLimit + 1).cardinality();
+			distinct += count;
+			limit = sliceLimit;
+		}
+
+		if (index < 0 || received.get(index)) return false;
+		received.set(index);
+		if (index <= limit) distinct++;
+		return true;
+	}
+
+	//Take the slice as not received, e.g. of the wrong data
+	public void discard(int index) {
+		DataSlice prev = slices.remove(Integer.valueOf(index));
+		if (null != prev) bytes -= prev.getData().size();
+		if (index < 0 || !received.get(index)) return;
+		received.clear(index);
+		if (index <= limit) distinct--;
+	}
+
+	public boolean isComplete() {
+		return distinct == limit;
+	}
+
+	//Same as FileDataHelper.nearComplete
+	public boolean isNearComplete() {
+		return limit > 0 && FileDataHelper.nearComplete(total, limit);
+	}
+
+	public List<DataSlice> findMissing() {
+		return FileDataHelper.findMissing(received, limit);
+	}
+
+	public boolean isReceived(int index) {
+		return received.get(index);
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public int getReceivedCount() {
+		return total;
+	}
+
+	//Bytes of the slices kept in the session
+	public long getBytes() {
+		return bytes;
+	}
+
+	public String getMd5() {
+		return md5;
+	}
+
+	public void setMd5(String md5) {
+		this.md5 = md5;
+	}
+
+	//The file of the slices kept, in the order of index, without the duplicate ones
+	public FileData toFileData() {
+		FileData.Builder builder = FileData.newBuilder().setId(fileId);
+		if (null != md5) builder.setMd5(md5);
+		for (int i = received.nextSetBit(0); i >= 0; i = received.nextSetBit(i + 1)) {
+			DataSlice slice = slices.get(Integer.valueOf(i));
+			if (null == slice) continue;
+			builder.addSlice(slice.getLimit() == limit ? slice : slice.toBuilder().setLimit(limit).build());
+		}
+		return builder.build();
+	}
+}
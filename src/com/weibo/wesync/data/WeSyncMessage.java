@@ -1938,6 +1938,10 @@ public final class WeSyncMessage {
         getSliceOrBuilderList();
     com.weibo.wesync.data.WeSyncMessage.DataSliceOrBuilder getSliceOrBuilder(
         int index);
+    
+    // optional string md5 = 3;
+    boolean hasMd5();
+    String getMd5();
   }
   public static final class FileData extends
       com.google.protobuf.GeneratedMessage
@@ -2021,9 +2025,42 @@ public final class WeSyncMessage {
       return slice_.get(index);
     }
     
+    // optional string md5 = 3;
+    public static final int MD5_FIELD_NUMBER = 3;
+    private java.lang.Object md5_;
+    public boolean hasMd5() {
+      return ((bitField0_ & 0x00000002) == 0x00000002);
+    }
+    public String getMd5() {
+      java.lang.Object ref = md5_;
+      if (ref instanceof String) {
+        return (String) ref;
+      } else {
+        com.google.protobuf.ByteString bs = 
+            (com.google.protobuf.ByteString) ref;
+        String s = bs.toStringUtf8();
+        if (com.google.protobuf.Internal.isValidUtf8(bs)) {
+          md5_ = s;
+        }
+        return s;
+      }
+    }
+    private com.google.protobuf.ByteString getMd5Bytes() {
+      java.lang.Object ref = md5_;
+      if (ref instanceof String) {
+        com.google.protobuf.ByteString b = 
+            com.google.protobuf.ByteString.copyFromUtf8((String) ref);
+        md5_ = b;
+        return b;
+      } else {
+        return (com.google.protobuf.ByteString) ref;
+      }
+    }
+    
     private void initFields() {
       id_ = "";
       slice_ = java.util.Collections.emptyList();
+      md5_ = "";
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -2053,6 +2090,9 @@ public final class WeSyncMessage {
       for (int i = 0; i < slice_.size(); i++) {
         output.writeMessage(2, slice_.get(i));
       }
+      if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        output.writeBytes(3, getMd5Bytes());
+      }
       getUnknownFields().writeTo(output);
     }
     
@@ -2070,6 +2110,10 @@ public final class WeSyncMessage {
         size += com.google.protobuf.CodedOutputStream
           .computeMessageSize(2, slice_.get(i));
       }
+      if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(3, getMd5Bytes());
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -2203,6 +2247,8 @@ public final class WeSyncMessage {
         } else {
           sliceBuilder_.clear();
         }
+        md5_ = "";
+        bitField0_ = (bitField0_ & ~0x00000004);
         return this;
       }
       
@@ -2254,6 +2300,10 @@ public final class WeSyncMessage {
         } else {
           result.slice_ = sliceBuilder_.build();
         }
+        if (((from_bitField0_ & 0x00000004) == 0x00000004)) {
+          to_bitField0_ |= 0x00000002;
+        }
+        result.md5_ = md5_;
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -2299,6 +2349,9 @@ public final class WeSyncMessage {
             }
           }
         }
+        if (other.hasMd5()) {
+          setMd5(other.getMd5());
+        }
         this.mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -2351,6 +2404,11 @@ public final class WeSyncMessage {
               addSlice(subBuilder.buildPartial());
               break;
             }
+            case 26: {
+              bitField0_ |= 0x00000004;
+              md5_ = input.readBytes();
+              break;
+            }
           }
         }
       }
@@ -2579,6 +2637,42 @@ public final class WeSyncMessage {
         return sliceBuilder_;
       }
       
+      // optional string md5 = 3;
+      private java.lang.Object md5_ = "";
+      public boolean hasMd5() {
+        return ((bitField0_ & 0x00000004) == 0x00000004);
+      }
+      public String getMd5() {
+        java.lang.Object ref = md5_;
+        if (!(ref instanceof String)) {
+          String s = ((com.google.protobuf.ByteString) ref).toStringUtf8();
+          md5_ = s;
+          return s;
+        } else {
+          return (String) ref;
+        }
+      }
+      public Builder setMd5(String value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000004;
+        md5_ = value;
+        onChanged();
+        return this;
+      }
+      public Builder clearMd5() {
+        bitField0_ = (bitField0_ & ~0x00000004);
+        md5_ = getDefaultInstance().getMd5();
+        onChanged();
+        return this;
+      }
+      void setMd5(com.google.protobuf.ByteString value) {
+        bitField0_ |= 0x00000004;
+        md5_ = value;
+        onChanged();
+      }
+      
       // @@protoc_insertion_point(builder_scope:com.weibo.wesync.data.FileData)
     }
     
@@ -10655,78 +10749,78 @@ public final class WeSyncMessage {
     // @@protoc_insertion_point(class_scope:com.weibo.wesync.data.SyncResp)
   }
   
-  public interface MetaSetOrBuilder
+  public interface MultiSyncReqOrBuilder
       extends com.google.protobuf.MessageOrBuilder {
     
-    // repeated .com.weibo.wesync.data.Meta meta = 1;
-    java.util.List<com.weibo.wesync.data.WeSyncMessage.Meta> 
-        getMetaList();
-    com.weibo.wesync.data.WeSyncMessage.Meta getMeta(int index);
-    int getMetaCount();
-    java.util.List<? extends com.weibo.wesync.data.WeSyncMessage.MetaOrBuilder> 
-        getMetaOrBuilderList();
-    com.weibo.wesync.data.WeSyncMessage.MetaOrBuilder getMetaOrBuilder(
+    // repeated .com.weibo.wesync.data.SyncReq req = 1;
+    java.util.List<com.weibo.wesync.data.WeSyncMessage.SyncReq> 
+        getReqList();
+    com.weibo.wesync.data.WeSyncMessage.SyncReq getReq(int index);
+    int getReqCount();
+    java.util.List<? extends com.weibo.wesync.data.WeSyncMessage.SyncReqOrBuilder> 
+        getReqOrBuilderList();
+    com.weibo.wesync.data.WeSyncMessage.SyncReqOrBuilder getReqOrBuilder(
         int index);
   }
-  public static final class MetaSet extends
+  public static final class MultiSyncReq extends
       com.google.protobuf.GeneratedMessage
-      implements MetaSetOrBuilder {
-    // Use MetaSet.newBuilder() to construct.
-    private MetaSet(Builder builder) {
+      implements MultiSyncReqOrBuilder {
+    // Use MultiSyncReq.newBuilder() to construct.
+    private MultiSyncReq(Builder builder) {
       super(builder);
     }
-    private MetaSet(boolean noInit) {}
+    private MultiSyncReq(boolean noInit) {}
     
-    private static final MetaSet defaultInstance;
-    public static MetaSet getDefaultInstance() {
+    private static final MultiSyncReq defaultInstance;
+    public static MultiSyncReq getDefaultInstance() {
       return defaultInstance;
     }
     
-    public MetaSet getDefaultInstanceForType() {
+    public MultiSyncReq getDefaultInstanceForType() {
       return defaultInstance;
     }
     
     public static final com.google.protobuf.Descriptors.Descriptor
         getDescriptor() {
-      return com.weibo.wesync.data.WeSyncMessage.internal_static_com_weibo_wesync_data_MetaSet_descriptor;
+      return com.weibo.wesync.data.WeSyncMessage.internal_static_com_weibo_wesync_data_MultiSyncReq_descriptor;
     }
     
     protected com.google.protobuf.GeneratedMessage.FieldAccessorTable
         internalGetFieldAccessorTable() {
-      return com.weibo.wesync.data.WeSyncMessage.internal_static_com_weibo_wesync_data_MetaSet_fieldAccessorTable;
+      return com.weibo.wesync.data.WeSyncMessage.internal_static_com_weibo_wesync_data_MultiSyncReq_fieldAccessorTable;
     }
     
-    // repeated .com.weibo.wesync.data.Meta meta = 1;
-    public static final int META_FIELD_NUMBER = 1;
-    private java.util.List<com.weibo.wesync.data.WeSyncMessage.Meta> meta_;
-    public java.util.List<com.weibo.wesync.data.WeSyncMessage.Meta> getMetaList() {
-      return meta_;
+    // repeated .com.weibo.wesync.data.SyncReq req = 1;
+    public static final int REQ_FIELD_NUMBER = 1;
+    private java.util.List<com.weibo.wesync.data.WeSyncMessage.SyncReq> req_;
+    public java.util.List<com.weibo.wesync.data.WeSyncMessage.SyncReq> getReqList() {
+      return req_;
     }
-    public java.util.List<? extends com.weibo.wesync.data.WeSyncMessage.MetaOrBuilder> 
-        getMetaOrBuilderList() {
-      return meta_;
+    public java.util.List<? extends com.weibo.wesync.data.WeSyncMessage.SyncReqOrBuilder> 
+        getReqOrBuilderList() {
+      return req_;
     }
-    public int getMetaCount() {
-      return meta_.size();
+    public int getReqCount() {
+      return req_.size();
     }
-    public com.weibo.wesync.data.WeSyncMessage.Meta getMeta(int index) {
-      return meta_.get(index);
+    public com.weibo.wesync.data.WeSyncMessage.SyncReq getReq(int index) {
+      return req_.get(index);
     }
-    public com.weibo.wesync.data.WeSyncMessage.MetaOrBuilder getMetaOrBuilder(
+    public com.weibo.wesync.data.WeSyncMessage.SyncReqOrBuilder getReqOrBuilder(
         int index) {
-      return meta_.get(index);
+      return req_.get(index);
     }
     
     private void initFields() {
-      meta_ = java.util.Collections.emptyList();
+      req_ = java.util.Collections.emptyList();
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
       byte isInitialized = memoizedIsInitialized;
       if (isInitialized != -1) return isInitialized == 1;
       
-      for (int i = 0; i < getMetaCount(); i++) {
-        if (!getMeta(i).isInitialized()) {
+      for (int i = 0; i < getReqCount(); i++) {
+        if (!getReq(i).isInitialized()) {
           memoizedIsInitialized = 0;
           return false;
         }
@@ -10738,8 +10832,8 @@ public final class WeSyncMessage {
     public void writeTo(com.google.protobuf.CodedOutputStream output)
                         throws java.io.IOException {
       getSerializedSize();
-      for (int i = 0; i < meta_.size(); i++) {
-        output.writeMessage(1, meta_.get(i));
+      for (int i = 0; i < req_.size(); i++) {
+        output.writeMessage(1, req_.get(i));
       }
       getUnknownFields().writeTo(output);
     }
@@ -10750,9 +10844,9 @@ public final class WeSyncMessage {
       if (size != -1) return size;
     
       size = 0;
-      for (int i = 0; i < meta_.size(); i++) {
+      for (int i = 0; i < req_.size(); i++) {
         size += com.google.protobuf.CodedOutputStream
-          .computeMessageSize(1, meta_.get(i));
+          .computeMessageSize(1, req_.get(i));
       }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
@@ -10766,41 +10860,41 @@ public final class WeSyncMessage {
       return super.writeReplace();
     }
     
-    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseFrom(
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncReq parseFrom(
         com.google.protobuf.ByteString data)
         throws com.google.protobuf.InvalidProtocolBufferException {
       return newBuilder().mergeFrom(data).buildParsed();
     }
-    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseFrom(
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncReq parseFrom(
         com.google.protobuf.ByteString data,
         com.google.protobuf.ExtensionRegistryLite extensionRegistry)
         throws com.google.protobuf.InvalidProtocolBufferException {
       return newBuilder().mergeFrom(data, extensionRegistry)
                .buildParsed();
     }
-    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseFrom(byte[] data)
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncReq parseFrom(byte[] data)
         throws com.google.protobuf.InvalidProtocolBufferException {
       return newBuilder().mergeFrom(data).buildParsed();
     }
-    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseFrom(
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncReq parseFrom(
         byte[] data,
         com.google.protobuf.ExtensionRegistryLite extensionRegistry)
         throws com.google.protobuf.InvalidProtocolBufferException {
       return newBuilder().mergeFrom(data, extensionRegistry)
                .buildParsed();
     }
-    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseFrom(java.io.InputStream input)
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncReq parseFrom(java.io.InputStream input)
         throws java.io.IOException {
       return newBuilder().mergeFrom(input).buildParsed();
     }
-    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseFrom(
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncReq parseFrom(
         java.io.InputStream input,
         com.google.protobuf.ExtensionRegistryLite extensionRegistry)
         throws java.io.IOException {
       return newBuilder().mergeFrom(input, extensionRegistry)
                .buildParsed();
     }
-    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseDelimitedFrom(java.io.InputStream input)
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncReq parseDelimitedFrom(java.io.InputStream input)
         throws java.io.IOException {
       Builder builder = newBuilder();
       if (builder.mergeDelimitedFrom(input)) {
@@ -10809,7 +10903,7 @@ public final class WeSyncMessage {
         return null;
       }
     }
-    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseDelimitedFrom(
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncReq parseDelimitedFrom(
         java.io.InputStream input,
         com.google.protobuf.ExtensionRegistryLite extensionRegistry)
         throws java.io.IOException {
@@ -10820,12 +10914,12 @@ public final class WeSyncMessage {
         return null;
       }
     }
-    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseFrom(
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncReq parseFrom(
         com.google.protobuf.CodedInputStream input)
         throws java.io.IOException {
       return newBuilder().mergeFrom(input).buildParsed();
     }
-    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseFrom(
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncReq parseFrom(
         com.google.protobuf.CodedInputStream input,
         com.google.protobuf.ExtensionRegistryLite extensionRegistry)
         throws java.io.IOException {
@@ -10835,7 +10929,7 @@ public final class WeSyncMessage {
     
     public static Builder newBuilder() { return Builder.create(); }
     public Builder newBuilderForType() { return newBuilder(); }
-    public static Builder newBuilder(com.weibo.wesync.data.WeSyncMessage.MetaSet prototype) {
+    public static Builder newBuilder(com.weibo.wesync.data.WeSyncMessage.MultiSyncReq prototype) {
       return newBuilder().mergeFrom(prototype);
     }
     public Builder toBuilder() { return newBuilder(this); }
@@ -10848,18 +10942,18 @@ public final class WeSyncMessage {
     }
     public static final class Builder extends
         com.google.protobuf.GeneratedMessage.Builder<Builder>
-       implements com.weibo.wesync.data.WeSyncMessage.MetaSetOrBuilder {
+       implements com.weibo.wesync.data.WeSyncMessage.MultiSyncReqOrBuilder {
       public static final com.google.protobuf.Descriptors.Descriptor
           getDescriptor() {
-        return com.weibo.wesync.data.WeSyncMessage.internal_static_com_weibo_wesync_data_MetaSet_descriptor;
+        return com.weibo.wesync.data.WeSyncMessage.internal_static_com_weibo_wesync_data_MultiSyncReq_descriptor;
       }
       
       protected com.google.protobuf.GeneratedMessage.FieldAccessorTable
           internalGetFieldAccessorTable() {
-        return com.weibo.wesync.data.WeSyncMessage.internal_static_com_weibo_wesync_data_MetaSet_fieldAccessorTable;
+        return com.weibo.wesync.data.WeSyncMessage.internal_static_com_weibo_wesync_data_MultiSyncReq_fieldAccessorTable;
       }
       
-      // Construct using com.weibo.wesync.data.WeSyncMessage.MetaSet.newBuilder()
+      // Construct using com.weibo.wesync.data.WeSyncMessage.MultiSyncReq.newBuilder()
       private Builder() {
         maybeForceBuilderInitialization();
       }
@@ -10870,7 +10964,7 @@ public final class WeSyncMessage {
       }
       private void maybeForceBuilderInitialization() {
         if (com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders) {
-          getMetaFieldBuilder();
+          getReqFieldBuilder();
         }
       }
       private static Builder create() {
@@ -10879,11 +10973,11 @@ public final class WeSyncMessage {
       
       public Builder clear() {
         super.clear();
-        if (metaBuilder_ == null) {
-          meta_ = java.util.Collections.emptyList();
+        if (reqBuilder_ == null) {
+          req_ = java.util.Collections.emptyList();
           bitField0_ = (bitField0_ & ~0x00000001);
         } else {
-          metaBuilder_.clear();
+          reqBuilder_.clear();
         }
         return this;
       }
@@ -10894,24 +10988,24 @@ public final class WeSyncMessage {
       
       public com.google.protobuf.Descriptors.Descriptor
           getDescriptorForType() {
-        return com.weibo.wesync.data.WeSyncMessage.MetaSet.getDescriptor();
+        return com.weibo.wesync.data.WeSyncMessage.MultiSyncReq.getDescriptor();
       }
       
-      public com.weibo.wesync.data.WeSyncMessage.MetaSet getDefaultInstanceForType() {
-        return com.weibo.wesync.data.WeSyncMessage.MetaSet.getDefaultInstance();
+      public com.weibo.wesync.data.WeSyncMessage.MultiSyncReq getDefaultInstanceForType() {
+        return com.weibo.wesync.data.WeSyncMessage.MultiSyncReq.getDefaultInstance();
       }
       
-      public com.weibo.wesync.data.WeSyncMessage.MetaSet build() {
-        com.weibo.wesync.data.WeSyncMessage.MetaSet result = buildPartial();
+      public com.weibo.wesync.data.WeSyncMessage.MultiSyncReq build() {
+        com.weibo.wesync.data.WeSyncMessage.MultiSyncReq result = buildPartial();
         if (!result.isInitialized()) {
           throw newUninitializedMessageException(result);
         }
         return result;
       }
       
-      private com.weibo.wesync.data.WeSyncMessage.MetaSet buildParsed()
+      private com.weibo.wesync.data.WeSyncMessage.MultiSyncReq buildParsed()
           throws com.google.protobuf.InvalidProtocolBufferException {
-        com.weibo.wesync.data.WeSyncMessage.MetaSet result = buildPartial();
+        com.weibo.wesync.data.WeSyncMessage.MultiSyncReq result = buildPartial();
         if (!result.isInitialized()) {
           throw newUninitializedMessageException(
             result).asInvalidProtocolBufferException();
@@ -10919,56 +11013,56 @@ public final class WeSyncMessage {
         return result;
       }
       
-      public com.weibo.wesync.data.WeSyncMessage.MetaSet buildPartial() {
-        com.weibo.wesync.data.WeSyncMessage.MetaSet result = new com.weibo.wesync.data.WeSyncMessage.MetaSet(this);
+      public com.weibo.wesync.data.WeSyncMessage.MultiSyncReq buildPartial() {
+        com.weibo.wesync.data.WeSyncMessage.MultiSyncReq result = new com.weibo.wesync.data.WeSyncMessage.MultiSyncReq(this);
         int from_bitField0_ = bitField0_;
-        if (metaBuilder_ == null) {
+        if (reqBuilder_ == null) {
           if (((bitField0_ & 0x00000001) == 0x00000001)) {
-            meta_ = java.util.Collections.unmodifiableList(meta_);
+            req_ = java.util.Collections.unmodifiableList(req_);
             bitField0_ = (bitField0_ & ~0x00000001);
           }
-          result.meta_ = meta_;
+          result.req_ = req_;
         } else {
-          result.meta_ = metaBuilder_.build();
+          result.req_ = reqBuilder_.build();
         }
         onBuilt();
         return result;
       }
       
       public Builder mergeFrom(com.google.protobuf.Message other) {
-        if (other instanceof com.weibo.wesync.data.WeSyncMessage.MetaSet) {
-          return mergeFrom((com.weibo.wesync.data.WeSyncMessage.MetaSet)other);
+        if (other instanceof com.weibo.wesync.data.WeSyncMessage.MultiSyncReq) {
+          return mergeFrom((com.weibo.wesync.data.WeSyncMessage.MultiSyncReq)other);
         } else {
           super.mergeFrom(other);
           return this;
         }
       }
       
-      public Builder mergeFrom(com.weibo.wesync.data.WeSyncMessage.MetaSet other) {
-        if (other == com.weibo.wesync.data.WeSyncMessage.MetaSet.getDefaultInstance()) return this;
-        if (metaBuilder_ == null) {
-          if (!other.meta_.isEmpty()) {
-            if (meta_.isEmpty()) {
-              meta_ = other.meta_;
+      public Builder mergeFrom(com.weibo.wesync.data.WeSyncMessage.MultiSyncReq other) {
+        if (other == com.weibo.wesync.data.WeSyncMessage.MultiSyncReq.getDefaultInstance()) return this;
+        if (reqBuilder_ == null) {
+          if (!other.req_.isEmpty()) {
+            if (req_.isEmpty()) {
+              req_ = other.req_;
               bitField0_ = (bitField0_ & ~0x00000001);
             } else {
-              ensureMetaIsMutable();
-              meta_.addAll(other.meta_);
+              ensureReqIsMutable();
+              req_.addAll(other.req_);
             }
             onChanged();
           }
         } else {
-          if (!other.meta_.isEmpty()) {
-            if (metaBuilder_.isEmpty()) {
-              metaBuilder_.dispose();
-              metaBuilder_ = null;
-              meta_ = other.meta_;
+          if (!other.req_.isEmpty()) {
+            if (reqBuilder_.isEmpty()) {
+              reqBuilder_.dispose();
+              reqBuilder_ = null;
+              req_ = other.req_;
               bitField0_ = (bitField0_ & ~0x00000001);
-              metaBuilder_ = 
+              reqBuilder_ = 
                 com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders ?
-                   getMetaFieldBuilder() : null;
+                   getReqFieldBuilder() : null;
             } else {
-              metaBuilder_.addAllMessages(other.meta_);
+              reqBuilder_.addAllMessages(other.req_);
             }
           }
         }
@@ -10977,8 +11071,8 @@ public final class WeSyncMessage {
       }
       
       public final boolean isInitialized() {
-        for (int i = 0; i < getMetaCount(); i++) {
-          if (!getMeta(i).isInitialized()) {
+        for (int i = 0; i < getReqCount(); i++) {
+          if (!getReq(i).isInitialized()) {
             
             return false;
           }
@@ -11010,9 +11104,9 @@ public final class WeSyncMessage {
               break;
             }
             case 10: {
-              com.weibo.wesync.data.WeSyncMessage.Meta.Builder subBuilder = com.weibo.wesync.data.WeSyncMessage.Meta.newBuilder();
+              com.weibo.wesync.data.WeSyncMessage.SyncReq.Builder subBuilder = com.weibo.wesync.data.WeSyncMessage.SyncReq.newBuilder();
               input.readMessage(subBuilder, extensionRegistry);
-              addMeta(subBuilder.buildPartial());
+              addReq(subBuilder.buildPartial());
               break;
             }
           }
@@ -11021,157 +11115,1283 @@ public final class WeSyncMessage {
       
       private int bitField0_;
       
-      // repeated .com.weibo.wesync.data.Meta meta = 1;
-      private java.util.List<com.weibo.wesync.data.WeSyncMessage.Meta> meta_ =
+      // repeated .com.weibo.wesync.data.SyncReq req = 1;
+      private java.util.List<com.weibo.wesync.data.WeSyncMessage.SyncReq> req_ =
         java.util.Collections.emptyList();
-      private void ensureMetaIsMutable() {
+      private void ensureReqIsMutable() {
         if (!((bitField0_ & 0x00000001) == 0x00000001)) {
-          meta_ = new java.util.ArrayList<com.weibo.wesync.data.WeSyncMessage.Meta>(meta_);
+          req_ = new java.util.ArrayList<com.weibo.wesync.data.WeSyncMessage.SyncReq>(req_);
           bitField0_ |= 0x00000001;
          }
       }
       
       private com.google.protobuf.RepeatedFieldBuilder<
-          com.weibo.wesync.data.WeSyncMessage.Meta, com.weibo.wesync.data.WeSyncMessage.Meta.Builder, com.weibo.wesync.data.WeSyncMessage.MetaOrBuilder> metaBuilder_;
+          com.weibo.wesync.data.WeSyncMessage.SyncReq, com.weibo.wesync.data.WeSyncMessage.SyncReq.Builder, com.weibo.wesync.data.WeSyncMessage.SyncReqOrBuilder> reqBuilder_;
       
-      public java.util.List<com.weibo.wesync.data.WeSyncMessage.Meta> getMetaList() {
-        if (metaBuilder_ == null) {
-          return java.util.Collections.unmodifiableList(meta_);
+      public java.util.List<com.weibo.wesync.data.WeSyncMessage.SyncReq> getReqList() {
+        if (reqBuilder_ == null) {
+          return java.util.Collections.unmodifiableList(req_);
         } else {
-          return metaBuilder_.getMessageList();
+          return reqBuilder_.getMessageList();
         }
       }
-      public int getMetaCount() {
-        if (metaBuilder_ == null) {
-          return meta_.size();
+      public int getReqCount() {
+        if (reqBuilder_ == null) {
+          return req_.size();
         } else {
-          return metaBuilder_.getCount();
+          return reqBuilder_.getCount();
         }
       }
-      public com.weibo.wesync.data.WeSyncMessage.Meta getMeta(int index) {
-        if (metaBuilder_ == null) {
-          return meta_.get(index);
+      public com.weibo.wesync.data.WeSyncMessage.SyncReq getReq(int index) {
+        if (reqBuilder_ == null) {
+          return req_.get(index);
         } else {
-          return metaBuilder_.getMessage(index);
+          return reqBuilder_.getMessage(index);
         }
       }
-      public Builder setMeta(
-          int index, com.weibo.wesync.data.WeSyncMessage.Meta value) {
-        if (metaBuilder_ == null) {
+      public Builder setReq(
+          int index, com.weibo.wesync.data.WeSyncMessage.SyncReq value) {
+        if (reqBuilder_ == null) {
           if (value == null) {
             throw new NullPointerException();
           }
-          ensureMetaIsMutable();
-          meta_.set(index, value);
+          ensureReqIsMutable();
+          req_.set(index, value);
           onChanged();
         } else {
-          metaBuilder_.setMessage(index, value);
+          reqBuilder_.setMessage(index, value);
         }
         return this;
       }
-      public Builder setMeta(
-          int index, com.weibo.wesync.data.WeSyncMessage.Meta.Builder builderForValue) {
-        if (metaBuilder_ == null) {
-          ensureMetaIsMutable();
-          meta_.set(index, builderForValue.build());
+      public Builder setReq(
+          int index, com.weibo.wesync.data.WeSyncMessage.SyncReq.Builder builderForValue) {
+        if (reqBuilder_ == null) {
+          ensureReqIsMutable();
+          req_.set(index, builderForValue.build());
           onChanged();
         } else {
-          metaBuilder_.setMessage(index, builderForValue.build());
+          reqBuilder_.setMessage(index, builderForValue.build());
         }
         return this;
       }
-      public Builder addMeta(com.weibo.wesync.data.WeSyncMessage.Meta value) {
-        if (metaBuilder_ == null) {
+      public Builder addReq(com.weibo.wesync.data.WeSyncMessage.SyncReq value) {
+        if (reqBuilder_ == null) {
           if (value == null) {
             throw new NullPointerException();
           }
-          ensureMetaIsMutable();
-          meta_.add(value);
+          ensureReqIsMutable();
+          req_.add(value);
           onChanged();
         } else {
-          metaBuilder_.addMessage(value);
+          reqBuilder_.addMessage(value);
         }
         return this;
       }
-      public Builder addMeta(
-          int index, com.weibo.wesync.data.WeSyncMessage.Meta value) {
-        if (metaBuilder_ == null) {
+      public Builder addReq(
+          int index, com.weibo.wesync.data.WeSyncMessage.SyncReq value) {
+        if (reqBuilder_ == null) {
           if (value == null) {
             throw new NullPointerException();
           }
-          ensureMetaIsMutable();
-          meta_.add(index, value);
+          ensureReqIsMutable();
+          req_.add(index, value);
           onChanged();
         } else {
-          metaBuilder_.addMessage(index, value);
+          reqBuilder_.addMessage(index, value);
         }
         return this;
       }
-      public Builder addMeta(
-          com.weibo.wesync.data.WeSyncMessage.Meta.Builder builderForValue) {
-        if (metaBuilder_ == null) {
-          ensureMetaIsMutable();
-          meta_.add(builderForValue.build());
+      public Builder addReq(
+          com.weibo.wesync.data.WeSyncMessage.SyncReq.Builder builderForValue) {
+        if (reqBuilder_ == null) {
+          ensureReqIsMutable();
+          req_.add(builderForValue.build());
           onChanged();
         } else {
-          metaBuilder_.addMessage(builderForValue.build());
+          reqBuilder_.addMessage(builderForValue.build());
         }
         return this;
       }
-      public Builder addMeta(
-          int index, com.weibo.wesync.data.WeSyncMessage.Meta.Builder builderForValue) {
-        if (metaBuilder_ == null) {
-          ensureMetaIsMutable();
-          meta_.add(index, builderForValue.build());
+      public Builder addReq(
+          int index, com.weibo.wesync.data.WeSyncMessage.SyncReq.Builder builderForValue) {
+        if (reqBuilder_ == null) {
+          ensureReqIsMutable();
+          req_.add(index, builderForValue.build());
           onChanged();
         } else {
-          metaBuilder_.addMessage(index, builderForValue.build());
+          reqBuilder_.addMessage(index, builderForValue.build());
         }
         return this;
       }
-      public Builder addAllMeta(
-          java.lang.Iterable<? extends com.weibo.wesync.data.WeSyncMessage.Meta> values) {
-        if (metaBuilder_ == null) {
-          ensureMetaIsMutable();
-          super.addAll(values, meta_);
+      public Builder addAllReq(
+          java.lang.Iterable<? extends com.weibo.wesync.data.WeSyncMessage.SyncReq> values) {
+        if (reqBuilder_ == null) {
+          ensureReqIsMutable();
+          super.addAll(values, req_);
           onChanged();
         } else {
-          metaBuilder_.addAllMessages(values);
+          reqBuilder_.addAllMessages(values);
         }
         return this;
       }
-      public Builder clearMeta() {
-        if (metaBuilder_ == null) {
-          meta_ = java.util.Collections.emptyList();
+      public Builder clearReq() {
+        if (reqBuilder_ == null) {
+          req_ = java.util.Collections.emptyList();
           bitField0_ = (bitField0_ & ~0x00000001);
           onChanged();
         } else {
-          metaBuilder_.clear();
+          reqBuilder_.clear();
         }
         return this;
       }
-      public Builder removeMeta(int index) {
-        if (metaBuilder_ == null) {
-          ensureMetaIsMutable();
-          meta_.remove(index);
+      public Builder removeReq(int index) {
+        if (reqBuilder_ == null) {
+          ensureReqIsMutable();
+          req_.remove(index);
           onChanged();
         } else {
-          metaBuilder_.remove(index);
+          reqBuilder_.remove(index);
         }
         return this;
       }
-      public com.weibo.wesync.data.WeSyncMessage.Meta.Builder getMetaBuilder(
+      public com.weibo.wesync.data.WeSyncMessage.SyncReq.Builder getReqBuilder(
           int index) {
-        return getMetaFieldBuilder().getBuilder(index);
+        return getReqFieldBuilder().getBuilder(index);
       }
-      public com.weibo.wesync.data.WeSyncMessage.MetaOrBuilder getMetaOrBuilder(
+      public com.weibo.wesync.data.WeSyncMessage.SyncReqOrBuilder getReqOrBuilder(
           int index) {
-        if (metaBuilder_ == null) {
-          return meta_.get(index);  } else {
-          return metaBuilder_.getMessageOrBuilder(index);
+        if (reqBuilder_ == null) {
+          return req_.get(index);  } else {
+          return reqBuilder_.getMessageOrBuilder(index);
         }
       }
-      public java.util.List<? extends com.weibo.wesync.data.WeSyncMessage.MetaOrBuilder> 
+      public java.util.List<? extends com.weibo.wesync.data.WeSyncMessage.SyncReqOrBuilder> 
+           getReqOrBuilderList() {
+        if (reqBuilder_ != null) {
+          return reqBuilder_.getMessageOrBuilderList();
+        } else {
+          return java.util.Collections.unmodifiableList(req_);
+        }
+      }
+      public com.weibo.wesync.data.WeSyncMessage.SyncReq.Builder addReqBuilder() {
+        return getReqFieldBuilder().addBuilder(
+            com.weibo.wesync.data.WeSyncMessage.SyncReq.getDefaultInstance());
+      }
+      public com.weibo.wesync.data.WeSyncMessage.SyncReq.Builder addReqBuilder(
+          int index) {
+        return getReqFieldBuilder().addBuilder(
+            index, com.weibo.wesync.data.WeSyncMessage.SyncReq.getDefaultInstance());
+      }
+      public java.util.List<com.weibo.wesync.data.WeSyncMessage.SyncReq.Builder> 
+           getReqBuilderList() {
+        return getReqFieldBuilder().getBuilderList();
+      }
+      private com.google.protobuf.RepeatedFieldBuilder<
+          com.weibo.wesync.data.WeSyncMessage.SyncReq, com.weibo.wesync.data.WeSyncMessage.SyncReq.Builder, com.weibo.wesync.data.WeSyncMessage.SyncReqOrBuilder> 
+          getReqFieldBuilder() {
+        if (reqBuilder_ == null) {
+          reqBuilder_ = new com.google.protobuf.RepeatedFieldBuilder<
+              com.weibo.wesync.data.WeSyncMessage.SyncReq, com.weibo.wesync.data.WeSyncMessage.SyncReq.Builder, com.weibo.wesync.data.WeSyncMessage.SyncReqOrBuilder>(
+                  req_,
+                  ((bitField0_ & 0x00000001) == 0x00000001),
+                  getParentForChildren(),
+                  isClean());
+          req_ = null;
+        }
+        return reqBuilder_;
+      }
+      
+      // @@protoc_insertion_point(builder_scope:com.weibo.wesync.data.MultiSyncReq)
+    }
+    
+    static {
+      defaultInstance = new MultiSyncReq(true);
+      defaultInstance.initFields();
+    }
+    
+    // @@protoc_insertion_point(class_scope:com.weibo.wesync.data.MultiSyncReq)
+  }
+  
+  public interface MultiSyncRespOrBuilder
+      extends com.google.protobuf.MessageOrBuilder {
+    
+    // repeated .com.weibo.wesync.data.SyncResp resp = 1;
+    java.util.List<com.weibo.wesync.data.WeSyncMessage.SyncResp> 
+        getRespList();
+    com.weibo.wesync.data.WeSyncMessage.SyncResp getResp(int index);
+    int getRespCount();
+    java.util.List<? extends com.weibo.wesync.data.WeSyncMessage.SyncRespOrBuilder> 
+        getRespOrBuilderList();
+    com.weibo.wesync.data.WeSyncMessage.SyncRespOrBuilder getRespOrBuilder(
+        int index);
+  }
+  public static final class MultiSyncResp extends
+      com.google.protobuf.GeneratedMessage
+      implements MultiSyncRespOrBuilder {
+    // Use MultiSyncResp.newBuilder() to construct.
+    private MultiSyncResp(Builder builder) {
+      super(builder);
+    }
+    private MultiSyncResp(boolean noInit) {}
+    
+    private static final MultiSyncResp defaultInstance;
+    public static MultiSyncResp getDefaultInstance() {
+      return defaultInstance;
+    }
+    
+    public MultiSyncResp getDefaultInstanceForType() {
+      return defaultInstance;
+    }
+    
+    public static final com.google.protobuf.Descriptors.Descriptor
+        getDescriptor() {
+      return com.weibo.wesync.data.WeSyncMessage.internal_static_com_weibo_wesync_data_MultiSyncResp_descriptor;
+    }
+    
+    protected com.google.protobuf.GeneratedMessage.FieldAccessorTable
+        internalGetFieldAccessorTable() {
+      return com.weibo.wesync.data.WeSyncMessage.internal_static_com_weibo_wesync_data_MultiSyncResp_fieldAccessorTable;
+    }
+    
+    // repeated .com.weibo.wesync.data.SyncResp resp = 1;
+    public static final int RESP_FIELD_NUMBER = 1;
+    private java.util.List<com.weibo.wesync.data.WeSyncMessage.SyncResp> resp_;
+    public java.util.List<com.weibo.wesync.data.WeSyncMessage.SyncResp> getRespList() {
+      return resp_;
+    }
+    public java.util.List<? extends com.weibo.wesync.data.WeSyncMessage.SyncRespOrBuilder> 
+        getRespOrBuilderList() {
+      return resp_;
+    }
+    public int getRespCount() {
+      return resp_.size();
+    }
+    public com.weibo.wesync.data.WeSyncMessage.SyncResp getResp(int index) {
+      return resp_.get(index);
+    }
+    public com.weibo.wesync.data.WeSyncMessage.SyncRespOrBuilder getRespOrBuilder(
+        int index) {
+      return resp_.get(index);
+    }
+    
+    private void initFields() {
+      resp_ = java.util.Collections.emptyList();
+    }
+    private byte memoizedIsInitialized = -1;
+    public final boolean isInitialized() {
+      byte isInitialized = memoizedIsInitialized;
+      if (isInitialized != -1) return isInitialized == 1;
+      
+      for (int i = 0; i < getRespCount(); i++) {
+        if (!getResp(i).isInitialized()) {
+          memoizedIsInitialized = 0;
+          return false;
+        }
+      }
+      memoizedIsInitialized = 1;
+      return true;
+    }
+    
+    public void writeTo(com.google.protobuf.CodedOutputStream output)
+                        throws java.io.IOException {
+      getSerializedSize();
+      for (int i = 0; i < resp_.size(); i++) {
+        output.writeMessage(1, resp_.get(i));
+      }
+      getUnknownFields().writeTo(output);
+    }
+    
+    private int memoizedSerializedSize = -1;
+    public int getSerializedSize() {
+      int size = memoizedSerializedSize;
+      if (size != -1) return size;
+    
+      size = 0;
+      for (int i = 0; i < resp_.size(); i++) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeMessageSize(1, resp_.get(i));
+      }
+      size += getUnknownFields().getSerializedSize();
+      memoizedSerializedSize = size;
+      return size;
+    }
+    
+    private static final long serialVersionUID = 0L;
+    @java.lang.Override
+    protected java.lang.Object writeReplace()
+        throws java.io.ObjectStreamException {
+      return super.writeReplace();
+    }
+    
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncResp parseFrom(
+        com.google.protobuf.ByteString data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data).buildParsed();
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncResp parseFrom(
+        com.google.protobuf.ByteString data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data, extensionRegistry)
+               .buildParsed();
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncResp parseFrom(byte[] data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data).buildParsed();
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncResp parseFrom(
+        byte[] data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data, extensionRegistry)
+               .buildParsed();
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncResp parseFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input).buildParsed();
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncResp parseFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input, extensionRegistry)
+               .buildParsed();
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncResp parseDelimitedFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      Builder builder = newBuilder();
+      if (builder.mergeDelimitedFrom(input)) {
+        return builder.buildParsed();
+      } else {
+        return null;
+      }
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncResp parseDelimitedFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      Builder builder = newBuilder();
+      if (builder.mergeDelimitedFrom(input, extensionRegistry)) {
+        return builder.buildParsed();
+      } else {
+        return null;
+      }
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncResp parseFrom(
+        com.google.protobuf.CodedInputStream input)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input).buildParsed();
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MultiSyncResp parseFrom(
+        com.google.protobuf.CodedInputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input, extensionRegistry)
+               .buildParsed();
+    }
+    
+    public static Builder newBuilder() { return Builder.create(); }
+    public Builder newBuilderForType() { return newBuilder(); }
+    public static Builder newBuilder(com.weibo.wesync.data.WeSyncMessage.MultiSyncResp prototype) {
+      return newBuilder().mergeFrom(prototype);
+    }
+    public Builder toBuilder() { return newBuilder(this); }
+    
+    @java.lang.Override
+    protected Builder newBuilderForType(
+        com.google.protobuf.GeneratedMessage.BuilderParent parent) {
+      Builder builder = new Builder(parent);
+      return builder;
+    }
+    public static final class Builder extends
+        com.google.protobuf.GeneratedMessage.Builder<Builder>
+       implements com.weibo.wesync.data.WeSyncMessage.MultiSyncRespOrBuilder {
+      public static final com.google.protobuf.Descriptors.Descriptor
+          getDescriptor() {
+        return com.weibo.wesync.data.WeSyncMessage.internal_static_com_weibo_wesync_data_MultiSyncResp_descriptor;
+      }
+      
+      protected com.google.protobuf.GeneratedMessage.FieldAccessorTable
+          internalGetFieldAccessorTable() {
+        return com.weibo.wesync.data.WeSyncMessage.internal_static_com_weibo_wesync_data_MultiSyncResp_fieldAccessorTable;
+      }
+      
+      // Construct using com.weibo.wesync.data.WeSyncMessage.MultiSyncResp.newBuilder()
+      private Builder() {
+        maybeForceBuilderInitialization();
+      }
+      
+      private Builder(BuilderParent parent) {
+        super(parent);
+        maybeForceBuilderInitialization();
+      }
+      private void maybeForceBuilderInitialization() {
+        if (com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders) {
+          getRespFieldBuilder();
+        }
+      }
+      private static Builder create() {
+        return new Builder();
+      }
+      
+      public Builder clear() {
+        super.clear();
+        if (respBuilder_ == null) {
+          resp_ = java.util.Collections.emptyList();
+          bitField0_ = (bitField0_ & ~0x00000001);
+        } else {
+          respBuilder_.clear();
+        }
+        return this;
+      }
+      
+      public Builder clone() {
+        return create().mergeFrom(buildPartial());
+      }
+      
+      public com.google.protobuf.Descriptors.Descriptor
+          getDescriptorForType() {
+        return com.weibo.wesync.data.WeSyncMessage.MultiSyncResp.getDescriptor();
+      }
+      
+      public com.weibo.wesync.data.WeSyncMessage.MultiSyncResp getDefaultInstanceForType() {
+        return com.weibo.wesync.data.WeSyncMessage.MultiSyncResp.getDefaultInstance();
+      }
+      
+      public com.weibo.wesync.data.WeSyncMessage.MultiSyncResp build() {
+        com.weibo.wesync.data.WeSyncMessage.MultiSyncResp result = buildPartial();
+        if (!result.isInitialized()) {
+          throw newUninitializedMessageException(result);
+        }
+        return result;
+      }
+      
+      private com.weibo.wesync.data.WeSyncMessage.MultiSyncResp buildParsed()
+          throws com.google.protobuf.InvalidProtocolBufferException {
+        com.weibo.wesync.data.WeSyncMessage.MultiSyncResp result = buildPartial();
+        if (!result.isInitialized()) {
+          throw newUninitializedMessageException(
+            result).asInvalidProtocolBufferException();
+        }
+        return result;
+      }
+      
+      public com.weibo.wesync.data.WeSyncMessage.MultiSyncResp buildPartial() {
+        com.weibo.wesync.data.WeSyncMessage.MultiSyncResp result = new com.weibo.wesync.data.WeSyncMessage.MultiSyncResp(this);
+        int from_bitField0_ = bitField0_;
+        if (respBuilder_ == null) {
+          if (((bitField0_ & 0x00000001) == 0x00000001)) {
+            resp_ = java.util.Collections.unmodifiableList(resp_);
+            bitField0_ = (bitField0_ & ~0x00000001);
+          }
+          result.resp_ = resp_;
+        } else {
+          result.resp_ = respBuilder_.build();
+        }
+        onBuilt();
+        return result;
+      }
+      
+      public Builder mergeFrom(com.google.protobuf.Message other) {
+        if (other instanceof com.weibo.wesync.data.WeSyncMessage.MultiSyncResp) {
+          return mergeFrom((com.weibo.wesync.data.WeSyncMessage.MultiSyncResp)other);
+        } else {
+          super.mergeFrom(other);
+          return this;
+        }
+      }
+      
+      public Builder mergeFrom(com.weibo.wesync.data.WeSyncMessage.MultiSyncResp other) {
+        if (other == com.weibo.wesync.data.WeSyncMessage.MultiSyncResp.getDefaultInstance()) return this;
+        if (respBuilder_ == null) {
+          if (!other.resp_.isEmpty()) {
+            if (resp_.isEmpty()) {
+              resp_ = other.resp_;
+              bitField0_ = (bitField0_ & ~0x00000001);
+            } else {
+              ensureRespIsMutable();
+              resp_.addAll(other.resp_);
+            }
+            onChanged();
+          }
+        } else {
+          if (!other.resp_.isEmpty()) {
+            if (respBuilder_.isEmpty()) {
+              respBuilder_.dispose();
+              respBuilder_ = null;
+              resp_ = other.resp_;
+              bitField0_ = (bitField0_ & ~0x00000001);
+              respBuilder_ = 
+                com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders ?
+                   getRespFieldBuilder() : null;
+            } else {
+              respBuilder_.addAllMessages(other.resp_);
+            }
+          }
+        }
+        this.mergeUnknownFields(other.getUnknownFields());
+        return this;
+      }
+      
+      public final boolean isInitialized() {
+        for (int i = 0; i < getRespCount(); i++) {
+          if (!getResp(i).isInitialized()) {
+            
+            return false;
+          }
+        }
+        return true;
+      }
+      
+      public Builder mergeFrom(
+          com.google.protobuf.CodedInputStream input,
+          com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+          throws java.io.IOException {
+        com.google.protobuf.UnknownFieldSet.Builder unknownFields =
+          com.google.protobuf.UnknownFieldSet.newBuilder(
+            this.getUnknownFields());
+        while (true) {
+          int tag = input.readTag();
+          switch (tag) {
+            case 0:
+              this.setUnknownFields(unknownFields.build());
+              onChanged();
+              return this;
+            default: {
+              if (!parseUnknownField(input, unknownFields,
+                                     extensionRegistry, tag)) {
+                this.setUnknownFields(unknownFields.build());
+                onChanged();
+                return this;
+              }
+              break;
+            }
+            case 10: {
+              com.weibo.wesync.data.WeSyncMessage.SyncResp.Builder subBuilder = com.weibo.wesync.data.WeSyncMessage.SyncResp.newBuilder();
+              input.readMessage(subBuilder, extensionRegistry);
+              addResp(subBuilder.buildPartial());
+              break;
+            }
+          }
+        }
+      }
+      
+      private int bitField0_;
+      
+      // repeated .com.weibo.wesync.data.SyncResp resp = 1;
+      private java.util.List<com.weibo.wesync.data.WeSyncMessage.SyncResp> resp_ =
+        java.util.Collections.emptyList();
+      private void ensureRespIsMutable() {
+        if (!((bitField0_ & 0x00000001) == 0x00000001)) {
+          resp_ = new java.util.ArrayList<com.weibo.wesync.data.WeSyncMessage.SyncResp>(resp_);
+          bitField0_ |= 0x00000001;
+         }
+      }
+      
+      private com.google.protobuf.RepeatedFieldBuilder<
+          com.weibo.wesync.data.WeSyncMessage.SyncResp, com.weibo.wesync.data.WeSyncMessage.SyncResp.Builder, com.weibo.wesync.data.WeSyncMessage.SyncRespOrBuilder> respBuilder_;
+      
+      public java.util.List<com.weibo.wesync.data.WeSyncMessage.SyncResp> getRespList() {
+        if (respBuilder_ == null) {
+          return java.util.Collections.unmodifiableList(resp_);
+        } else {
+          return respBuilder_.getMessageList();
+        }
+      }
+      public int getRespCount() {
+        if (respBuilder_ == null) {
+          return resp_.size();
+        } else {
+          return respBuilder_.getCount();
+        }
+      }
+      public com.weibo.wesync.data.WeSyncMessage.SyncResp getResp(int index) {
+        if (respBuilder_ == null) {
+          return resp_.get(index);
+        } else {
+          return respBuilder_.getMessage(index);
+        }
+      }
+      public Builder setResp(
+          int index, com.weibo.wesync.data.WeSyncMessage.SyncResp value) {
+        if (respBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureRespIsMutable();
+          resp_.set(index, value);
+          onChanged();
+        } else {
+          respBuilder_.setMessage(index, value);
+        }
+        return this;
+      }
+      public Builder setResp(
+          int index, com.weibo.wesync.data.WeSyncMessage.SyncResp.Builder builderForValue) {
+        if (respBuilder_ == null) {
+          ensureRespIsMutable();
+          resp_.set(index, builderForValue.build());
+          onChanged();
+        } else {
+          respBuilder_.setMessage(index, builderForValue.build());
+        }
+        return this;
+      }
+      public Builder addResp(com.weibo.wesync.data.WeSyncMessage.SyncResp value) {
+        if (respBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureRespIsMutable();
+          resp_.add(value);
+          onChanged();
+        } else {
+          respBuilder_.addMessage(value);
+        }
+        return this;
+      }
+      public Builder addResp(
+          int index, com.weibo.wesync.data.WeSyncMessage.SyncResp value) {
+        if (respBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureRespIsMutable();
+          resp_.add(index, value);
+          onChanged();
+        } else {
+          respBuilder_.addMessage(index, value);
+        }
+        return this;
+      }
+      public Builder addResp(
+          com.weibo.wesync.data.WeSyncMessage.SyncResp.Builder builderForValue) {
+        if (respBuilder_ == null) {
+          ensureRespIsMutable();
+          resp_.add(builderForValue.build());
+          onChanged();
+        } else {
+          respBuilder_.addMessage(builderForValue.build());
+        }
+        return this;
+      }
+      public Builder addResp(
+          int index, com.weibo.wesync.data.WeSyncMessage.SyncResp.Builder builderForValue) {
+        if (respBuilder_ == null) {
+          ensureRespIsMutable();
+          resp_.add(index, builderForValue.build());
+          onChanged();
+        } else {
+          respBuilder_.addMessage(index, builderForValue.build());
+        }
+        return this;
+      }
+      public Builder addAllResp(
+          java.lang.Iterable<? extends com.weibo.wesync.data.WeSyncMessage.SyncResp> values) {
+        if (respBuilder_ == null) {
+          ensureRespIsMutable();
+          super.addAll(values, resp_);
+          onChanged();
+        } else {
+          respBuilder_.addAllMessages(values);
+        }
+        return this;
+      }
+      public Builder clearResp() {
+        if (respBuilder_ == null) {
+          resp_ = java.util.Collections.emptyList();
+          bitField0_ = (bitField0_ & ~0x00000001);
+          onChanged();
+        } else {
+          respBuilder_.clear();
+        }
+        return this;
+      }
+      public Builder removeResp(int index) {
+        if (respBuilder_ == null) {
+          ensureRespIsMutable();
+          resp_.remove(index);
+          onChanged();
+        } else {
+          respBuilder_.remove(index);
+        }
+        return this;
+      }
+      public com.weibo.wesync.data.WeSyncMessage.SyncResp.Builder getRespBuilder(
+          int index) {
+        return getRespFieldBuilder().getBuilder(index);
+      }
+      public com.weibo.wesync.data.WeSyncMessage.SyncRespOrBuilder getRespOrBuilder(
+          int index) {
+        if (respBuilder_ == null) {
+          return resp_.get(index);  } else {
+          return respBuilder_.getMessageOrBuilder(index);
+        }
+      }
+      public java.util.List<? extends com.weibo.wesync.data.WeSyncMessage.SyncRespOrBuilder> 
+           getRespOrBuilderList() {
+        if (respBuilder_ != null) {
+          return respBuilder_.getMessageOrBuilderList();
+        } else {
+          return java.util.Collections.unmodifiableList(resp_);
+        }
+      }
+      public com.weibo.wesync.data.WeSyncMessage.SyncResp.Builder addRespBuilder() {
+        return getRespFieldBuilder().addBuilder(
+            com.weibo.wesync.data.WeSyncMessage.SyncResp.getDefaultInstance());
+      }
+      public com.weibo.wesync.data.WeSyncMessage.SyncResp.Builder addRespBuilder(
+          int index) {
+        return getRespFieldBuilder().addBuilder(
+            index, com.weibo.wesync.data.WeSyncMessage.SyncResp.getDefaultInstance());
+      }
+      public java.util.List<com.weibo.wesync.data.WeSyncMessage.SyncResp.Builder> 
+           getRespBuilderList() {
+        return getRespFieldBuilder().getBuilderList();
+      }
+      private com.google.protobuf.RepeatedFieldBuilder<
+          com.weibo.wesync.data.WeSyncMessage.SyncResp, com.weibo.wesync.data.WeSyncMessage.SyncResp.Builder, com.weibo.wesync.data.WeSyncMessage.SyncRespOrBuilder> 
+          getRespFieldBuilder() {
+        if (respBuilder_ == null) {
+          respBuilder_ = new com.google.protobuf.RepeatedFieldBuilder<
+              com.weibo.wesync.data.WeSyncMessage.SyncResp, com.weibo.wesync.data.WeSyncMessage.SyncResp.Builder, com.weibo.wesync.data.WeSyncMessage.SyncRespOrBuilder>(
+                  resp_,
+                  ((bitField0_ & 0x00000001) == 0x00000001),
+                  getParentForChildren(),
+                  isClean());
+          resp_ = null;
+        }
+        return respBuilder_;
+      }
+      
+      // @@protoc_insertion_point(builder_scope:com.weibo.wesync.data.MultiSyncResp)
+    }
+    
+    static {
+      defaultInstance = new MultiSyncResp(true);
+      defaultInstance.initFields();
+    }
+    
+    // @@protoc_insertion_point(class_scope:com.weibo.wesync.data.MultiSyncResp)
+  }
+  
+  public interface MetaSetOrBuilder
+      extends com.google.protobuf.MessageOrBuilder {
+    
+    // repeated .com.weibo.wesync.data.Meta meta = 1;
+    java.util.List<com.weibo.wesync.data.WeSyncMessage.Meta> 
+        getMetaList();
+    com.weibo.wesync.data.WeSyncMessage.Meta getMeta(int index);
+    int getMetaCount();
+    java.util.List<? extends com.weibo.wesync.data.WeSyncMessage.MetaOrBuilder> 
+        getMetaOrBuilderList();
+    com.weibo.wesync.data.WeSyncMessage.MetaOrBuilder getMetaOrBuilder(
+        int index);
+  }
+  public static final class MetaSet extends
+      com.google.protobuf.GeneratedMessage
+      implements MetaSetOrBuilder {
+    // Use MetaSet.newBuilder() to construct.
+    private MetaSet(Builder builder) {
+      super(builder);
+    }
+    private MetaSet(boolean noInit) {}
+    
+    private static final MetaSet defaultInstance;
+    public static MetaSet getDefaultInstance() {
+      return defaultInstance;
+    }
+    
+    public MetaSet getDefaultInstanceForType() {
+      return defaultInstance;
+    }
+    
+    public static final com.google.protobuf.Descriptors.Descriptor
+        getDescriptor() {
+      return com.weibo.wesync.data.WeSyncMessage.internal_static_com_weibo_wesync_data_MetaSet_descriptor;
+    }
+    
+    protected com.google.protobuf.GeneratedMessage.FieldAccessorTable
+        internalGetFieldAccessorTable() {
+      return com.weibo.wesync.data.WeSyncMessage.internal_static_com_weibo_wesync_data_MetaSet_fieldAccessorTable;
+    }
+    
+    // repeated .com.weibo.wesync.data.Meta meta = 1;
+    public static final int META_FIELD_NUMBER = 1;
+    private java.util.List<com.weibo.wesync.data.WeSyncMessage.Meta> meta_;
+    public java.util.List<com.weibo.wesync.data.WeSyncMessage.Meta> getMetaList() {
+      return meta_;
+    }
+    public java.util.List<? extends com.weibo.wesync.data.WeSyncMessage.MetaOrBuilder> 
+        getMetaOrBuilderList() {
+      return meta_;
+    }
+    public int getMetaCount() {
+      return meta_.size();
+    }
+    public com.weibo.wesync.data.WeSyncMessage.Meta getMeta(int index) {
+      return meta_.get(index);
+    }
+    public com.weibo.wesync.data.WeSyncMessage.MetaOrBuilder getMetaOrBuilder(
+        int index) {
+      return meta_.get(index);
+    }
+    
+    private void initFields() {
+      meta_ = java.util.Collections.emptyList();
+    }
+    private byte memoizedIsInitialized = -1;
+    public final boolean isInitialized() {
+      byte isInitialized = memoizedIsInitialized;
+      if (isInitialized != -1) return isInitialized == 1;
+      
+      for (int i = 0; i < getMetaCount(); i++) {
+        if (!getMeta(i).isInitialized()) {
+          memoizedIsInitialized = 0;
+          return false;
+        }
+      }
+      memoizedIsInitialized = 1;
+      return true;
+    }
+    
+    public void writeTo(com.google.protobuf.CodedOutputStream output)
+                        throws java.io.IOException {
+      getSerializedSize();
+      for (int i = 0; i < meta_.size(); i++) {
+        output.writeMessage(1, meta_.get(i));
+      }
+      getUnknownFields().writeTo(output);
+    }
+    
+    private int memoizedSerializedSize = -1;
+    public int getSerializedSize() {
+      int size = memoizedSerializedSize;
+      if (size != -1) return size;
+    
+      size = 0;
+      for (int i = 0; i < meta_.size(); i++) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeMessageSize(1, meta_.get(i));
+      }
+      size += getUnknownFields().getSerializedSize();
+      memoizedSerializedSize = size;
+      return size;
+    }
+    
+    private static final long serialVersionUID = 0L;
+    @java.lang.Override
+    protected java.lang.Object writeReplace()
+        throws java.io.ObjectStreamException {
+      return super.writeReplace();
+    }
+    
+    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseFrom(
+        com.google.protobuf.ByteString data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data).buildParsed();
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseFrom(
+        com.google.protobuf.ByteString data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data, extensionRegistry)
+               .buildParsed();
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseFrom(byte[] data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data).buildParsed();
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseFrom(
+        byte[] data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data, extensionRegistry)
+               .buildParsed();
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input).buildParsed();
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input, extensionRegistry)
+               .buildParsed();
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseDelimitedFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      Builder builder = newBuilder();
+      if (builder.mergeDelimitedFrom(input)) {
+        return builder.buildParsed();
+      } else {
+        return null;
+      }
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseDelimitedFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      Builder builder = newBuilder();
+      if (builder.mergeDelimitedFrom(input, extensionRegistry)) {
+        return builder.buildParsed();
+      } else {
+        return null;
+      }
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseFrom(
+        com.google.protobuf.CodedInputStream input)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input).buildParsed();
+    }
+    public static com.weibo.wesync.data.WeSyncMessage.MetaSet parseFrom(
+        com.google.protobuf.CodedInputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input, extensionRegistry)
+               .buildParsed();
+    }
+    
+    public static Builder newBuilder() { return Builder.create(); }
+    public Builder newBuilderForType() { return newBuilder(); }
+    public static Builder newBuilder(com.weibo.wesync.data.WeSyncMessage.MetaSet prototype) {
+      return newBuilder().mergeFrom(prototype);
+    }
+    public Builder toBuilder() { return newBuilder(this); }
+    
+    @java.lang.Override
+    protected Builder newBuilderForType(
+        com.google.protobuf.GeneratedMessage.BuilderParent parent) {
+      Builder builder = new Builder(parent);
+      return builder;
+    }
+    public static final class Builder extends
+        com.google.protobuf.GeneratedMessage.Builder<Builder>
+       implements com.weibo.wesync.data.WeSyncMessage.MetaSetOrBuilder {
+      public static final com.google.protobuf.Descriptors.Descriptor
+          getDescriptor() {
+        return com.weibo.wesync.data.WeSyncMessage.internal_static_com_weibo_wesync_data_MetaSet_descriptor;
+      }
+      
+      protected com.google.protobuf.GeneratedMessage.FieldAccessorTable
+          internalGetFieldAccessorTable() {
+        return com.weibo.wesync.data.WeSyncMessage.internal_static_com_weibo_wesync_data_MetaSet_fieldAccessorTable;
+      }
+      
+      // Construct using com.weibo.wesync.data.WeSyncMessage.MetaSet.newBuilder()
+      private Builder() {
+        maybeForceBuilderInitialization();
+      }
+      
+      private Builder(BuilderParent parent) {
+        super(parent);
+        maybeForceBuilderInitialization();
+      }
+      private void maybeForceBuilderInitialization() {
+        if (com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders) {
+          getMetaFieldBuilder();
+        }
+      }
+      private static Builder create() {
+        return new Builder();
+      }
+      
+      public Builder clear() {
+        super.clear();
+        if (metaBuilder_ == null) {
+          meta_ = java.util.Collections.emptyList();
+          bitField0_ = (bitField0_ & ~0x00000001);
+        } else {
+          metaBuilder_.clear();
+        }
+        return this;
+      }
+      
+      public Builder clone() {
+        return create().mergeFrom(buildPartial());
+      }
+      
+      public com.google.protobuf.Descriptors.Descriptor
+          getDescriptorForType() {
+        return com.weibo.wesync.data.WeSyncMessage.MetaSet.getDescriptor();
+      }
+      
+      public com.weibo.wesync.data.WeSyncMessage.MetaSet getDefaultInstanceForType() {
+        return com.weibo.wesync.data.WeSyncMessage.MetaSet.getDefaultInstance();
+      }
+      
+      public com.weibo.wesync.data.WeSyncMessage.MetaSet build() {
+        com.weibo.wesync.data.WeSyncMessage.MetaSet result = buildPartial();
+        if (!result.isInitialized()) {
+          throw newUninitializedMessageException(result);
+        }
+        return result;
+      }
+      
+      private com.weibo.wesync.data.WeSyncMessage.MetaSet buildParsed()
+          throws com.google.protobuf.InvalidProtocolBufferException {
+        com.weibo.wesync.data.WeSyncMessage.MetaSet result = buildPartial();
+        if (!result.isInitialized()) {
+          throw newUninitializedMessageException(
+            result).asInvalidProtocolBufferException();
+        }
+        return result;
+      }
+      
+      public com.weibo.wesync.data.WeSyncMessage.MetaSet buildPartial() {
+        com.weibo.wesync.data.WeSyncMessage.MetaSet result = new com.weibo.wesync.data.WeSyncMessage.MetaSet(this);
+        int from_bitField0_ = bitField0_;
+        if (metaBuilder_ == null) {
+          if (((bitField0_ & 0x00000001) == 0x00000001)) {
+            meta_ = java.util.Collections.unmodifiableList(meta_);
+            bitField0_ = (bitField0_ & ~0x00000001);
+          }
+          result.meta_ = meta_;
+        } else {
+          result.meta_ = metaBuilder_.build();
+        }
+        onBuilt();
+        return result;
+      }
+      
+      public Builder mergeFrom(com.google.protobuf.Message other) {
+        if (other instanceof com.weibo.wesync.data.WeSyncMessage.MetaSet) {
+          return mergeFrom((com.weibo.wesync.data.WeSyncMessage.MetaSet)other);
+        } else {
+          super.mergeFrom(other);
+          return this;
+        }
+      }
+      
+      public Builder mergeFrom(com.weibo.wesync.data.WeSyncMessage.MetaSet other) {
+        if (other == com.weibo.wesync.data.WeSyncMessage.MetaSet.getDefaultInstance()) return this;
+        if (metaBuilder_ == null) {
+          if (!other.meta_.isEmpty()) {
+            if (meta_.isEmpty()) {
+              meta_ = other.meta_;
+              bitField0_ = (bitField0_ & ~0x00000001);
+            } else {
+              ensureMetaIsMutable();
+              meta_.addAll(other.meta_);
+            }
+            onChanged();
+          }
+        } else {
+          if (!other.meta_.isEmpty()) {
+            if (metaBuilder_.isEmpty()) {
+              metaBuilder_.dispose();
+              metaBuilder_ = null;
+              meta_ = other.meta_;
+              bitField0_ = (bitField0_ & ~0x00000001);
+              metaBuilder_ = 
+                com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders ?
+                   getMetaFieldBuilder() : null;
+            } else {
+              metaBuilder_.addAllMessages(other.meta_);
+            }
+          }
+        }
+        this.mergeUnknownFields(other.getUnknownFields());
+        return this;
+      }
+      
+      public final boolean isInitialized() {
+        for (int i = 0; i < getMetaCount(); i++) {
+          if (!getMeta(i).isInitialized()) {
+            
+            return false;
+          }
+        }
+        return true;
+      }
+      
+      public Builder mergeFrom(
+          com.google.protobuf.CodedInputStream input,
+          com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+          throws java.io.IOException {
+        com.google.protobuf.UnknownFieldSet.Builder unknownFields =
+          com.google.protobuf.UnknownFieldSet.newBuilder(
+            this.getUnknownFields());
+        while (true) {
+          int tag = input.readTag();
+          switch (tag) {
+            case 0:
+              this.setUnknownFields(unknownFields.build());
+              onChanged();
+              return this;
+            default: {
+              if (!parseUnknownField(input, unknownFields,
+                                     extensionRegistry, tag)) {
+                this.setUnknownFields(unknownFields.build());
+                onChanged();
+                return this;
+              }
+              break;
+            }
+            case 10: {
+              com.weibo.wesync.data.WeSyncMessage.Meta.Builder subBuilder = com.weibo.wesync.data.WeSyncMessage.Meta.newBuilder();
+              input.readMessage(subBuilder, extensionRegistry);
+              addMeta(subBuilder.buildPartial());
+              break;
+            }
+          }
+        }
+      }
+      
+      private int bitField0_;
+      
+      // repeated .com.weibo.wesync.data.Meta meta = 1;
+      private java.util.List<com.weibo.wesync.data.WeSyncMessage.Meta> meta_ =
+        java.util.Collections.emptyList();
+      private void ensureMetaIsMutable() {
+        if (!((bitField0_ & 0x00000001) == 0x00000001)) {
+          meta_ = new java.util.ArrayList<com.weibo.wesync.data.WeSyncMessage.Meta>(meta_);
+          bitField0_ |= 0x00000001;
+         }
+      }
+      
+      private com.google.protobuf.RepeatedFieldBuilder<
+          com.weibo.wesync.data.WeSyncMessage.Meta, com.weibo.wesync.data.WeSyncMessage.Meta.Builder, com.weibo.wesync.data.WeSyncMessage.MetaOrBuilder> metaBuilder_;
+      
+      public java.util.List<com.weibo.wesync.data.WeSyncMessage.Meta> getMetaList() {
+        if (metaBuilder_ == null) {
+          return java.util.Collections.unmodifiableList(meta_);
+        } else {
+          return metaBuilder_.getMessageList();
+        }
+      }
+      public int getMetaCount() {
+        if (metaBuilder_ == null) {
+          return meta_.size();
+        } else {
+          return metaBuilder_.getCount();
+        }
+      }
+      public com.weibo.wesync.data.WeSyncMessage.Meta getMeta(int index) {
+        if (metaBuilder_ == null) {
+          return meta_.get(index);
+        } else {
+          return metaBuilder_.getMessage(index);
+        }
+      }
+      public Builder setMeta(
+          int index, com.weibo.wesync.data.WeSyncMessage.Meta value) {
+        if (metaBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureMetaIsMutable();
+          meta_.set(index, value);
+          onChanged();
+        } else {
+          metaBuilder_.setMessage(index, value);
+        }
+        return this;
+      }
+      public Builder setMeta(
+          int index, com.weibo.wesync.data.WeSyncMessage.Meta.Builder builderForValue) {
+        if (metaBuilder_ == null) {
+          ensureMetaIsMutable();
+          meta_.set(index, builderForValue.build());
+          onChanged();
+        } else {
+          metaBuilder_.setMessage(index, builderForValue.build());
+        }
+        return this;
+      }
+      public Builder addMeta(com.weibo.wesync.data.WeSyncMessage.Meta value) {
+        if (metaBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureMetaIsMutable();
+          meta_.add(value);
+          onChanged();
+        } else {
+          metaBuilder_.addMessage(value);
+        }
+        return this;
+      }
+      public Builder addMeta(
+          int index, com.weibo.wesync.data.WeSyncMessage.Meta value) {
+        if (metaBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureMetaIsMutable();
+          meta_.add(index, value);
+          onChanged();
+        } else {
+          metaBuilder_.addMessage(index, value);
+        }
+        return this;
+      }
+      public Builder addMeta(
+          com.weibo.wesync.data.WeSyncMessage.Meta.Builder builderForValue) {
+        if (metaBuilder_ == null) {
+          ensureMetaIsMutable();
+          meta_.add(builderForValue.build());
+          onChanged();
+        } else {
+          metaBuilder_.addMessage(builderForValue.build());
+        }
+        return this;
+      }
+      public Builder addMeta(
+          int index, com.weibo.wesync.data.WeSyncMessage.Meta.Builder builderForValue) {
+        if (metaBuilder_ == null) {
+          ensureMetaIsMutable();
+          meta_.add(index, builderForValue.build());
+          onChanged();
+        } else {
+          metaBuilder_.addMessage(index, builderForValue.build());
+        }
+        return this;
+      }
+      public Builder addAllMeta(
+          java.lang.Iterable<? extends com.weibo.wesync.data.WeSyncMessage.Meta> values) {
+        if (metaBuilder_ == null) {
+          ensureMetaIsMutable();
+          super.addAll(values, meta_);
+          onChanged();
+        } else {
+          metaBuilder_.addAllMessages(values);
+        }
+        return this;
+      }
+      public Builder clearMeta() {
+        if (metaBuilder_ == null) {
+          meta_ = java.util.Collections.emptyList();
+          bitField0_ = (bitField0_ & ~0x00000001);
+          onChanged();
+        } else {
+          metaBuilder_.clear();
+        }
+        return this;
+      }
+      public Builder removeMeta(int index) {
+        if (metaBuilder_ == null) {
+          ensureMetaIsMutable();
+          meta_.remove(index);
+          onChanged();
+        } else {
+          metaBuilder_.remove(index);
+        }
+        return this;
+      }
+      public com.weibo.wesync.data.WeSyncMessage.Meta.Builder getMetaBuilder(
+          int index) {
+        return getMetaFieldBuilder().getBuilder(index);
+      }
+      public com.weibo.wesync.data.WeSyncMessage.MetaOrBuilder getMetaOrBuilder(
+          int index) {
+        if (metaBuilder_ == null) {
+          return meta_.get(index);  } else {
+          return metaBuilder_.getMessageOrBuilder(index);
+        }
+      }
+      public java.util.List<? extends com.weibo.wesync.data.WeSyncMessage.MetaOrBuilder> 
            getMetaOrBuilderList() {
         if (metaBuilder_ != null) {
           return metaBuilder_.getMessageOrBuilderList();
@@ -11932,6 +13152,16 @@ public final class WeSyncMessage {
   private static
     com.google.protobuf.GeneratedMessage.FieldAccessorTable
       internal_static_com_weibo_wesync_data_SyncResp_fieldAccessorTable;
+  private static com.google.protobuf.Descriptors.Descriptor
+    internal_static_com_weibo_wesync_data_MultiSyncReq_descriptor;
+  private static
+    com.google.protobuf.GeneratedMessage.FieldAccessorTable
+      internal_static_com_weibo_wesync_data_MultiSyncReq_fieldAccessorTable;
+  private static com.google.protobuf.Descriptors.Descriptor
+    internal_static_com_weibo_wesync_data_MultiSyncResp_descriptor;
+  private static
+    com.google.protobuf.GeneratedMessage.FieldAccessorTable
+      internal_static_com_weibo_wesync_data_MultiSyncResp_fieldAccessorTable;
   private static com.google.protobuf.Descriptors.Descriptor
     internal_static_com_weibo_wesync_data_MetaSet_descriptor;
   private static
@@ -11960,41 +13190,44 @@ public final class WeSyncMessage {
       "\005\022\021\n\tthumbnail\030\014 \001(\014\022\022\n\nfileLength\030\r \001(\005" +
       "\022\020\n\010fileName\030\016 \001(\t\022\021\n\tfileLimit\030\017 \001(\005\"D\n" +
       "\tDataSlice\022\r\n\005index\030\001 \002(\005\022\r\n\005limit\030\002 \002(\005" +
-      "\022\014\n\004data\030\003 \001(\014\022\013\n\003md5\030\004 \001(\t\"G\n\010FileData\022",
+      "\022\014\n\004data\030\003 \001(\014\022\013\n\003md5\030\004 \001(\t\"T\n\010FileData\022",
       "\n\n\002id\030\001 \002(\t\022/\n\005slice\030\002 \003(\0132 .com.weibo.w" +
-      "esync.data.DataSlice\",\n\016CommandMessage\022\014" +
-      "\n\004code\030\001 \002(\014\022\014\n\004data\030\002 \001(\014\"U\n\006Unread\022\020\n\010" +
-      "folderId\030\001 \002(\t\022\013\n\003num\030\002 \002(\005\022,\n\007content\030\003" +
-      " \001(\0132\033.com.weibo.wesync.data.Meta\"x\n\006Not" +
-      "ice\022-\n\006unread\030\001 \003(\0132\035.com.weibo.wesync.d" +
-      "ata.Unread\022\021\n\texpectAck\030\002 \003(\t\022,\n\007message" +
-      "\030\003 \003(\0132\033.com.weibo.wesync.data.Meta\"$\n\020G" +
-      "etItemUnreadReq\022\020\n\010folderId\030\001 \003(\t\"B\n\021Get" +
-      "ItemUnreadResp\022-\n\006unread\030\001 \003(\0132\035.com.wei",
-      "bo.wesync.data.Unread\"(\n\rFolderSyncReq\022\n" +
-      "\n\002id\030\001 \002(\t\022\013\n\003key\030\002 \002(\t\"R\n\016FolderSyncRes" +
-      "p\022\n\n\002id\030\001 \002(\t\022\017\n\007nextKey\030\002 \002(\t\022\022\n\nisFull" +
-      "Sync\030\003 \001(\010\022\017\n\007childId\030\004 \003(\t\"<\n\017FolderCre" +
-      "ateReq\022\024\n\014userChatWith\030\001 \002(\t\022\023\n\013anotherU" +
-      "ser\030\002 \003(\t\"O\n\020FolderCreateResp\022\020\n\010folderI" +
-      "d\030\001 \002(\t\022\024\n\014userChatWith\030\002 \002(\t\022\023\n\013another" +
-      "User\030\003 \003(\t\"P\n\017FolderDeleteReq\022\024\n\014userCha" +
-      "tWith\030\001 \002(\t\022\025\n\risContentOnly\030\002 \002(\010\022\020\n\010fo" +
-      "lderId\030\003 \001(\t\"\336\001\n\007SyncReq\022\013\n\003key\030\001 \002(\t\022\020\n",
-      "\010folderId\030\002 \002(\t\022\022\n\nisFullSync\030\003 \001(\010\022\021\n\ti" +
-      "sForward\030\004 \001(\010\022\023\n\013hintChildId\030\005 \001(\t\0222\n\rc" +
-      "lientChanges\030\006 \003(\0132\033.com.weibo.wesync.da" +
-      "ta.Meta\022\022\n\nisSendOnly\030\007 \001(\010\022\024\n\014selective" +
-      "Ack\030\010 \003(\t\022\032\n\022isSiblingInHarmony\030\t \001(\010\"\272\001" +
-      "\n\010SyncResp\022\017\n\007nextKey\030\001 \002(\t\022\020\n\010folderId\030" +
-      "\002 \002(\t\022\022\n\nisFullSync\030\003 \001(\010\0222\n\rclientChang" +
-      "es\030\004 \003(\0132\033.com.weibo.wesync.data.Meta\0222\n" +
-      "\rserverChanges\030\005 \003(\0132\033.com.weibo.wesync." +
-      "data.Meta\022\017\n\007hasNext\030\006 \001(\010\"4\n\007MetaSet\022)\n",
-      "\004meta\030\001 \003(\0132\033.com.weibo.wesync.data.Meta" +
-      "\"Q\n\016GroupOperation\022\017\n\007groupId\030\001 \002(\t\022\014\n\004t" +
-      "ype\030\002 \002(\014\022\020\n\010username\030\003 \001(\t\022\016\n\006extend\030\004 " +
-      "\001(\t"
+      "esync.data.DataSlice\022\013\n\003md5\030\003 \001(\t\",\n\016Com" +
+      "mandMessage\022\014\n\004code\030\001 \002(\014\022\014\n\004data\030\002 \001(\014\"" +
+      "U\n\006Unread\022\020\n\010folderId\030\001 \002(\t\022\013\n\003num\030\002 \002(\005" +
+      "\022,\n\007content\030\003 \001(\0132\033.com.weibo.wesync.dat" +
+      "a.Meta\"x\n\006Notice\022-\n\006unread\030\001 \003(\0132\035.com.w" +
+      "eibo.wesync.data.Unread\022\021\n\texpectAck\030\002 \003" +
+      "(\t\022,\n\007message\030\003 \003(\0132\033.com.weibo.wesync.d" +
+      "ata.Meta\"$\n\020GetItemUnreadReq\022\020\n\010folderId" +
+      "\030\001 \003(\t\"B\n\021GetItemUnreadResp\022-\n\006unread\030\001 ",
+      "\003(\0132\035.com.weibo.wesync.data.Unread\"(\n\rFo" +
+      "lderSyncReq\022\n\n\002id\030\001 \002(\t\022\013\n\003key\030\002 \002(\t\"R\n\016" +
+      "FolderSyncResp\022\n\n\002id\030\001 \002(\t\022\017\n\007nextKey\030\002 " +
+      "\002(\t\022\022\n\nisFullSync\030\003 \001(\010\022\017\n\007childId\030\004 \003(\t" +
+      "\"<\n\017FolderCreateReq\022\024\n\014userChatWith\030\001 \002(" +
+      "\t\022\023\n\013anotherUser\030\002 \003(\t\"O\n\020FolderCreateRe" +
+      "sp\022\020\n\010folderId\030\001 \002(\t\022\024\n\014userChatWith\030\002 \002" +
+      "(\t\022\023\n\013anotherUser\030\003 \003(\t\"P\n\017FolderDeleteR" +
+      "eq\022\024\n\014userChatWith\030\001 \002(\t\022\025\n\risContentOnl" +
+      "y\030\002 \002(\010\022\020\n\010folderId\030\003 \001(\t\"\336\001\n\007SyncReq\022\013\n",
+      "\003key\030\001 \002(\t\022\020\n\010folderId\030\002 \002(\t\022\022\n\nisFullSy" +
+      "nc\030\003 \001(\010\022\021\n\tisForward\030\004 \001(\010\022\023\n\013hintChild" +
+      "Id\030\005 \001(\t\0222\n\rclientChanges\030\006 \003(\0132\033.com.we" +
+      "ibo.wesync.data.Meta\022\022\n\nisSendOnly\030\007 \001(\010" +
+      "\022\024\n\014selectiveAck\030\010 \003(\t\022\032\n\022isSiblingInHar" +
+      "mony\030\t \001(\010\"\272\001\n\010SyncResp\022\017\n\007nextKey\030\001 \002(\t" +
+      "\022\020\n\010folderId\030\002 \002(\t\022\022\n\nisFullSync\030\003 \001(\010\0222" +
+      "\n\rclientChanges\030\004 \003(\0132\033.com.weibo.wesync" +
+      ".data.Meta\0222\n\rserverChanges\030\005 \003(\0132\033.com." +
+      "weibo.wesync.data.Meta\022\017\n\007hasNext\030\006 \001(\010\"",
+      ";\n\014MultiSyncReq\022+\n\003req\030\001 \003(\0132\036.com.weibo" +
+      ".wesync.data.SyncReq\">\n\rMultiSyncResp\022-\n" +
+      "\004resp\030\001 \003(\0132\037.com.weibo.wesync.data.Sync" +
+      "Resp\"4\n\007MetaSet\022)\n\004meta\030\001 \003(\0132\033.com.weib" +
+      "o.wesync.data.Meta\"Q\n\016GroupOperation\022\017\n\007" +
+      "groupId\030\001 \002(\t\022\014\n\004type\030\002 \002(\014\022\020\n\010username\030" +
+      "\003 \001(\t\022\016\n\006extend\030\004 \001(\t"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
       new com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner() {
@@ -12022,7 +13255,7 @@ public final class WeSyncMessage {
           internal_static_com_weibo_wesync_data_FileData_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_com_weibo_wesync_data_FileData_descriptor,
-              new java.lang.String[] { "Id", "Slice", },
+              new java.lang.String[] { "Id", "Slice", "Md5", },
               com.weibo.wesync.data.WeSyncMessage.FileData.class,
               com.weibo.wesync.data.WeSyncMessage.FileData.Builder.class);
           internal_static_com_weibo_wesync_data_CommandMessage_descriptor =
@@ -12121,8 +13354,24 @@ public final class WeSyncMessage {
               new java.lang.String[] { "NextKey", "FolderId", "IsFullSync", "ClientChanges", "ServerChanges", "HasNext", },
               com.weibo.wesync.data.WeSyncMessage.SyncResp.class,
               com.weibo.wesync.data.WeSyncMessage.SyncResp.Builder.class);
-          internal_static_com_weibo_wesync_data_MetaSet_descriptor =
+          internal_static_com_weibo_wesync_data_MultiSyncReq_descriptor =
             getDescriptor().getMessageTypes().get(15);
+          internal_static_com_weibo_wesync_data_MultiSyncReq_fieldAccessorTable = new
+            com.google.protobuf.GeneratedMessage.FieldAccessorTable(
+              internal_static_com_weibo_wesync_data_MultiSyncReq_descriptor,
+              new java.lang.String[] { "Req", },
+              com.weibo.wesync.data.WeSyncMessage.MultiSyncReq.class,
+              com.weibo.wesync.data.WeSyncMessage.MultiSyncReq.Builder.class);
+          internal_static_com_weibo_wesync_data_MultiSyncResp_descriptor =
+            getDescriptor().getMessageTypes().get(16);
+          internal_static_com_weibo_wesync_data_MultiSyncResp_fieldAccessorTable = new
+            com.google.protobuf.GeneratedMessage.FieldAccessorTable(
+              internal_static_com_weibo_wesync_data_MultiSyncResp_descriptor,
+              new java.lang.String[] { "Resp", },
+              com.weibo.wesync.data.WeSyncMessage.MultiSyncResp.class,
+              com.weibo.wesync.data.WeSyncMessage.MultiSyncResp.Builder.class);
+          internal_static_com_weibo_wesync_data_MetaSet_descriptor =
+            getDescriptor().getMessageTypes().get(17);
           internal_static_com_weibo_wesync_data_MetaSet_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_com_weibo_wesync_data_MetaSet_descriptor,
@@ -12130,7 +13379,7 @@ public final class WeSyncMessage {
               com.weibo.wesync.data.WeSyncMessage.MetaSet.class,
               com.weibo.wesync.data.WeSyncMessage.MetaSet.Builder.class);
           internal_static_com_weibo_wesync_data_GroupOperation_descriptor =
-            getDescriptor().getMessageTypes().get(16);
+            getDescriptor().getMessageTypes().get(18);
           internal_static_com_weibo_wesync_data_GroupOperation_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_com_weibo_wesync_data_GroupOperation_descriptor,
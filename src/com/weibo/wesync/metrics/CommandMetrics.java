@@ -0,0 +1,73 @@
+package com.weibo.wesync.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.weibo.wesync.Command;
+
+/**
+ * Metrics of all commands, which are recorded around the handler dispatch:
+ * 
+ *   long start = metrics.begin(command, request);
+ *   ... handle the command ...
+ *   metrics.end(command, start, response, failed);
+ */
+public final class CommandMetrics {
+	private final Map<Command, CommandStats> stats = new EnumMap<Command, CommandStats>(Command.class);
+	private final List<MetricsExporter> exporters = new CopyOnWriteArrayList<MetricsExporter>();
+
+	public CommandMetrics() {
+		//All commands are known beforehand, so the map is never changed after this
+		for (Command c : Command.values()) {
+			stats.put(c, new CommandStats(c));
+		}
+	}
+
+	public CommandStats get(Command command) {
+		return stats.get(command);
+	}
+
+	public Collection<CommandStats> all() {
+		return Collections.unmodifiableCollection(stats.values());
+	}
+
+	//@Return the start time for end()
+	public long begin(Command command, byte[] request) {
+		return begin(command, null == request ? 0 : request.length);
+	}
+
+	public long begin(Command command, int requestSize) {
+		stats.get(command).begin(requestSize);
+		return System.nanoTime();
+	}
+
+	public void end(Command command, long start, byte[] response, boolean failed) {
+		end(command, start, 0, null == response ? 0 : response.length, failed);
+	}
+
+	//@Param:requestSize the request bytes not counted by begin(), e.g. the ones read from a stream
+	public void end(Command command, long start, int requestSize, int responseSize, boolean failed) {
+		long micros = (System.nanoTime() - start) / 1000;
+		stats.get(command).end(micros, requestSize, responseSize, failed);
+	}
+
+	public void addExporter(MetricsExporter exporter) {
+		exporter.start(this);
+		exporters.add(exporter);
+	}
+
+	public void removeExporter(MetricsExporter exporter) {
+		if (exporters.remove(exporter)) exporter.stop();
+	}
+
+	public void close() {
+		for (MetricsExporter e : exporters) {
+			e.stop();
+		}
+		exporters.clear();
+	}
+}
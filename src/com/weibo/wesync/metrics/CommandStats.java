@@ -0,0 +1,93 @@
+package com.weibo.wesync.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.weibo.wesync.Command;
+
+/**
+ * Metrics of one command, exported to JMX as it is.
+ */
+public class CommandStats implements CommandStatsMXBean {
+	private final Command command;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final AtomicLong errors = new AtomicLong(0);
+	private final AtomicLong requestBytes = new AtomicLong(0);
+	private final AtomicLong responseBytes = new AtomicLong(0);
+	private final AtomicInteger inFlight = new AtomicInteger(0);
+
+	CommandStats(Command command) {
+		this.command = command;
+	}
+
+	void begin(int requestSize) {
+		inFlight.incrementAndGet();
+		requestBytes.addAndGet(requestSize);
+	}
+
+	void end(long micros, int requestSize, int responseSize, boolean failed) {
+		inFlight.decrementAndGet();
+		latency.record(micros);
+		if (requestSize > 0) requestBytes.addAndGet(requestSize);
+		responseBytes.addAndGet(responseSize);
+		if (failed) errors.incrementAndGet();
+	}
+
+	public Command getCommand() {
+		return command;
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	@Override
+	public long getRequests() {
+		return latency.getCount();
+	}
+
+	@Override
+	public long getErrors() {
+		return errors.get();
+	}
+
+	@Override
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	@Override
+	public long getRequestBytes() {
+		return requestBytes.get();
+	}
+
+	@Override
+	public long getResponseBytes() {
+		return responseBytes.get();
+	}
+
+	@Override
+	public double getMeanMicros() {
+		return latency.getMean();
+	}
+
+	@Override
+	public long getP50Micros() {
+		return latency.getPercentile(50);
+	}
+
+	@Override
+	public long getP99Micros() {
+		return latency.getPercentile(99);
+	}
+
+	@Override
+	public long getP999Micros() {
+		return latency.getPercentile(99.9);
+	}
+
+	@Override
+	public long getMaxMicros() {
+		return latency.getMax();
+	}
+}
@@ -0,0 +1,18 @@
+package com.weibo.wesync.metrics;
+
+/**
+ * JMX view of CommandStats, latencies are in microseconds.
+ */
+public interface CommandStatsMXBean {
+	public long getRequests();
+	public long getErrors();
+	public int getInFlight();
+	public long getRequestBytes();
+	public long getResponseBytes();
+
+	public double getMeanMicros();
+	public long getP50Micros();
+	public long getP99Micros();
+	public long getP999Micros();
+	public long getMaxMicros();
+}
@@ -0,0 +1,58 @@
+package com.weibo.wesync.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registers one MBean per command, named as {domain}:type=Command,name={command}
+ */
+public class JmxMetricsExporter implements MetricsExporter {
+	private final Logger log = LoggerFactory.getLogger(JmxMetricsExporter.class);
+	public static final String DEFAULT_DOMAIN = "com.weibo.wesync";
+
+	private final MBeanServer server;
+	private final String domain;
+	private final List<ObjectName> registered = new LinkedList<ObjectName>();
+
+	public JmxMetricsExporter() {
+		this(ManagementFactory.getPlatformMBeanServer(), DEFAULT_DOMAIN);
+	}
+
+	public JmxMetricsExporter(MBeanServer server, String domain) {
+		this.server = server;
+		this.domain = domain;
+	}
+
+	@Override
+	public synchronized void start(CommandMetrics metrics) {
+		for (CommandStats s : metrics.all()) {
+			try {
+				ObjectName name = new ObjectName(domain + ":type=Command,name=" + s.getCommand().name());
+				server.registerMBean(s, name);
+				registered.add(name);
+			} catch (JMException e) {
+				log.warn("Failed to register command metrics of " + s.getCommand() + " : " + e.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		for (ObjectName name : registered) {
+			try {
+				server.unregisterMBean(name);
+			} catch (JMException e) {
+				// Do nothing
+			}
+		}
+		registered.clear();
+	}
+}
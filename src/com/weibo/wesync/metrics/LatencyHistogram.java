@@ -0,0 +1,90 @@
+package com.weibo.wesync.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in microseconds.
+ *
+ * Values under 16 have their own buckets, the larger ones are put in log-linear buckets,
+ * 8 buckets per power of 2, so the percentiles are within 12.5% of the recorded values.
+ */
+public final class LatencyHistogram {
+	private static final int LINEAR = 16;
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	//Up to 2^40us, about 12 days
+	private static final int MAX_EXPONENT = 40;
+	private static final int BUCKETS = LINEAR + (MAX_EXPONENT - 4 + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong(0);
+	private final AtomicLong sum = new AtomicLong(0);
+	private final AtomicLong max = new AtomicLong(0);
+
+	static int indexOf(long value) {
+		if (value < LINEAR) return value < 0 ? 0 : (int) value;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+	}
+
+	//The largest value in the bucket
+	static long upperBoundOf(int index) {
+		if (index < LINEAR) return index;
+
+		int exponent = (index - LINEAR) / SUB_BUCKETS + 4;
+		int sub = (index - LINEAR) % SUB_BUCKETS;
+		long lower = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+		return lower + (1L << (exponent - SUB_BITS)) - 1;
+	}
+
+	public void record(long micros) {
+		counts.incrementAndGet(indexOf(micros));
+		count.incrementAndGet();
+		sum.addAndGet(micros);
+
+		long m;
+		while (micros > (m = max.get())) {
+			if (max.compareAndSet(m, micros)) break;
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * @Param:percentile in (0, 100], e.g. 99.9
+	 * @Return the upper bound of the bucket where the percentile falls, 0 if nothing recorded
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) return 0;
+
+		long rank = (long) Math.ceil(total * percentile / 100);
+		if (rank < 1) rank = 1;
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) return Math.min(upperBoundOf(i), max.get());
+		}
+		return max.get();
+	}
+}
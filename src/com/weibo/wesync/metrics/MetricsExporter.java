@@ -0,0 +1,9 @@
+package com.weibo.wesync.metrics;
+
+/**
+ * Exports the command metrics to somewhere, e.g. JMX or logs.
+ */
+public interface MetricsExporter {
+	public void start(CommandMetrics metrics);
+	public void stop();
+}
@@ -0,0 +1,81 @@
+package com.weibo.wesync.metrics;
+
+import java.util.Formatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dumps the command metrics as a text table, and writes it to the log periodically
+ * if the interval is positive.
+ */
+public class TextMetricsExporter implements MetricsExporter {
+	private final Logger log = LoggerFactory.getLogger(TextMetricsExporter.class);
+
+	private final long intervalSeconds;
+	private volatile CommandMetrics metrics;
+	private ScheduledExecutorService scheduler;
+
+	public TextMetricsExporter() {
+		this(0);
+	}
+
+	public TextMetricsExporter(long intervalSeconds) {
+		this.intervalSeconds = intervalSeconds;
+	}
+
+	@Override
+	public synchronized void start(CommandMetrics metrics) {
+		this.metrics = metrics;
+		if (intervalSeconds <= 0 || null != scheduler) return;
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "command-metrics-dump");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		scheduler.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				log.info("Command metrics:\n" + dump());
+			}
+		}, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (null != scheduler) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	//Commands never requested are skipped
+	public String dump() {
+		CommandMetrics m = metrics;
+		if (null == m) return "";
+		return dump(m);
+	}
+
+	public static String dump(CommandMetrics metrics) {
+		StringBuilder sb = new StringBuilder();
+		Formatter f = new Formatter(sb);
+		f.format("%-16s %10s %8s %8s %10s %8s %8s %8s %10s %14s %14s%n", "command", "requests", "errors", "inflight",
+				"mean(us)", "p50", "p99", "p99.9", "max", "reqBytes", "respBytes");
+		for (CommandStats s : metrics.all()) {
+			if (s.getRequests() == 0 && s.getInFlight() == 0) continue;
+			f.format("%-16s %10d %8d %8d %10.1f %8d %8d %8d %10d %14d %14d%n", s.getCommand().name(),
+					s.getRequests(), s.getErrors(), s.getInFlight(), s.getMeanMicros(), s.getP50Micros(),
+					s.getP99Micros(), s.getP999Micros(), s.getMaxMicros(), s.getRequestBytes(), s.getResponseBytes());
+		}
+		f.flush();
+		return sb.toString();
+	}
+}
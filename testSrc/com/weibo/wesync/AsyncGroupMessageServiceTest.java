@@ -0,0 +1,45 @@
+package com.weibo.wesync;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.weibo.wesync.data.FolderID;
+import com.weibo.wesync.data.MemoryDataStore;
+
+public class AsyncGroupMessageServiceTest extends TestCase {
+	String juliet = "Juliet";
+	String romeo = "Romeo";
+	String lawrence = "Lawrence";
+	String tybalt = "Tybalt";
+
+	@Test
+	public void testBroadcast() throws InterruptedException{
+		DataService ds = new DataServiceImpl( new MemoryDataStore() );
+		for(String u : Arrays.asList(juliet, romeo, lawrence, tybalt)){
+			ds.prepareForNewUser(u);
+		}
+		String groupId = ds.createGroup(romeo, Arrays.asList(juliet, lawrence, tybalt));
+
+		//Batch of 2 members to split the group
+		AsyncGroupMessageService service = new AsyncGroupMessageService(ds, 2, 4, 2);
+		for(int i=1; i<=10; i++){
+			service.broadcast(groupId, romeo, String.valueOf(i));
+		}
+		assertTrue( service.shutdown(5, TimeUnit.SECONDS) );
+
+		assertEquals( 10, service.getSubmittedCount() );
+		assertEquals( 10, service.getCompletedCount() );
+		assertEquals( 0, service.getFailedCount() );
+		assertEquals( 0, service.getPendingCount() );
+		assertTrue( service.getMaxLagMillis() >= service.getAverageLagMillis() );
+
+		assertEquals( 10, ds.getUnreadNumber(FolderID.onGroup(juliet, groupId)) );
+		assertEquals( 10, ds.getUnreadNumber(FolderID.onGroup(tybalt, groupId)) );
+		assertEquals( 0, ds.getUnreadNumber(FolderID.onGroup(romeo, groupId)) );
+		assertEquals( "10", ds.getFolderChanges(FolderID.onGroup(lawrence, groupId)).last().childId );
+	}
+}
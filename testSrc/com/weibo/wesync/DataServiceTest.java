@@ -9,11 +9,14 @@ import org.junit.Test;
 
 import com.google.protobuf.ByteString;
 import com.weibo.wesync.data.FakeDataStore;
+import com.weibo.wesync.data.FileDataHelper;
 import com.weibo.wesync.data.FolderChange;
 import com.weibo.wesync.data.FolderChild;
 import com.weibo.wesync.data.FolderID;
 import com.weibo.wesync.data.MetaMessageType;
 import com.weibo.wesync.data.SyncKey;
+import com.weibo.wesync.data.WeSyncMessage.DataSlice;
+import com.weibo.wesync.data.WeSyncMessage.FileData;
 import com.weibo.wesync.data.WeSyncMessage.Meta;
 
 /**
@@ -118,4 +121,54 @@ public class DataServiceTest extends TestCase {
 		String msgId = FolderChild.generateId(convChange.childId, Long.valueOf(msgChange.childId));
 		assertTrue( ds.getMetaMessage(msgId) != null );
 	}	
+
+	@Test
+	public void testFileDedupe(){
+		int limit = 3;
+		DataSlice.Builder slice = DataSlice.newBuilder().setLimit(limit);
+		FileData.Builder file = FileData.newBuilder().setId("Romeo-Juliet-starry");
+		for(int i=1; i<=limit; i++){
+			ByteString data = ByteString.copyFromUtf8("Starry night " + i);
+			file.addSlice( slice.setIndex(i).setData(data).setMd5(FileDataHelper.md5(data)) );
+		}
+		FileData sent = file.build();
+		assertEquals( 0, ds.store(sent).getSliceCount() );
+		
+		//Forwarded to Lawrence, the client asks which slices to send with the md5s only
+		FileData.Builder forward = FileData.newBuilder().setId("Juliet-Lawrence-starry");
+		for(int i=0; i<limit-1; i++){
+			forward.addSlice( sent.getSlice(i).toBuilder().clearData() );
+		}
+		ByteString extra = ByteString.copyFromUtf8("Signed by Juliet");
+		forward.addSlice( slice.setIndex(limit).setData(extra).setMd5(FileDataHelper.md5(extra)).clearData() );
+		FileData wanted = ds.store(forward.build());
+		assertEquals( 1, wanted.getSliceCount() );
+		assertEquals( limit, wanted.getSlice(0).getIndex() );
+		
+		//Only the new one is sent with data
+		assertEquals( 0, ds.store(FileData.newBuilder().setId("Juliet-Lawrence-starry")
+				.addSlice( wanted.getSlice(0).toBuilder().setData(extra) ).build()).getSliceCount() );
+		FileData got = ds.getFileById("Juliet-Lawrence-starry");
+		assertEquals( limit, got.getSliceCount() );
+		assertTrue( FileDataHelper.isSane(got) );
+		assertEquals( sent.getSlice(0).getData(), got.getSlice(0).getData() );
+		assertEquals( extra, got.getSlice(limit-1).getData() );
+		
+		//A slice of the wrong md5 is not taken, but asked to send again
+		assertEquals( limit, ds.getFileById("Romeo-Juliet-starry").getSliceCount() );
+		FileData resend = ds.store(FileData.newBuilder().setId("Romeo-Lawrence-bad")
+				.addSlice( slice.setIndex(1).setLimit(1).setData(extra).setMd5(sent.getSlice(0).getMd5()) ).build());
+		assertEquals( 1, resend.getSliceCount() );
+		assertNull( ds.getFileById("Romeo-Lawrence-bad") );
+		
+		//The contents go with the last file referring to them, however many times it is sent
+		assertEquals( 0, ds.store(sent).getSliceCount() );
+		assertTrue( ds.removeFile("Romeo-Juliet-starry") );
+		assertNull( ds.getFileById("Romeo-Juliet-starry") );
+		assertEquals( sent.getSlice(0).getData(), ds.getFileById("Juliet-Lawrence-starry").getSlice(0).getData() );
+		assertTrue( ds.removeFile("Juliet-Lawrence-starry") );
+		FileData again = ds.store(FileData.newBuilder().setId("Lawrence-Romeo-starry")
+				.addSlice( sent.getSlice(0).toBuilder().clearData() ).build());
+		assertEquals( 1, again.getSliceCount() );
+	}
 }
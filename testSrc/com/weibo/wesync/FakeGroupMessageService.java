@@ -1,5 +1,7 @@
 package com.weibo.wesync;
 
+import java.util.concurrent.TimeUnit;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,4 +33,9 @@ public class FakeGroupMessageService implements GroupMessageService{
 		//TODO broadcast operation
 		dataService.broadcastMemberChange(groupId, type, extend);
 	}
+
+	@Override
+	public boolean shutdown(long timeout, TimeUnit unit) {
+		return true;
+	}
 }
@@ -1,7 +1,9 @@
 package com.weibo.wesync;
 
 import com.google.inject.AbstractModule;
+import com.weibo.wesync.command.SyncHandler;
 import com.weibo.wesync.data.FakeDataStore;
+import com.weibo.wesync.data.SliceVerifier;
 
 /**
  * @author Eric Liang
@@ -10,8 +12,20 @@ public class FakeWeSyncModule extends AbstractModule {
 
 	@Override
 	protected void configure() {
-		bind(DataService.class).toInstance(new DataServiceImpl( new FakeDataStore() ) );
-		bind(NoticeService.class).toInstance( new FakeNoticeService() );
+		//The md5 of the files are checked by the same verifier in the service and the store
+		SliceVerifier verifier = new SliceVerifier();
+		bind(DataService.class).toInstance(new DataServiceImpl( new FakeDataStore(verifier), 1,
+				DataServiceImpl.DEFAULT_META_CACHE_BYTES, verifier ) );
+		NoticeService noticeService = new FakeNoticeService();
+		bind(NoticeService.class).toInstance( noticeService );
+		//Notices are sent synchronously for the tests to check
+		NoticeDispatcher.Options options = new NoticeDispatcher.Options();
+		options.lanes = 0;
+		bind(NoticeDispatcher.class).toInstance( new NoticeDispatcher(noticeService, options) );
+		//Paged by the count as well, for the tests over the batch size
+		SyncHandler.Options syncOptions = new SyncHandler.Options();
+		syncOptions.maxChanges = SyncHandler.DEFAULT_BATCH_SIZE;
+		bind(SyncHandler.Options.class).toInstance( syncOptions );
 		bind(GroupMessageService.class).to(FakeGroupMessageService.class);
 		bind(PrivacyService.class).to(FakePrivacyService.class);
 		bind(WeSyncService.class).to(WeSyncServiceImpl.class);
@@ -0,0 +1,116 @@
+package com.weibo.wesync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.weibo.wesync.data.WeSyncMessage.Notice;
+import com.weibo.wesync.data.WeSyncMessage.Unread;
+
+public class NoticeDispatcherTest extends TestCase {
+	String juliet = "Juliet";
+	String romeo = "Romeo";
+
+	//Blocks on the first notice until released
+	private static class SlowNoticeService implements NoticeService {
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Notice> sent = new ArrayList<Notice>();
+
+		@Override
+		public void send(String username, Notice notice) {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			synchronized( sent ){
+				sent.add(notice);
+			}
+		}
+	}
+
+	private Notice notice(String folderId, int num, String ack){
+		return Notice.newBuilder()
+				.addUnread( Unread.newBuilder().setFolderId(folderId).setNum(num) )
+				.addExpectAck(ack)
+				.build();
+	}
+
+	@Test
+	public void testMerge(){
+		Notice merged = NoticeDispatcher.merge( notice("a", 1, "a-1"), notice("a", 2, "a-2") );
+		merged = NoticeDispatcher.merge( merged, notice("b", 1, "a-2") );
+		assertEquals( 2, merged.getUnreadCount() );
+		assertEquals( 2, merged.getUnread(0).getNum() );
+		assertEquals( "b", merged.getUnread(1).getFolderId() );
+		assertEquals( 2, merged.getExpectAckCount() );
+	}
+
+	@Test
+	public void testDropAndCoalesce() throws InterruptedException{
+		SlowNoticeService ns = new SlowNoticeService();
+		NoticeDispatcher.Options options = new NoticeDispatcher.Options();
+		options.lanes = 1;
+		options.queueCapacity = 1;
+		options.rejectPolicy = NoticeDispatcher.RejectPolicy.DROP;
+		NoticeDispatcher dispatcher = new NoticeDispatcher(ns, options);
+
+		//The first is taken by the lane thread and blocked
+		dispatcher.dispatch(juliet, notice("a", 1, "a-1"));
+		while( dispatcher.getQueueDepth() > 0 ) Thread.sleep(1);
+		Thread.sleep(20);
+
+		dispatcher.dispatch(romeo, notice("b", 1, "b-1"));
+		dispatcher.dispatch(romeo, notice("b", 2, "b-2"));
+		//Queue is full of romeo's
+		dispatcher.dispatch(juliet, notice("a", 2, "a-2"));
+		assertEquals( 1, dispatcher.getCoalescedCount() );
+		assertEquals( 1, dispatcher.getRejectedCount() );
+		assertEquals( 1, dispatcher.getQueueDepth() );
+
+		ns.release.countDown();
+		assertTrue( dispatcher.shutdown(5, TimeUnit.SECONDS) );
+		assertEquals( 2, ns.sent.size() );
+		assertEquals( 2, dispatcher.getSentCount() );
+		assertEquals( 4, dispatcher.getDispatchedCount() );
+		assertEquals( 2, dispatcher.getLatency().getCount() );
+
+		Notice toRomeo = ns.sent.get(1);
+		assertEquals( 2, toRomeo.getUnread(0).getNum() );
+		assertEquals( 2, toRomeo.getExpectAckCount() );
+	}
+
+	@Test
+	public void testCoalesceWindow() throws InterruptedException{
+		FakeNoticeService ns = new FakeNoticeService();
+		NoticeDispatcher.Options options = new NoticeDispatcher.Options();
+		options.lanes = 1;
+		options.coalesceWindowMillis = 200;
+		options.coalesceMaxNotices = 20;
+		NoticeDispatcher dispatcher = new NoticeDispatcher(ns, options);
+
+		//A burst of 50 messages to Juliet and one to Romeo
+		for(int i=1; i<=50; i++){
+			dispatcher.dispatch(juliet, notice("a", i, "a-"+i));
+		}
+		dispatcher.dispatch(romeo, notice("b", 1, "b-1"));
+		assertTrue( dispatcher.shutdown(5, TimeUnit.SECONDS) );
+
+		//Flushed by the size threshold twice, then by the window or stopping
+		assertEquals( 4, ns.pending.size() );
+		assertEquals( 47, dispatcher.getCoalescedCount() );
+		Notice first = ns.pending.poll();
+		assertEquals( 20, first.getExpectAckCount() );
+		assertEquals( 20, first.getUnread(0).getNum() );
+		ns.pending.poll();
+		Notice third = ns.pending.poll();
+		assertEquals( 50, third.getUnread(0).getNum() );
+		assertEquals( 10, third.getExpectAckCount() );
+		assertEquals( "b", ns.pending.poll().getUnread(0).getFolderId() );
+	}
+}
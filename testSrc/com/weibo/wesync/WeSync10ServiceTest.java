@@ -19,6 +19,7 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
@@ -124,6 +125,11 @@ public class WeSync10ServiceTest extends TestCase {
 	    cleanupConversation(romeo, juliet);
 	}
 	
+	@Override
+	protected void tearDown() throws Exception{
+		if( null != weSync ) weSync.shutdown(5, TimeUnit.SECONDS);
+	}
+	
 	@Test
 	public void testUtilities(){
 		String convId = "a-conv-b";
@@ -5,6 +5,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -12,6 +13,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -24,8 +26,12 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.codec.binary.Hex;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -36,6 +42,9 @@ import org.slf4j.LoggerFactory;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.weibo.wesync.command.GetFileHandler;
+import com.weibo.wesync.command.MultiSyncHandler;
 import com.weibo.wesync.command.SyncHandler;
 import com.weibo.wesync.data.FileDataHelper;
 import com.weibo.wesync.data.FileID;
@@ -59,6 +68,8 @@ import com.weibo.wesync.data.WeSyncMessage.GroupOperation;
 import com.weibo.wesync.data.WeSyncMessage.Meta;
 import com.weibo.wesync.data.WeSyncMessage.Meta.Builder;
 import com.weibo.wesync.data.WeSyncMessage.MetaSet;
+import com.weibo.wesync.data.WeSyncMessage.MultiSyncReq;
+import com.weibo.wesync.data.WeSyncMessage.MultiSyncResp;
 import com.weibo.wesync.data.WeSyncMessage.Notice;
 import com.weibo.wesync.data.WeSyncMessage.SyncReq;
 import com.weibo.wesync.data.WeSyncMessage.SyncResp;
@@ -131,6 +142,11 @@ public class WeSyncServiceTest{
 	    cleanupConversation(romeo, juliet);
 	}
 	
+	@After
+	public void shutdown() throws InterruptedException{
+		assertTrue( weSync.shutdown(5, TimeUnit.SECONDS) );
+	}
+	
 	@Test
 	public void testUtilities(){
 		String convId = "a-conv-b";
@@ -138,6 +154,343 @@ public class WeSyncServiceTest{
 		assertTrue( new FolderID("a-xxx-b").toString().equals( "a-unknown" ) );
 	}
 	
+	@Test
+	public void testRequestOnBuffers() throws IOException{
+		testNormalConversation();
+		
+		WeSyncURI uri = getWeSyncURI();
+		uri.command = Command.FolderSync.toByte();
+		byte[] uriData = WeSyncURI.toBytes(uri);
+		byte[] reqData = FolderSyncReq.newBuilder().setId( FolderID.onRoot(romeo) )
+				.setKey(TAG_SYNC_KEY).build().toByteArray();
+		byte[] expected = weSync.request(romeo, uriData, reqData);
+		assertNotNull(expected);
+		
+		//Heap buffers with offset
+		ByteBuffer heapUri = ByteBuffer.wrap(new byte[uriData.length + 3], 3, uriData.length).slice();
+		heapUri.put(uriData).flip();
+		ByteBuffer heapReq = ByteBuffer.allocate(reqData.length + 5);
+		heapReq.position(5);
+		heapReq.put(reqData);
+		heapReq.position(5);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTrue( expected.length == weSync.request(romeo, heapUri, heapReq, out) );
+		assertTrue( Arrays.equals(expected, out.toByteArray()) );
+		assertTrue( 5 == heapReq.position() );
+		
+		//Direct buffers
+		ByteBuffer directUri = ByteBuffer.allocateDirect(uriData.length);
+		directUri.put(uriData).flip();
+		ByteBuffer directReq = ByteBuffer.allocateDirect(reqData.length);
+		directReq.put(reqData).flip();
+		out.reset();
+		assertTrue( expected.length == weSync.request(romeo, directUri, directReq, out) );
+		assertTrue( Arrays.equals(expected, out.toByteArray()) );
+		
+		//Invalid request
+		out.reset();
+		assertTrue( -1 == weSync.request(romeo, ByteBuffer.wrap(uriData), ByteBuffer.wrap(new byte[]{(byte)0xFF}), out) );
+		assertTrue( 0 == out.size() );
+	}
+	
+	private static final class WaitingSync implements ResponseCallback {
+		final CountDownLatch done = new CountDownLatch(1);
+		final AtomicReference<byte[]> resp = new AtomicReference<byte[]>();
+		
+		@Override
+		public void onResponse(byte[] response) {
+			resp.set(response);
+			done.countDown();
+		}
+		
+		SyncResp get() throws IOException, InterruptedException {
+			assertTrue( done.await(5, TimeUnit.SECONDS) );
+			return SyncResp.parseFrom(resp.get());
+		}
+	}
+	
+	@Test
+	public void testLongPollSync() throws IOException, InterruptedException{
+		testNormalConversation();
+		String convId = FolderID.onConversation(romeo, juliet);
+		SyncResp resp1 = requestSync(romeo, TAG_SYNC_KEY, convId);
+		SyncResp resp2 = requestSync(romeo, resp1.getNextKey(), convId);
+		assertTrue( 0 == resp2.getServerChangesCount() );
+		
+		WeSyncURI uri = getWeSyncURI();
+		uri.command = Command.Sync.toByte();
+		byte[] reqData = SyncReq.newBuilder().setFolderId(convId).setIsFullSync(false)
+				.setKey(resp2.getNextKey()).build().toByteArray();
+		SyncWaiters waiters = weSync.getSyncWaiters();
+		
+		//Parked until the message comes
+		WaitingSync waiting = new WaitingSync();
+		weSync.requestAsync(romeo, WeSyncURI.toBytes(uri), reqData, 60000, waiting);
+		assertTrue( 1 == waiting.done.getCount() );
+		assertTrue( 1 == waiters.getParkedCount() );
+		sendTextMessage( juliet, romeo, "Wherefore art thou" );
+		SyncResp resp3 = waiting.get();
+		assertTrue( 1 == resp3.getServerChangesCount() );
+		assertTrue( 0 == waiters.getParkedCount() );
+		assertTrue( 1 == waiters.getResumedCount() );
+		
+		//Handled at once with the changes
+		waiting = new WaitingSync();
+		weSync.requestAsync(romeo, WeSyncURI.toBytes(uri), reqData, 60000, waiting);
+		assertTrue( 0 == waiting.done.getCount() );
+		
+		//Nothing comes
+		SyncResp resp4 = requestSync(romeo, resp3.getNextKey(), convId);
+		reqData = SyncReq.newBuilder().setFolderId(convId).setIsFullSync(false)
+				.setKey(resp4.getNextKey()).build().toByteArray();
+		waiting = new WaitingSync();
+		weSync.requestAsync(romeo, WeSyncURI.toBytes(uri), reqData, 50, waiting);
+		assertTrue( 0 == waiting.get().getServerChangesCount() );
+		assertTrue( 1 == waiters.getTimeoutCount() );
+		
+		//Not parked on the folder of the others, failed at once
+		waiting = new WaitingSync();
+		weSync.requestAsync(lawrence, WeSyncURI.toBytes(uri), reqData, 60000, waiting);
+		assertTrue( 0 == waiting.done.getCount() );
+		assertNull( waiting.resp.get() );
+		assertTrue( 0 == waiters.getParkedCount() );
+	}
+	
+	@Test
+	public void testLongPollShutdown() throws IOException, InterruptedException{
+		testNormalConversation();
+		String convId = FolderID.onConversation(romeo, juliet);
+		SyncResp resp1 = requestSync(romeo, TAG_SYNC_KEY, convId);
+		SyncResp resp2 = requestSync(romeo, resp1.getNextKey(), convId);
+		
+		WeSyncURI uri = getWeSyncURI();
+		uri.command = Command.Sync.toByte();
+		byte[] reqData = SyncReq.newBuilder().setFolderId(convId).setIsFullSync(false)
+				.setKey(resp2.getNextKey()).build().toByteArray();
+		SyncWaiters waiters = weSync.getSyncWaiters();
+		
+		//Expired by the shutdown instead of left to the client timeout
+		WaitingSync waiting = new WaitingSync();
+		weSync.requestAsync(romeo, WeSyncURI.toBytes(uri), reqData, 60000, waiting);
+		assertTrue( 1 == waiters.getParkedCount() );
+		waiters.shutdown();
+		assertTrue( 0 == waiting.get().getServerChangesCount() );
+		assertTrue( 0 == waiters.getParkedCount() );
+		assertTrue( 1 == waiters.getTimeoutCount() );
+		
+		//Parked after the shutdown
+		waiting = new WaitingSync();
+		weSync.requestAsync(romeo, WeSyncURI.toBytes(uri), reqData, 60000, waiting);
+		assertTrue( 0 == waiting.get().getServerChangesCount() );
+		assertTrue( 0 == waiters.getParkedCount() );
+	}
+	
+	@Test
+	public void testSyncPagedByBytes() throws IOException{
+		testNormalConversation();
+		String convId = FolderID.onConversation(romeo, juliet);
+		SyncResp resp = requestSync(romeo, TAG_SYNC_KEY, convId);
+
+		int count = 5;
+		char[] content = new char[1000];
+		Arrays.fill(content, 'x');
+		for(int i=0; i<count; i++){
+			sendTextMessage( juliet, romeo, new String(content) );
+		}
+
+		//Two messages in a page by the bytes, far under the batch size
+		SyncHandler handler = new SyncHandler(weSync, batchSize, 2500);
+		String syncKey = resp.getNextKey();
+		int received = 0;
+		int pages = 0;
+		do{
+			SyncReq req = SyncReq.newBuilder().setFolderId(convId).setIsFullSync(false).setKey(syncKey).build();
+			resp = handler.handleSync(romeo, req, false);
+			assertTrue( resp.getServerChangesCount() <= 2 );
+			assertTrue( resp.getHasNext() || received + resp.getServerChangesCount() == count );
+			received += resp.getServerChangesCount();
+			syncKey = resp.getNextKey();
+			pages++;
+		}while( resp.getHasNext() );
+		assertTrue( count == received );
+		assertTrue( 3 == pages );
+
+		//Read on beyond the batch size until the bytes are full
+		SyncHandler.Options options = new SyncHandler.Options();
+		options.batchSize = 2;
+		options.maxResponseBytes = 1024 * 1024;
+		handler = new SyncHandler(weSync, options);
+		SyncReq all = SyncReq.newBuilder().setFolderId(convId).setIsFullSync(true).setKey(TAG_SYNC_KEY).build();
+		resp = handler.handleSync(romeo, all, false);
+		assertTrue( resp.getServerChangesCount() > count );
+		assertFalse( resp.getHasNext() );
+		
+		//At least one, even if over the bytes
+		handler = new SyncHandler(weSync, batchSize, 10);
+		SyncReq req = SyncReq.newBuilder().setFolderId(convId).setIsFullSync(true).setKey(TAG_SYNC_KEY).build();
+		resp = handler.handleSync(romeo, req, false);
+		assertTrue( 1 == resp.getServerChangesCount() );
+		assertTrue( resp.getHasNext() );
+		assertTrue( resp.getServerChanges(0).getContent().toStringUtf8().equals(new String(content)) );
+	}
+
+	@Test
+	public void testMultiSync() throws IOException{
+		folderSync(juliet);
+		folderSync(romeo);
+		folderSync(lawrence);
+		createConversation(juliet, romeo);
+		sendTextMessage( juliet, romeo, "What are you doing" );
+		createConversation(lawrence, romeo);
+		sendTextMessage( lawrence, romeo, "Holy Saint Francis" );
+
+		String convJuliet = FolderID.onConversation(romeo, juliet);
+		String convLawrence = FolderID.onConversation(romeo, lawrence);
+		List<SyncReq> reqs = new LinkedList<SyncReq>();
+		for( String folderId : new String[]{convJuliet, FolderID.onConversation(juliet, romeo), convLawrence} ){
+			reqs.add( SyncReq.newBuilder().setFolderId(folderId).setIsFullSync(false).setKey(TAG_SYNC_KEY).build() );
+		}
+		MultiSyncReq req = MultiSyncReq.newBuilder().addAllReq(reqs).build();
+		assertTrue( 3 == MultiSyncReq.parseFrom(req.toByteArray()).getReqCount() );
+
+		WeSyncURI uri = getWeSyncURI();
+		uri.command = Command.MultiSync.toByte();
+		byte[] respData = weSync.request(romeo, WeSyncURI.toBytes(uri), req.toByteArray());
+		MultiSyncResp resp = MultiSyncResp.parseFrom(respData);
+
+		//The folder of Juliet's is not permitted and left out
+		assertTrue( 2 == resp.getRespCount() );
+		SyncResp respJuliet = resp.getRespList().get(0);
+		SyncResp respLawrence = resp.getRespList().get(1);
+		assertTrue( convJuliet.equals(respJuliet.getFolderId()) );
+		assertTrue( convLawrence.equals(respLawrence.getFolderId()) );
+		assertTrue( 1 == respJuliet.getServerChangesCount() );
+		assertTrue( 1 == respLawrence.getServerChangesCount() );
+		assertTrue( respLawrence.getServerChanges(0).getFrom().equals(lawrence) );
+
+		//Going on by the keys one by one
+		assertTrue( 0 == requestSync(romeo, respJuliet.getNextKey(), convJuliet).getServerChangesCount() );
+		assertTrue( 0 == requestSync(romeo, respLawrence.getNextKey(), convLawrence).getServerChangesCount() );
+	}
+
+	@Test
+	public void testMultiSyncDeferred() throws IOException{
+		folderSync(romeo);
+		folderSync(lawrence);
+		createConversation(lawrence, romeo);
+		sendTextMessage( lawrence, romeo, "Holy Saint Francis" );
+
+		//Beyond the limit of folders, with a budget of one byte
+		String convLawrence = FolderID.onConversation(romeo, lawrence);
+		MultiSyncReq.Builder req = MultiSyncReq.newBuilder();
+		for( int i = 0; i <= MultiSyncHandler.MAX_FOLDERS; i++ ){
+			req.addReq( SyncReq.newBuilder().setFolderId(convLawrence).setIsFullSync(false).setKey(TAG_SYNC_KEY).build() );
+		}
+		MultiSyncHandler handler = new MultiSyncHandler(weSync, new SyncHandler(weSync), 1);
+		MultiSyncResp resp = (MultiSyncResp) handler.handleMessage(romeo, getWeSyncURI(),
+				CodedInputStream.newInstance(req.build().toByteArray()), false);
+		assertTrue( MultiSyncHandler.MAX_FOLDERS + 1 == resp.getRespCount() );
+
+		int deferred = 0;
+		for( SyncResp r : resp.getRespList() ){
+			assertTrue( convLawrence.equals(r.getFolderId()) );
+			if( 0 == r.getServerChangesCount() ){
+				assertTrue( TAG_SYNC_KEY.equals(r.getNextKey()) );
+				assertTrue( r.getHasNext() );
+				deferred++;
+			}
+		}
+		assertTrue( deferred > 0 );
+		SyncResp last = resp.getResp(MultiSyncHandler.MAX_FOLDERS);
+		assertTrue( TAG_SYNC_KEY.equals(last.getNextKey()) && last.getHasNext() );
+
+		//The deferred one is synchronized again by its key
+		assertTrue( 1 == requestSync(romeo, last.getNextKey(), convLawrence).getServerChangesCount() );
+	}
+
+	@Test
+	public void testGetFilePaged() throws IOException{
+		String fileId = FileID.generateId(romeo, juliet, "file-paged");
+		int limit = 40;
+		int sliceSize = 32 * 1024;
+		FileData.Builder file = FileData.newBuilder().setId(fileId);
+		for(int i=1; i<=limit; i++){
+			byte[] b = new byte[sliceSize];
+			b[0] = (byte) i;
+			file.addSlice( DataSlice.newBuilder().setIndex(i).setLimit(limit).setData(ByteString.copyFrom(b)) );
+		}
+		weSync.getDataService().store(file.build());
+		
+		//The whole file to the request of no slices, as before paging
+		FileData whole = requestGetFile(juliet, FileData.newBuilder().setId(fileId).build());
+		assertTrue( limit == whole.getSliceCount() );
+		
+		//Streamed the same as built
+		WeSyncURI uri = getWeSyncURI();
+		uri.command = Command.GetFile.toByte();
+		byte[] reqData = FileData.newBuilder().setId(fileId).build().toByteArray();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int written = weSync.request(juliet, ByteBuffer.wrap(WeSyncURI.toBytes(uri)), ByteBuffer.wrap(reqData), out);
+		assertTrue( written == out.size() );
+		assertTrue( Arrays.equals(whole.toByteArray(), out.toByteArray()) );
+		
+		//The first page only of the slices asked by index, by the max response size
+		FileData.Builder all = FileData.newBuilder().setId(fileId);
+		for(int i=1; i<=limit; i++){
+			all.addSlice( DataSlice.newBuilder().setIndex(i).setLimit(limit) );
+		}
+		FileData first = requestGetFile(juliet, all.build());
+		assertTrue( first.getSliceCount() > 0 && first.getSliceCount() < limit );
+		assertTrue( first.getSerializedSize() <= GetFileHandler.DEFAULT_MAX_RESPONSE_BYTES );
+		assertTrue( limit == first.getSlice(0).getLimit() );
+		
+		//The client asks for the rest by index
+		FileData.Builder rest = FileData.newBuilder().setId(fileId);
+		for(int i=first.getSliceCount()+1; i<=limit; i++){
+			rest.addSlice( DataSlice.newBuilder().setIndex(i).setLimit(limit) );
+		}
+		FileData second = requestGetFile(juliet, rest.build());
+		assertTrue( first.getSliceCount() + second.getSliceCount() == limit );
+		assertTrue( (byte) limit == second.getSlice(second.getSliceCount()-1).getData().byteAt(0) );
+		
+		//Indexes out of order, repeated or beyond the limit
+		FileData odd = requestGetFile(juliet, FileData.newBuilder().setId(fileId)
+				.addSlice( DataSlice.newBuilder().setIndex(Integer.MAX_VALUE).setLimit(limit) )
+				.addSlice( DataSlice.newBuilder().setIndex(3).setLimit(limit) )
+				.addSlice( DataSlice.newBuilder().setIndex(2).setLimit(limit) )
+				.addSlice( DataSlice.newBuilder().setIndex(3).setLimit(limit) ).build());
+		assertTrue( 2 == odd.getSliceCount() );
+		assertTrue( 2 == odd.getSlice(0).getIndex() && 3 == odd.getSlice(1).getIndex() );
+		assertTrue( 0 == requestGetFile(juliet, FileData.newBuilder().setId(fileId)
+				.addSlice( DataSlice.newBuilder().setIndex(Integer.MAX_VALUE).setLimit(limit) ).build()).getSliceCount() );
+		
+		//An upload not finished, the holes are skipped and index 0 is none
+		String partialId = FileID.generateId(romeo, juliet, "file-partial");
+		FileData.Builder partial = FileData.newBuilder().setId(partialId);
+		for(int i=3; i<=5; i++){
+			partial.addSlice( DataSlice.newBuilder().setIndex(i).setLimit(limit).setData(ByteString.copyFrom(new byte[]{ (byte) i })) );
+		}
+		weSync.getDataService().store(partial.build());
+		FileData holes = requestGetFile(juliet, FileData.newBuilder().setId(partialId)
+				.addSlice( DataSlice.newBuilder().setIndex(0).setLimit(limit) )
+				.addSlice( DataSlice.newBuilder().setIndex(1).setLimit(limit) )
+				.addSlice( DataSlice.newBuilder().setIndex(4).setLimit(limit) )
+				.addSlice( DataSlice.newBuilder().setIndex(5).setLimit(limit) ).build());
+		assertTrue( 2 == holes.getSliceCount() );
+		assertTrue( 4 == holes.getSlice(0).getIndex() && 5 == holes.getSlice(1).getIndex() );
+		assertTrue( 3 == requestGetFile(juliet, FileData.newBuilder().setId(partialId).build()).getSliceCount() );
+		
+		//Not supported version
+		out.reset();
+		uri.protocolVersion = (byte) 99;
+		assertTrue( -1 == weSync.request(juliet, ByteBuffer.wrap(WeSyncURI.toBytes(uri)), ByteBuffer.wrap(reqData), out) );
+		uri.protocolVersion = weSync.version();
+		
+		//No access by others
+		out.reset();
+		assertTrue( -1 == weSync.request(lawrence, ByteBuffer.wrap(WeSyncURI.toBytes(uri)), ByteBuffer.wrap(reqData), out) );
+	}
+	
 	@Test
 	public void testNormalConversation() throws IOException{
 		//Sync Folder
@@ -1,6 +1,7 @@
 package com.weibo.wesync;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.junit.Test;
 
@@ -24,4 +25,27 @@ public class WeSyncURITest extends TestCase {
 		WeSyncURI uri2 = WeSyncURI.fromBytes( WeSyncURI.toBytes(uri) );
 		assertTrue( uri2.equals(uri) );
 	}
+	
+	@Test
+	public void testWesyncURIOnBuffer() throws IOException{
+		WeSyncURI uri = new WeSyncURI();
+		uri.protocolVersion = 20;
+		uri.command = Command.Sync.toByte();
+		uri.guid = "1234567890abcdefg";
+		uri.deviceType = "iphone";
+		uri.args[1] = "juliet-romeo-101";
+		byte[] data = WeSyncURI.toBytes(uri);
+		
+		ByteBuffer heap = ByteBuffer.allocate(data.length + 8);
+		heap.position(4);
+		heap.put(data).flip();
+		heap.position(4);
+		assertTrue( WeSyncURI.fromBytes(heap).equals(uri) );
+		assertEquals( 4, heap.position() );
+		
+		ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+		direct.put(data).flip();
+		assertTrue( WeSyncURI.fromBytes(direct).equals(uri) );
+		assertEquals( 0, direct.position() );
+	}
 }
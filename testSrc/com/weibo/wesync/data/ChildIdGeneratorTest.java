@@ -0,0 +1,68 @@
+package com.weibo.wesync.data;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class ChildIdGeneratorTest extends TestCase {
+	private String folderId = "juliet-conv-romeo";
+
+	@Test
+	public void testDateStamp(){
+		Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+		cal.clear();
+		cal.set(2012, Calendar.DECEMBER, 31, 23, 59, 59);
+		assertEquals( 121231, ChildIdGenerator.dateStamp(cal.getTimeInMillis()) );
+		cal.add(Calendar.SECOND, 1);
+		assertEquals( 130101, ChildIdGenerator.dateStamp(cal.getTimeInMillis()) );
+		cal.add(Calendar.DAY_OF_MONTH, -1);
+		assertEquals( 121231, ChildIdGenerator.dateStamp(cal.getTimeInMillis()) );
+
+		long id = ChildIdGenerator.stamp(42);
+		assertEquals( 42, ChildIdGenerator.counterOf(id) );
+		assertEquals( ChildIdGenerator.dateStamp(), id % 1000000 );
+	}
+
+	@Test
+	public void testBlock(){
+		MemoryDataStore store = new MemoryDataStore();
+		ChildIdGenerator gen = new ChildIdGenerator(store, 10);
+		assertEquals( 1, gen.next(folderId) );
+		assertEquals( 10, store.getMaxChildId(folderId) );
+
+		//Another server takes the next block
+		store.reserveChildIdBlock(folderId, 10);
+		for(int i=2; i<=10; i++){
+			assertEquals( i, gen.next(folderId) );
+		}
+		assertEquals( 21, gen.next(folderId) );
+		assertEquals( 30, store.getMaxChildId(folderId) );
+	}
+
+	@Test
+	public void testUniqueUnderContention() throws InterruptedException{
+		final ChildIdGenerator gen = new ChildIdGenerator(new MemoryDataStore(), 7);
+		final Set<Long> ids = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+		final int threads = 8, each = 5000;
+		final CountDownLatch done = new CountDownLatch(threads);
+		for(int t=0; t<threads; t++){
+			new Thread(new Runnable(){
+				public void run() {
+					for(int i=0; i<each; i++){
+						ids.add( gen.next(folderId) );
+					}
+					done.countDown();
+				}
+			}).start();
+		}
+		done.await();
+		assertEquals( threads * each, ids.size() );
+	}
+}
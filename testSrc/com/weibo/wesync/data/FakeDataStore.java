@@ -1,18 +1,20 @@
 package com.weibo.wesync.data;
 
-import java.util.Calendar;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
-import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.weibo.wesync.data.WeSyncMessage.DataSlice;
 import com.weibo.wesync.data.WeSyncMessage.FileData;
@@ -31,8 +33,18 @@ public class FakeDataStore implements DataStore {
 	private Map<String, Meta> msgStore = new ConcurrentHashMap<String, Meta>();
 	private Map<String, byte[]> fileStore = new ConcurrentHashMap<String, byte[]>();
 	
-	//cache for complete file
-	private Map<String, FileData> fileCache = new ConcurrentHashMap<String, FileData>();
+	//uploads of the incomplete files
+	private Map<String, UploadSession> uploads = new ConcurrentHashMap<String, UploadSession>();
+	private SliceContents sliceContents = new SliceContents( new OffHeapSliceStore(MemoryDataStore.DEFAULT_FILE_BYTES) );
+	private final SliceVerifier verifier;
+
+	public FakeDataStore() {
+		this(SliceVerifier.getDefault());
+	}
+
+	public FakeDataStore(SliceVerifier verifier) {
+		this.verifier = verifier;
+	}
 
 	private Folder getFolderInner( String folderId ){
 		Folder instore = folderStore.get(folderId);
@@ -90,32 +102,41 @@ public class FakeDataStore implements DataStore {
 	}
 
 	@Override
-	public FileData storeFile(FileData fileData) {
-		FileData.Builder builder = FileData.newBuilder().mergeFrom(fileData);
-		
-		FileData prevData = fileCache.get( fileData.getId() );
-		if( null != prevData ){
-			builder.addAllSlice( prevData.getSliceList() );
+	public synchronized FileData storeFile(FileData fileData) {
+		String fileId = fileData.getId();
+		UploadSession session = uploads.get(fileId);
+		if( null == session ){
+			session = new UploadSession(fileId);
+			uploads.put(fileId, session);
+		}
+		for( DataSlice slice : fileData.getSliceList() ){
+			session.accept(slice);
 		}
+		if( fileData.hasMd5() ) session.setMd5( fileData.getMd5() );
 		
-		FileData data = builder.build();
-		if( FileDataHelper.isSane(data) ) {
-			FileData fixed = FileDataHelper.removeDuplicate(data);
-			fileStore.put(fileData.getId(), fixed.toByteArray() );
-			
-			//This cache can reserved for performance
-			fileCache.remove(fileData.getId());
-		}else{
-			fileCache.put(fileData.getId(), data);
-			
-			if( FileDataHelper.nearComplete(data) ){
-				List<DataSlice> missingSlices = FileDataHelper.findMissing(data);
-				FileData missing = FileData.newBuilder().setId(data.getId()).addAllSlice(missingSlices).build();
-				return missing;
+		if( session.isComplete() ) {
+			//The whole file is checked once completed
+			FileData file = session.toFileData();
+			if( file.hasMd5() ){
+				List<ByteString> data = FileDataHelper.dataOf(file.getSliceList(), this);
+				if( null == data || !verifier.verifyFile(file.getMd5(), data) ){
+					FileData.Builder resend = FileData.newBuilder().setId(fileId);
+					for( DataSlice s : file.getSliceList() ){
+						session.discard(s.getIndex());
+						if( FileDataHelper.isReference(s) ) sliceContents.release(s.getMd5(), fileId);
+						resend.addSlice( s.toBuilder().clearData() );
+					}
+					return resend.build();
+				}
 			}
+			fileStore.put(fileId, file.toByteArray() );
+			uploads.remove(fileId);
+		}else if( session.isNearComplete() ){
+			List<DataSlice> missingSlices = session.findMissing();
+			return FileData.newBuilder().setId(fileId).addAllSlice(missingSlices).build();
 		}
 		
-		return FileData.newBuilder().setId(data.getId()).build();
+		return FileData.newBuilder().setId(fileId).build();
 	}
 
 	@Override
@@ -134,11 +155,13 @@ public class FakeDataStore implements DataStore {
 
 	@Override
 	public FileData getFileById(String fileId) {
-		FileData data = fileCache.get(fileId);
-		if( null == data ){
+		UploadSession session = uploads.get(fileId);
+		FileData data = null == session ? null : session.toFileData();
+		byte[] stored = fileStore.get(fileId);
+		if( null == data && null != stored ){
 			//File might be stored persistently
 			try {
-				data = FileData.parseFrom( fileStore.get(fileId) );
+				data = FileData.parseFrom( stored );
 			} catch (InvalidProtocolBufferException e) {
 				log.warn("Spoiled file data, id: " + fileId );
 			}
@@ -146,6 +169,27 @@ public class FakeDataStore implements DataStore {
 		return data;
 	}
 
+	@Override
+	public synchronized boolean removeFile(String fileId) {
+		boolean partial = null != uploads.remove(fileId);
+		return null != fileStore.remove(fileId) || partial;
+	}
+
+	@Override
+	public List<ByteString> getSliceContents(List<String> md5s) {
+		return sliceContents.get(md5s);
+	}
+
+	@Override
+	public boolean retainSliceContent(String md5, String fileId, ByteString data) {
+		return sliceContents.retain(md5, fileId, data);
+	}
+
+	@Override
+	public boolean releaseSliceContent(String md5, String fileId) {
+		return sliceContents.release(md5, fileId);
+	}
+
 	@Override
 	public SortedSet<FolderChange> getFolderChanges(String folderId) {
 		//Redis command: ZRANGE
@@ -238,19 +282,22 @@ public class FakeDataStore implements DataStore {
 	@Override
 	public long reserveChildId(String folderId) {
 		//Redis command: INCR
-		Folder instore = getFolderInner( folderId );
-		
-		long newId =  ++instore.maxChildId;
+		long newId = reserveChildIdBlock(folderId, 1);
 		// Multi-idc support
 		long idWithIDC = newId * IDC_NUMBER + IDC_INDEX;
 
 		// Add DateStamp for shard in DB, the MMDD.
-		Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
-		int stamp = cal.get(Calendar.YEAR) % 100 * 10000
-				+ (cal.get(Calendar.MONTH) + 1) * 100
-				+ cal.get(Calendar.DAY_OF_MONTH);
+		return ChildIdGenerator.stamp(idWithIDC);
+	}
 
-		return idWithIDC * 1000000 + stamp;
+	@Override
+	public long reserveChildIdBlock(String folderId, int num) {
+		//Redis command: INCRBY
+		Folder instore = getFolderInner( folderId );
+		synchronized( instore ){
+			instore.maxChildId += num;
+			return instore.maxChildId;
+		}
 	}
 
 	@Override
@@ -457,4 +504,60 @@ public class FakeDataStore implements DataStore {
 		}
 		return true;
 	}
+
+	@Override
+	public boolean addFolderChanges(Map<String, FolderChange> changes) {
+		for( Map.Entry<String, FolderChange> e : changes.entrySet() ){
+			addFolderChange(e.getKey(), e.getValue());
+		}
+		return true;
+	}
+
+	@Override
+	public boolean addChildren(String folderId, Collection<FolderChild> children) {
+		for( FolderChild fc : children ){
+			addChild(folderId, fc.id, fc.score);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean addChildren(Map<String, FolderChild> children) {
+		for( Map.Entry<String, FolderChild> e : children.entrySet() ){
+			addChild(e.getKey(), e.getValue().id, e.getValue().score);
+		}
+		return true;
+	}
+
+	@Override
+	public Map<String, Long> reserveChildIds(List<String> folderIds) {
+		Map<String, Long> ids = new HashMap<String, Long>();
+		for( String fid : folderIds ){
+			ids.put(fid, reserveChildId(fid));
+		}
+		return ids;
+	}
+
+	@Override
+	public Map<String, Boolean> isChildMulti(Map<String, String> childIds) {
+		Map<String, Boolean> ret = new HashMap<String, Boolean>();
+		for( Map.Entry<String, String> e : childIds.entrySet() ){
+			ret.put(e.getKey(), isChild(e.getValue(), e.getKey()));
+		}
+		return ret;
+	}
+
+	@Override
+	public List<Meta> getMetaMessages(List<String> metaMsgIds) {
+		List<Meta> ret = new ArrayList<Meta>(metaMsgIds.size());
+		for( String id : metaMsgIds ){
+			ret.add( getMetaMessage(id) );
+		}
+		return ret;
+	}
+
+	@Override
+	public DataStorePipeline pipelined() {
+		return new DirectDataStorePipeline(this);
+	}
 }
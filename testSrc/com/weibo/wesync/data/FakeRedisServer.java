@@ -0,0 +1,416 @@
+package com.weibo.wesync.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Embedded stand-in of Redis, which speaks RESP and supports the commands used by RedisDataStore.
+ * EVAL runs the scripts of RedisDataStore only, by their equivalents here.
+ */
+public class FakeRedisServer {
+	private static final class ZEntry implements Comparable<ZEntry> {
+		final double score;
+		final String member;
+
+		ZEntry(double score, String member){
+			this.score = score;
+			this.member = member;
+		}
+
+		@Override
+		public int compareTo(ZEntry o) {
+			if( score != o.score ) return score < o.score ? -1 : 1;
+			return member.compareTo(o.member);
+		}
+	}
+
+	private static final class ZSet {
+		final Map<String, Double> scores = new HashMap<String, Double>();
+		final TreeSet<ZEntry> entries = new TreeSet<ZEntry>();
+
+		boolean add(double score, String member){
+			Double prev = scores.put(member, score);
+			if( null != prev ) entries.remove(new ZEntry(prev, member));
+			entries.add(new ZEntry(score, member));
+			return null == prev;
+		}
+
+		boolean remove(String member){
+			Double prev = scores.remove(member);
+			if( null == prev ) return false;
+			entries.remove(new ZEntry(prev, member));
+			return true;
+		}
+
+		List<ZEntry> list(){
+			return new ArrayList<ZEntry>(entries);
+		}
+	}
+
+	private final ServerSocket serverSocket;
+	private final Map<String, byte[]> strings = new HashMap<String, byte[]>();
+	private final Map<String, ZSet> zsets = new HashMap<String, ZSet>();
+	private final Map<String, Set<String>> sets = new HashMap<String, Set<String>>();
+	private final Map<String, Map<String, String>> hashes = new HashMap<String, Map<String, String>>();
+	public volatile int commandCount = 0;
+
+	public FakeRedisServer() throws IOException {
+		serverSocket = new ServerSocket(0);
+		Thread acceptor = new Thread(new Runnable(){
+			public void run() {
+				while( !serverSocket.isClosed() ){
+					try {
+						final Socket socket = serverSocket.accept();
+						Thread worker = new Thread(new Runnable(){
+							public void run() {
+								serve(socket);
+							}
+						});
+						worker.setDaemon(true);
+						worker.start();
+					} catch (IOException e) {
+						// closed
+					}
+				}
+			}
+		});
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	public int getPort(){
+		return serverSocket.getLocalPort();
+	}
+
+	public void close() throws IOException {
+		serverSocket.close();
+	}
+
+	private void serve(Socket socket){
+		try {
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+			while( true ){
+				List<String> args = readCommand(in);
+				if( null == args ) break;
+				synchronized( this ){
+					commandCount++;
+					execute(args, out);
+				}
+				if( in.available() == 0 ) out.flush();
+			}
+			socket.close();
+		} catch (IOException e) {
+			// client gone
+		}
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int c;
+		while( (c = in.read()) != '\r' ){
+			if( c < 0 ) return null;
+			sb.append((char) c);
+		}
+		in.read();
+		return sb.toString();
+	}
+
+	private static List<String> readCommand(InputStream in) throws IOException {
+		String line = readLine(in);
+		if( null == line ) return null;
+		int num = Integer.parseInt(line.substring(1));
+		List<String> args = new ArrayList<String>(num);
+		for(int i=0; i<num; i++){
+			int len = Integer.parseInt(readLine(in).substring(1));
+			byte[] data = new byte[len];
+			int offset = 0;
+			while( offset < len ){
+				int n = in.read(data, offset, len-offset);
+				if( n < 0 ) return null;
+				offset += n;
+			}
+			in.read();
+			in.read();
+			args.add(new String(data, "ISO-8859-1"));
+		}
+		return args;
+	}
+
+	private static void writeInt(OutputStream out, long value) throws IOException {
+		out.write((":" + value + "\r\n").getBytes("ISO-8859-1"));
+	}
+	private static void writeBulk(OutputStream out, String value) throws IOException {
+		if( null == value ){
+			out.write("$-1\r\n".getBytes("ISO-8859-1"));
+			return;
+		}
+		byte[] data = value.getBytes("ISO-8859-1");
+		out.write(("$" + data.length + "\r\n").getBytes("ISO-8859-1"));
+		out.write(data);
+		out.write("\r\n".getBytes("ISO-8859-1"));
+	}
+	private static void writeArray(OutputStream out, List<String> values) throws IOException {
+		out.write(("*" + values.size() + "\r\n").getBytes("ISO-8859-1"));
+		for(String v : values){
+			writeBulk(out, v);
+		}
+	}
+	private static void writeInts(OutputStream out, long... values) throws IOException {
+		out.write(("*" + values.length + "\r\n").getBytes("ISO-8859-1"));
+		for(long v : values){
+			writeInt(out, v);
+		}
+	}
+	private static String formatScore(double score){
+		if( score == Math.rint(score) ) return String.valueOf((long) score);
+		return String.valueOf(score);
+	}
+
+	private ZSet zset(String key){
+		ZSet z = zsets.get(key);
+		if( null == z ){
+			z = new ZSet();
+			zsets.put(key, z);
+		}
+		return z;
+	}
+
+	private Map<String, String> hash(String key){
+		Map<String, String> h = hashes.get(key);
+		if( null == h ){
+			h = new HashMap<String, String>();
+			hashes.put(key, h);
+		}
+		return h;
+	}
+
+	private static int[] normalize(int start, int stop, int size){
+		if( start < 0 ) start += size;
+		if( stop < 0 ) stop += size;
+		if( start < 0 ) start = 0;
+		if( stop >= size ) stop = size-1;
+		return new int[]{start, stop};
+	}
+
+	private static boolean aboveMin(double score, String min){
+		if( min.equals("-inf") ) return true;
+		if( min.startsWith("(") ) return score > Double.parseDouble(min.substring(1));
+		return score >= Double.parseDouble(min);
+	}
+	private static boolean belowMax(double score, String max){
+		if( max.equals("+inf") ) return true;
+		if( max.startsWith("(") ) return score < Double.parseDouble(max.substring(1));
+		return score <= Double.parseDouble(max);
+	}
+	private static boolean belowLexMax(String member, String max){
+		if( max.equals("+") ) return true;
+		if( max.equals("-") ) return false;
+		int c = member.compareTo(max.substring(1));
+		return max.startsWith("(") ? c < 0 : c <= 0;
+	}
+
+	private void execute(List<String> args, OutputStream out) throws IOException {
+		String cmd = args.get(0).toUpperCase();
+		String key = args.size() > 1 ? args.get(1) : null;
+
+		if( cmd.equals("PING") ){
+			out.write("+PONG\r\n".getBytes("ISO-8859-1"));
+		}else if( cmd.equals("GET") ){
+			byte[] v = strings.get(key);
+			writeBulk(out, null == v ? null : new String(v, "ISO-8859-1"));
+		}else if( cmd.equals("MGET") ){
+			List<String> values = new ArrayList<String>();
+			for(String k : args.subList(1, args.size())){
+				byte[] v = strings.get(k);
+				values.add(null == v ? null : new String(v, "ISO-8859-1"));
+			}
+			writeArray(out, values);
+		}else if( cmd.equals("SET") ){
+			strings.put(key, args.get(2).getBytes("ISO-8859-1"));
+			out.write("+OK\r\n".getBytes("ISO-8859-1"));
+		}else if( cmd.equals("SETNX") ){
+			boolean absent = !strings.containsKey(key);
+			if( absent ) strings.put(key, args.get(2).getBytes("ISO-8859-1"));
+			writeInt(out, absent ? 1 : 0);
+		}else if( cmd.equals("DEL") ){
+			int n = 0;
+			for(String k : args.subList(1, args.size())){
+				if( null != strings.remove(k) ) n++;
+				if( null != zsets.remove(k) ) n++;
+				if( null != sets.remove(k) ) n++;
+				if( null != hashes.remove(k) ) n++;
+			}
+			writeInt(out, n);
+		}else if( cmd.equals("INCR") || cmd.equals("INCRBY") ){
+			byte[] v = strings.get(key);
+			long by = cmd.equals("INCR") ? 1 : Long.parseLong(args.get(2));
+			long n = (null == v ? 0 : Long.parseLong(new String(v, "ISO-8859-1"))) + by;
+			strings.put(key, String.valueOf(n).getBytes("ISO-8859-1"));
+			writeInt(out, n);
+		}else if( cmd.equals("ZADD") ){
+			ZSet z = zset(key);
+			int n = 0;
+			for(int i=2; i+1<args.size(); i+=2){
+				if( z.add(Double.parseDouble(args.get(i)), args.get(i+1)) ) n++;
+			}
+			writeInt(out, n);
+		}else if( cmd.equals("ZREM") ){
+			ZSet z = zset(key);
+			int n = 0;
+			for(String m : args.subList(2, args.size())){
+				if( z.remove(m) ) n++;
+			}
+			writeInt(out, n);
+		}else if( cmd.equals("ZCARD") ){
+			writeInt(out, zset(key).scores.size());
+		}else if( cmd.equals("ZSCORE") ){
+			Double score = zset(key).scores.get(args.get(2));
+			writeBulk(out, null == score ? null : formatScore(score));
+		}else if( cmd.equals("ZRANK") ){
+			ZSet z = zset(key);
+			Double score = z.scores.get(args.get(2));
+			if( null == score ){
+				writeBulk(out, null);
+			}else{
+				writeInt(out, z.entries.headSet(new ZEntry(score, args.get(2))).size());
+			}
+		}else if( cmd.equals("ZRANGE") ){
+			List<ZEntry> list = zset(key).list();
+			int[] range = normalize(Integer.parseInt(args.get(2)), Integer.parseInt(args.get(3)), list.size());
+			boolean withScores = args.size() > 4 && args.get(4).equalsIgnoreCase("WITHSCORES");
+			List<String> values = new ArrayList<String>();
+			for(int i=range[0]; i<=range[1]; i++){
+				values.add(list.get(i).member);
+				if( withScores ) values.add(formatScore(list.get(i).score));
+			}
+			writeArray(out, values);
+		}else if( cmd.equals("ZREMRANGEBYRANK") ){
+			ZSet z = zset(key);
+			List<ZEntry> list = z.list();
+			int[] range = normalize(Integer.parseInt(args.get(2)), Integer.parseInt(args.get(3)), list.size());
+			int n = 0;
+			for(int i=range[0]; i<=range[1]; i++){
+				z.remove(list.get(i).member);
+				n++;
+			}
+			writeInt(out, n);
+		}else if( cmd.equals("ZREMRANGEBYSCORE") ){
+			ZSet z = zset(key);
+			int n = 0;
+			for(ZEntry e : z.list()){
+				if( aboveMin(e.score, args.get(2)) && belowMax(e.score, args.get(3)) ){
+					z.remove(e.member);
+					n++;
+				}
+			}
+			writeInt(out, n);
+		}else if( cmd.equals("ZREMRANGEBYLEX") ){
+			//Only "-" is supported as the min
+			ZSet z = zset(key);
+			int n = 0;
+			Iterator<ZEntry> iter = z.list().iterator();
+			while( iter.hasNext() ){
+				ZEntry e = iter.next();
+				if( !belowLexMax(e.member, args.get(3)) ) break;
+				z.remove(e.member);
+				n++;
+			}
+			writeInt(out, n);
+		}else if( cmd.equals("HGET") ){
+			writeBulk(out, hash(key).get(args.get(2)));
+		}else if( cmd.equals("HDEL") ){
+			Map<String, String> h = hash(key);
+			int n = 0;
+			for(String f : args.subList(2, args.size())){
+				if( null != h.remove(f) ) n++;
+			}
+			if( h.isEmpty() ) hashes.remove(key);
+			writeInt(out, n);
+		}else if( cmd.equals("HLEN") ){
+			writeInt(out, hash(key).size());
+		}else if( cmd.equals("HKEYS") ){
+			writeArray(out, new ArrayList<String>(hash(key).keySet()));
+		}else if( cmd.equals("HVALS") ){
+			writeArray(out, new ArrayList<String>(hash(key).values()));
+		}else if( cmd.equals("EVAL") ){
+			eval(args, out);
+		}else{
+			out.write(("-ERR unknown command '" + cmd + "'\r\n").getBytes("ISO-8859-1"));
+		}
+	}
+
+	private void eval(List<String> args, OutputStream out) throws IOException {
+		String script = args.get(1);
+		if( script.equals(RedisDataStore.STORE_SLICES_SCRIPT) ){
+			storeSlices(args, out);
+			return;
+		}
+		String content = args.get(3);
+		String refsKey = args.get(4);
+		Set<String> refs = sets.get(refsKey);
+		if( script.equals(RedisDataStore.RETAIN_SCRIPT) ){
+			if( args.size() > 6 ){
+				if( !strings.containsKey(content) ) strings.put(content, args.get(6).getBytes("ISO-8859-1"));
+			}else if( !strings.containsKey(content) ){
+				writeInt(out, 0);
+				return;
+			}
+			if( null == refs ){
+				refs = new HashSet<String>();
+				sets.put(refsKey, refs);
+			}
+			refs.add(args.get(5));
+			writeInt(out, 1);
+		}else if( script.equals(RedisDataStore.RELEASE_SCRIPT) ){
+			boolean removed = null != refs && refs.remove(args.get(5));
+			if( null == refs || refs.isEmpty() ){
+				strings.remove(content);
+				sets.remove(refsKey);
+			}
+			writeInt(out, removed ? 1 : 0);
+		}else{
+			out.write("-NOSCRIPT unknown script\r\n".getBytes("ISO-8859-1"));
+		}
+	}
+
+	private void storeSlices(List<String> args, OutputStream out) throws IOException {
+		if( strings.containsKey(args.get(5)) ){
+			writeInts(out, 0, 0, 0, 0);
+			return;
+		}
+		Map<String, String> slices = hash(args.get(3));
+		Map<String, String> meta = hash(args.get(4));
+		long limit = Long.parseLong(args.get(7));
+		if( meta.containsKey("limit") ) limit = Math.max(limit, Long.parseLong(meta.get("limit")));
+		meta.put("limit", String.valueOf(limit));
+		if( !args.get(6).isEmpty() ) meta.put("md5", args.get(6));
+		for(int i=8; i+1<args.size(); i+=2){
+			long index = Long.parseLong(args.get(i));
+			if( index >= 1 && index <= limit && !slices.containsKey(args.get(i)) ) slices.put(args.get(i), args.get(i+1));
+		}
+		long received = (meta.containsKey("received") ? Long.parseLong(meta.get("received")) : 0) + (args.size()-8)/2;
+		meta.put("received", String.valueOf(received));
+		long n = slices.size();
+		if( slices.isEmpty() ) hashes.remove(args.get(3));
+		long taken = 0;
+		if( limit > 0 && n >= limit && !meta.containsKey("done") ){
+			meta.put("done", "1");
+			taken = 1;
+		}
+		writeInts(out, n, limit, received, taken);
+	}
+}
@@ -39,4 +39,23 @@ public class FolderChangeTest extends TestCase {
 		
 		assertTrue( changes.contains( FolderChange.fromString("+99") ));
 	}
+	
+	@Test
+	public void testOrder(){
+		FolderChange small = new FolderChange("9", true);
+		FolderChange large = new FolderChange(10, true);
+		assertTrue( small.hasScore() );
+		assertEquals( 10, large.score );
+		assertTrue( small.compareTo(large) < 0 );
+		assertTrue( new FolderChange("9", false).compareTo(small) < 0 );
+		assertTrue( large.equals( FolderChange.fromString("+10") ) );
+		
+		//Folder ids of root folder
+		FolderChange a = new FolderChange("juliet-conv-romeo", true);
+		FolderChange b = new FolderChange("juliet-conv-tybalt", true);
+		assertFalse( a.hasScore() );
+		assertTrue( a.compareTo(b) < 0 );
+		assertTrue( a.compareTo(FolderChange.fromString("+juliet-conv-romeo")) == 0 );
+		assertFalse( new FolderChange("99999999999999999999", true).hasScore() );
+	}
 }
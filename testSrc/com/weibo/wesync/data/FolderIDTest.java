@@ -22,4 +22,23 @@ public class FolderIDTest extends TestCase {
 		assertTrue(FolderID.getType("-").equals(FolderID.Type.Unknown));
 		assertTrue(FolderID.getType("-a").equals(FolderID.Type.Unknown));
 	}
+
+	@Test
+	public void testParsed() {
+		String convId = FolderID.onConversation("juliet", "romeo-2");
+		FolderID fid = FolderID.of(convId);
+		assertTrue(fid == FolderID.of(convId));
+		assertTrue(fid.equals(new FolderID(convId)));
+		assertEquals("juliet", fid.prefix);
+		assertEquals("romeo-2", fid.suffix);
+		assertEquals(FolderID.Type.Conversation, fid.type);
+		assertEquals(convId, fid.toString());
+		assertEquals("romeo-2", FolderID.getUserChatWith(convId));
+		assertEquals("", FolderID.getGroup(convId));
+
+		assertEquals(FolderID.Type.Group, FolderID.getType(new StringBuilder("juliet-grou-101")));
+		assertEquals(FolderID.Type.Unknown, FolderID.getType(new StringBuilder("juliet-rooted")));
+		assertEquals("a-unknown", FolderID.of("a-b").toString());
+		assertEquals("juliet-root", new FolderID(FolderID.onRoot("juliet")).toString());
+	}
 }
@@ -0,0 +1,66 @@
+package com.weibo.wesync.data;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class IndexedSkipListTest extends TestCase {
+	@Test
+	public void testAgainstTreeSet(){
+		IndexedSkipList<Long> list = new IndexedSkipList<Long>(null);
+		TreeSet<Long> expected = new TreeSet<Long>();
+		Random rand = new Random(47);
+
+		for(int i=0; i<5000; i++){
+			Long v = Long.valueOf( rand.nextInt(2000) );
+			if( rand.nextInt(3) == 0 ){
+				assertEquals( expected.remove(v), list.remove(v) );
+			}else{
+				assertEquals( expected.add(v), list.add(v) );
+			}
+			assertEquals( expected.size(), list.size() );
+		}
+
+		List<Long> sorted = new ArrayList<Long>(expected);
+		for(int i=0; i<sorted.size(); i++){
+			assertEquals( sorted.get(i), list.get(i) );
+			assertEquals( i, list.rank(sorted.get(i)) );
+			assertEquals( i, list.headCount(sorted.get(i), false) );
+			assertEquals( i+1, list.headCount(sorted.get(i), true) );
+		}
+		assertEquals( -1, list.rank(Long.valueOf(-1)) );
+		assertNull( list.get(sorted.size()) );
+	}
+
+	@Test
+	public void testRangeAndRemoveFirst(){
+		IndexedSkipList<Long> list = new IndexedSkipList<Long>(null);
+		for(long i=0; i<100; i++){
+			list.add(Long.valueOf(i));
+		}
+
+		Iterator<Long> iter = list.range(10, 19);
+		long v = 10;
+		while( iter.hasNext() ){
+			assertEquals( v++, iter.next().longValue() );
+		}
+		assertEquals( 20, v );
+
+		assertEquals( 30, list.removeFirst(30) );
+		assertEquals( 70, list.size() );
+		assertEquals( 30, list.first().longValue() );
+		assertEquals( 99, list.last().longValue() );
+		assertEquals( 0, list.rank(Long.valueOf(30)) );
+
+		list.clear();
+		assertTrue( list.isEmpty() );
+		assertTrue( list.add(Long.valueOf(1)) );
+		assertEquals( 0, list.rank(Long.valueOf(1)) );
+	}
+}
@@ -0,0 +1,104 @@
+package com.weibo.wesync.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class LongSortedSetTest extends TestCase {
+	@Test
+	public void testAgainstTreeSet(){
+		LongSortedSet set = new LongSortedSet();
+		//Key and flag packed into the ordering of the pair
+		TreeSet<Long> expected = new TreeSet<Long>();
+		Random rand = new Random(47);
+
+		for(int i=0; i<5000; i++){
+			long key = rand.nextInt(500) - 100;
+			byte flag = (byte) rand.nextInt(2);
+			Long v = Long.valueOf( key*2 + flag );
+			if( rand.nextInt(3) == 0 ){
+				assertEquals( expected.remove(v), set.remove(key, flag) );
+			}else{
+				assertEquals( expected.add(v), set.add(key, flag) );
+			}
+			assertEquals( expected.size(), set.size() );
+		}
+
+		List<Long> sorted = new ArrayList<Long>(expected);
+		for(int i=0; i<sorted.size(); i++){
+			long key = sorted.get(i) >> 1;
+			byte flag = (byte) (sorted.get(i) & 1);
+			assertEquals( key, set.key(i) );
+			assertEquals( flag, set.flag(i) );
+			assertEquals( i, set.rank(key, flag) );
+			assertEquals( i, set.headCount(key, flag, false) );
+			assertEquals( i+1, set.headCount(key, flag, true) );
+		}
+		assertEquals( -1, set.rank(-1000, (byte) 0) );
+		assertEquals( 0, set.headCount(-1000, (byte) 0, true) );
+		assertEquals( sorted.size(), set.headCount(1000, (byte) 0, true) );
+	}
+
+	@Test
+	public void testRemoveFirst(){
+		LongSortedSet set = new LongSortedSet();
+		for(int i=10; i>0; i--){
+			set.add(i, (byte) 1);
+		}
+		set.add(5, (byte) 0);
+		assertEquals( 5, set.key(4) );
+		assertEquals( 0, set.flag(4) );
+
+		assertEquals( 3, set.removeFirst(3) );
+		assertEquals( 8, set.size() );
+		assertEquals( 4, set.key(0) );
+		LongSortedSet range = set.range(0, 2);
+		assertEquals( 2, range.size() );
+		assertEquals( 5, range.key(1) );
+		assertEquals( 0, range.flag(1) );
+
+		assertEquals( 8, set.removeFirst(100) );
+		assertTrue( set.isEmpty() );
+		assertFalse( set.contains(10, (byte) 1) );
+		assertTrue( set.add(10, (byte) 1) );
+	}
+
+	@Test
+	public void testConcurrentReading() throws InterruptedException{
+		final LongSortedSet set = new LongSortedSet();
+		final int num = 20000;
+		final boolean[] broken = { false };
+		Thread reader = new Thread(new Runnable(){
+			public void run(){
+				while( set.size() < num ){
+					//A range is taken at once, sorted whatever is written meanwhile
+					LongSortedSet range;
+					try{
+						range = set.range(0, set.size());
+					}catch(IndexOutOfBoundsException e){
+						//Removed after sizing
+						continue;
+					}
+					for(int i=1; i<range.size(); i++){
+						if( range.key(i-1) >= range.key(i) ) broken[0] = true;
+					}
+				}
+			}
+		});
+		reader.start();
+		//Appended, inserted and removed
+		for(int i=0; i<num; i++){
+			set.add(2*i, (byte) 0);
+			if( i % 3 == 0 ) set.add(2*i-1, (byte) 0);
+			if( i % 3 == 0 ) set.remove(2*i-1, (byte) 0);
+		}
+		reader.join();
+		assertFalse( broken[0] );
+		assertEquals( num, set.size() );
+	}
+}
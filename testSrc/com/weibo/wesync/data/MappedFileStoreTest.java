@@ -0,0 +1,161 @@
+package com.weibo.wesync.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+import com.weibo.wesync.data.WeSyncMessage.DataSlice;
+import com.weibo.wesync.data.WeSyncMessage.FileData;
+
+public class MappedFileStoreTest extends TestCase {
+	private File dir;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("wesync-files", "");
+		dir.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		File[] files = dir.listFiles();
+		if (null != files) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	private static FileData file(String id, int limit, int sliceSize) {
+		FileData.Builder builder = FileData.newBuilder().setId(id);
+		for (int i = limit; i > 0; i--) {
+			byte[] b = new byte[sliceSize];
+			b[0] = (byte) i;
+			builder.addSlice(DataSlice.newBuilder().setIndex(i).setLimit(limit).setData(ByteString.copyFrom(b)));
+		}
+		return builder.build();
+	}
+
+	@Test
+	public void testReadSlices() throws IOException {
+		MappedFileStore store = new MappedFileStore(dir, 4096);
+		assertNull(store.getSlices("f1", null));
+
+		store.put(file("f1", 5, 100));
+		List<DataSlice> all = store.getSlices("f1", null);
+		assertEquals(5, all.size());
+		assertEquals(1, all.get(0).getIndex());
+		assertEquals(5, all.get(0).getLimit());
+		assertEquals(100, all.get(0).getData().size());
+		assertEquals(1, all.get(0).getData().byteAt(0));
+
+		BitSet wanted = new BitSet();
+		wanted.set(2);
+		wanted.set(4);
+		wanted.set(9);
+		List<DataSlice> some = store.getSlices("f1", wanted);
+		assertEquals(2, some.size());
+		assertEquals(4, some.get(1).getIndex());
+		assertEquals(4, some.get(1).getData().byteAt(0));
+
+		//Larger than a segment, in a segment of its own
+		store.put(file("big", 3, 2000));
+		store.put(file("f2", 2, 10));
+		assertEquals(3, store.getFileCount());
+		assertEquals(3, store.getSegmentCount());
+		assertEquals(3, store.getSlices("big", null).size());
+		store.close();
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		MappedFileStore store = new MappedFileStore(dir, 4096);
+		store.put(file("f1", 2, 100));
+		store.put(file("f2", 2, 100));
+		store.put(file("f1", 3, 50));
+		assertTrue(store.remove("f2"));
+		assertFalse(store.remove("f2"));
+		store.close();
+
+		store = new MappedFileStore(dir, 4096);
+		assertEquals(1, store.getFileCount());
+		assertNull(store.getSlices("f2", null));
+		List<DataSlice> slices = store.getSlices("f1", null);
+		assertEquals(3, slices.size());
+		assertEquals(50, slices.get(2).getData().size());
+
+		//Appended after the recovered ones
+		store.put(file("f3", 1, 10));
+		store.close();
+		store = new MappedFileStore(dir, 4096);
+		assertEquals(2, store.getFileCount());
+		assertEquals(1, store.getSegmentCount());
+		store.close();
+	}
+
+	@Test
+	public void testMemoryDataStore() throws IOException {
+		MappedFileStore fileStore = new MappedFileStore(dir, 4096);
+		MemoryDataStore store = new MemoryDataStore(1024 * 1024, fileStore);
+		FileData data = file("f1", 4, 100);
+		store.storeFile(FileData.newBuilder().setId("f1").addSlice(data.getSlice(0)).build());
+		assertFalse(fileStore.contains("f1"));
+		store.storeFile(FileData.newBuilder().setId("f1").addAllSlice(data.getSliceList().subList(1, 4)).build());
+
+		//Moved out of the slice store on completion
+		assertTrue(fileStore.contains("f1"));
+		assertEquals(0, store.getSliceStore().getFileCount());
+		assertEquals(4, store.getFileById("f1").getSliceCount());
+		FileData got = store.getFileByIndex(FileData.newBuilder().setId("f1")
+				.addSlice(DataSlice.newBuilder().setIndex(3).setLimit(4)).build());
+		assertEquals(1, got.getSliceCount());
+		assertEquals(3, got.getSlice(0).getData().byteAt(0));
+		fileStore.close();
+	}
+
+	@Test
+	public void testContents() throws IOException {
+		MappedFileStore fileStore = new MappedFileStore(dir, 4096);
+		MemoryDataStore store = new MemoryDataStore(1024 * 1024, fileStore);
+		ByteString content = ByteString.copyFromUtf8("Starry night");
+		String md5 = FileDataHelper.md5(content);
+		assertTrue(store.retainSliceContent(md5, "f1", content));
+		assertTrue(store.retainSliceContent(md5, "f2", null));
+		assertEquals(1, store.getSliceStore().getContentCount());
+
+		//The content goes to disk once with the first file referring to it
+		DataSlice ref = DataSlice.newBuilder().setIndex(1).setLimit(1).setMd5(md5).build();
+		store.storeFile(FileData.newBuilder().setId("f1").addSlice(ref).build());
+		store.storeFile(FileData.newBuilder().setId("f2").addSlice(ref).build());
+		assertEquals(2, fileStore.getFileCount());
+		assertEquals(1, fileStore.getContentCount());
+		assertEquals(0, store.getSliceStore().getContentCount());
+		assertEquals(0, store.getSliceStore().getLiveBytes());
+		assertEquals(0, store.getFileById("f1").getSlice(0).getData().size());
+		assertEquals(content, store.getSliceContents(Arrays.asList(md5)).get(0));
+		fileStore.close();
+
+		//The references are found again on opening
+		fileStore = new MappedFileStore(dir, 4096);
+		store = new MemoryDataStore(1024 * 1024, fileStore);
+		assertEquals(Arrays.asList(md5), fileStore.getReferences("f1"));
+		assertEquals(content, store.getSliceContents(Arrays.asList(md5)).get(0));
+		assertTrue(store.releaseSliceContent(md5, "f1"));
+		assertNotNull(fileStore.getContent(md5));
+		assertTrue(store.releaseSliceContent(md5, "f2"));
+		assertNull(fileStore.getContent(md5));
+		fileStore.close();
+
+		fileStore = new MappedFileStore(dir, 4096);
+		assertEquals(0, fileStore.getContentCount());
+		fileStore.close();
+	}
+}
@@ -0,0 +1,166 @@
+package com.weibo.wesync.data;
+
+import java.util.SortedSet;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+import com.weibo.wesync.data.WeSyncMessage.DataSlice;
+import com.weibo.wesync.data.WeSyncMessage.FileData;
+
+public class MemoryDataStoreTest extends TestCase {
+	private String folderId = "juliet-conv-romeo";
+
+	private DataStore prepare(int num){
+		DataStore store = new MemoryDataStore();
+		store.createFolder(folderId);
+		for(int i=1; i<=num; i++){
+			store.addChild(folderId, String.valueOf(i*100), i*100);
+			store.addFolderChange(folderId, new FolderChange(String.valueOf(i*100), true));
+		}
+		return store;
+	}
+
+	@Test
+	public void testFolderMeta(){
+		DataStore store = new MemoryDataStore();
+		assertEquals( -1, store.getMaxChildId(folderId) );
+		store.createFolder(folderId);
+		assertEquals( 0, store.getMaxChildId(folderId) );
+		assertEquals( 1, store.reserveChildId(folderId) );
+		assertEquals( 2, store.reserveChildId(folderId) );
+		store.destroyFolder(folderId);
+		assertEquals( -1, store.getMaxChildId(folderId) );
+	}
+
+	@Test
+	public void testChildren(){
+		DataStore store = prepare(50);
+
+		assertEquals( 50, store.numberOfChildren(folderId) );
+		assertTrue( store.isChild("300", folderId) );
+		assertFalse( store.isChild("301", folderId) );
+
+		SortedSet<FolderChild> following = store.getFollowingChildren(folderId, "300", 5);
+		assertEquals( 5, following.size() );
+		assertEquals( 400, following.first().score );
+		assertEquals( 800, following.last().score );
+
+		SortedSet<FolderChild> preceding = store.getPrecedingChildren(folderId, "300", 5);
+		assertEquals( 2, preceding.size() );
+		assertEquals( 100, preceding.first().score );
+
+		SortedSet<FolderChild> last = store.getChildren(folderId, -20, -1);
+		assertEquals( 20, last.size() );
+		assertEquals( 5000, last.last().score );
+
+		assertTrue( store.removeChild(folderId, "300") );
+		assertFalse( store.isChild("300", folderId) );
+		assertEquals( 49, store.numberOfChildren(folderId) );
+
+		store.removeChildren(folderId, 9);
+		assertEquals( 40, store.numberOfChildren(folderId) );
+		assertFalse( store.isChild("1000", folderId) );
+		assertEquals( 1100, store.getChildren(folderId).first().score );
+
+		//Re-adding updates the score
+		store.addChild(folderId, "1100", 9900);
+		assertEquals( 40, store.numberOfChildren(folderId) );
+		assertEquals( "1100", store.getChildren(folderId).last().id );
+	}
+
+	@Test
+	public void testChanges(){
+		DataStore store = prepare(30);
+
+		SortedSet<FolderChange> first = store.getFolderChanges(folderId, 0, 19);
+		assertEquals( 20, first.size() );
+		assertEquals( 100, first.first().score );
+		assertEquals( 2000, first.last().score );
+		assertTrue( first.contains(new FolderChange("500", true)) );
+		assertFalse( first.contains(new FolderChange("500", false)) );
+		SortedSet<FolderChange> sub = first.subSet(new FolderChange("450", true), new FolderChange("800", true));
+		assertEquals( 3, sub.size() );
+		assertEquals( 500, sub.first().score );
+		assertEquals( 19, first.tailSet(new FolderChange("200", true)).size() );
+		//Read only, not affected by the writes
+		store.removeFolderChange(folderId, new FolderChange("100", true));
+		assertEquals( 20, first.size() );
+
+		FolderChange flag = new FolderChange("1000", true);
+		assertEquals( 3, store.getPrecedingChanges(folderId, flag, 3).size() );
+		assertEquals( 20, store.getFollowingChanges(folderId, flag, 100).size() );
+
+		store.removePrecedingFolderChange(folderId, flag);
+		assertEquals( 20, store.numberOfFolderChanges(folderId) );
+
+		//Removal is by position even if the flag has gone
+		store.removePrecedingFolderChange(folderId, new FolderChange("1050", true));
+		assertEquals( 20, store.numberOfFolderChanges(folderId) );
+		store.removePrecedingFolderChange(folderId, new FolderChange("1150", true));
+		assertEquals( 19, store.numberOfFolderChanges(folderId) );
+
+		assertEquals( 19, store.removeAllFolderChanges(folderId).size() );
+		assertEquals( 0, store.numberOfFolderChanges(folderId) );
+		assertTrue( store.getFolderChanges(folderId, 0, 19).isEmpty() );
+	}
+
+	@Test
+	public void testRootChangeMerge(){
+		DataStore store = new MemoryDataStore();
+		String rootId = FolderID.onRoot("juliet");
+
+		assertTrue( store.addFolderChange(rootId, new FolderChange(folderId, true)) );
+		assertTrue( store.addFolderChange(rootId, new FolderChange(folderId, true)) );
+		assertEquals( 1, store.numberOfFolderChanges(rootId) );
+	}
+
+	@Test
+	public void testMixedChanges(){
+		DataStore store = prepare(5);
+		assertTrue( store.addFolderChange(folderId, new FolderChange("300", false)) );
+		assertEquals( 6, store.numberOfFolderChanges(folderId) );
+		assertFalse( store.getFolderChanges(folderId, 2, 2).first().isAdd );
+
+		//Moved to the skip list in order
+		assertTrue( store.addFolderChange(folderId, new FolderChange("named", true)) );
+		assertEquals( 7, store.numberOfFolderChanges(folderId) );
+		SortedSet<FolderChange> all = store.getFolderChanges(folderId);
+		assertEquals( "100", all.first().childId );
+		assertEquals( 2, store.getPrecedingChanges(folderId, new FolderChange("300", false), 5).size() );
+		assertTrue( store.removeFolderChange(folderId, new FolderChange("300", false)) );
+		assertEquals( 6, store.numberOfFolderChanges(folderId) );
+	}
+
+	@Test
+	public void testFile(){
+		DataStore store = new MemoryDataStore();
+		String fileId = "romeo-juliet-file";
+		int limit = 10;
+		DataSlice.Builder slice = DataSlice.newBuilder().setLimit(limit);
+		FileData.Builder file = FileData.newBuilder().setId(fileId);
+		for(int i=1; i<limit; i++){
+			file.addSlice( slice.setIndex(i).setData(ByteString.copyFromUtf8("slice " + i)) );
+		}
+		assertEquals( 0, store.storeFile(file.build()).getSliceCount() );
+		
+		//Near complete with the duplicate ones, the missing one is asked for
+		FileData resp = store.storeFile(FileData.newBuilder().setId(fileId)
+				.addSlice( slice.setIndex(1).setData(ByteString.copyFromUtf8("slice 1")) ).build());
+		assertEquals( 1, resp.getSliceCount() );
+		assertEquals( limit, resp.getSlice(0).getIndex() );
+
+		store.storeFile(FileData.newBuilder().setId(fileId)
+				.addSlice( slice.setIndex(limit).setData(ByteString.copyFromUtf8("slice " + limit)) ).build());
+		FileData stored = store.getFileById(fileId);
+		assertEquals( limit, stored.getSliceCount() );
+		assertTrue( FileDataHelper.isSane(stored) );
+
+		FileData got = store.getFileByIndex(FileData.newBuilder().setId(fileId)
+				.addSlice( DataSlice.newBuilder().setIndex(3).setLimit(limit) ).build());
+		assertEquals( 1, got.getSliceCount() );
+		assertEquals( "slice 3", got.getSlice(0).getData().toStringUtf8() );
+	}
+}
@@ -0,0 +1,148 @@
+package com.weibo.wesync.data;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+import com.weibo.wesync.DataServiceImpl;
+import com.weibo.wesync.data.WeSyncMessage.Meta;
+
+public class MetaCacheTest extends TestCase {
+	private static Meta meta(String id, int contentSize) {
+		return Meta.newBuilder()
+				.setId(id)
+				.setType(ByteString.copyFrom(new byte[] { MetaMessageType.text.toByte() }))
+				.setContent(ByteString.copyFrom(new byte[contentSize]))
+				.build();
+	}
+
+	@Test
+	public void testSegmentedLru() {
+		//Ids of the same length for the same size
+		int size = MetaCache.sizeOf(meta("hot-000", 100));
+		//Room for 10 messages in one shard
+		MetaCache cache = new MetaCache(size * 10, 1);
+
+		//Hot ones are read twice and promoted
+		for (int i = 0; i < 5; i++) {
+			cache.put(meta(String.format("hot-%03d", i), 100));
+			assertNotNull(cache.get(String.format("hot-%03d", i)));
+		}
+		//A scan of one-hit messages only churns the probation segment
+		for (int i = 0; i < 100; i++) {
+			cache.put(meta(String.format("scn-%03d", i), 100));
+		}
+		for (int i = 0; i < 5; i++) {
+			assertNotNull(cache.get(String.format("hot-%03d", i)));
+		}
+		assertNull(cache.get("scn-000"));
+		assertTrue(cache.getBytes() <= cache.getMaxBytes());
+		assertEquals(10, cache.getSize());
+		assertEquals(95, cache.getEvictionCount());
+		assertEquals(10, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		cache.invalidate("hot-000");
+		assertNull(cache.get("hot-000"));
+		assertEquals(9, cache.getSize());
+	}
+
+	@Test
+	public void testSizeAware() {
+		MetaCache cache = new MetaCache(64 * 1024, 1);
+		//Audio content larger than the cache is never cached
+		cache.put(meta("audio", 128 * 1024));
+		assertNull(cache.get("audio"));
+		assertEquals(0, cache.getBytes());
+
+		//Large ones take the room of many small ones
+		for (int i = 0; i < 1000; i++) {
+			cache.put(meta("text-" + i, 100));
+		}
+		int before = cache.getSize();
+		cache.put(meta("image", 32 * 1024));
+		assertNotNull(cache.get("image"));
+		assertTrue(cache.getSize() < before);
+		assertTrue(cache.getBytes() <= cache.getMaxBytes());
+	}
+
+	@Test
+	public void testReadThrough() {
+		MemoryDataStore store = new MemoryDataStore();
+		DataServiceImpl ds = new DataServiceImpl(store, 1, 1024 * 1024);
+		Meta m1 = meta("f-1", 10);
+		Meta m2 = meta("f-2", 10);
+		store.addMetaMessage(m1);
+		store.addMetaMessage(m2);
+
+		assertEquals(m1, ds.getMetaMessage("f-1"));
+		assertEquals(m1, ds.getMetaMessage("f-1"));
+		assertEquals(1, ds.getMetaCache().getHitCount());
+
+		List<Meta> msgs = ds.getMetaMessages(Arrays.asList("f-1", "f-2", "f-3"));
+		assertEquals(m1, msgs.get(0));
+		assertEquals(m2, msgs.get(1));
+		assertNull(msgs.get(2));
+		assertEquals(2, ds.getMetaCache().getSize());
+
+		ds.removeMetaMessage(m1);
+		assertNull(ds.getMetaMessage("f-1"));
+		assertNull(store.getMetaMessage("f-1"));
+	}
+
+	@Test
+	public void testFillAfterInvalidate() {
+		MetaCache cache = new MetaCache(1024 * 1024, 1);
+		Meta m1 = meta("f-1", 10);
+
+		long stamp = cache.stamp("f-1");
+		cache.invalidate("f-1");
+		assertFalse(cache.fill(m1, stamp));
+		assertNull(cache.get("f-1"));
+
+		stamp = cache.stamp("f-1");
+		assertTrue(cache.fill(m1, stamp));
+		assertEquals(m1, cache.get("f-1"));
+		//Cached already
+		assertFalse(cache.fill(meta("f-1", 20), stamp));
+		assertEquals(m1, cache.get("f-1"));
+	}
+
+	@Test
+	public void testRemovedWhileReading() {
+		final DataServiceImpl[] ds = new DataServiceImpl[1];
+		MemoryDataStore store = new MemoryDataStore() {
+			//Removed right after the read of the store
+			@Override
+			public Meta getMetaMessage(String metaMsgId) {
+				Meta msg = super.getMetaMessage(metaMsgId);
+				if (null != msg) ds[0].removeMetaMessage(msg);
+				return msg;
+			}
+
+			@Override
+			public List<Meta> getMetaMessages(List<String> metaMsgIds) {
+				List<Meta> msgs = super.getMetaMessages(metaMsgIds);
+				for (Meta msg : msgs) {
+					if (null != msg) ds[0].removeMetaMessage(msg);
+				}
+				return msgs;
+			}
+		};
+		ds[0] = new DataServiceImpl(store, 1, 1024 * 1024);
+		Meta m1 = meta("f-1", 10);
+		Meta m2 = meta("f-2", 10);
+		store.addMetaMessage(m1);
+		store.addMetaMessage(m2);
+
+		assertEquals(m1, ds[0].getMetaMessage("f-1"));
+		assertNull(ds[0].getMetaMessage("f-1"));
+		assertEquals(m2, ds[0].getMetaMessages(Arrays.asList("f-2")).get(0));
+		assertNull(ds[0].getMetaMessages(Arrays.asList("f-2")).get(0));
+		assertEquals(0, ds[0].getMetaCache().getSize());
+	}
+}
@@ -0,0 +1,147 @@
+package com.weibo.wesync.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+import com.weibo.wesync.data.WeSyncMessage.DataSlice;
+
+public class OffHeapSliceStoreTest extends TestCase {
+	private static ByteString data(int size, int value) {
+		byte[] b = new byte[size];
+		for (int i = 0; i < size; i++) {
+			b[i] = (byte) (value + i);
+		}
+		return ByteString.copyFrom(b);
+	}
+
+	@Test
+	public void testSlices() {
+		OffHeapSliceStore store = new OffHeapSliceStore(64 * 1024, 4096);
+		assertNull(store.getSlices("f1", null));
+
+		store.put("f1", 3, 4, data(1000, 3));
+		store.put("f1", 1, 4, data(1000, 1));
+		store.put("f1", 1, 4, data(1000, 11));
+		OffHeapSliceStore.FileState state = store.getState("f1");
+		assertEquals(4, state.limit);
+		assertEquals(3, state.received);
+		assertFalse(state.isComplete());
+		assertTrue(state.missing.isEmpty());
+		//Near complete by the number received, the missing ones are asked for
+		store.put("f1", 3, 4, data(1000, 3));
+		state = store.getState("f1");
+		assertEquals(4, state.received);
+		assertEquals(2, state.missing.size());
+		assertEquals(2, state.missing.get(0).getIndex());
+		assertEquals(2000, store.getLiveBytes());
+
+		List<DataSlice> slices = store.getSlices("f1", null);
+		assertEquals(2, slices.size());
+		assertEquals(1, slices.get(0).getIndex());
+		assertEquals(data(1000, 11), slices.get(0).getData());
+		assertEquals(4, slices.get(1).getLimit());
+
+		store.put("f1", 2, 4, data(1000, 2));
+		store.put("f1", 4, 4, data(10, 4));
+		assertTrue(store.getState("f1").isComplete());
+		BitSet wanted = new BitSet();
+		wanted.set(4);
+		slices = store.getSlices("f1", wanted);
+		assertEquals(1, slices.size());
+		assertEquals(data(10, 4), slices.get(0).getData());
+
+		assertTrue(store.remove("f1"));
+		assertNull(store.getState("f1"));
+		assertEquals(0, store.getLiveBytes());
+
+		assertFalse(store.put("f2", 1, 1, data(8192, 0)));
+		assertEquals(1, store.getRejectedSliceCount());
+	}
+
+	@Test
+	public void testEviction() {
+		//4 arenas of 2 slices
+		OffHeapSliceStore store = new OffHeapSliceStore(4 * 2048, 2048);
+		final List<String> evicted = new ArrayList<String>();
+		store.setEvictionListener(new OffHeapSliceStore.EvictionListener() {
+			@Override
+			public void onEvicted(String fileId, List<String> md5s) {
+				evicted.add(fileId);
+				evicted.addAll(md5s);
+			}
+
+			@Override
+			public void onContentEvicted(String md5) {
+				evicted.add(md5);
+			}
+		});
+		for (int i = 0; i < 4; i++) {
+			store.put("old-" + i, DataSlice.newBuilder().setIndex(1).setLimit(2).setData(data(1000, i)).setMd5("md5-" + i).build());
+			store.put("old-" + i, 2, 2, data(1000, i));
+		}
+		assertEquals(4, store.getFileCount());
+		assertEquals(4 * 2048, store.getAllocatedBytes());
+
+		//The oldest arena is recycled
+		store.put("new", 1, 1, data(1000, 0));
+		assertNull(store.getState("old-0"));
+		assertNotNull(store.getState("old-1"));
+		assertEquals(1, store.getEvictedFileCount());
+		assertEquals(Arrays.asList("old-0", "md5-0"), evicted);
+		assertEquals(4 * 2048, store.getAllocatedBytes());
+		assertEquals(data(1000, 1), store.getSlices("old-1", null).get(0).getData());
+		assertEquals(data(1000, 0), store.getSlices("new", null).get(0).getData());
+	}
+
+	@Test
+	public void testContents() {
+		//4 arenas of 2 slices
+		OffHeapSliceStore store = new OffHeapSliceStore(4 * 2048, 2048);
+		final List<String> evicted = new ArrayList<String>();
+		store.setEvictionListener(new OffHeapSliceStore.EvictionListener() {
+			@Override
+			public void onEvicted(String fileId, List<String> md5s) {
+				evicted.add(fileId);
+			}
+
+			@Override
+			public void onContentEvicted(String md5) {
+				evicted.add(md5);
+			}
+		});
+		assertTrue(store.putContent("md5-0", data(1000, 0)));
+		assertTrue(store.putContent("md5-0", data(1000, 1)));
+		assertEquals(data(1000, 0), store.getContent("md5-0"));
+		assertEquals(1000, store.getLiveBytes());
+
+		//The slices referring to the contents take no arena
+		store.put("ref", DataSlice.newBuilder().setIndex(1).setLimit(1).setMd5("md5-0").build());
+		assertEquals(ByteString.EMPTY, store.getSlices("ref", null).get(0).getData());
+		for (int i = 1; i < 8; i++) {
+			store.put("f" + i, 1, 1, data(1000, i));
+		}
+		assertEquals(8000, store.getLiveBytes());
+
+		//Evicted with the oldest arena, told out of the lock
+		store.put("new", 1, 1, data(1000, 8));
+		assertNull(store.getContent("md5-0"));
+		assertEquals(1, store.getEvictedContentCount());
+		assertEquals(Arrays.asList("f1", "md5-0"), evicted);
+		assertNotNull(store.getState("ref"));
+		assertTrue(store.evict("ref"));
+		assertEquals("ref", evicted.get(2));
+		assertEquals(0, store.getContentCount());
+
+		assertFalse(store.putContent("big", data(4096, 0)));
+		assertTrue(store.putContent("md5-9", data(10, 9)));
+		assertTrue(store.removeContent("md5-9"));
+		assertFalse(store.removeContent("md5-9"));
+	}
+}
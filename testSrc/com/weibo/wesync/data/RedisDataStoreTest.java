@@ -0,0 +1,256 @@
+package com.weibo.wesync.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+import com.weibo.wesync.DataService;
+import com.weibo.wesync.DataServiceImpl;
+import com.weibo.wesync.data.WeSyncMessage.DataSlice;
+import com.weibo.wesync.data.WeSyncMessage.FileData;
+import com.weibo.wesync.data.WeSyncMessage.Meta;
+
+public class RedisDataStoreTest extends TestCase {
+	private FakeRedisServer server;
+	private RedisDataStore store;
+	private String folderId = "juliet-conv-romeo";
+
+	@Before
+	public void setUp() throws IOException{
+		server = new FakeRedisServer();
+		store = new RedisDataStore("127.0.0.1", server.getPort(), 4, 2000);
+	}
+
+	@After
+	public void tearDown() throws IOException{
+		store.close();
+		server.close();
+	}
+
+	@Test
+	public void testFolder(){
+		assertEquals( -1, store.getMaxChildId(folderId) );
+		store.createFolder(folderId);
+		assertEquals( 0, store.getMaxChildId(folderId) );
+		assertEquals( 1, store.reserveChildId(folderId) );
+
+		for(int i=1; i<=30; i++){
+			store.addChild(folderId, String.valueOf(i*100), i*100);
+			store.addFolderChange(folderId, new FolderChange(String.valueOf(i*100), true));
+		}
+		assertTrue( store.isChild("300", folderId) );
+		assertFalse( store.isChild("301", folderId) );
+
+		SortedSet<FolderChild> following = store.getFollowingChildren(folderId, "300", 5);
+		assertEquals( 5, following.size() );
+		assertEquals( 400, following.first().score );
+		assertEquals( 2, store.getPrecedingChildren(folderId, "300", 5).size() );
+		assertEquals( 20, store.getChildren(folderId, -20, -1).size() );
+
+		FolderChange flag = new FolderChange("1000", true);
+		assertEquals( 3, store.getPrecedingChanges(folderId, flag, 3).size() );
+		assertEquals( 20, store.getFollowingChanges(folderId, flag, 100).size() );
+		store.removePrecedingFolderChange(folderId, flag);
+		assertEquals( 20, store.numberOfFolderChanges(folderId) );
+		assertEquals( 1100, Long.parseLong(store.getFolderChanges(folderId).first().childId) );
+
+		assertEquals( 20, store.removeAllFolderChanges(folderId).size() );
+		assertEquals( 0, store.numberOfFolderChanges(folderId) );
+
+		store.destroyFolder(folderId);
+		assertEquals( -1, store.getMaxChildId(folderId) );
+		assertEquals( 0, store.numberOfChildren(folderId) );
+	}
+
+	@Test
+	public void testRootChanges(){
+		String rootId = FolderID.onRoot("juliet");
+		String another = "juliet-conv-lawrence";
+		store.addFolderChange(rootId, new FolderChange(folderId, true));
+		store.addFolderChange(rootId, new FolderChange(another, true));
+		store.addFolderChange(rootId, new FolderChange(folderId, true));
+		assertEquals( 2, store.numberOfFolderChanges(rootId) );
+
+		store.removePrecedingFolderChange(rootId, new FolderChange(another, true));
+		SortedSet<FolderChange> left = store.getFolderChanges(rootId);
+		assertEquals( 1, left.size() );
+		assertEquals( folderId, left.first().childId );
+	}
+
+	@Test
+	public void testPipelinedStore(){
+		DataService ds = new DataServiceImpl(store);
+		ds.setFolderLimit(5, 3);
+		ds.prepareForNewUser("juliet");
+		ds.prepareForNewUser("romeo");
+		ds.newConversation("romeo", "juliet");
+
+		Meta.Builder builder = Meta.newBuilder()
+				.setType( ByteString.copyFrom( new byte[]{MetaMessageType.text.toByte()} ))
+				.setId("client-00")
+				.setFrom("romeo")
+				.setTo("juliet");
+		for(int i=0; i<10; i++){
+			builder.setContent( ByteString.copyFromUtf8("Miss U " + i) );
+			ds.store(builder.build());
+		}
+
+		String rootJuliet = FolderID.onRoot("juliet");
+		assertEquals( 1, ds.getUnreadNumber(rootJuliet) );
+		assertTrue( store.isChild(folderId, rootJuliet) );
+
+		//Trimmed by the folder limits
+		assertEquals( 3, ds.getUnreadNumber(folderId) );
+		assertEquals( 5, store.numberOfChildren(folderId) );
+
+		FolderChange last = ds.getFolderChanges(folderId).last();
+		Meta msg = ds.getMetaMessage(folderId, Long.parseLong(last.childId));
+		assertEquals( "Miss U 9", msg.getContent().toStringUtf8() );
+	}
+
+	@Test
+	public void testBatch(){
+		List<String> users = Arrays.asList("juliet", "romeo", "lawrence");
+		Map<String, FolderChild> children = new HashMap<String, FolderChild>();
+		Map<String, String> childIds = new HashMap<String, String>();
+		for(String u : users){
+			children.put(FolderID.onRoot(u), new FolderChild(folderId, 1));
+			childIds.put(FolderID.onRoot(u), folderId);
+		}
+		store.addChildren(children);
+		childIds.put(FolderID.onRoot("tybalt"), folderId);
+
+		Map<String, Boolean> isChild = store.isChildMulti(childIds);
+		assertEquals( 4, isChild.size() );
+		assertTrue( isChild.get(FolderID.onRoot("romeo")) );
+		assertFalse( isChild.get(FolderID.onRoot("tybalt")) );
+
+		Map<String, Long> ids = store.reserveChildIds(new ArrayList<String>(childIds.keySet()));
+		assertEquals( Long.valueOf(1), ids.get(FolderID.onRoot("juliet")) );
+
+		store.addChildren(folderId, Arrays.asList(new FolderChild("100", 100), new FolderChild("200", 200)));
+		assertEquals( 2, store.numberOfChildren(folderId) );
+
+		//One round trip for the changes of all folders
+		Map<String, FolderChange> changes = new HashMap<String, FolderChange>();
+		for(String u : users){
+			changes.put(FolderID.onRoot(u), new FolderChange(folderId, true));
+		}
+		int before = server.commandCount;
+		store.addFolderChanges(changes);
+		assertEquals( before + 3, server.commandCount );
+		assertEquals( 1, store.numberOfFolderChanges(FolderID.onRoot("lawrence")) );
+	}
+
+	@Test
+	public void testGetMetaMessages(){
+		Meta.Builder builder = Meta.newBuilder()
+				.setType( ByteString.copyFrom( new byte[]{MetaMessageType.text.toByte()} ));
+		List<String> ids = new ArrayList<String>();
+		for(int i=1; i<=20; i++){
+			String id = FolderChild.generateId(folderId, i);
+			ids.add(id);
+			if( i % 5 == 0 ) continue;
+			store.addMetaMessage( builder.setId(id).setContent(ByteString.copyFromUtf8("Miss U " + i)).build() );
+		}
+		assertTrue( store.getMetaMessages(new ArrayList<String>()).isEmpty() );
+
+		//One MGET for the whole page
+		int before = server.commandCount;
+		List<Meta> msgs = store.getMetaMessages(ids);
+		assertEquals( before + 1, server.commandCount );
+		assertEquals( 20, msgs.size() );
+		assertEquals( "Miss U 1", msgs.get(0).getContent().toStringUtf8() );
+		assertNull( msgs.get(4) );
+		assertEquals( ids.get(19-1), msgs.get(18).getId() );
+	}
+
+	@Test
+	public void testSliceContents(){
+		ByteString data = ByteString.copyFromUtf8("Starry night");
+		assertFalse( store.retainSliceContent("md5-1", "file-1", null) );
+		assertTrue( store.retainSliceContent("md5-1", "file-1", data) );
+		//Sent again by the same file
+		assertTrue( store.retainSliceContent("md5-1", "file-1", data) );
+		//Referred by another file
+		assertTrue( store.retainSliceContent("md5-1", "file-2", null) );
+
+		List<ByteString> contents = store.getSliceContents(Arrays.asList("md5-1", "md5-2"));
+		assertEquals( data, contents.get(0) );
+		assertNull( contents.get(1) );
+
+		//Removed with the last file referring to it
+		assertTrue( store.releaseSliceContent("md5-1", "file-1") );
+		assertFalse( store.releaseSliceContent("md5-1", "file-1") );
+		assertNotNull( store.getSliceContents(Arrays.asList("md5-1")).get(0) );
+		assertTrue( store.releaseSliceContent("md5-1", "file-2") );
+		assertNull( store.getSliceContents(Arrays.asList("md5-1")).get(0) );
+		assertFalse( store.retainSliceContent("md5-1", "file-1", null) );
+	}
+
+	private static DataSlice slice(int index, int limit){
+		return DataSlice.newBuilder().setIndex(index).setLimit(limit)
+				.setData(ByteString.copyFromUtf8("slice " + index)).build();
+	}
+
+	@Test
+	public void testFile(){
+		String fileId = "romeo-juliet-file";
+		//One command for the slices, whatever stored before
+		int before = server.commandCount;
+		FileData resp = store.storeFile( FileData.newBuilder().setId(fileId).addSlice(slice(2, 3)).addSlice(slice(2, 3)).build() );
+		assertEquals( before + 1, server.commandCount );
+		assertEquals( 0, resp.getSliceCount() );
+		assertEquals( 1, store.getFileById(fileId).getSliceCount() );
+
+		//Near complete, the missing one is asked for
+		resp = store.storeFile( FileData.newBuilder().setId(fileId).addSlice(slice(3, 3)).build() );
+		assertEquals( 1, resp.getSliceCount() );
+		assertEquals( 1, resp.getSlice(0).getIndex() );
+
+		//Completed in the order of index
+		store.storeFile( FileData.newBuilder().setId(fileId).addSlice(slice(1, 3)).build() );
+		FileData file = store.getFileById(fileId);
+		assertTrue( FileDataHelper.isSane(file) );
+		assertEquals( 3, file.getSliceCount() );
+		assertEquals( 1, file.getSlice(0).getIndex() );
+		//Resent after completion
+		assertEquals( 0, store.storeFile( FileData.newBuilder().setId(fileId).addSlice(slice(3, 3)).build() ).getSliceCount() );
+		assertEquals( 3, store.getFileById(fileId).getSliceCount() );
+
+		assertTrue( store.removeFile(fileId) );
+		assertNull( store.getFileById(fileId) );
+	}
+
+	@Test
+	public void testFileMismatched(){
+		String fileId = "romeo-juliet-file";
+		List<ByteString> data = new ArrayList<ByteString>();
+		data.add( slice(1, 2).getData() );
+		data.add( slice(2, 2).getData() );
+		String md5 = FileDataHelper.md5(data);
+
+		FileData resp = store.storeFile( FileData.newBuilder().setId(fileId).setMd5(md5)
+				.addSlice(slice(1, 2)).addSlice(slice(2, 2).toBuilder().setData(ByteString.copyFromUtf8("spoiled"))).build() );
+		assertEquals( 2, resp.getSliceCount() );
+		assertFalse( resp.getSlice(0).hasData() );
+		assertNull( store.getFileById(fileId) );
+
+		//The md5 is kept for the slices resent
+		store.storeFile( FileData.newBuilder().setId(fileId).addSlice(slice(1, 2)).addSlice(slice(2, 2)).build() );
+		FileData file = store.getFileById(fileId);
+		assertEquals( md5, file.getMd5() );
+		assertEquals( 2, file.getSliceCount() );
+	}
+}
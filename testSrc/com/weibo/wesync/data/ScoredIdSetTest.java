@@ -0,0 +1,110 @@
+package com.weibo.wesync.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class ScoredIdSetTest extends TestCase {
+	private static void assertEntries(TreeSet<FolderChild> expected, ScoredIdSet set){
+		assertEquals( expected.size(), set.size() );
+		List<FolderChild> sorted = new ArrayList<FolderChild>(expected);
+		for(int i=0; i<sorted.size(); i++){
+			FolderChild child = sorted.get(i);
+			assertEquals( child.score, set.score(i) );
+			assertEquals( child.id, set.id(i) );
+			assertTrue( set.contains(child.score, child.id) );
+			assertEquals( i, set.rank(child.score, child.id) );
+			assertEquals( i, set.indexOf(child.id) );
+			assertEquals( i+1, set.headCount(child.score, child.id, true) );
+		}
+	}
+
+	@Test
+	public void testAgainstTreeSet(){
+		ScoredIdSet set = new ScoredIdSet();
+		//The sorted set of Redis, an id once with its latest score
+		TreeSet<FolderChild> expected = new TreeSet<FolderChild>();
+		Map<String, Long> scores = new HashMap<String, Long>();
+		Random rand = new Random(47);
+
+		for(int i=0; i<20000; i++){
+			//Ids of the same score as well, and sets over the index threshold
+			String id = "c" + rand.nextInt(i < 10000 ? 300 : 6);
+			long score = rand.nextInt(100) - 20;
+			Long prev = scores.get(id);
+			if( rand.nextInt(3) == 0 ){
+				assertEquals( null != prev, set.remove(id) );
+				if( null != prev ) expected.remove(new FolderChild(id, prev));
+				scores.remove(id);
+			}else{
+				assertEquals( null == prev, set.add(score, id) );
+				if( null != prev ) expected.remove(new FolderChild(id, prev));
+				expected.add(new FolderChild(id, score));
+				scores.put(id, score);
+			}
+			assertEquals( expected.size(), set.size() );
+			assertEquals( null != scores.get(id), set.contains(id) );
+			if( i % 1000 == 0 ) assertEntries(expected, set);
+		}
+		assertEntries(expected, set);
+		assertEquals( -1, set.rank(-1000, "c1") );
+		assertEquals( -1, set.indexOf("none") );
+		assertEquals( expected.size(), set.headCount(1000, "c1", false) );
+	}
+
+	@Test
+	public void testRemoveFirst(){
+		ScoredIdSet set = new ScoredIdSet();
+		for(int i=10; i>0; i--){
+			set.add(i, "c" + i);
+		}
+		set.add(5, "b");
+		assertEquals( "b", set.id(4) );
+		//Looked up by the index
+		assertEquals( 4, set.indexOf("b") );
+
+		assertEquals( 3, set.removeFirst(3) );
+		assertEquals( 8, set.size() );
+		assertEquals( 4, set.score(0) );
+		assertEquals( 1, set.indexOf("b") );
+		assertEquals( -1, set.indexOf("c1") );
+
+		ScoredIdSet range = set.range(0, 2);
+		assertEquals( 2, range.size() );
+		assertEquals( "b", range.id(1) );
+
+		//Moved by a new score
+		assertFalse( set.add(100, "b") );
+		assertEquals( 7, set.indexOf("b") );
+		assertEquals( 0, set.indexOf("c4") );
+
+		assertEquals( 8, set.removeFirst(100) );
+		assertTrue( set.isEmpty() );
+		assertEquals( 0, set.removeFirst(1) );
+		assertTrue( set.add(10, "c10") );
+	}
+
+	@Test
+	public void testShrink(){
+		ScoredIdSet set = new ScoredIdSet();
+		for(int i=0; i<1000; i++){
+			set.add(i, "c" + i);
+		}
+		assertEquals( 500, set.indexOf("c500") );
+		for(int i=0; i<990; i++){
+			assertTrue( set.remove("c" + i) );
+		}
+		assertEquals( 10, set.size() );
+		assertEquals( 0, set.indexOf("c990") );
+		assertEquals( 9, set.indexOf("c999") );
+		assertEquals( -1, set.indexOf("c500") );
+		assertEquals( 10, set.removeFirst(10) );
+	}
+}
@@ -0,0 +1,92 @@
+package com.weibo.wesync.data;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+import com.weibo.wesync.data.WeSyncMessage.DataSlice;
+import com.weibo.wesync.data.WeSyncMessage.FileData;
+
+public class SliceVerifierTest extends TestCase {
+	private static DataSlice slice(int index, int limit, int size) {
+		byte[] b = new byte[size];
+		for (int i = 0; i < size; i++) {
+			b[i] = (byte) (index + i);
+		}
+		ByteString data = ByteString.copyFrom(b);
+		return DataSlice.newBuilder().setIndex(index).setLimit(limit).setData(data).setMd5(FileDataHelper.md5(data)).build();
+	}
+
+	@Test
+	public void testVerify() {
+		SliceVerifier verifier = new SliceVerifier(4, 8 * 1024);
+		List<DataSlice> slices = new ArrayList<DataSlice>();
+		for (int i = 1; i <= 64; i++) {
+			DataSlice s = slice(i, 64, 4 * 1024);
+			//Corrupted ones
+			if (i % 20 == 0) s = s.toBuilder().setData(ByteString.copyFromUtf8("corrupted")).build();
+			slices.add(s);
+		}
+		//Not checked without md5, or without data
+		slices.add(DataSlice.newBuilder().setIndex(65).setLimit(65).setData(ByteString.copyFromUtf8("no md5")).build());
+		slices.add(slice(66, 66, 10).toBuilder().clearData().build());
+
+		BitSet bad = verifier.verify(slices);
+		assertEquals(3, bad.cardinality());
+		assertEquals(19, bad.nextSetBit(0));
+		assertEquals(59, bad.previousSetBit(slices.size()));
+		assertEquals(64, verifier.getVerifiedSliceCount());
+		assertEquals(3, verifier.getMismatchCount());
+		assertTrue(verifier.getThroughput() > 0);
+		assertEquals(1, verifier.getLatency().getCount());
+
+		//Small ones in the caller's thread
+		assertTrue(verifier.verify(slices.subList(0, 1)).isEmpty());
+		assertEquals(65, verifier.getVerifiedSliceCount());
+		verifier.shutdown();
+	}
+
+	@Test
+	public void testVerifyFile() {
+		SliceVerifier verifier = new SliceVerifier(2, 1024);
+		List<ByteString> data = new ArrayList<ByteString>();
+		for (int i = 1; i <= 3; i++) {
+			data.add(slice(i, 3, 100).getData());
+		}
+		String md5 = FileDataHelper.md5(data);
+		assertTrue(verifier.verifyFile(md5, data));
+		assertFalse(verifier.verifyFile(md5, data.subList(0, 2)));
+		assertEquals(2, verifier.getVerifiedFileCount());
+		assertEquals(1, verifier.getMismatchCount());
+		verifier.shutdown();
+	}
+
+	@Test
+	public void testOnCompletion() {
+		MemoryDataStore store = new MemoryDataStore();
+		DataSlice s1 = slice(1, 2, 100);
+		DataSlice s2 = slice(2, 2, 100);
+		List<ByteString> data = new ArrayList<ByteString>();
+		data.add(s1.getData());
+		data.add(s2.getData());
+		String md5 = FileDataHelper.md5(data);
+
+		//Each slice is good but the file is not, all of them are asked again
+		DataSlice other = slice(2, 2, 99);
+		FileData resp = store.storeFile(FileData.newBuilder().setId("f2").setMd5(md5).addSlice(s1).addSlice(other).build());
+		assertEquals(2, resp.getSliceCount());
+		assertFalse(resp.getSlice(0).hasData());
+		assertFalse(store.getSliceStore().getState("f2").isComplete());
+
+		assertEquals(1, store.storeFile(FileData.newBuilder().setId("f2").setMd5(md5).addSlice(s1).build()).getSliceCount());
+		assertEquals(0, store.storeFile(FileData.newBuilder().setId("f2").addSlice(s2).build()).getSliceCount());
+		FileData file = store.getFileById("f2");
+		assertTrue(FileDataHelper.isSane(file));
+		assertEquals(2, file.getSliceCount());
+	}
+}
@@ -27,4 +27,47 @@ public class SyncKeyTest extends TestCase {
 		assertTrue( SyncKey.isFullSyncKey( "abc-root.F" ) );
 		assertTrue( SyncKey.isFullSyncKey( "abc-root.F100" ) ); 
 	}
+	
+	@Test
+	public void testCompact(){
+		String folderId = FolderID.onConversation("juliet", "romeo");
+		String key = SyncKey.syncKeyOnChange(folderId, new FolderChange("12345121018", false));
+		assertTrue( SyncKey.isCompact(key) );
+		assertTrue( key.length() < folderId.length() );
+		assertFalse( SyncKey.isEmpty(key) );
+		assertFalse( SyncKey.isFullSyncKey(key) );
+		assertEquals( "-12345121018", SyncKey.getChangeString(key) );
+		assertEquals( new FolderChange("12345121018", false), SyncKey.getChange(key) );
+		assertTrue( SyncKey.isOfFolder(key, folderId) );
+		assertFalse( SyncKey.isOfFolder(key, FolderID.onConversation("juliet", "tybalt")) );
+		
+		key = SyncKey.syncKeyOnChild(folderId, String.valueOf(Long.MAX_VALUE));
+		assertTrue( SyncKey.isFullSyncKey(key) );
+		assertEquals( String.valueOf(Long.MAX_VALUE), SyncKey.getChildBySyncKey(key) );
+		assertNull( SyncKey.getChange(key) );
+		
+		key = SyncKey.emptySyncKey(folderId, true);
+		assertTrue( SyncKey.isEmpty(key) );
+		assertTrue( SyncKey.isFullSyncKey(key) );
+		assertNull( SyncKey.getChildBySyncKey(key) );
+		assertTrue( SyncKey.isEmpty( SyncKey.emptySyncKey(folderId, false) ) );
+		assertEquals( "", SyncKey.getChangeString( SyncKey.emptySyncKey(folderId, false) ) );
+		
+		//Non-numeric and non-canonical child ids stay in text
+		String rootId = FolderID.onRoot("juliet");
+		key = SyncKey.syncKeyOnChange(rootId, new FolderChange(folderId, true));
+		assertEquals( rootId + ".+" + folderId, key );
+		assertTrue( SyncKey.isOfFolder(key, rootId) );
+		assertEquals( rootId + ".F007", SyncKey.syncKeyOnChild(rootId, "007") );
+		assertEquals( new FolderChange("100", true), SyncKey.getChange("Juliet-root.+100") );
+		assertNull( SyncKey.getChange("Juliet-root.F100") );
+		
+		SyncKey.setCompact(false);
+		try{
+			assertEquals( folderId + ".F", SyncKey.emptySyncKey(folderId, true) );
+			assertEquals( folderId + ".+100", SyncKey.syncKeyOnChange(folderId, new FolderChange("100", true)) );
+		}finally{
+			SyncKey.setCompact(true);
+		}
+	}
 }
@@ -0,0 +1,62 @@
+package com.weibo.wesync.data;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+import com.weibo.wesync.data.WeSyncMessage.DataSlice;
+import com.weibo.wesync.data.WeSyncMessage.FileData;
+
+public class UploadSessionTest extends TestCase {
+	private static DataSlice slice(int index, int limit) {
+		return DataSlice.newBuilder()
+				.setIndex(index)
+				.setLimit(limit)
+				.setData(ByteString.copyFrom(new byte[] { (byte) index }))
+				.build();
+	}
+
+	@Test
+	public void testSession() {
+		UploadSession session = new UploadSession("f1");
+		assertTrue(session.accept(slice(2, 4)));
+		assertTrue(session.accept(slice(4, 4)));
+		assertFalse(session.accept(slice(2, 4)));
+		assertFalse(session.isComplete());
+		assertFalse(session.isNearComplete());
+
+		assertTrue(session.accept(slice(1, 4)));
+		assertTrue(session.isNearComplete());
+		assertEquals(1, session.findMissing().size());
+		assertEquals(3, session.findMissing().get(0).getIndex());
+
+		session.accept(slice(3, 4));
+		assertTrue(session.isComplete());
+		assertEquals(5, session.getReceivedCount());
+		assertEquals(4, session.getBytes());
+
+		FileData file = session.toFileData();
+		assertEquals("f1", file.getId());
+		assertEquals(4, file.getSliceCount());
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i + 1, file.getSlice(i).getIndex());
+		}
+		//Same as checked by FileDataHelper
+		assertTrue(FileDataHelper.isSane(file));
+	}
+
+	@Test
+	public void testGrowingLimit() {
+		UploadSession session = new UploadSession("f2");
+		//The slice beyond the limit known so far counts once the limit grows
+		session.mark(3, 2);
+		session.mark(1, 2);
+		session.mark(2, 2);
+		assertTrue(session.isComplete());
+		session.mark(4, 4);
+		assertTrue(session.isComplete());
+		assertEquals(4, session.getLimit());
+		assertEquals(0, session.getBytes());
+	}
+}
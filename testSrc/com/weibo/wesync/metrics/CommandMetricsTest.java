@@ -0,0 +1,73 @@
+package com.weibo.wesync.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.weibo.wesync.Command;
+
+public class CommandMetricsTest extends TestCase {
+
+	@Test
+	public void testHistogramBuckets(){
+		for(long v : new long[]{0, 1, 15, 16, 17, 31, 32, 100, 1000, 123456789L}){
+			int idx = LatencyHistogram.indexOf(v);
+			assertTrue( v <= LatencyHistogram.upperBoundOf(idx) );
+			if( idx > 0 ) assertTrue( v > LatencyHistogram.upperBoundOf(idx-1) );
+			//Within 12.5%
+			assertTrue( LatencyHistogram.upperBoundOf(idx) - v <= v / 8 );
+		}
+	}
+
+	@Test
+	public void testPercentile(){
+		LatencyHistogram h = new LatencyHistogram();
+		assertEquals( 0, h.getPercentile(99) );
+		for(int i=1; i<=1000; i++){
+			h.record(i);
+		}
+		assertEquals( 1000, h.getCount() );
+		assertEquals( 1000, h.getMax() );
+		assertEquals( 500.5, h.getMean(), 0.01 );
+
+		long p50 = h.getPercentile(50);
+		assertTrue( p50 >= 500 && p50 <= 500 * 9 / 8 );
+		long p99 = h.getPercentile(99);
+		assertTrue( p99 >= 990 && p99 <= 1000 );
+		assertEquals( 1000, h.getPercentile(100) );
+	}
+
+	@Test
+	public void testRecordAndExport() throws Exception{
+		CommandMetrics metrics = new CommandMetrics();
+		long start = metrics.begin(Command.Sync, new byte[10]);
+		assertEquals( 1, metrics.get(Command.Sync).getInFlight() );
+		metrics.end(Command.Sync, start, new byte[100], false);
+		start = metrics.begin(Command.Sync, null);
+		metrics.end(Command.Sync, start, null, true);
+
+		CommandStats sync = metrics.get(Command.Sync);
+		assertEquals( 2, sync.getRequests() );
+		assertEquals( 1, sync.getErrors() );
+		assertEquals( 0, sync.getInFlight() );
+		assertEquals( 10, sync.getRequestBytes() );
+		assertEquals( 100, sync.getResponseBytes() );
+
+		String text = TextMetricsExporter.dump(metrics);
+		assertTrue( text.contains("Sync") );
+		assertFalse( text.contains("GetFile") );
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		JmxMetricsExporter jmx = new JmxMetricsExporter(server, "com.weibo.wesync.test");
+		metrics.addExporter(jmx);
+		ObjectName name = new ObjectName("com.weibo.wesync.test:type=Command,name=Sync");
+		assertEquals( 2L, server.getAttribute(name, "Requests") );
+		metrics.close();
+		assertFalse( server.isRegistered(name) );
+	}
+}